@@ -0,0 +1,549 @@
+package es.mlrdevs97.filters;
+
+import es.mlrdevs97.logging.DecisionLog;
+import es.mlrdevs97.metrics.DecisionMetrics;
+import es.mlrdevs97.metrics.ThrottlingMetrics;
+import es.mlrdevs97.servlets.CostExtractor;
+import es.mlrdevs97.servlets.KeyExtractor;
+import es.mlrdevs97.servlets.RateLimitHeaders;
+import es.mlrdevs97.throttling.AdaptiveConcurrencyLimiter;
+import es.mlrdevs97.throttling.BucketAlgorithm;
+import es.mlrdevs97.throttling.Decision;
+import es.mlrdevs97.throttling.GcraLimiter;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.LeakyBucket;
+import es.mlrdevs97.throttling.LeasedLimiter;
+import es.mlrdevs97.throttling.LimiterRegistry;
+import es.mlrdevs97.throttling.LoopbackQuotaAuthority;
+import es.mlrdevs97.throttling.NanoClock;
+import es.mlrdevs97.throttling.PackedBucketTable;
+import es.mlrdevs97.throttling.QuotaAuthority;
+import es.mlrdevs97.throttling.TimingWheel;
+import es.mlrdevs97.throttling.TokenBucket;
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static jakarta.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+
+/**
+ * Throttles the requests to any URL pattern it is mapped to, before they reach the servlet behind it.
+ * <p>
+ * The limit is set through filter init parameters:
+ * <ul>
+ *     <li>'algorithm': 'tokenBucket' (default), 'leakyBucket', 'gcra' or 'adaptive'.</li>
+ *     <li>'capacity' and 'rate' (per second): required, positive numbers.</li>
+ *     <li>'keyBy': the client key, as accepted by {@link KeyExtractor#fromParam(String)}. Global by default.</li>
+ *     <li>'costBy': the request cost, as accepted by {@link CostExtractor#fromParam(String)}. One permit by default.</li>
+ *     <li>'maxKeys' and 'store': the client store, as for the bucket servlets. With 'store' set to 'leased', the limit
+ *     is global to every node sharing the quota authority named by 'authority': 'loopback' (default) for an in-process
+ *     one, or the name of a {@link QuotaAuthority} class with a public (capacity, rate) constructor. Each node leases
+ *     'leaseChunk' permits at once (a tenth of the capacity by default), and returns a lease unused for
+ *     'leaseIdleMillis' (one second by default). Only token bucket limits can be leased.</li>
+ *     <li>'evictIdleMillis': how often the clients whose bucket is idle are dropped, returning their lease with the
+ *     leased store (ten seconds by default). Clients are dropped when the store is full too.</li>
+ *     <li>'checkpointFile': with the 'packed' store, a file the busy buckets are restored from at startup, and saved
+ *     to every 'checkpointMillis' (ten seconds by default) and on shutdown, so that a restart does not hand every
+ *     client a full bucket. A missing or unreadable checkpoint starts the buckets afresh.</li>
+ *     <li>'mode': 'policing' (default) to pass accepted requests on at once, or 'shaping' to hold each of them
+ *     asynchronously until it leaks out of a leaky bucket, so that the servlet behind receives a steady rate.
+ *     Shaping needs async support along the chain, and the filter to be mapped to the ASYNC dispatcher too.</li>
+ * </ul>
+ * With the 'adaptive' algorithm, the filter limits the requests in flight to the servlet behind instead of their
+ * rate, with an {@link AdaptiveConcurrencyLimiter} shared by every client. 'capacity' is then the highest the limit
+ * can go, 'minLimit' the lowest (one by default), and 'targetLatencyMillis' the tail latency to keep the requests
+ * under (required); the limit is adjusted every 'adjustMillis' (a tenth of a second by default), off the request
+ * path. A request holds its slot until the response is complete, even if the servlet goes async. Every request
+ * takes one slot, and 'rate', 'keyBy', 'costBy', 'store' and 'mode' do not apply.
+ * Decisions are counted in {@link ThrottlingMetrics#DEFAULT}, and sampled into {@link DecisionLog#shared()},
+ * under the filter name.
+ * Throttled requests are answered with an empty 429 response and the rate limit headers, and go no further
+ * down the chain. The decision is taken on a holder reused by each thread, so rejecting allocates nothing
+ * beyond the header values.
+ */
+public class ThrottlingFilter implements Filter {
+    // The maximum number of client keys tracked at once, unless overridden by the 'maxKeys' init parameter.
+    private static final int DEFAULT_MAX_KEYS = 100_000;
+
+    // How long a lease stays unused before it is returned, unless overridden by the 'leaseIdleMillis' init parameter.
+    private static final long DEFAULT_LEASE_IDLE_MILLIS = 1_000;
+
+    // How often the idle clients are dropped, unless overridden by the 'evictIdleMillis' init parameter.
+    private static final long DEFAULT_EVICT_IDLE_MILLIS = 10_000;
+
+    // How often the buckets are checkpointed, unless overridden by the 'checkpointMillis' init parameter.
+    private static final long DEFAULT_CHECKPOINT_MILLIS = 10_000;
+
+    // How long shutting down waits for the housekeeping task running, before the last checkpoint.
+    private static final long HOUSEKEEPING_SHUTDOWN_MILLIS = 30_000;
+
+    // How often the adaptive limit is adjusted, unless overridden by the 'adjustMillis' init parameter.
+    private static final long DEFAULT_ADJUST_MILLIS = 100;
+
+    // The adaptive limit before its first adjustment, unless the capacity is lower.
+    private static final long INITIAL_CONCURRENCY_LIMIT = 10;
+
+    // Reused by the requests filtered on each thread, so that deciding allocates nothing.
+    private static final ThreadLocal<Decision> DECISIONS = ThreadLocal.withInitial(Decision::new);
+
+    // Marks the requests released after being held, so that their async dispatch goes through unthrottled.
+    static final String RELEASED = ThrottlingFilter.class.getName() + ".released";
+
+    private KeyedLimiter limiter;
+    private KeyExtractor keyExtractor;
+    private CostExtractor costExtractor;
+    private boolean shaping;
+
+    // The limit of the requests in flight, with the 'adaptive' algorithm, instead of the keyed limiter.
+    private AdaptiveConcurrencyLimiter concurrency;
+
+    // The name of the filter in the metrics and the decision log, and its decision counters and latencies.
+    private String limiterName;
+    private DecisionMetrics metrics;
+
+    // The file the packed buckets are checkpointed to, if any.
+    private Path checkpointFile;
+
+    // The number of housekeeping tasks and checkpoints that failed.
+    private volatile long housekeepingFailures;
+
+    // The source of time of the timers and of the limiters, other than the packed ones.
+    private final NanoClock clock;
+
+    // Releases the held requests on time, to the millisecond, and hands the housekeeping over when it is due.
+    // Its single thread is only started when needed.
+    private final TimingWheel timers;
+
+    // Drops the idle clients, checkpoints the buckets and adjusts the adaptive limit, off the thread of the timers,
+    // so that a long scan or a slow disk does not hold up the release of the held requests. Its single thread is
+    // only started when needed.
+    private final ExecutorService housekeeping = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "throttling-filter-housekeeping");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ThrottlingFilter() {
+        this(NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param clock The source of time of the timers and of the limiters, other than the packed ones.
+     */
+    ThrottlingFilter(NanoClock clock) {
+        this.clock = clock;
+        this.timers = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(1), "throttling-filter-timers", clock);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        limiterName = filterConfig.getFilterName() != null ? filterConfig.getFilterName() : "throttling_filter";
+        if ("adaptive".equals(filterConfig.getInitParameter("algorithm"))) {
+            initAdaptive(filterConfig);
+            return;
+        }
+
+        BucketAlgorithm algorithm = algorithmOf(filterConfig.getInitParameter("algorithm"));
+        long capacity = positiveLong(filterConfig, "capacity");
+        long rate = positiveLong(filterConfig, "rate");
+        if (rate > BucketAlgorithm.MAX_RATE) {
+            throw new ServletException("Invalid 'rate' init parameter. Must not exceed " + BucketAlgorithm.MAX_RATE + " per second.");
+        }
+
+        keyExtractor = KeyExtractor.fromParam(filterConfig.getInitParameter("keyBy"));
+        if (keyExtractor == null) {
+            throw new ServletException("Invalid 'keyBy' init parameter. Must be one of 'global', 'ip', 'apiKey' or 'principal'.");
+        }
+
+        costExtractor = CostExtractor.fromParam(filterConfig.getInitParameter("costBy"));
+        if (costExtractor == null) {
+            throw new ServletException("Invalid 'costBy' init parameter. Must be one of 'request' or 'bytes'.");
+        }
+
+        String mode = filterConfig.getInitParameter("mode");
+        shaping = "shaping".equals(mode);
+        if (!shaping && mode != null && !mode.isEmpty() && !"policing".equals(mode)) {
+            throw new ServletException("Invalid 'mode' init parameter. Must be one of 'policing' or 'shaping'.");
+        }
+
+        String maxKeysParam = filterConfig.getInitParameter("maxKeys");
+        int maxKeys = DEFAULT_MAX_KEYS;
+        if (maxKeysParam != null) {
+            try {
+                maxKeys = Integer.parseInt(maxKeysParam);
+            } catch (NumberFormatException ex) {
+                throw new ServletException("Invalid 'maxKeys' init parameter. Must be a number.", ex);
+            }
+        }
+
+        String store = filterConfig.getInitParameter("store");
+        long evictIdleMillis = DEFAULT_EVICT_IDLE_MILLIS;
+        if (filterConfig.getInitParameter("evictIdleMillis") != null) {
+            evictIdleMillis = positiveLong(filterConfig, "evictIdleMillis");
+        }
+        String checkpointParam = filterConfig.getInitParameter("checkpointFile");
+        Path checkpoint = null;
+        long checkpointMillis = DEFAULT_CHECKPOINT_MILLIS;
+        if (checkpointParam != null && !checkpointParam.isEmpty()) {
+            if (!"packed".equals(store)) {
+                throw new ServletException("Invalid 'checkpointFile' init parameter. Only the 'packed' store can be checkpointed.");
+            }
+            try {
+                checkpoint = Paths.get(checkpointParam);
+            } catch (InvalidPathException ex) {
+                throw new ServletException("Invalid 'checkpointFile' init parameter. " + ex.getMessage(), ex);
+            }
+            if (filterConfig.getInitParameter("checkpointMillis") != null) {
+                checkpointMillis = positiveLong(filterConfig, "checkpointMillis");
+            }
+        }
+
+        // Nothing may fail from here on: the container does not destroy a filter whose init failed, so the timers
+        // started below would never be stopped.
+        if ("leased".equals(store)) {
+            limiter = leasedLimiter(filterConfig, algorithm, capacity, rate, maxKeys, clock);
+        } else {
+            try {
+                if ("packed".equals(store)) {
+                    limiter = new PackedBucketTable(algorithm, capacity, rate, maxKeys);
+                } else if (algorithm == BucketAlgorithm.TOKEN_BUCKET) {
+                    limiter = new LimiterRegistry<>(() -> new TokenBucket(capacity, rate, clock), maxKeys);
+                } else if (algorithm == BucketAlgorithm.GCRA) {
+                    limiter = new LimiterRegistry<>(() -> new GcraLimiter(capacity, rate, clock), maxKeys);
+                } else {
+                    limiter = new LimiterRegistry<>(() -> new LeakyBucket(capacity, rate, clock), maxKeys);
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new ServletException("Invalid 'maxKeys' init parameter. " + ex.getMessage(), ex);
+            }
+        }
+
+        metrics = ThrottlingMetrics.DEFAULT.decisions(limiterName, keyExtractor.getParamName());
+        ThrottlingMetrics.DEFAULT.track(limiterName, limiter, keyExtractor == KeyExtractor.GLOBAL ? KeyExtractor.GLOBAL_KEY : null);
+
+        timers.scheduleRepeatedly(offTimers(limiter::evictIdle), TimeUnit.MILLISECONDS.toNanos(evictIdleMillis));
+        if (checkpoint != null) {
+            startCheckpoints(filterConfig, checkpoint, checkpointMillis);
+        }
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) req;
+        HttpServletResponse httpResponse = (HttpServletResponse) res;
+        if (httpRequest.getDispatcherType() == DispatcherType.ASYNC && httpRequest.getAttribute(RELEASED) != null) {
+            chain.doFilter(req, res); // Already let through, and held until its turn.
+            return;
+        }
+        if (concurrency != null) {
+            limitConcurrency(httpRequest, httpResponse, chain);
+            return;
+        }
+
+        long cost = costExtractor.extract(httpRequest);
+        if (cost == CostExtractor.INVALID) {
+            httpResponse.setStatus(SC_BAD_REQUEST);
+            httpResponse.setContentLength(0);
+            return;
+        }
+
+        Decision decision = DECISIONS.get();
+        String key = keyExtractor.extract(httpRequest);
+        long start = System.nanoTime();
+        KeyedLimiter.Outcome outcome = limiter.tryAcquire(key, cost, decision);
+        metrics.record(outcome, System.nanoTime() - start);
+        if (outcome == KeyedLimiter.Outcome.KEY_LIMIT_REACHED) {
+            DecisionLog.shared().record(limiterName, key, outcome, cost, 0);
+            httpResponse.setStatus(429);
+            httpResponse.setContentLength(0);
+            return;
+        }
+
+        RateLimitHeaders.write(httpResponse, decision);
+        DecisionLog.shared().record(limiterName, key, outcome, cost, decision.getLevel());
+        if (outcome == KeyedLimiter.Outcome.GRANTED) {
+            long delay = decision.getDelayNanos();
+            if (shaping && delay > 0 && httpRequest.isAsyncSupported()) {
+                hold(httpRequest, delay);
+                return;
+            }
+            chain.doFilter(req, res);
+            return;
+        }
+
+        httpResponse.setStatus(429);
+        httpResponse.setContentLength(0);
+    }
+
+    /**
+     * Lets a request through if a slot is free, and keeps the slot until the response is complete,
+     * to count its latency towards the adaptive limit.
+     */
+    private void limitConcurrency(HttpServletRequest req, HttpServletResponse res, FilterChain chain)
+            throws IOException, ServletException {
+        if (req.getDispatcherType() == DispatcherType.ASYNC) {
+            chain.doFilter(req, res); // Dispatched again after going async, and still holding its slot.
+            return;
+        }
+
+        Decision decision = DECISIONS.get();
+        long start = System.nanoTime();
+        boolean granted = concurrency.tryAcquire(decision);
+        long decided = System.nanoTime();
+        KeyedLimiter.Outcome outcome = granted ? KeyedLimiter.Outcome.GRANTED : KeyedLimiter.Outcome.THROTTLED;
+        metrics.record(outcome, decided - start);
+        RateLimitHeaders.write(res, decision);
+        DecisionLog.shared().record(limiterName, KeyExtractor.GLOBAL_KEY, outcome, 1, decision.getLevel());
+        if (!granted) {
+            res.setStatus(429);
+            res.setContentLength(0);
+            return;
+        }
+
+        boolean released = true;
+        try {
+            chain.doFilter(req, res);
+            if (req.isAsyncStarted()) {
+                req.getAsyncContext().addListener(new SlotReleaser(decided));
+                released = false;
+            }
+        } finally {
+            if (released) {
+                concurrency.release(System.nanoTime() - decided);
+            }
+        }
+    }
+
+    /**
+     * Gives back the slot of a request that went async once its response is complete, which the container
+     * signals after a timeout or an error too.
+     */
+    private final class SlotReleaser implements AsyncListener {
+        private final long start;
+
+        SlotReleaser(long start) {
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            concurrency.release(System.nanoTime() - start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // Followed by onComplete.
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            // Followed by onComplete.
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this); // Listeners are dropped when the request goes async again.
+        }
+    }
+
+    /**
+     * Stops releasing held requests. Those still held are left to the container, which is shutting them down.
+     * The buckets are checkpointed one last time, if configured to, once the housekeeping running is over.
+     */
+    @Override
+    public void destroy() {
+        timers.close();
+        housekeeping.shutdown();
+        try {
+            housekeeping.awaitTermination(HOUSEKEEPING_SHUTDOWN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (checkpointFile != null) {
+            checkpoint();
+        }
+        if (limiter instanceof LeasedLimiter) {
+            ((LeasedLimiter) limiter).close();
+        }
+    }
+
+    /**
+     * Suspends a request until its turn to leak out, then dispatches it again down the chain,
+     * without holding a container thread meanwhile.
+     */
+    private void hold(HttpServletRequest req, long delay) {
+        AsyncContext async = req.startAsync();
+        async.setTimeout(0); // The wait is bounded by the capacity and the rate.
+        req.setAttribute(RELEASED, Boolean.TRUE);
+        try {
+            timers.schedule(async::dispatch, delay);
+        } catch (RejectedExecutionException ex) {
+            async.dispatch(); // The filter is being destroyed: let the request through rather than never.
+        }
+    }
+
+    /**
+     * Restores the packed buckets from their checkpoint, and schedules the next ones.
+     * Whether the buckets were restored goes to the container log, as it happens once.
+     */
+    private void startCheckpoints(FilterConfig filterConfig, Path file, long intervalMillis) {
+        checkpointFile = file;
+        ServletContext context = filterConfig.getServletContext();
+        try {
+            int restored = ((PackedBucketTable) limiter).restore(checkpointFile);
+            context.log(limiterName + ": restored " + restored + " buckets from " + checkpointFile + ".");
+        } catch (IOException ex) {
+            context.log(limiterName + ": starting with fresh buckets. " + ex.getMessage());
+        }
+        timers.scheduleRepeatedly(offTimers(this::checkpoint), TimeUnit.MILLISECONDS.toNanos(intervalMillis));
+    }
+
+    /**
+     * Saves the packed buckets. Synchronized so that the last checkpoint, on shutdown, does not race a scheduled one
+     * that outlived the wait for it.
+     */
+    private synchronized void checkpoint() {
+        try {
+            ((PackedBucketTable) limiter).checkpoint(checkpointFile);
+        } catch (IOException ex) {
+            housekeepingFailures++; // Counted rather than printed, as a failing disk would fail every checkpoint.
+        }
+    }
+
+    /**
+     * @return The number of housekeeping tasks and checkpoints of the buckets that failed.
+     */
+    long getHousekeepingFailures() {
+        return housekeepingFailures;
+    }
+
+    /**
+     * Wraps a housekeeping task so that the timers only hand it over to the housekeeping thread. A run still pending
+     * or running is not handed over again, so that a task slower than its period does not pile up.
+     */
+    private Runnable offTimers(Runnable task) {
+        AtomicBoolean pending = new AtomicBoolean();
+        Runnable run = () -> {
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                housekeepingFailures++;
+            } finally {
+                pending.set(false);
+            }
+        };
+        return () -> {
+            if (pending.compareAndSet(false, true)) {
+                try {
+                    housekeeping.execute(run);
+                } catch (RejectedExecutionException ex) {
+                    pending.set(false); // The filter is being destroyed.
+                }
+            }
+        };
+    }
+
+    /**
+     * Sets up the adaptive concurrency limit, and schedules its adjustments.
+     */
+    private void initAdaptive(FilterConfig filterConfig) throws ServletException {
+        long maxLimit = positiveLong(filterConfig, "capacity");
+        long targetLatencyMillis = positiveLong(filterConfig, "targetLatencyMillis");
+        long minLimit = 1;
+        if (filterConfig.getInitParameter("minLimit") != null) {
+            minLimit = positiveLong(filterConfig, "minLimit");
+        }
+        long interval = DEFAULT_ADJUST_MILLIS;
+        if (filterConfig.getInitParameter("adjustMillis") != null) {
+            interval = positiveLong(filterConfig, "adjustMillis");
+        }
+
+        try {
+            concurrency = new AdaptiveConcurrencyLimiter(INITIAL_CONCURRENCY_LIMIT, minLimit, maxLimit,
+                    TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis));
+        } catch (IllegalArgumentException ex) {
+            throw new ServletException("Invalid 'minLimit' init parameter. " + ex.getMessage(), ex);
+        }
+        metrics = ThrottlingMetrics.DEFAULT.decisions(limiterName, KeyExtractor.GLOBAL.getParamName());
+        ThrottlingMetrics.DEFAULT.track(limiterName, concurrency);
+        timers.scheduleRepeatedly(offTimers(concurrency::adjust), TimeUnit.MILLISECONDS.toNanos(interval));
+    }
+
+    private static KeyedLimiter leasedLimiter(FilterConfig filterConfig, BucketAlgorithm algorithm, long capacity,
+                                              long rate, int maxKeys, NanoClock clock) throws ServletException {
+        if (algorithm != BucketAlgorithm.TOKEN_BUCKET) {
+            throw new ServletException("Invalid 'store' init parameter. Only 'tokenBucket' limits can be leased.");
+        }
+
+        long chunk = Math.max(1, capacity / 10);
+        if (filterConfig.getInitParameter("leaseChunk") != null) {
+            chunk = positiveLong(filterConfig, "leaseChunk");
+        }
+        long idleMillis = DEFAULT_LEASE_IDLE_MILLIS;
+        if (filterConfig.getInitParameter("leaseIdleMillis") != null) {
+            idleMillis = positiveLong(filterConfig, "leaseIdleMillis");
+        }
+
+        QuotaAuthority authority;
+        String authorityParam = filterConfig.getInitParameter("authority");
+        if (authorityParam == null || authorityParam.isEmpty() || "loopback".equals(authorityParam)) {
+            authority = new LoopbackQuotaAuthority(capacity, rate, clock);
+        } else {
+            try {
+                authority = Class.forName(authorityParam).asSubclass(QuotaAuthority.class)
+                        .getConstructor(long.class, long.class)
+                        .newInstance(capacity, rate);
+            } catch (ReflectiveOperationException | ClassCastException ex) {
+                throw new ServletException("Invalid 'authority' init parameter. Must be 'loopback' or the name of a "
+                        + "QuotaAuthority class with a public (long capacity, long rate) constructor.", ex);
+            }
+        }
+
+        try {
+            return new LeasedLimiter(authority, chunk, idleMillis, maxKeys, clock);
+        } catch (IllegalArgumentException ex) {
+            throw new ServletException("Invalid 'maxKeys' init parameter. " + ex.getMessage(), ex);
+        }
+    }
+
+    private static BucketAlgorithm algorithmOf(String param) throws ServletException {
+        if (param == null || param.isEmpty() || "tokenBucket".equals(param)) {
+            return BucketAlgorithm.TOKEN_BUCKET;
+        }
+        if ("leakyBucket".equals(param)) {
+            return BucketAlgorithm.LEAKY_BUCKET;
+        }
+        if ("gcra".equals(param)) {
+            return BucketAlgorithm.GCRA;
+        }
+        throw new ServletException("Invalid 'algorithm' init parameter. Must be one of 'tokenBucket', 'leakyBucket' or 'gcra'.");
+    }
+
+    private static long positiveLong(FilterConfig filterConfig, String name) throws ServletException {
+        String param = filterConfig.getInitParameter(name);
+        if (param == null || param.isEmpty()) {
+            throw new ServletException("Missing '" + name + "' init parameter.");
+        }
+
+        try {
+            long value = Long.parseLong(param);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException ignored) {
+            // Reported below.
+        }
+        throw new ServletException("Invalid '" + name + "' init parameter. Must be a positive number.");
+    }
+}
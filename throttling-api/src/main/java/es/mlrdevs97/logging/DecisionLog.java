@@ -0,0 +1,252 @@
+package es.mlrdevs97.logging;
+
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.NanoClock;
+import es.mlrdevs97.throttling.TokenBucket;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logs rate limiting decisions off the request path.
+ * <p>
+ * Request threads only copy a decision into a slot of a bounded ring buffer, preallocated as parallel arrays, and a
+ * background thread formats and writes the slots out. Granted decisions are sampled, one in 'sampleEvery', and
+ * denials are themselves rate limited by a {@link TokenBucket}, so that an attack does not flood the log. When the
+ * buffer is full, the decision is dropped and counted rather than waited for.
+ * <p>
+ * Recording takes no lock and allocates nothing: a random draw or a compare-and-set on the denial budget, and for the
+ * decisions kept, a compare-and-set on the tail of the buffer and a few array writes. The slots follow the bounded
+ * multi-producer queue of D. Vyukov: each one carries a sequence number telling whose turn it is, so producers never
+ * wait for the consumer, nor the consumer for a producer that has not finished writing.
+ */
+public class DecisionLog implements AutoCloseable {
+    private static final VarHandle SEQUENCES = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            TAIL = MethodHandles.lookup().findVarHandle(DecisionLog.class, "tail", long.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final int DEFAULT_SAMPLE_EVERY = 100;
+    public static final long DEFAULT_MAX_DENIALS_PER_SECOND = 10;
+
+    // How long the writer sleeps when the buffer is empty.
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // The log of the servlets and filters, replaced by DecisionLogListener when the application is configured.
+    private static volatile DecisionLog shared = new DecisionLog(DEFAULT_CAPACITY, DEFAULT_SAMPLE_EVERY,
+            DEFAULT_MAX_DENIALS_PER_SECOND, System.out);
+
+    private final int mask;
+    private final int sampleEvery;
+    private final TokenBucket denialBudget;
+    private final PrintStream out;
+
+    // Slot i holds the sequence at which it can next be written, or that plus one once it is written.
+    private final long[] sequences;
+    private final String[] limiters;
+    private final String[] keys;
+    private final KeyedLimiter.Outcome[] outcomes;
+    private final long[] costs;
+    private final long[] levels;
+    private final long[] times;
+
+    // The next sequence to write, shared by the producers. Not private, for the VarHandle lookup.
+    volatile long tail;
+
+    // The next sequence to read, owned by whoever holds the lock of the log while draining.
+    private long head;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder suppressed = new LongAdder();
+    private long reportedDropped;
+    private long reportedSuppressed;
+
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity The number of decisions the buffer holds, rounded up to a power of two.
+     * @param sampleEvery Logs one in this many granted decisions, at random. 1 logs them all.
+     * @param maxDenialsPerSecond The most denials logged per second, with bursts up to as many.
+     * @param out Where the decisions are written.
+     */
+    public DecisionLog(int capacity, int sampleEvery, long maxDenialsPerSecond, PrintStream out) {
+        this(capacity, sampleEvery, maxDenialsPerSecond, out, NanoClock.SYSTEM, true);
+    }
+
+    DecisionLog(int capacity, int sampleEvery, long maxDenialsPerSecond, PrintStream out, NanoClock clock,
+                boolean startWriter) {
+        if (capacity <= 0 || capacity > 1 << 30 || sampleEvery <= 0 || maxDenialsPerSecond <= 0) {
+            throw new IllegalArgumentException("The capacity, sampling and denial rate must be positive.");
+        }
+
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.sampleEvery = sampleEvery;
+        this.denialBudget = new TokenBucket(maxDenialsPerSecond, maxDenialsPerSecond, clock);
+        this.out = out;
+        this.sequences = new long[size];
+        this.limiters = new String[size];
+        this.keys = new String[size];
+        this.outcomes = new KeyedLimiter.Outcome[size];
+        this.costs = new long[size];
+        this.levels = new long[size];
+        this.times = new long[size];
+        for (int i = 0; i < size; i++) {
+            sequences[i] = i;
+        }
+
+        if (startWriter) {
+            writer = new Thread(this::writeUntilClosed, "decision-log-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            writer = null;
+        }
+    }
+
+    /**
+     * @return The log of the servlets and filters.
+     */
+    public static DecisionLog shared() {
+        return shared;
+    }
+
+    /**
+     * Replaces the log of the servlets and filters, closing the previous one once it is written out.
+     */
+    public static void setShared(DecisionLog log) {
+        DecisionLog previous = shared;
+        shared = log;
+        previous.close();
+    }
+
+    /**
+     * Logs a decision, if it is sampled and the buffer has room.
+     * @param limiter The name of the limiter that decided.
+     * @param key The client key.
+     * @param outcome The outcome of the decision.
+     * @param cost The permits the request asked for.
+     * @param level The level of the limiter after the decision.
+     */
+    public void record(String limiter, String key, KeyedLimiter.Outcome outcome, long cost, long level) {
+        if (outcome == KeyedLimiter.Outcome.GRANTED) {
+            if (sampleEvery > 1 && ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+                return;
+            }
+        } else if (!denialBudget.tryConsume()) {
+            suppressed.increment();
+            return;
+        }
+
+        while (true) {
+            long sequence = tail;
+            int slot = (int) sequence & mask;
+            long turn = (long) SEQUENCES.getAcquire(sequences, slot);
+            if (turn < sequence) {
+                dropped.increment(); // The writer has not freed the slot yet: the buffer is full.
+                return;
+            }
+            if (turn == sequence && TAIL.compareAndSet(this, sequence, sequence + 1)) {
+                limiters[slot] = limiter;
+                keys[slot] = key;
+                outcomes[slot] = outcome;
+                costs[slot] = cost;
+                levels[slot] = level;
+                times[slot] = System.currentTimeMillis();
+                SEQUENCES.setRelease(sequences, slot, sequence + 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes out every decision written to the buffer so far, and the number of decisions left out since the
+     * last report.
+     * @return The number of decisions written.
+     */
+    public synchronized int drain() {
+        StringBuilder line = new StringBuilder(128);
+        int written = 0;
+        while (true) {
+            int slot = (int) head & mask;
+            if ((long) SEQUENCES.getAcquire(sequences, slot) != head + 1) {
+                break;
+            }
+
+            line.setLength(0);
+            line.append(Instant.ofEpochMilli(times[slot])).append(' ').append(limiters[slot]).append(' ')
+                    .append(outcomes[slot]).append(" key=").append(keys[slot]).append(" cost=").append(costs[slot])
+                    .append(" level=").append(levels[slot]);
+            limiters[slot] = null;
+            keys[slot] = null;
+            outcomes[slot] = null;
+            SEQUENCES.setRelease(sequences, slot, head + mask + 1);
+            head++;
+            out.println(line);
+            written++;
+        }
+
+        long droppedNow = dropped.sum();
+        long suppressedNow = suppressed.sum();
+        if (droppedNow != reportedDropped || suppressedNow != reportedSuppressed) {
+            out.println("Decision log: " + (droppedNow - reportedDropped) + " decisions dropped (buffer full), "
+                    + (suppressedNow - reportedSuppressed) + " denials not logged (rate limited).");
+            reportedDropped = droppedNow;
+            reportedSuppressed = suppressedNow;
+        }
+        return written;
+    }
+
+    /**
+     * @return The number of decisions dropped because the buffer was full.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return The number of denials left out by the denial rate limit.
+     */
+    public long getSuppressed() {
+        return suppressed.sum();
+    }
+
+    /**
+     * Stops the writer once it has written out the decisions recorded so far.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drain();
+    }
+
+    private void writeUntilClosed() {
+        while (!closed) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+}
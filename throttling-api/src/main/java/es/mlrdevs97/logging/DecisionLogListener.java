@@ -0,0 +1,36 @@
+package es.mlrdevs97.logging;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+
+/**
+ * Configures the shared {@link DecisionLog} from context parameters when the application starts, and writes it out
+ * when the application stops.
+ * <ul>
+ *     <li>'decisionLogCapacity': the number of decisions buffered, 8192 by default.</li>
+ *     <li>'decisionLogSampleEvery': logs one in this many granted decisions, 100 by default.</li>
+ *     <li>'decisionLogMaxDenialsPerSecond': the most denials logged per second, 10 by default.</li>
+ * </ul>
+ */
+public class DecisionLogListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        ServletContext context = event.getServletContext();
+        int capacity = intParam(context, "decisionLogCapacity", DecisionLog.DEFAULT_CAPACITY);
+        int sampleEvery = intParam(context, "decisionLogSampleEvery", DecisionLog.DEFAULT_SAMPLE_EVERY);
+        long maxDenials = intParam(context, "decisionLogMaxDenialsPerSecond", (int) DecisionLog.DEFAULT_MAX_DENIALS_PER_SECOND);
+        DecisionLog.setShared(new DecisionLog(capacity, sampleEvery, maxDenials, System.out));
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        DecisionLog.shared().close();
+    }
+
+    private static int intParam(ServletContext context, String name, int defaultValue) {
+        String param = context.getInitParameter(name);
+        return param == null || param.isEmpty() ? defaultValue : Integer.parseInt(param);
+    }
+}
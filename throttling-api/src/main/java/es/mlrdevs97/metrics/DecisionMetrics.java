@@ -0,0 +1,73 @@
+package es.mlrdevs97.metrics;
+
+import es.mlrdevs97.throttling.KeyedLimiter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The decision counters and latency histogram of one limiter and client key class.
+ * <p>
+ * Instances are looked up once, when a limiter is configured, and kept next to it, so that recording a decision
+ * is a couple of striped increments: no map lookup, no lock and no allocation on the request path.
+ */
+public class DecisionMetrics {
+    private final String limiter;
+    private final String keyClass;
+
+    private final LongAdder granted = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder keyLimitReached = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    DecisionMetrics(String limiter, String keyClass) {
+        this.limiter = limiter;
+        this.keyClass = keyClass;
+    }
+
+    /**
+     * Counts a decision.
+     * @param outcome The outcome of the decision.
+     * @param nanos The time taken to decide, in nanoseconds.
+     */
+    public void record(KeyedLimiter.Outcome outcome, long nanos) {
+        switch (outcome) {
+            case GRANTED:
+                granted.increment();
+                break;
+            case THROTTLED:
+                throttled.increment();
+                break;
+            default:
+                keyLimitReached.increment();
+                break;
+        }
+        latency.record(nanos);
+    }
+
+    public long getGranted() {
+        return granted.sum();
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    public long getKeyLimitReached() {
+        return keyLimitReached.sum();
+    }
+
+    String labels() {
+        return "limiter=\"" + limiter + "\",key_class=\"" + keyClass + "\",";
+    }
+
+    void writeCountersTo(StringBuilder out, String name) {
+        String labels = labels();
+        out.append(name).append('{').append(labels).append("outcome=\"granted\"} ").append(granted.sum()).append('\n');
+        out.append(name).append('{').append(labels).append("outcome=\"throttled\"} ").append(throttled.sum()).append('\n');
+        out.append(name).append('{').append(labels).append("outcome=\"key_limit_reached\"} ").append(keyLimitReached.sum()).append('\n');
+    }
+
+    void writeLatencyTo(StringBuilder out, String name) {
+        latency.writeTo(out, name, labels());
+    }
+}
@@ -0,0 +1,69 @@
+package es.mlrdevs97.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in fixed buckets, for the Prometheus histogram type.
+ * <p>
+ * The bucket bounds are set once, and each bucket is a {@link LongAdder}, so recording a duration takes no lock,
+ * allocates nothing, and spreads concurrent updates over striped cells instead of one contended word.
+ */
+public class LatencyHistogram {
+    // The upper bounds of the buckets, in nanoseconds, from 100 ns to 1 ms. Slower decisions only count towards +Inf.
+    static final long[] BOUNDS = {
+            100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 1_000_000
+    };
+
+    // The bounds in seconds, as written in the 'le' label.
+    private static final String[] BOUND_LABELS = new String[BOUNDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUND_LABELS[i] = BigDecimal.valueOf(BOUNDS[i], 9).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    // The number of durations of each bucket alone, the last one counting those above every bound.
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param nanos The duration to count, in nanoseconds.
+     */
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS.length && nanos > BOUNDS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Writes the histogram in Prometheus text format, with cumulative buckets.
+     * @param out The output to append to.
+     * @param name The metric name, without the suffixes.
+     * @param labels The labels of the series, as written between braces, followed by a comma.
+     */
+    void writeTo(StringBuilder out, String name, String labels) {
+        long count = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            count += buckets[i].sum();
+            out.append(name).append("_bucket{").append(labels).append("le=\"").append(BOUND_LABELS[i]).append("\"} ")
+                    .append(count).append('\n');
+        }
+        count += buckets[BOUNDS.length].sum();
+        out.append(name).append("_bucket{").append(labels).append("le=\"+Inf\"} ").append(count).append('\n');
+
+        String series = labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}";
+        out.append(name).append("_sum").append(series).append(' ').append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(series).append(' ').append(count).append('\n');
+    }
+}
@@ -0,0 +1,105 @@
+package es.mlrdevs97.metrics;
+
+import es.mlrdevs97.throttling.AdaptiveConcurrencyLimiter;
+import es.mlrdevs97.throttling.KeyedLimiter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The metrics of every limiter of the application, rendered in the Prometheus text exposition format.
+ * <p>
+ * Decisions are counted through the {@link DecisionMetrics} of their limiter and client key class. Gauges are
+ * read from their limiter only when rendered, so they cost nothing between scrapes. Limiter names and key classes
+ * are set by the application, and are written as label values without escaping.
+ */
+public class ThrottlingMetrics {
+    /**
+     * The metrics shared by the servlets and filters of the application.
+     */
+    public static final ThrottlingMetrics DEFAULT = new ThrottlingMetrics();
+
+    static final String DECISIONS = "throttling_decisions_total";
+    static final String DECISION_DURATION = "throttling_decision_duration_seconds";
+    static final String TRACKED_KEYS = "throttling_tracked_keys";
+    static final String LEVEL = "throttling_level";
+    static final String CONCURRENCY_LIMIT = "throttling_concurrency_limit";
+
+    // Sorted, so that series come out in the same order on every scrape.
+    private final Map<String, DecisionMetrics> decisions = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> trackedKeys = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> levels = new ConcurrentSkipListMap<>();
+    private final Map<String, LongSupplier> concurrencyLimits = new ConcurrentSkipListMap<>();
+
+    /**
+     * Gets the decision metrics of a limiter and client key class, creating them on first use.
+     * Meant to be called when a limiter is configured, not on every decision.
+     * @param limiter The name of the limiter, such as "token_bucket".
+     * @param keyClass How the limiter tells clients apart, such as "ip".
+     */
+    public DecisionMetrics decisions(String limiter, String keyClass) {
+        return decisions.computeIfAbsent(limiter + '\u0000' + keyClass, k -> new DecisionMetrics(limiter, keyClass));
+    }
+
+    /**
+     * Sets the gauges of a limiter, replacing those of its previous configuration.
+     * @param name The name of the limiter.
+     * @param limiter The limiter, whose number of client keys is tracked.
+     * @param sharedKey The key shared by every client, whose level (tokens, queued requests or permits in the window)
+     * is tracked too, or null if clients are limited separately.
+     */
+    public void track(String name, KeyedLimiter limiter, String sharedKey) {
+        trackedKeys.put(name, limiter::size);
+        concurrencyLimits.remove(name);
+        if (sharedKey == null) {
+            levels.remove(name);
+        } else {
+            levels.put(name, () -> limiter.getLevel(sharedKey));
+        }
+    }
+
+    /**
+     * Sets the gauges of an adaptive concurrency limiter: its level is the number of requests in flight,
+     * and its limit is tracked as it adapts.
+     * @param name The name of the limiter.
+     * @param limiter The limiter.
+     */
+    public void track(String name, AdaptiveConcurrencyLimiter limiter) {
+        trackedKeys.remove(name);
+        levels.put(name, limiter::getInFlight);
+        concurrencyLimits.put(name, limiter::getLimit);
+    }
+
+    /**
+     * Renders every metric in the Prometheus text exposition format, version 0.0.4.
+     */
+    public String render() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# HELP ").append(DECISIONS).append(" Rate limiting decisions, by limiter, client key class and outcome.\n");
+        out.append("# TYPE ").append(DECISIONS).append(" counter\n");
+        for (DecisionMetrics metrics : decisions.values()) {
+            metrics.writeCountersTo(out, DECISIONS);
+        }
+
+        out.append("# HELP ").append(DECISION_DURATION).append(" Time taken to decide, by limiter and client key class.\n");
+        out.append("# TYPE ").append(DECISION_DURATION).append(" histogram\n");
+        for (DecisionMetrics metrics : decisions.values()) {
+            metrics.writeLatencyTo(out, DECISION_DURATION);
+        }
+
+        writeGauges(out, TRACKED_KEYS, "Client keys currently tracked, by limiter.", trackedKeys);
+        writeGauges(out, LEVEL, "Tokens, queued requests, permits in the window or requests in flight, by limiter shared by every client.", levels);
+        writeGauges(out, CONCURRENCY_LIMIT, "Requests allowed in flight at once, by adaptive limiter.", concurrencyLimits);
+        return out.toString();
+    }
+
+    private static void writeGauges(StringBuilder out, String name, String help, Map<String, LongSupplier> gauges) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            out.append(name).append("{limiter=\"").append(gauge.getKey()).append("\"} ")
+                    .append(gauge.getValue().getAsLong()).append('\n');
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package es.mlrdevs97.servlets;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Strategies to find out how many permits a request costs, so that bulk requests are charged in a single decision.
+ */
+public enum CostExtractor {
+    // Each request costs one permit, unless the 'cost' parameter or the cost header says otherwise.
+    REQUEST("request") {
+        @Override
+        public long extract(HttpServletRequest req) {
+            String cost = req.getParameter(COST_PARAM);
+            if (cost == null || cost.isEmpty()) {
+                cost = req.getHeader(COST_HEADER);
+            }
+            if (cost == null || cost.isEmpty()) {
+                return 1;
+            }
+
+            try {
+                long permits = Long.parseLong(cost);
+                return permits > 0 ? permits : INVALID;
+            } catch (NumberFormatException ex) {
+                return INVALID;
+            }
+        }
+    },
+
+    // Each request costs the size of its payload in bytes, to limit bandwidth. Payloads of unknown size cost one permit.
+    BYTES("bytes") {
+        @Override
+        public long extract(HttpServletRequest req) {
+            return Math.max(1, req.getContentLengthLong());
+        }
+    };
+
+    public static final String COST_PARAM = "cost";
+    public static final String COST_HEADER = "X-Request-Cost";
+
+    // Returned by extract() when the request states a cost that is not a positive number.
+    public static final long INVALID = -1;
+
+    // The name used to select the strategy in request parameters.
+    private final String paramName;
+
+    CostExtractor(String paramName) {
+        this.paramName = paramName;
+    }
+
+    /**
+     * Extracts the cost of a request.
+     * @param req The HttpServletRequest object that contains the client's request.
+     * @return The number of permits the request takes, or {@link #INVALID}.
+     */
+    public abstract long extract(HttpServletRequest req);
+
+    public String getParamName() {
+        return paramName;
+    }
+
+    /**
+     * Finds the strategy selected by a request parameter.
+     * @param paramName The parameter value, or null to use the default.
+     * @return The matching strategy, {@link #REQUEST} if the parameter is missing, or null if it is unknown.
+     */
+    public static CostExtractor fromParam(String paramName) {
+        if (paramName == null || paramName.isEmpty()) {
+            return REQUEST;
+        }
+
+        for (CostExtractor extractor : values()) {
+            if (extractor.paramName.equals(paramName)) {
+                return extractor;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,49 @@
+package es.mlrdevs97.servlets;
+
+import es.mlrdevs97.throttling.BucketAlgorithm;
+import es.mlrdevs97.throttling.GcraLimiter;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.LimiterRegistry;
+import es.mlrdevs97.throttling.PackedBucketTable;
+import es.mlrdevs97.throttling.Reconfigurable;
+
+/**
+ * Lets each request through a GCRA limiter: a GET checks that the request of the requesting client conforms to the
+ * rate, pushing its theoretical arrival time ahead, and a POST configures the limiters with the parameters 'capacity',
+ * the burst allowed, and 'rate', in permits per second.
+ * Posting new limits with the same 'keyBy' changes them in place: every client keeps its share of the capacity.
+ */
+public class GcraServlet extends KeyedLimiterServlet {
+    // Whether arrival times are kept in a PackedBucketTable rather than as one object per client ('store' init parameter).
+    private boolean packedStore;
+
+    public GcraServlet() {
+        super("gcra", "GCRA limiter", "remaining", "capacity", "rate");
+    }
+
+    @Override
+    public void init() {
+        super.init();
+        packedStore = "packed".equals(getInitParameter("store"));
+    }
+
+    @Override
+    protected String validate(long capacity, long rate) {
+        if (rate > BucketAlgorithm.MAX_RATE) {
+            return "Invalid 'rate' value. Must not exceed " + BucketAlgorithm.MAX_RATE + " per second.";
+        }
+        return null;
+    }
+
+    @Override
+    protected KeyedLimiter configure(KeyedLimiter current, boolean sameClients, long capacity, long rate) {
+        if (sameClients && current instanceof Reconfigurable) {
+            // Same clients, new limits: every client keeps its share of the capacity instead of starting afresh.
+            ((Reconfigurable) current).reconfigure(capacity, rate);
+            return current;
+        }
+        return packedStore
+                ? new PackedBucketTable(BucketAlgorithm.GCRA, capacity, rate, maxKeys())
+                : new LimiterRegistry<>(() -> new GcraLimiter(capacity, rate), maxKeys());
+    }
+}
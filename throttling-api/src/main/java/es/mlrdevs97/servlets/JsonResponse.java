@@ -0,0 +1,95 @@
+package es.mlrdevs97.servlets;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON response body encoded to UTF-8 once, when the servlet class is loaded, rather than on every request.
+ * <p>
+ * A body holds at most one number, written as the last field: the text before and after it are kept as bytes,
+ * and the digits are written between them into a buffer reused by every response written on the same thread.
+ * The body is then sent through the output stream with its exact length, so answering a request neither builds
+ * a String nor goes through a charset encoder.
+ */
+final class JsonResponse {
+    // The most bytes a long takes in decimal, with its sign.
+    private static final int MAX_DIGITS = 20;
+
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[256]);
+
+    private final byte[] prefix;
+    private final byte[] suffix;
+
+    private JsonResponse(String prefix, String suffix) {
+        this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+        this.suffix = suffix == null ? null : suffix.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return A body with no number in it.
+     */
+    static JsonResponse constant(String body) {
+        return new JsonResponse(body + "\n", null);
+    }
+
+    /**
+     * @return A body made of the prefix, a number and the suffix.
+     */
+    static JsonResponse withNumber(String prefix, String suffix) {
+        return new JsonResponse(prefix, suffix + "\n");
+    }
+
+    /**
+     * Sends a body with no number in it.
+     */
+    void write(HttpServletResponse res) throws IOException {
+        res.setContentLength(prefix.length);
+        res.getOutputStream().write(prefix);
+    }
+
+    /**
+     * Sends a body with its number.
+     */
+    void write(HttpServletResponse res, long value) throws IOException {
+        int size = prefix.length + MAX_DIGITS + suffix.length;
+        byte[] buffer = BUFFERS.get();
+        if (buffer.length < size) {
+            buffer = new byte[size];
+            BUFFERS.set(buffer);
+        }
+
+        System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+        int length = writeDigits(buffer, prefix.length, value);
+        System.arraycopy(suffix, 0, buffer, length, suffix.length);
+        length += suffix.length;
+
+        res.setContentLength(length);
+        res.getOutputStream().write(buffer, 0, length);
+    }
+
+    /**
+     * Writes a number in decimal ASCII.
+     * @return The offset right after its last digit.
+     */
+    static int writeDigits(byte[] buffer, int offset, long value) {
+        if (value < 0) {
+            buffer[offset++] = '-';
+        }
+
+        // Count the digits first, then fill them in from the last one. Negative values are worked on as such,
+        // as Long.MIN_VALUE has no positive counterpart.
+        long negative = value < 0 ? value : -value;
+        int digits = 1;
+        for (long rest = negative / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        int end = offset + digits;
+        for (int i = end - 1; i >= offset; i--) {
+            buffer[i] = (byte) ('0' - negative % 10);
+            negative /= 10;
+        }
+        return end;
+    }
+}
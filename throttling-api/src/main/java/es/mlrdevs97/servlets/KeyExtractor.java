@@ -0,0 +1,85 @@
+package es.mlrdevs97.servlets;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.security.Principal;
+
+/**
+ * Strategies to find out which client a request belongs to, so that each client gets its own rate limit.
+ */
+public enum KeyExtractor {
+    // Every request shares the same limit.
+    GLOBAL("global") {
+        @Override
+        public String extract(HttpServletRequest req) {
+            return GLOBAL_KEY;
+        }
+    },
+
+    // Requests are limited per client IP address.
+    IP("ip") {
+        @Override
+        public String extract(HttpServletRequest req) {
+            return req.getRemoteAddr();
+        }
+    },
+
+    // Requests are limited per API key header, falling back to the client IP address when the header is missing.
+    API_KEY("apiKey") {
+        @Override
+        public String extract(HttpServletRequest req) {
+            String apiKey = req.getHeader(API_KEY_HEADER);
+            return apiKey == null || apiKey.isEmpty() ? req.getRemoteAddr() : apiKey;
+        }
+    },
+
+    // Requests are limited per authenticated user, falling back to the client IP address for anonymous requests.
+    PRINCIPAL("principal") {
+        @Override
+        public String extract(HttpServletRequest req) {
+            Principal principal = req.getUserPrincipal();
+            return principal == null ? req.getRemoteAddr() : principal.getName();
+        }
+    };
+
+    public static final String API_KEY_HEADER = "X-API-Key";
+
+    // The key of every request under the global strategy.
+    public static final String GLOBAL_KEY = "";
+
+    // The name used to select the strategy in request parameters.
+    private final String paramName;
+
+    KeyExtractor(String paramName) {
+        this.paramName = paramName;
+    }
+
+    /**
+     * Extracts the client key of a request.
+     * @param req The HttpServletRequest object that contains the client's request.
+     * @return The key identifying the client.
+     */
+    public abstract String extract(HttpServletRequest req);
+
+    public String getParamName() {
+        return paramName;
+    }
+
+    /**
+     * Finds the strategy selected by a request parameter.
+     * @param paramName The parameter value, or null to use the default.
+     * @return The matching strategy, {@link #GLOBAL} if the parameter is missing, or null if it is unknown.
+     */
+    public static KeyExtractor fromParam(String paramName) {
+        if (paramName == null || paramName.isEmpty()) {
+            return GLOBAL;
+        }
+
+        for (KeyExtractor extractor : values()) {
+            if (extractor.paramName.equals(paramName)) {
+                return extractor;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,252 @@
+package es.mlrdevs97.servlets;
+
+import es.mlrdevs97.logging.DecisionLog;
+import es.mlrdevs97.metrics.DecisionMetrics;
+import es.mlrdevs97.metrics.ThrottlingMetrics;
+import es.mlrdevs97.throttling.Decision;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import static jakarta.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static jakarta.servlet.http.HttpServletResponse.SC_OK;
+
+/**
+ * Serves an endpoint that lets each request through a {@link KeyedLimiter} configured by two numbers, such as a
+ * capacity and a rate, or a limit and a window. GET requests are decided, and POST requests configure the limiter.
+ * <p>
+ * Subclasses name the two numbers, check what is specific to their limiter, and build it.
+ */
+abstract class KeyedLimiterServlet extends HttpServlet {
+    // The maximum number of client keys tracked at once, unless overridden by the 'maxKeys' init parameter.
+    private static final int DEFAULT_MAX_KEYS = 100_000;
+
+    // Reused by the requests served on each thread, so that deciding allocates nothing.
+    private static final ThreadLocal<Decision> DECISIONS = ThreadLocal.withInitial(Decision::new);
+
+    // The name of the limiter in the metrics and the decision log, and in the messages of the responses.
+    private final String limiterName;
+    private final String displayName;
+
+    // The names of the two numbers configuring the limiter.
+    private final String firstParam;
+    private final String secondParam;
+
+    // The bodies of the responses to GET requests, encoded once.
+    private final JsonResponse notConfigured;
+    private final JsonResponse invalidCost;
+    private final JsonResponse tooManyClients;
+    private final JsonResponse processed;
+    private final JsonResponse throttled;
+
+    // One limiter per client key.
+    private volatile KeyedLimiter apiLimiters;
+
+    // How requests are mapped to client keys.
+    private volatile KeyExtractor keyExtractor = KeyExtractor.GLOBAL;
+
+    // The decision counters and latencies of the current configuration.
+    private volatile DecisionMetrics metrics;
+
+    // How many permits each request costs.
+    private volatile CostExtractor costExtractor = CostExtractor.REQUEST;
+
+    private int maxKeys = DEFAULT_MAX_KEYS;
+
+    /**
+     * @param limiterName The name of the limiter in the metrics and the decision log, such as "token_bucket".
+     * @param displayName The name of the limiter in the messages of the responses, such as "Token Bucket".
+     * @param levelField The field of the GET responses holding the level of the client's limiter.
+     * @param firstParam The name of the first number configuring the limiter, such as "capacity".
+     * @param secondParam The name of the second number configuring the limiter, such as "refillRate".
+     */
+    protected KeyedLimiterServlet(String limiterName, String displayName, String levelField, String firstParam,
+                                  String secondParam) {
+        this.limiterName = limiterName;
+        this.displayName = displayName;
+        this.firstParam = firstParam;
+        this.secondParam = secondParam;
+        this.notConfigured = JsonResponse.constant("{\"status\": \"error\", \"message\": \"" + displayName
+                + " not configured. Please configure it first.\", \"" + levelField + "\": 0}");
+        this.invalidCost = JsonResponse.constant("{\"status\": \"error\", \"message\": \"Invalid request cost. "
+                + "Must be a positive number.\", \"" + levelField + "\": 0}");
+        this.tooManyClients = JsonResponse.constant("{\"status\": \"error\", \"message\": \"Too many clients. "
+                + "Please try again later.\", \"" + levelField + "\": 0}");
+        this.processed = JsonResponse.withNumber("{\"status\": \"success\", \"message\": \"Request processed.\", \""
+                + levelField + "\": ", "}");
+        this.throttled = JsonResponse.withNumber("{\"status\": \"error\", \"message\": \"Too Many Requests. "
+                + "Please try again later.\", \"" + levelField + "\": ", "}");
+        this.metrics = ThrottlingMetrics.DEFAULT.decisions(limiterName, KeyExtractor.GLOBAL.getParamName());
+    }
+
+    @Override
+    public void init() {
+        String maxKeysParam = getInitParameter("maxKeys");
+        if (maxKeysParam != null) {
+            maxKeys = Integer.parseInt(maxKeysParam);
+        }
+    }
+
+    /**
+     * Handles GET requests to the servlet.
+     * This method attempts to let the request through the limiter of the requesting client.
+     * The request costs one permit unless the 'cost' parameter, the cost header or its payload size says otherwise.
+     * If the limiter is not configured, it returns an error.
+     * If the request fits under the limit, it is processed (HTTP 200 OK).
+     * Otherwise, the request is throttled (HTTP 429 Too Many Requests).
+     * Every decision is described with the RateLimit-Limit, RateLimit-Remaining and RateLimit-Reset headers, and throttled
+     * requests also get a Retry-After header.
+     *
+     * @param req The HttpServletRequest object that contains the client's request.
+     * @param res The HttpServletResponse object that contains the servlet's response.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        res.setContentType("application/json");
+
+        KeyedLimiter limiters = apiLimiters;
+        if (limiters == null) {
+            res.setStatus(SC_BAD_REQUEST);
+            notConfigured.write(res);
+            return;
+        }
+
+        String key = keyExtractor.extract(req);
+        long cost = costExtractor.extract(req);
+        if (cost == CostExtractor.INVALID) {
+            res.setStatus(SC_BAD_REQUEST);
+            invalidCost.write(res);
+            return;
+        }
+
+        Decision decision = DECISIONS.get();
+        long start = System.nanoTime();
+        KeyedLimiter.Outcome outcome = limiters.tryAcquire(key, cost, decision);
+        metrics.record(outcome, System.nanoTime() - start);
+        if (outcome == KeyedLimiter.Outcome.KEY_LIMIT_REACHED) {
+            res.setStatus(429);
+            tooManyClients.write(res);
+            DecisionLog.shared().record(limiterName, key, outcome, cost, 0);
+            return;
+        }
+
+        RateLimitHeaders.write(res, decision);
+        long level = decision.getLevel();
+        if (outcome == KeyedLimiter.Outcome.GRANTED) {
+            res.setStatus(SC_OK);
+            processed.write(res, level);
+        } else {
+            res.setStatus(429);
+            throttled.write(res, level);
+        }
+        DecisionLog.shared().record(limiterName, key, outcome, cost, level);
+    }
+
+    /**
+     * Handles POST requests to the servlet.
+     * This method allows the user to configure the limiter with its two numbers, both positive.
+     * Optional parameter: 'keyBy', one of 'global' (default), 'ip', 'apiKey' or 'principal', to limit each client separately.
+     * Optional parameter: 'costBy', either 'request' (default) to charge the stated request cost, or 'bytes' to charge the payload size.
+     *
+     * @param req The HttpServletRequest object that contains the client's request.
+     * @param res The HttpServletResponse object that contains the servlet's response.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        res.setContentType("application/json");
+        PrintWriter writer = res.getWriter();
+
+        String firstValue = req.getParameter(firstParam);
+        String secondValue = req.getParameter(secondParam);
+        String names = "'" + firstParam + "' or '" + secondParam + "'";
+        if (firstValue == null || firstValue.isEmpty() || secondValue == null || secondValue.isEmpty()) {
+            deny(res, writer, "Missing " + names + " parameters.", "Missing parameters.");
+            return;
+        }
+
+        long first;
+        long second;
+        try {
+            first = Long.parseLong(firstValue);
+            second = Long.parseLong(secondValue);
+        } catch (NumberFormatException ex) {
+            deny(res, writer, "Invalid " + names + " format. Must be numbers.", "Invalid number format for parameters.");
+            return;
+        }
+
+        if (first <= 0 || second <= 0) {
+            deny(res, writer, "Invalid " + names + " value. Must be valid positive numbers.", "Invalid parameter values.");
+            return;
+        }
+
+        String invalid = validate(first, second);
+        if (invalid != null) {
+            deny(res, writer, invalid, invalid);
+            return;
+        }
+
+        KeyExtractor extractor = KeyExtractor.fromParam(req.getParameter("keyBy"));
+        if (extractor == null) {
+            deny(res, writer, "Invalid 'keyBy' value. Must be one of 'global', 'ip', 'apiKey' or 'principal'.",
+                    "Invalid key extractor.");
+            return;
+        }
+
+        CostExtractor costStrategy = CostExtractor.fromParam(req.getParameter("costBy"));
+        if (costStrategy == null) {
+            deny(res, writer, "Invalid 'costBy' value. Must be one of 'request' or 'bytes'.", "Invalid cost extractor.");
+            return;
+        }
+
+        synchronized (this) {
+            KeyedLimiter limiters = configure(apiLimiters, extractor == keyExtractor, first, second);
+            this.keyExtractor = extractor;
+            this.costExtractor = costStrategy;
+            this.metrics = ThrottlingMetrics.DEFAULT.decisions(limiterName, extractor.getParamName());
+            // Published last, so that a request reading the new limiters also reads the rest of the configuration.
+            this.apiLimiters = limiters;
+            ThrottlingMetrics.DEFAULT.track(limiterName, limiters, extractor == KeyExtractor.GLOBAL ? KeyExtractor.GLOBAL_KEY : null);
+        }
+        res.setStatus(SC_OK);
+        writer.println("{\"status\": \"success\", \"message\": \"" + displayName + " configured successfully.\", \""
+                + firstParam + "\": " + first + ", \"" + secondParam + "\": " + second + ", \"keyBy\": \""
+                + extractor.getParamName() + "\", \"costBy\": \"" + costStrategy.getParamName() + "\"}");
+        System.out.println("POST Request GRANTED: " + displayName + " configured with " + firstParam + "=" + first
+                + ", " + secondParam + "=" + second + ", KeyBy=" + extractor.getParamName()
+                + ", CostBy=" + costStrategy.getParamName() + ".");
+    }
+
+    /**
+     * @return The maximum number of client keys tracked at once.
+     */
+    protected int maxKeys() {
+        return maxKeys;
+    }
+
+    /**
+     * Checks the numbers configuring the limiter beyond being positive.
+     * @return The message explaining why they are refused, or null if they are valid.
+     */
+    protected abstract String validate(long first, long second);
+
+    /**
+     * Builds the limiters of a new configuration, or changes the current ones in place.
+     * Called with the servlet's lock held, once the configuration is validated.
+     * @param current The limiters in use, or null if none is configured yet.
+     * @param sameClients Whether requests keep being mapped to client keys the same way.
+     * @return The limiters to publish.
+     */
+    protected abstract KeyedLimiter configure(KeyedLimiter current, boolean sameClients, long first, long second);
+
+    private static void deny(HttpServletResponse res, PrintWriter writer, String message, String reason) {
+        res.setStatus(SC_BAD_REQUEST);
+        writer.println("{\"status\": \"error\", \"message\": \"" + message + "\"}");
+        System.out.println("POST Request DENIED: " + reason);
+    }
+}
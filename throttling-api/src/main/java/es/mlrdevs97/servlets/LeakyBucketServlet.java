@@ -1,12 +1,25 @@
 package es.mlrdevs97.servlets;
 
+import es.mlrdevs97.logging.DecisionLog;
+import es.mlrdevs97.metrics.DecisionMetrics;
+import es.mlrdevs97.metrics.ThrottlingMetrics;
+import es.mlrdevs97.throttling.BucketAlgorithm;
+import es.mlrdevs97.throttling.Decision;
+import es.mlrdevs97.throttling.KeyedLimiter;
 import es.mlrdevs97.throttling.LeakyBucket;
+import es.mlrdevs97.throttling.LimiterRegistry;
+import es.mlrdevs97.throttling.PackedBucketTable;
+import es.mlrdevs97.throttling.Reconfigurable;
+import es.mlrdevs97.throttling.TimingWheel;
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static jakarta.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static jakarta.servlet.http.HttpServletResponse.SC_OK;
@@ -15,15 +28,78 @@ import static jakarta.servlet.http.HttpServletResponse.SC_OK;
  * A servlet that demonstrates the Leaky Bucket algorithm for rate limiting API requests.
  */
 public class LeakyBucketServlet extends HttpServlet {
-    // The LeakyBucket instance used for rate limiting.
-    private LeakyBucket apiBucket;
+    // The maximum number of client keys tracked at once, unless overridden by the 'maxKeys' init parameter.
+    private static final int DEFAULT_MAX_KEYS = 100_000;
+
+    // The name of the limiter in the metrics and the decision log.
+    private static final String LIMITER_NAME = "leaky_bucket";
+
+    // Reused by the requests served on each thread, so that deciding allocates nothing.
+    private static final ThreadLocal<Decision> DECISIONS = ThreadLocal.withInitial(Decision::new);
+
+    // The bodies of the responses to GET requests, encoded once.
+    private static final JsonResponse NOT_CONFIGURED = JsonResponse.constant(
+            "{\"status\": \"error\", \"message\": \"Leaky Bucket not configured. Please configure it first.\", \"currentSize\": 0}");
+    private static final JsonResponse INVALID_COST = JsonResponse.constant(
+            "{\"status\": \"error\", \"message\": \"Invalid request cost. Must be a positive number.\", \"currentSize\": 0}");
+    private static final JsonResponse TOO_MANY_CLIENTS = JsonResponse.constant(
+            "{\"status\": \"error\", \"message\": \"Too many clients. Please try again later.\", \"currentSize\": 0}");
+    private static final JsonResponse PROCESSED = JsonResponse.withNumber(
+            "{\"status\": \"success\", \"message\": \"Request processed.\", \"currentSize\": ", "}");
+    private static final JsonResponse THROTTLED = JsonResponse.withNumber(
+            "{\"status\": \"error\", \"message\": \"Too Many Requests. Please try again later.\", \"currentSize\": ", "}");
+
+    // One leaky bucket per client key, used for rate limiting.
+    private volatile KeyedLimiter apiBuckets;
+
+    // How requests are mapped to client keys.
+    private volatile KeyExtractor keyExtractor = KeyExtractor.GLOBAL;
+
+    // The decision counters and latencies of the current configuration.
+    private volatile DecisionMetrics metrics = ThrottlingMetrics.DEFAULT.decisions(LIMITER_NAME, KeyExtractor.GLOBAL.getParamName());
+
+    // How many permits each request costs.
+    private volatile CostExtractor costExtractor = CostExtractor.REQUEST;
+
+    private int maxKeys = DEFAULT_MAX_KEYS;
+
+    // Whether buckets are kept in a PackedBucketTable rather than as one object per client ('store' init parameter).
+    private boolean packedStore;
+
+    // Whether accepted requests are held until they leak out ('mode' parameter), instead of being answered at once.
+    private volatile boolean shaping;
+
+    // Releases the held requests on time, to the millisecond. Its single thread is only started by the first
+    // held request.
+    private final TimingWheel releaser = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(1), "leaky-bucket-releaser");
+
+    @Override
+    public void init() {
+        String maxKeysParam = getInitParameter("maxKeys");
+        if (maxKeysParam != null) {
+            maxKeys = Integer.parseInt(maxKeysParam);
+        }
+        packedStore = "packed".equals(getInitParameter("store"));
+    }
+
+    /**
+     * Stops releasing held requests. Those still held are left to the container, which is shutting them down.
+     */
+    @Override
+    public void destroy() {
+        releaser.close();
+    }
 
     /**
      * Handles GET requests to the servlet.
-     * This method attempts to add a request to the leaky bucket.
+     * This method attempts to add a request to the leaky bucket of the requesting client.
+     * The request costs one slot unless the 'cost' parameter, the cost header or its payload size says otherwise.
      * If the bucket is not configured, it returns an error.
-     * If there is space in the bucket, the request is accepted (HTTP 200 OK).
+     * If there is space in the bucket, the request is accepted (HTTP 200 OK). In shaping mode, the answer is held
+     * asynchronously until the request leaks out, so accepted requests are answered at exactly the leak rate.
      * If the bucket is full, the request is throttled (HTTP 429 Too Many Requests).
+     * Every decision is described with the RateLimit-Limit, RateLimit-Remaining and RateLimit-Reset headers, and throttled
+     * requests also get a Retry-After header.
      *
      * @param req The HttpServletRequest object that contains the client's request.
      * @param res The HttpServletResponse object that contains the servlet's response.
@@ -32,33 +108,91 @@ public class LeakyBucketServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
         res.setContentType("application/json");
-        PrintWriter writer = res.getWriter();
 
-        if (apiBucket == null) {
+        KeyedLimiter buckets = apiBuckets;
+        if (buckets == null) {
             res.setStatus(SC_BAD_REQUEST);
-            writer.println("{\"status\": \"error\", \"message\": \"Leaky Bucket not configured. Please configure it first.\", \"currentSize\": 0}");
-            System.out.println("GET Request DENIED: Leaky Bucket not configured.");
+            NOT_CONFIGURED.write(res);
             return;
         }
 
-        if (apiBucket.tryAdd()) {
-            res.setStatus(SC_OK);
-            long currentSize = apiBucket.getCurrentSize();
-            writer.println("{\"status\": \"success\", \"message\": \"Request processed.\", \"currentSize\": " + currentSize + "}");
-            System.out.println("Request GRANTED. Current size: " + currentSize);
+        String key = keyExtractor.extract(req);
+        long cost = costExtractor.extract(req);
+        if (cost == CostExtractor.INVALID) {
+            res.setStatus(SC_BAD_REQUEST);
+            INVALID_COST.write(res);
+            return;
+        }
+
+        Decision decision = DECISIONS.get();
+        long start = System.nanoTime();
+        KeyedLimiter.Outcome outcome = buckets.tryAcquire(key, cost, decision);
+        metrics.record(outcome, System.nanoTime() - start);
+        if (outcome == KeyedLimiter.Outcome.KEY_LIMIT_REACHED) {
+            res.setStatus(429);
+            TOO_MANY_CLIENTS.write(res);
+            DecisionLog.shared().record(LIMITER_NAME, key, outcome, cost, 0);
+            return;
+        }
+
+        RateLimitHeaders.write(res, decision);
+        if (outcome == KeyedLimiter.Outcome.GRANTED) {
+            long currentSize = decision.getLevel();
+            long delay = decision.getDelayNanos();
+            DecisionLog.shared().record(LIMITER_NAME, key, outcome, cost, currentSize);
+            if (shaping && delay > 0 && req.isAsyncSupported()) {
+                hold(req, res, currentSize, delay);
+                return;
+            }
+
+            respondProcessed(res, currentSize);
             return;
         }
 
         res.setStatus(429);
-        long currentSize = apiBucket.getCurrentSize();
-        writer.println("{\"status\": \"error\", \"message\": \"Too Many Requests. Please try again later.\", \"currentSize\": " + currentSize + "}");
-        System.out.println("Request DENIED (throttled). Current size: " + currentSize);
+        long currentSize = decision.getLevel();
+        THROTTLED.write(res, currentSize);
+        DecisionLog.shared().record(LIMITER_NAME, key, outcome, cost, currentSize);
+    }
+
+    /**
+     * Suspends an accepted request until its turn to leak out, without holding a container thread meanwhile.
+     */
+    private void hold(HttpServletRequest req, HttpServletResponse res, long currentSize, long delay) {
+        AsyncContext async = req.startAsync();
+        async.setTimeout(0); // The wait is bounded by the capacity and the leak rate.
+        try {
+            releaser.schedule(() -> release(async, res, currentSize), delay);
+        } catch (RejectedExecutionException ex) {
+            // The servlet is being destroyed: answer at once rather than never.
+            release(async, res, currentSize);
+        }
+    }
+
+    private static void release(AsyncContext async, HttpServletResponse res, long currentSize) {
+        try {
+            respondProcessed(res, currentSize);
+        } catch (IOException ex) {
+            // The client is gone: there is no one left to answer, and this runs on the releaser's thread.
+        } finally {
+            async.complete();
+        }
+    }
+
+    private static void respondProcessed(HttpServletResponse res, long currentSize) throws IOException {
+        res.setStatus(SC_OK);
+        PROCESSED.write(res, currentSize);
     }
 
     /**
      * Handles POST requests to the servlet.
      * This method allows the user to configure the LeakyBucket's capacity and leak rate.
      * Expected parameters: 'capacity' and 'leakRate'.
+     * Optional parameter: 'keyBy', one of 'global' (default), 'ip', 'apiKey' or 'principal', to limit each client separately.
+     * Optional parameter: 'costBy', either 'request' (default) to charge the stated request cost, or 'bytes' to charge the payload size.
+     * Posting new limits with the same 'keyBy' changes them in place: every client keeps its share of the capacity.
+     * Optional parameter: 'mode', either 'policing' (default) to answer accepted requests at once, or 'shaping' to hold
+     * each of them until it leaks out, so that they are answered at a steady rate.
      *
      * @param req The HttpServletRequest object that contains the client's request.
      * @param res The HttpServletResponse object that contains the servlet's response.
@@ -71,6 +205,9 @@ public class LeakyBucketServlet extends HttpServlet {
 
         String capacityParam = req.getParameter("capacity");
         String leakRateParam = req.getParameter("leakRate");
+        String keyByParam = req.getParameter("keyBy");
+        String costByParam = req.getParameter("costBy");
+        String modeParam = req.getParameter("mode");
 
         if (capacityParam == null || capacityParam.isEmpty() || leakRateParam == null || leakRateParam.isEmpty()) {
             res.setStatus(SC_BAD_REQUEST);
@@ -98,9 +235,57 @@ public class LeakyBucketServlet extends HttpServlet {
             return;
         }
 
-        this.apiBucket = new LeakyBucket(capacity, leakRate);
+        if (leakRate > BucketAlgorithm.MAX_RATE) {
+            res.setStatus(SC_BAD_REQUEST);
+            writer.println("{\"status\": \"error\", \"message\": \"Invalid 'leakRate' value. Must not exceed " + BucketAlgorithm.MAX_RATE + " per second.\"}");
+            System.out.println("POST Request DENIED: Rate too high.");
+            return;
+        }
+
+        KeyExtractor extractor = KeyExtractor.fromParam(keyByParam);
+        if (extractor == null) {
+            res.setStatus(SC_BAD_REQUEST);
+            writer.println("{\"status\": \"error\", \"message\": \"Invalid 'keyBy' value. Must be one of 'global', 'ip', 'apiKey' or 'principal'.\"}");
+            System.out.println("POST Request DENIED: Invalid key extractor.");
+            return;
+        }
+
+        CostExtractor costStrategy = CostExtractor.fromParam(costByParam);
+        if (costStrategy == null) {
+            res.setStatus(SC_BAD_REQUEST);
+            writer.println("{\"status\": \"error\", \"message\": \"Invalid 'costBy' value. Must be one of 'request' or 'bytes'.\"}");
+            System.out.println("POST Request DENIED: Invalid cost extractor.");
+            return;
+        }
+
+        boolean shapingMode = "shaping".equals(modeParam);
+        if (!shapingMode && modeParam != null && !modeParam.isEmpty() && !"policing".equals(modeParam)) {
+            res.setStatus(SC_BAD_REQUEST);
+            writer.println("{\"status\": \"error\", \"message\": \"Invalid 'mode' value. Must be one of 'policing' or 'shaping'.\"}");
+            System.out.println("POST Request DENIED: Invalid mode.");
+            return;
+        }
+
+        synchronized (this) {
+            KeyedLimiter buckets = apiBuckets;
+            if (extractor == keyExtractor && buckets instanceof Reconfigurable) {
+                // Same clients, new limits: every client keeps its share of the capacity instead of starting afresh.
+                ((Reconfigurable) buckets).reconfigure(capacity, leakRate);
+            } else {
+                buckets = packedStore
+                        ? new PackedBucketTable(BucketAlgorithm.LEAKY_BUCKET, capacity, leakRate, maxKeys)
+                        : new LimiterRegistry<>(() -> new LeakyBucket(capacity, leakRate), maxKeys);
+            }
+            this.keyExtractor = extractor;
+            this.costExtractor = costStrategy;
+            this.shaping = shapingMode;
+            this.metrics = ThrottlingMetrics.DEFAULT.decisions(LIMITER_NAME, extractor.getParamName());
+            // Published last, so that a request reading the new buckets also reads the rest of the configuration.
+            this.apiBuckets = buckets;
+            ThrottlingMetrics.DEFAULT.track(LIMITER_NAME, buckets, extractor == KeyExtractor.GLOBAL ? KeyExtractor.GLOBAL_KEY : null);
+        }
         res.setStatus(SC_OK);
-        writer.println("{\"status\": \"success\", \"message\": \"Leaky Bucket configured successfully.\", \"capacity\": " + capacity + ", \"leakRate\": " + leakRate + "}");
-        System.out.println("POST Request GRANTED: Leaky Bucket configured with Capacity=" + capacity + ", LeakRate=" + leakRate + " requests/sec.");
+        writer.println("{\"status\": \"success\", \"message\": \"Leaky Bucket configured successfully.\", \"capacity\": " + capacity + ", \"leakRate\": " + leakRate + ", \"keyBy\": \"" + extractor.getParamName() + "\", \"costBy\": \"" + costStrategy.getParamName() + "\", \"mode\": \"" + (shapingMode ? "shaping" : "policing") + "\"}");
+        System.out.println("POST Request GRANTED: Leaky Bucket configured with Capacity=" + capacity + ", LeakRate=" + leakRate + " requests/sec, KeyBy=" + extractor.getParamName() + ", CostBy=" + costStrategy.getParamName() + ", Mode=" + (shapingMode ? "shaping" : "policing") + ".");
     }
 }
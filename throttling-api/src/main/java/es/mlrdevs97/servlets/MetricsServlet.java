@@ -0,0 +1,87 @@
+package es.mlrdevs97.servlets;
+
+import es.mlrdevs97.metrics.ThrottlingMetrics;
+import es.mlrdevs97.throttling.NanoClock;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static jakarta.servlet.http.HttpServletResponse.SC_OK;
+
+/**
+ * A servlet that exposes the throttling metrics to Prometheus.
+ * <p>
+ * The rendered output is cached for 'cacheMillis' (one second by default), so that several scrapers, or a scraper
+ * retrying, do not render the metrics again: within that time every scrape gets the same encoded bytes.
+ */
+public class MetricsServlet extends HttpServlet {
+    // How long a rendering is served again, unless overridden by the 'cacheMillis' init parameter.
+    private static final long DEFAULT_CACHE_MILLIS = 1_000;
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private ThrottlingMetrics metrics = ThrottlingMetrics.DEFAULT;
+    private NanoClock clock = NanoClock.SYSTEM;
+    private long cacheNanos = DEFAULT_CACHE_MILLIS * 1_000_000L;
+
+    // The last rendering, replaced as a whole so that readers never see a body with another time.
+    private volatile Scrape last;
+
+    @Override
+    public void init() {
+        String cacheMillisParam = getInitParameter("cacheMillis");
+        if (cacheMillisParam != null) {
+            cacheNanos = Long.parseLong(cacheMillisParam) * 1_000_000L;
+        }
+    }
+
+    /**
+     * Handles GET requests to the servlet.
+     * This method answers with every metric in the Prometheus text format, rendered at most once per cache period.
+     *
+     * @param req The HttpServletRequest object that contains the client's request.
+     * @param res The HttpServletResponse object that contains the servlet's response.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse res) throws IOException {
+        byte[] body = scrape();
+        res.setStatus(SC_OK);
+        res.setContentType(CONTENT_TYPE);
+        res.setContentLength(body.length);
+        res.getOutputStream().write(body);
+    }
+
+    /**
+     * @return The cached rendering, or a new one if it is too old. Only one thread renders at a time.
+     */
+    private byte[] scrape() {
+        Scrape scrape = last;
+        if (scrape != null && clock.nanoTime() - scrape.renderedAt < cacheNanos) {
+            return scrape.body;
+        }
+
+        synchronized (this) {
+            scrape = last;
+            long now = clock.nanoTime();
+            if (scrape == null || now - scrape.renderedAt >= cacheNanos) {
+                scrape = new Scrape(metrics.render().getBytes(StandardCharsets.UTF_8), now);
+                last = scrape;
+            }
+            return scrape.body;
+        }
+    }
+
+    private static final class Scrape {
+        private final byte[] body;
+        private final long renderedAt;
+
+        private Scrape(byte[] body, long renderedAt) {
+            this.body = body;
+            this.renderedAt = renderedAt;
+        }
+    }
+}
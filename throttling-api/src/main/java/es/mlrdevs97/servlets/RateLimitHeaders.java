@@ -0,0 +1,42 @@
+package es.mlrdevs97.servlets;
+
+import es.mlrdevs97.throttling.Decision;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Writes the standard rate limit headers, so that well-behaved clients can pace themselves and back off
+ * instead of retrying throttled requests straight away.
+ */
+public final class RateLimitHeaders {
+    public static final String LIMIT = "RateLimit-Limit";
+    public static final String REMAINING = "RateLimit-Remaining";
+    public static final String RESET = "RateLimit-Reset";
+    public static final String RETRY_AFTER = "Retry-After";
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private RateLimitHeaders() {
+    }
+
+    /**
+     * Sets the headers describing a decision.
+     * 'Retry-After' is only sent on throttled requests that can succeed later, i.e. that do not cost more than the limit.
+     * @param res The HttpServletResponse object that contains the servlet's response.
+     * @param decision The decision taken on the request.
+     */
+    public static void write(HttpServletResponse res, Decision decision) {
+        res.setHeader(LIMIT, Long.toString(decision.getLimit()));
+        res.setHeader(REMAINING, Long.toString(decision.getRemaining()));
+        res.setHeader(RESET, Long.toString(toSeconds(decision.getResetNanos())));
+        if (!decision.isGranted() && decision.getRetryAfterNanos() != Decision.NEVER) {
+            res.setHeader(RETRY_AFTER, Long.toString(toSeconds(decision.getRetryAfterNanos())));
+        }
+    }
+
+    /**
+     * Rounds a wait up to whole seconds, the unit of the headers, so that clients never come back too early.
+     */
+    static long toSeconds(long nanos) {
+        return nanos / NANOS_PER_SECOND + (nanos % NANOS_PER_SECOND == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,30 @@
+package es.mlrdevs97.servlets;
+
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.LimiterRegistry;
+import es.mlrdevs97.throttling.SlidingWindowCounter;
+
+/**
+ * Lets each request through a sliding window counter: a GET counts the request in the counter of the requesting
+ * client, and a POST configures the counters with the parameters 'limit', the most permits in any window, and
+ * 'windowMillis', its length. New limits start every client afresh.
+ */
+public class SlidingWindowCounterServlet extends KeyedLimiterServlet {
+
+    public SlidingWindowCounterServlet() {
+        super("sliding_window_counter", "Sliding Window Counter", "currentCount", "limit", "windowMillis");
+    }
+
+    @Override
+    protected String validate(long limit, long windowMillis) {
+        if (windowMillis > SlidingWindowCounter.MAX_WINDOW_MILLIS) {
+            return "Invalid 'windowMillis' value. Must not exceed " + SlidingWindowCounter.MAX_WINDOW_MILLIS + ".";
+        }
+        return null;
+    }
+
+    @Override
+    protected KeyedLimiter configure(KeyedLimiter current, boolean sameClients, long limit, long windowMillis) {
+        return new LimiterRegistry<>(() -> new SlidingWindowCounter(limit, windowMillis), maxKeys());
+    }
+}
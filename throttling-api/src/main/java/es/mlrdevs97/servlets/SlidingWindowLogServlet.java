@@ -0,0 +1,33 @@
+package es.mlrdevs97.servlets;
+
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.LimiterRegistry;
+import es.mlrdevs97.throttling.SlidingWindowLog;
+
+/**
+ * Lets each request through a sliding window log: a GET counts the request in the log of the requesting client, and
+ * a POST configures the logs with the parameters 'limit', the most permits in any window, and 'windowMillis', its
+ * length. New limits start every client afresh.
+ */
+public class SlidingWindowLogServlet extends KeyedLimiterServlet {
+
+    public SlidingWindowLogServlet() {
+        super("sliding_window_log", "Sliding Window Log", "currentCount", "limit", "windowMillis");
+    }
+
+    @Override
+    protected String validate(long limit, long windowMillis) {
+        if (limit > SlidingWindowLog.MAX_LIMIT) {
+            return "Invalid 'limit' value. Must not exceed " + SlidingWindowLog.MAX_LIMIT + ".";
+        }
+        if (windowMillis > SlidingWindowLog.MAX_WINDOW_MILLIS) {
+            return "Invalid 'windowMillis' value. Must not exceed " + SlidingWindowLog.MAX_WINDOW_MILLIS + ".";
+        }
+        return null;
+    }
+
+    @Override
+    protected KeyedLimiter configure(KeyedLimiter current, boolean sameClients, long limit, long windowMillis) {
+        return new LimiterRegistry<>(() -> new SlidingWindowLog(limit, windowMillis), maxKeys());
+    }
+}
@@ -0,0 +1,188 @@
+package es.mlrdevs97.throttling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of requests in flight to a downstream, and finds that limit on its own from the latency
+ * the downstream responds with, instead of enforcing a rate set by hand.
+ * <p>
+ * The limit follows additive increase, multiplicative decrease (AIMD): each time {@link #adjust()} is called,
+ * the tail latency of the requests completed since the previous call is compared with the target. Above it,
+ * the downstream is taken as saturated and the limit is cut by a tenth; within it, and if at least half of the
+ * limit was used, the limit grows by its square root, so that it climbs back quickly from a cut without
+ * overshooting much. A period in which the limit was reached but no request completed counts as too slow,
+ * so a downstream that stops answering is backed off from too.
+ * <p>
+ * The request path only takes and gives back a slot, with a compare-and-set on the in-flight count, and counts
+ * the latency in a striped histogram; the limit is only computed by {@link #adjust()}, meant to be called
+ * periodically off the request path.
+ */
+public class AdaptiveConcurrencyLimiter {
+    // The percentile of the latencies compared with the target.
+    static final double PERCENTILE = 0.99;
+
+    // The factor the limit is multiplied by when the tail latency is above the target.
+    static final double BACKOFF_RATIO = 0.9;
+
+    // The histogram counts latencies in 4 buckets per power of two, up to 2^48 ns (over three days).
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int BUCKETS = 48 << SUB_BUCKET_BITS;
+
+    // The lowest and highest the limit can go.
+    private final long MIN_LIMIT;
+    private final long MAX_LIMIT;
+
+    // The tail latency the limit aims to keep the requests under, in nanoseconds.
+    private final long TARGET_LATENCY;
+
+    private volatile long limit;
+    private final AtomicLong inFlight = new AtomicLong();
+
+    // The requests in flight at the busiest moment since the last adjustment.
+    private final LongAccumulator peakInFlight = new LongAccumulator(Math::max, 0);
+
+    // The latencies of the requests completed since the last adjustment.
+    private final LongAdder[] latencies = new LongAdder[BUCKETS];
+
+    /**
+     * @param initialLimit The limit before the first adjustment.
+     * @param minLimit The lowest the limit can go. At least one, so that the latency keeps being sampled.
+     * @param maxLimit The highest the limit can go.
+     * @param targetLatencyNanos The tail latency to keep the requests under, in nanoseconds.
+     */
+    public AdaptiveConcurrencyLimiter(long initialLimit, long minLimit, long maxLimit, long targetLatencyNanos) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("The limits must be positive, and the minimum must not exceed the maximum.");
+        }
+        if (targetLatencyNanos <= 0) {
+            throw new IllegalArgumentException("The target latency must be positive.");
+        }
+        this.MIN_LIMIT = minLimit;
+        this.MAX_LIMIT = maxLimit;
+        this.TARGET_LATENCY = targetLatencyNanos;
+        this.limit = Math.max(minLimit, Math.min(initialLimit, maxLimit));
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Attempts to take a slot for a request. A granted request must give it back with {@link #release(long)}.
+     * @param decision Filled with the details of the decision, or null if only the outcome matters. Its level is
+     * the number of requests in flight. A throttled request is told to retry after the target latency, by which
+     * a slot is expected to be free.
+     * @return Whether the request can go through.
+     */
+    public boolean tryAcquire(Decision decision) {
+        long current = limit;
+        long taken;
+        do {
+            taken = inFlight.get();
+            if (taken >= current) {
+                if (decision != null) {
+                    decision.set(false, taken, 0, current, TARGET_LATENCY, TARGET_LATENCY);
+                }
+                peakInFlight.accumulate(taken);
+                return false;
+            }
+        } while (!inFlight.compareAndSet(taken, taken + 1));
+
+        peakInFlight.accumulate(taken + 1);
+        if (decision != null) {
+            decision.set(true, taken + 1, current - taken - 1, current, 0, 0);
+        }
+        return true;
+    }
+
+    /**
+     * Gives back the slot of a completed request, and counts its latency towards the next adjustment.
+     * @param latencyNanos The time the request took downstream, in nanoseconds.
+     */
+    public void release(long latencyNanos) {
+        inFlight.decrementAndGet();
+        latencies[bucketOf(latencyNanos)].increment();
+    }
+
+    /**
+     * Computes the limit from the requests completed since the previous call. Meant to be called periodically,
+     * often enough for a few requests to complete in between, from a single background thread.
+     * A request completing while the latencies are read may be counted in the next period instead.
+     * @return The new limit.
+     */
+    public synchronized long adjust() {
+        long[] counts = new long[BUCKETS];
+        long completed = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latencies[i].sumThenReset();
+            completed += counts[i];
+        }
+        long current = limit;
+        long peak = peakInFlight.getThenReset();
+        peakInFlight.accumulate(inFlight.get());
+
+        long next = current;
+        if (completed == 0 ? peak >= current : tailLatency(counts, completed) > TARGET_LATENCY) {
+            next = Math.max(MIN_LIMIT, Math.min(current - 1, (long) (current * BACKOFF_RATIO)));
+        } else if (completed > 0 && peak * 2 >= current) {
+            next = Math.min(MAX_LIMIT, current + Math.max(1, (long) Math.sqrt(current)));
+        }
+        limit = next;
+        return next;
+    }
+
+    /**
+     * @return The number of requests allowed in flight at once.
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return The number of requests currently in flight.
+     */
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Finds the latency the percentile falls in, rounded up to the upper bound of its bucket, so that the tail is
+     * overestimated by a quarter at most rather than underestimated.
+     */
+    private static long tailLatency(long[] counts, long completed) {
+        long rank = (long) Math.ceil(completed * PERCENTILE);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * @return The bucket of a latency: its power of two, and the next two bits below its highest one.
+     */
+    static int bucketOf(long nanos) {
+        if (nanos < 1 << SUB_BUCKET_BITS) {
+            return (int) Math.max(0, nanos);
+        }
+        int log = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (log - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return Math.min(BUCKETS - 1, (log << SUB_BUCKET_BITS) + sub);
+    }
+
+    /**
+     * @return The highest latency counted in a bucket.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < 1 << SUB_BUCKET_BITS) {
+            return bucket;
+        }
+        int log = bucket >>> SUB_BUCKET_BITS;
+        long sub = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+        return (((1L << SUB_BUCKET_BITS) + sub + 1) << (log - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,342 @@
+package es.mlrdevs97.throttling;
+
+/**
+ * The state transitions of the bucket algorithms, expressed on a single {@code long} state word.
+ * <p>
+ * Time is measured in ticks, a tick being the time it takes to refill one token (or to leak one request).
+ * Working on plain words lets the same logic back a standalone bucket object or a slot in a packed table.
+ */
+public enum BucketAlgorithm {
+    /**
+     * The state is the tick at which the bucket holds no tokens.
+     * The available tokens are the ticks elapsed since then, capped at the capacity.
+     */
+    TOKEN_BUCKET {
+        @Override
+        public long initialState(long now, long capacity) {
+            return now - capacity; // Start with a full bucket.
+        }
+
+        @Override
+        public long acquire(long state, long now, long capacity, long permits) {
+            long from = Math.max(state, now - capacity);
+            return now - from < permits ? DENIED : from + permits;
+        }
+
+        @Override
+        public long getLevel(long state, long now, long capacity) {
+            return Math.max(0, Math.min(capacity, now - state));
+        }
+
+        @Override
+        public boolean isIdle(long state, long now, long capacity) {
+            return now - state >= capacity;
+        }
+
+        @Override
+        public long getRemaining(long state, long now, long capacity) {
+            return getLevel(state, now, capacity);
+        }
+
+        @Override
+        public long settle(long state, long now, long capacity) {
+            return Math.max(state, now - capacity);
+        }
+
+        @Override
+        public long stateAt(long now, long remaining, long capacity) {
+            return now - remaining;
+        }
+
+        @Override
+        public long ticksUntil(long state, long now, long capacity, long permits) {
+            return permits > capacity ? Long.MAX_VALUE : Math.max(0, state + permits - now);
+        }
+
+        @Override
+        public long delayTicks(long state, long now, long permits) {
+            return 0; // Tokens are spent right away.
+        }
+    },
+
+    /**
+     * The state is the tick at which every queued request will have leaked out.
+     * The current size is the number of ticks left until then.
+     */
+    LEAKY_BUCKET {
+        @Override
+        public long initialState(long now, long capacity) {
+            return now; // Start with an empty bucket.
+        }
+
+        @Override
+        public long acquire(long state, long now, long capacity, long permits) {
+            long from = Math.max(state, now);
+            return capacity - (from - now) < permits ? DENIED : from + permits;
+        }
+
+        @Override
+        public long getLevel(long state, long now, long capacity) {
+            return Math.max(0, Math.min(capacity, state - now));
+        }
+
+        @Override
+        public boolean isIdle(long state, long now, long capacity) {
+            return state <= now;
+        }
+
+        @Override
+        public long getRemaining(long state, long now, long capacity) {
+            return capacity - getLevel(state, now, capacity);
+        }
+
+        @Override
+        public long settle(long state, long now, long capacity) {
+            return Math.max(state, now);
+        }
+
+        @Override
+        public long stateAt(long now, long remaining, long capacity) {
+            return now + capacity - remaining;
+        }
+
+        @Override
+        public long ticksUntil(long state, long now, long capacity, long permits) {
+            return permits > capacity ? Long.MAX_VALUE : Math.max(0, state - now - (capacity - permits));
+        }
+
+        @Override
+        public long delayTicks(long state, long now, long permits) {
+            return Math.max(0, state - permits - now); // The request starts leaking once those queued before it are out.
+        }
+    },
+
+    /**
+     * The Generic Cell Rate Algorithm: the state is the theoretical arrival time, the tick at which the bucket
+     * is full again. A request is let through if it does not push that time more than the capacity ahead.
+     * It takes the same decisions as {@link #TOKEN_BUCKET}, whose state is the same time shifted by the capacity.
+     */
+    GCRA {
+        @Override
+        public long initialState(long now, long capacity) {
+            return now; // Start with a full bucket.
+        }
+
+        @Override
+        public long acquire(long state, long now, long capacity, long permits) {
+            long next = Math.max(state, now) + permits;
+            return next - now > capacity ? DENIED : next;
+        }
+
+        @Override
+        public long getLevel(long state, long now, long capacity) {
+            return Math.max(0, capacity - Math.max(0, state - now));
+        }
+
+        @Override
+        public boolean isIdle(long state, long now, long capacity) {
+            return state <= now;
+        }
+
+        @Override
+        public long getRemaining(long state, long now, long capacity) {
+            return getLevel(state, now, capacity);
+        }
+
+        @Override
+        public long settle(long state, long now, long capacity) {
+            return Math.max(state, now);
+        }
+
+        @Override
+        public long stateAt(long now, long remaining, long capacity) {
+            return now + capacity - remaining;
+        }
+
+        @Override
+        public long ticksUntil(long state, long now, long capacity, long permits) {
+            return permits > capacity ? Long.MAX_VALUE : Math.max(0, state + permits - capacity - now);
+        }
+
+        @Override
+        public long delayTicks(long state, long now, long permits) {
+            return 0; // Like tokens, the credit is spent right away.
+        }
+    };
+
+    /**
+     * Returned by {@link #acquire(long, long, long, long)} when the request must be throttled.
+     * No reachable state has this value.
+     */
+    public static final long DENIED = Long.MIN_VALUE;
+
+    /**
+     * The highest supported rate, in ticks per second: one tick per nanosecond.
+     */
+    public static final long MAX_RATE = 1_000_000_000L;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * @param now The current tick.
+     * @param capacity The capacity of the bucket.
+     * @return The state of a bucket created at the given tick.
+     */
+    public abstract long initialState(long now, long capacity);
+
+    /**
+     * Computes the state after letting a request through. All the permits are taken at once, or none is.
+     * @param state The current state.
+     * @param now The current tick.
+     * @param capacity The capacity of the bucket.
+     * @param permits The number of tokens (or queue slots) the request takes.
+     * @return The new state, or {@link #DENIED} if the request must be throttled.
+     */
+    public abstract long acquire(long state, long now, long capacity, long permits);
+
+    /**
+     * @return The tokens left in a token bucket, or the requests queued in a leaky bucket.
+     */
+    public abstract long getLevel(long state, long now, long capacity);
+
+    /**
+     * @return true if the state is equivalent to the initial state, so the bucket can be dropped and recreated.
+     */
+    public abstract boolean isIdle(long state, long now, long capacity);
+
+    /**
+     * @return The permits that can be taken right now: the tokens left in a token bucket,
+     * or the free queue slots in a leaky bucket.
+     */
+    public abstract long getRemaining(long state, long now, long capacity);
+
+    /**
+     * Drops the time a bucket spent idle from its state, without changing what it allows from the current tick on:
+     * the tokens a token bucket could not hold, or the time an empty leaky bucket waited.
+     * @return The state from which the next request would be let through.
+     */
+    public abstract long settle(long state, long now, long capacity);
+
+    /**
+     * The inverse of {@link #getRemaining(long, long, long)}.
+     * @param now The current tick.
+     * @param remaining The permits that can be taken at that tick, up to the capacity.
+     * @param capacity The capacity of the bucket.
+     * @return The settled state of a bucket with those permits left.
+     */
+    public abstract long stateAt(long now, long remaining, long capacity);
+
+    /**
+     * Calculates how long a request has to wait before it can be let through.
+     * @param state The current state.
+     * @param now The current tick.
+     * @param capacity The capacity of the bucket.
+     * @param permits The number of tokens (or queue slots) the request takes.
+     * @return The number of ticks to wait, 0 if the request can be let through now,
+     * or {@link Long#MAX_VALUE} if it costs more than the capacity.
+     */
+    public abstract long ticksUntil(long state, long now, long capacity, long permits);
+
+    /**
+     * Calculates how long a request that was let through must wait for its turn, if requests are served as they leak.
+     * @param state The state right after letting the request through.
+     * @param now The current tick.
+     * @param permits The number of tokens (or queue slots) the request took.
+     * @return The number of ticks to wait before serving the request.
+     */
+    public abstract long delayTicks(long state, long now, long permits);
+
+    /**
+     * Describes a decision taken on a bucket.
+     * The wait reported is the one of the next single permit after a granted request,
+     * and the one of the same request after a throttled one.
+     * @param decision The holder to fill.
+     * @param granted Whether the request was let through.
+     * @param state The state after the decision: the new state if the request was let through, the one read otherwise.
+     * @param now The tick at which the decision was taken.
+     * @param timeElapsed The time at which the decision was taken, in nanoseconds since ticks are counted.
+     * @param capacity The capacity of the bucket.
+     * @param rate The number of ticks per second.
+     * @param permits The number of tokens (or queue slots) the request took or asked for.
+     */
+    public void describe(Decision decision, boolean granted, long state, long now, long timeElapsed,
+                         long capacity, long rate, long permits) {
+        decision.set(granted,
+                getLevel(state, now, capacity),
+                getRemaining(state, now, capacity),
+                capacity,
+                nanosUntil(now, ticksUntil(state, now, capacity, granted ? 1 : permits), timeElapsed, rate),
+                nanosUntil(now, ticksUntil(state, now, capacity, capacity), timeElapsed, rate),
+                granted ? nanosUntil(now, delayTicks(state, now, permits), timeElapsed, rate) : 0);
+    }
+
+    /**
+     * Calculates the number of whole ticks in a period of time.
+     * <p>
+     * Ticks are always counted from a fixed origin rather than from the previous call, so the fraction of a tick
+     * left over by one call is not lost but completes a tick on a later one, and the rate is enforced exactly.
+     * The time is split into seconds and nanoseconds so that the products with the rate cannot overflow for any
+     * rate up to {@link #MAX_RATE}.
+     * @param timeElapsed The period of time in nanoseconds.
+     * @param rate The number of ticks per second.
+     * @return The number of ticks.
+     */
+    public static long ticks(long timeElapsed, long rate) {
+        return (timeElapsed / NANOS_PER_SECOND) * rate + (timeElapsed % NANOS_PER_SECOND) * rate / NANOS_PER_SECOND;
+    }
+
+    /**
+     * Calculates the last tick reached within a timeout, for callers willing to wait.
+     * @param timeElapsed The current time, in nanoseconds since ticks are counted.
+     * @param timeout The longest time to wait, in nanoseconds.
+     * @param rate The number of ticks per second.
+     * @return The tick, or {@link Long#MAX_VALUE} if it does not fit in a long.
+     */
+    public static long deadlineTick(long timeElapsed, long timeout, long rate) {
+        long deadline = timeElapsed + Math.min(Math.max(0, timeout), Long.MAX_VALUE - timeElapsed);
+        if (deadline / NANOS_PER_SECOND >= Long.MAX_VALUE / rate - 1) {
+            return Long.MAX_VALUE;
+        }
+        return ticks(deadline, rate);
+    }
+
+    /**
+     * Calculates the time it takes for a number of ticks to elapse, the inverse of {@link #ticks(long, long)}.
+     * @param ticks The number of ticks.
+     * @param rate The number of ticks per second.
+     * @return The shortest period of time in nanoseconds containing the ticks, or {@link Long#MAX_VALUE} if it
+     * does not fit in a long.
+     */
+    public static long nanos(long ticks, long rate) {
+        long seconds = ticks / rate;
+        if (seconds >= Long.MAX_VALUE / NANOS_PER_SECOND) {
+            return Long.MAX_VALUE;
+        }
+        return seconds * NANOS_PER_SECOND + ((ticks % rate) * NANOS_PER_SECOND + rate - 1) / rate;
+    }
+
+    /**
+     * Converts a wait in ticks into the nanoseconds left from the current time.
+     */
+    private static long nanosUntil(long now, long waitTicks, long timeElapsed, long rate) {
+        if (waitTicks == 0) {
+            return 0;
+        }
+        if (waitTicks > Long.MAX_VALUE - now) {
+            return Decision.NEVER;
+        }
+        long target = nanos(now + waitTicks, rate);
+        return target == Long.MAX_VALUE ? Decision.NEVER : Math.max(0, target - timeElapsed);
+    }
+
+    /**
+     * Checks that a bucket rate is within the supported range.
+     * @param rate The number of ticks per second.
+     * @throws IllegalArgumentException if the rate is not positive or exceeds {@link #MAX_RATE}.
+     */
+    static void checkRate(long rate) {
+        if (rate <= 0 || rate > MAX_RATE) {
+            throw new IllegalArgumentException("The rate must be between 1 and " + MAX_RATE + " per second.");
+        }
+    }
+}
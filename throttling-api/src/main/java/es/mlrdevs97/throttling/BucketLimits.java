@@ -0,0 +1,131 @@
+package es.mlrdevs97.throttling;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * The capacity and rate of a bucket, published as a whole so that a decision never sees the capacity of one
+ * configuration with the rate of another.
+ * <p>
+ * A change of limits does not rewrite the state of a bucket. The new limits count their ticks with an offset
+ * instead, chosen so that the state, read at the new rate and capacity, leaves the same share of the capacity free.
+ * As every permit is one tick under any limits, a request decided under the previous limits while they are
+ * replaced is still charged correctly.
+ */
+final class BucketLimits {
+    // The maximum number of permits the bucket can hold.
+    final long capacity;
+
+    // The number of ticks per second.
+    final long rate;
+
+    // Added to the ticks elapsed since the bucket was created, to get the tick its state is compared with.
+    final long offset;
+
+    BucketLimits(long capacity, long rate) {
+        this(capacity, rate, 0);
+    }
+
+    private BucketLimits(long capacity, long rate, long offset) {
+        this.capacity = capacity;
+        this.rate = rate;
+        this.offset = offset;
+    }
+
+    /**
+     * @param timeElapsed The time elapsed since the bucket was created, in nanoseconds.
+     * @return The current tick, as compared with the state.
+     */
+    long now(long timeElapsed) {
+        return BucketAlgorithm.ticks(timeElapsed, rate) + offset;
+    }
+
+    /**
+     * Describes a decision taken under these limits, on the ticks counted without the offset.
+     */
+    void describe(BucketAlgorithm algorithm, Decision decision, boolean granted, long state, long now,
+                  long timeElapsed, long permits) {
+        algorithm.describe(decision, granted, state - offset, now - offset, timeElapsed, capacity, rate, permits);
+    }
+
+    /**
+     * Calculates the time at which a tick is reached, for callers parking until then.
+     * @return The time in nanoseconds since the bucket was created, capped at a century's worth so that adding
+     * it to a clock reading cannot overflow.
+     */
+    long nanosAt(long tick) {
+        return Math.min(BucketAlgorithm.nanos(tick - offset, rate), Long.MAX_VALUE / 2);
+    }
+
+    /**
+     * Calculates the last tick reached within a timeout, as {@link BucketAlgorithm#deadlineTick(long, long, long)}.
+     */
+    long deadlineTick(long timeElapsed, long timeout) {
+        long deadline = BucketAlgorithm.deadlineTick(timeElapsed, timeout, rate);
+        return deadline == Long.MAX_VALUE ? deadline : deadline + offset;
+    }
+
+    /**
+     * Changes the limits of a bucket, for {@link Reconfigurable#reconfigure(long, long)}.
+     * The state of the bucket is settled first, so that a request decided under the previous limits meanwhile
+     * cannot charge the new ones for the time the bucket spent idle.
+     * @param state The handle of the state word of the bucket.
+     * @param limits The handle of the limits of the bucket.
+     * @param bucket The bucket.
+     * @param clock The source of time of the bucket, and the reading from which it counts its ticks.
+     */
+    static void reconfigure(BucketAlgorithm algorithm, VarHandle state, VarHandle limits, Object bucket,
+                            NanoClock clock, long startTime, long capacity, long rate) {
+        check(capacity, rate);
+        while (true) {
+            BucketLimits current = (BucketLimits) limits.getVolatile(bucket);
+            // The clock is read after the state: a request that decided it read the clock before, so the state is
+            // never counted at an earlier tick than its own, which would leave its debt behind.
+            long read = (long) state.getVolatile(bucket);
+            long timeElapsed = Math.max(0, clock.nanoTime() - startTime);
+            long now = current.now(timeElapsed);
+            long settled = algorithm.settle(read, now, current.capacity);
+            if (settled != read && !state.compareAndSet(bucket, read, settled)) {
+                continue;
+            }
+            if (limits.compareAndSet(bucket, current, current.carryOver(algorithm, settled, timeElapsed, capacity, rate))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Computes the limits replacing these ones for a bucket in the given state.
+     * @param state The state of the bucket, settled at the current tick.
+     * @param timeElapsed The time elapsed since the bucket was created, in nanoseconds.
+     * @return The new limits, under which the bucket keeps the same share of its capacity free.
+     */
+    BucketLimits carryOver(BucketAlgorithm algorithm, long state, long timeElapsed, long newCapacity, long newRate) {
+        long remaining = scale(algorithm.getRemaining(state, now(timeElapsed), capacity), capacity, newCapacity);
+        // States only matter relative to the tick: the one at which the state leaves 'remaining' free is the state
+        // plus the distance from the state with 'remaining' free at tick 0.
+        long tick = state - algorithm.stateAt(0, remaining, newCapacity);
+        return new BucketLimits(newCapacity, newRate, tick - BucketAlgorithm.ticks(timeElapsed, newRate));
+    }
+
+    /**
+     * Scales a number of permits from one capacity to another, rounding down.
+     */
+    static long scale(long permits, long from, long to) {
+        if (permits == 0 || from == to) {
+            return Math.min(permits, to);
+        }
+        long scaled = permits <= Long.MAX_VALUE / to ? permits * to / from : (long) ((double) permits / from * to);
+        return Math.min(scaled, to);
+    }
+
+    /**
+     * Checks the limits of a bucket.
+     * @throws IllegalArgumentException if the capacity is not positive, or the rate is out of range.
+     */
+    static void check(long capacity, long rate) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive.");
+        }
+        BucketAlgorithm.checkRate(rate);
+    }
+}
@@ -0,0 +1,86 @@
+package es.mlrdevs97.throttling;
+
+/**
+ * The details of a rate limiting decision: whether the request was let through, and the state of the limit
+ * right after it, so that clients can be told when to come back.
+ * <p>
+ * Every value is computed from the same state read that took the decision, so they always agree with it.
+ * A decision is a mutable holder meant to be reused: the caller keeps one (e.g. per thread) and passes it to
+ * each call, which overwrites it, so that deciding allocates nothing.
+ */
+public final class Decision {
+    /**
+     * The wait reported when the request can never be granted, because it costs more than the capacity.
+     */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    private boolean granted;
+    private long level;
+    private long remaining;
+    private long limit;
+    private long retryAfterNanos;
+    private long resetNanos;
+    private long delayNanos;
+
+    /**
+     * Overwrites the decision.
+     * @param granted Whether the request was let through.
+     * @param level The fill level after the decision, as defined by {@link RateLimiter#getLevel()}.
+     * @param remaining The permits that could still be taken right after the decision.
+     * @param limit The most permits that can ever be available at once.
+     * @param retryAfterNanos The time until the next permit is available if the request was let through,
+     * or until the same request could be let through if it was throttled, or {@link #NEVER}.
+     * @param resetNanos The time until the limiter is back to its initial state.
+     */
+    public void set(boolean granted, long level, long remaining, long limit, long retryAfterNanos, long resetNanos) {
+        set(granted, level, remaining, limit, retryAfterNanos, resetNanos, 0);
+    }
+
+    /**
+     * Overwrites the decision of a limiter that queues the requests it lets through.
+     * @param delayNanos The time the request must wait for its turn before being served.
+     * @see #set(boolean, long, long, long, long, long)
+     */
+    public void set(boolean granted, long level, long remaining, long limit, long retryAfterNanos, long resetNanos,
+                    long delayNanos) {
+        this.granted = granted;
+        this.level = level;
+        this.remaining = remaining;
+        this.limit = limit;
+        this.retryAfterNanos = retryAfterNanos;
+        this.resetNanos = resetNanos;
+        this.delayNanos = delayNanos;
+    }
+
+    public boolean isGranted() {
+        return granted;
+    }
+
+    public long getLevel() {
+        return level;
+    }
+
+    public long getRemaining() {
+        return remaining;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getRetryAfterNanos() {
+        return retryAfterNanos;
+    }
+
+    public long getResetNanos() {
+        return resetNanos;
+    }
+
+    /**
+     * @return The time the request must wait before being served to keep the output rate steady,
+     * or 0 if it can be served right away (always for limiters that do not shape traffic).
+     */
+    public long getDelayNanos() {
+        return delayNanos;
+    }
+}
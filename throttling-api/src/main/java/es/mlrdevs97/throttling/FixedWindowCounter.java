@@ -0,0 +1,348 @@
+package es.mlrdevs97.throttling;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Implements the Fixed Window Counter algorithm: at most {@code limit} permits are granted in each fixed window,
+ * for coarse limits at request rates where even a single compare-and-set word is a bottleneck.
+ * <p>
+ * The count is striped across cells, each on its own cache line, in the style of {@link java.util.concurrent.atomic.LongAdder}.
+ * Instead of counting up, each cell holds an allowance leased in chunks from the budget of the window, so a thread
+ * grants a permit by a compare-and-set on the cell of its stripe alone, which no other core writes to. Chunks shrink as
+ * the budget runs low, and once it is gone the allowances left in the other cells are summed and taken over, so
+ * the stripes are only summed near the limit. The limit is never exceeded; racing for the very last permits, a request
+ * may be throttled although a cell still holds enough of them.
+ * <p>
+ * Decisions are described from the cell of the request and the budget alone, so that describing one reads no other
+ * cache line: the permits left in the other cells count as granted until they are taken over, and the level and
+ * remaining permits they report are conservative by at most the allowances of the other cells.
+ * <p>
+ * Every word is stamped with the low bits of the window it belongs to, so a window rolls over without resetting
+ * anything: a word stamped with an earlier window is simply stale. A word left untouched for exactly a multiple of
+ * 2^24 windows would look current again, which can only hold back the budget of that window, never add to it.
+ */
+public class FixedWindowCounter implements RateLimiter {
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    // The longest window supported, so that window boundaries never overflow.
+    public static final long MAX_WINDOW_MILLIS = Long.MAX_VALUE / 4 / NANOS_PER_MILLI;
+
+    // Each word holds a window stamp in its high bits and a number of permits in its low bits.
+    private static final int COUNT_BITS = 40;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long STAMP_MASK = (1L << (Long.SIZE - COUNT_BITS)) - 1;
+
+    // The highest limit supported, as the allowances are packed with their stamp.
+    public static final long MAX_LIMIT = COUNT_MASK;
+
+    // Longs between two words of the array, so that each of them has a cache line of its own, even with prefetching.
+    private static final int PADDING = 16;
+
+    // The stripes used unless told otherwise: one per core, up to this many.
+    private static final int MAX_DEFAULT_STRIPES = 64;
+
+    // Results of leasing other than a number of permits.
+    private static final long DENIED = -1;
+    private static final long STALE = -2;
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // Spreads the threads across the cells: each thread draws the next probe once, so probes are dense and stable.
+    private static final AtomicInteger NEXT_PROBE = new AtomicInteger();
+    private static final ThreadLocal<Integer> PROBES = ThreadLocal.withInitial(NEXT_PROBE::getAndIncrement);
+
+    // The maximum number of permits granted in each window.
+    private final long LIMIT;
+
+    // The length of the window, in nanoseconds.
+    private final long WINDOW;
+
+    // The source of time, and its reading from which windows are counted.
+    private final NanoClock clock;
+    private final long startTime;
+
+    // The number of cells, a power of two.
+    private final int stripes;
+
+    // The budget of the window not leased yet, then the allowance of each stripe, each in a padded slot.
+    private final long[] words;
+
+    public FixedWindowCounter(long limit, long windowMillis) {
+        this(limit, windowMillis, NanoClock.SYSTEM);
+    }
+
+    public FixedWindowCounter(long limit, long windowMillis, NanoClock clock) {
+        this(limit, windowMillis, defaultStripes(), clock);
+    }
+
+    /**
+     * @param limit The maximum number of permits granted in each window, up to {@link #MAX_LIMIT}.
+     * @param windowMillis The length of the window, in milliseconds.
+     * @param stripes The number of cells the count is striped across, rounded up to a power of two.
+     * @param clock The source of time of the counter.
+     */
+    public FixedWindowCounter(long limit, long windowMillis, int stripes, NanoClock clock) {
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("The limit must be between 1 and " + MAX_LIMIT + ".");
+        }
+        if (windowMillis <= 0 || windowMillis > MAX_WINDOW_MILLIS) {
+            throw new IllegalArgumentException("The window must be a positive number of milliseconds.");
+        }
+        if (stripes <= 0 || stripes > 1 << 16) {
+            throw new IllegalArgumentException("The number of stripes must be between 1 and 65536.");
+        }
+
+        this.LIMIT = limit;
+        this.WINDOW = windowMillis * NANOS_PER_MILLI;
+        this.clock = clock;
+        this.startTime = clock.nanoTime();
+        this.stripes = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.words = new long[(this.stripes + 2) * PADDING];
+        words[slot(0)] = word(0, limit);
+    }
+
+    @Override
+    public boolean tryAcquire(long permits, Decision decision) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("The number of permits must be positive.");
+        }
+
+        int cell = slot(1 + stripe());
+        while (true) {
+            long now = timeElapsed();
+            long stamp = stampAt(now);
+            if (permits <= LIMIT) {
+                long word = (long) WORDS.getVolatile(words, cell);
+                long allowance = 0;
+                if (stampOf(word) == stamp) {
+                    allowance = countOf(word);
+                    if (allowance >= permits) {
+                        if (!WORDS.compareAndSet(words, cell, word, word - permits)) {
+                            continue;
+                        }
+                        describe(decision, true, cell, now, stamp, permits);
+                        return true;
+                    }
+                } else if (isOver(stamp)) {
+                    continue;
+                }
+
+                long lease = lease(cell, stamp, permits - allowance);
+                if (lease == STALE) {
+                    continue;
+                }
+                if (lease != DENIED) {
+                    if (credit(cell, stamp, lease, permits)) {
+                        describe(decision, true, cell, now, stamp, permits);
+                        return true;
+                    }
+                    continue;
+                }
+            }
+
+            describe(decision, false, cell, now, stamp, permits);
+            return false;
+        }
+    }
+
+    /**
+     * @return The number of permits granted in the current window.
+     */
+    @Override
+    public long getLevel() {
+        return LIMIT - available(stampAt(timeElapsed()));
+    }
+
+    /**
+     * The counter is idle once no permit was granted in the current window.
+     */
+    @Override
+    public boolean isIdle() {
+        return available(stampAt(timeElapsed())) == LIMIT;
+    }
+
+    /**
+     * Leases more of the window budget to a cell, in a chunk that shrinks as the budget runs low.
+     * @return The permits leased, which the caller must credit to the cell, {@link #DENIED} if there are not
+     * enough of them left in the window, or {@link #STALE} if the window is over.
+     */
+    private long lease(int cell, long stamp, long needed) {
+        while (true) {
+            long budget = (long) WORDS.getVolatile(words, slot(0));
+            long remaining;
+            if (stampOf(budget) == stamp) {
+                remaining = countOf(budget);
+            } else if (isOver(stamp)) {
+                return STALE;
+            } else {
+                remaining = LIMIT; // First lease of the window.
+            }
+
+            if (remaining < needed) {
+                return reclaim(cell, stamp, budget, needed);
+            }
+            long chunk = Math.min(remaining, Math.max(needed, remaining / (2L * stripes)));
+            if (WORDS.compareAndSet(words, slot(0), budget, word(stamp, remaining - chunk))) {
+                return chunk;
+            }
+        }
+    }
+
+    /**
+     * Takes over what is left of the budget and of the allowances of the other cells, once the budget alone
+     * cannot cover a request.
+     * @return The permits taken over, which the caller must credit to the cell, or {@link #DENIED} if all of them
+     * together cannot cover the request.
+     */
+    private long reclaim(int cell, long stamp, long budget, long needed) {
+        long available = stampOf(budget) == stamp ? countOf(budget) : 0;
+        for (int i = 1; i <= stripes && available < needed; i++) {
+            long word = (long) WORDS.getVolatile(words, slot(i));
+            if (slot(i) != cell && stampOf(word) == stamp) {
+                available += countOf(word);
+            }
+        }
+        if (available < needed) {
+            return DENIED;
+        }
+
+        long taken = 0;
+        if (stampOf(budget) == stamp && countOf(budget) > 0
+                && WORDS.compareAndSet(words, slot(0), budget, word(stamp, 0))) {
+            taken = countOf(budget);
+        }
+        for (int i = 1; i <= stripes && taken < needed; i++) {
+            if (slot(i) == cell) {
+                continue;
+            }
+            long word = (long) WORDS.getVolatile(words, slot(i));
+            if (stampOf(word) == stamp && countOf(word) > 0
+                    && WORDS.compareAndSet(words, slot(i), word, word(stamp, 0))) {
+                taken += countOf(word);
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Adds leased permits to the allowance of a cell, consuming the requested ones at once if they are covered.
+     * @return true if the requested permits were consumed, false if they are still to be.
+     */
+    private boolean credit(int cell, long stamp, long lease, long permits) {
+        while (true) {
+            long word = (long) WORDS.getVolatile(words, cell);
+            long allowance;
+            if (stampOf(word) == stamp) {
+                allowance = countOf(word) + lease;
+            } else if (isOver(stamp)) {
+                return false; // And so is the lease.
+            } else {
+                allowance = lease;
+            }
+
+            boolean covered = allowance >= permits;
+            long next = word(stamp, covered ? allowance - permits : allowance);
+            if (WORDS.compareAndSet(words, cell, word, next)) {
+                return covered;
+            }
+        }
+    }
+
+    private void describe(Decision decision, boolean granted, int cell, long now, long stamp, long permits) {
+        if (decision == null) {
+            return;
+        }
+
+        long available = local(cell, stamp);
+        long nextWindow = WINDOW - now % WINDOW;
+        long retryAfter;
+        if (permits > LIMIT) {
+            retryAfter = Decision.NEVER;
+        } else if (granted && available > 0) {
+            retryAfter = 0;
+        } else {
+            retryAfter = nextWindow;
+        }
+        decision.set(granted, LIMIT - available, available, LIMIT, retryAfter, available == LIMIT ? 0 : nextWindow);
+    }
+
+    /**
+     * Adds the permits left in the budget of a window and in the allowance of one cell.
+     */
+    private long local(int cell, long stamp) {
+        long budget = (long) WORDS.getVolatile(words, slot(0));
+        if (stampOf(budget) != stamp) {
+            return LIMIT;
+        }
+
+        long word = (long) WORDS.getVolatile(words, cell);
+        long available = countOf(budget) + (stampOf(word) == stamp ? countOf(word) : 0);
+        return Math.min(available, LIMIT);
+    }
+
+    /**
+     * Sums the permits not granted yet in a window, whether still in the budget or leased to any cell.
+     */
+    private long available(long stamp) {
+        long budget = (long) WORDS.getVolatile(words, slot(0));
+        if (stampOf(budget) != stamp) {
+            return LIMIT;
+        }
+
+        long available = countOf(budget);
+        for (int i = 1; i <= stripes; i++) {
+            long word = (long) WORDS.getVolatile(words, slot(i));
+            if (stampOf(word) == stamp) {
+                available += countOf(word);
+            }
+        }
+        return Math.min(available, LIMIT);
+    }
+
+    /**
+     * Spreads the threads across the cells by their probe, which unlike a hash code is dense and stable.
+     */
+    private int stripe() {
+        long probe = PROBES.get();
+        return (int) ((probe * 0x9E3779B97F4A7C15L) >>> 32) & (stripes - 1);
+    }
+
+    private static int slot(int index) {
+        return (index + 1) * PADDING;
+    }
+
+    private long stampAt(long now) {
+        return (now / WINDOW) & STAMP_MASK;
+    }
+
+    private static long word(long stamp, long count) {
+        return stamp << COUNT_BITS | count;
+    }
+
+    private static long stampOf(long word) {
+        return word >>> COUNT_BITS;
+    }
+
+    private static long countOf(long word) {
+        return word & COUNT_MASK;
+    }
+
+    /**
+     * Tells a word stamped with another window than the current one apart. Words are only stamped with windows
+     * the clock has reached, so unless the window read is over by now, such a word is stale and can be rolled over.
+     * @return true if the window is over, and the word may belong to a later one.
+     */
+    private boolean isOver(long stamp) {
+        return stampAt(timeElapsed()) != stamp;
+    }
+
+    private static int defaultStripes() {
+        return Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_STRIPES);
+    }
+
+    private long timeElapsed() {
+        return Math.max(0, clock.nanoTime() - startTime);
+    }
+}
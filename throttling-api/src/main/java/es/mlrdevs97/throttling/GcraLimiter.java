@@ -0,0 +1,154 @@
+package es.mlrdevs97.throttling;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements the Generic Cell Rate Algorithm (GCRA) for rate limiting.
+ * <p>
+ * The whole state is a single {@code long}, the theoretical arrival time: the tick, one per permit at the rate,
+ * at which the limiter is back to granting a full burst. A request of {@code n} permits pushes it {@code n} ticks ahead of the later of itself and
+ * now, and is let through unless that puts it more than the capacity ahead of now, in which case the excess is
+ * exactly the time to wait. One compare-and-set decides, and {@link #tryAcquire(long, Decision)} takes the same
+ * decisions as a {@link TokenBucket} of the same capacity and rate.
+ */
+public class GcraLimiter implements RateLimiter, Reconfigurable {
+    private static final VarHandle ARRIVAL_TICK;
+    private static final VarHandle LIMITS;
+
+    static {
+        try {
+            ARRIVAL_TICK = MethodHandles.lookup().findVarHandle(GcraLimiter.class, "arrivalTick", long.class);
+            LIMITS = MethodHandles.lookup().findVarHandle(GcraLimiter.class, "limits", BucketLimits.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    // The capacity and rate, replaced as a whole when reconfigured.
+    private volatile BucketLimits limits;
+
+    // The source of time, and its reading from which ticks are counted.
+    private final NanoClock clock;
+    private final long startTime;
+
+    // The theoretical arrival time: the tick from which a full burst conforms again.
+    private volatile long arrivalTick;
+
+    public GcraLimiter(long capacity, long rate) {
+        this(capacity, rate, NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param capacity The maximum number of permits granted at once after a pause.
+     * @param rate The number of permits granted per second, up to {@link BucketAlgorithm#MAX_RATE}.
+     * @param clock The source of time of the limiter.
+     */
+    public GcraLimiter(long capacity, long rate, NanoClock clock) {
+        BucketAlgorithm.checkRate(rate);
+        this.limits = new BucketLimits(capacity, rate);
+        this.clock = clock;
+        this.startTime = clock.nanoTime();
+        this.arrivalTick = BucketAlgorithm.GCRA.initialState(0, capacity);
+    }
+
+    @Override
+    public boolean tryAcquire(long permits, Decision decision) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("The number of permits must be positive.");
+        }
+
+        long timeElapsed = timeElapsed();
+        BucketLimits limits = this.limits;
+        long now = limits.now(timeElapsed);
+        while (true) {
+            long current = arrivalTick;
+            long next = BucketAlgorithm.GCRA.acquire(current, now, limits.capacity, permits);
+            if (next == BucketAlgorithm.DENIED) {
+                if (decision != null) {
+                    limits.describe(BucketAlgorithm.GCRA, decision, false, current, now, timeElapsed, permits);
+                }
+                return false;
+            }
+
+            if (ARRIVAL_TICK.compareAndSet(this, current, next)) {
+                if (decision != null) {
+                    limits.describe(BucketAlgorithm.GCRA, decision, true, next, now, timeElapsed, permits);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Waits until the permits conform to the rate, then takes them.
+     * <p>
+     * As for {@link TokenBucket#acquire(long, long, TimeUnit)}, the permits are reserved up front by pushing the
+     * theoretical arrival time ahead, so waiters are served in the order they arrive, and the thread parks on the clock.
+     * @param permits The number of permits to take.
+     * @param timeout The longest time to wait.
+     * @param unit The unit of the timeout.
+     * @return true once the permits are taken, or false at once if that would take longer than the timeout.
+     * @throws InterruptedException if the thread is interrupted while waiting. The reserved permits stay taken.
+     */
+    public boolean acquire(long permits, long timeout, TimeUnit unit) throws InterruptedException {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("The number of permits must be positive.");
+        }
+
+        long timeElapsed = timeElapsed();
+        BucketLimits limits = this.limits;
+        long now = limits.now(timeElapsed);
+        long maxWait = limits.deadlineTick(timeElapsed, unit.toNanos(timeout)) - now;
+        while (true) {
+            long current = arrivalTick;
+            long wait = BucketAlgorithm.GCRA.ticksUntil(current, now, limits.capacity, permits);
+            if (wait > maxWait || wait == Long.MAX_VALUE) {
+                return false;
+            }
+
+            long next = BucketAlgorithm.GCRA.acquire(current, now + wait, limits.capacity, permits);
+            if (ARRIVAL_TICK.compareAndSet(this, current, next)) {
+                if (wait > 0) {
+                    clock.parkUntil(startTime + limits.nanosAt(now + wait));
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return The permits that can be taken right now, as the tokens left in the equivalent token bucket.
+     */
+    @Override
+    public long getLevel() {
+        BucketLimits limits = this.limits;
+        return BucketAlgorithm.GCRA.getLevel(arrivalTick, limits.now(timeElapsed()), limits.capacity);
+    }
+
+    /**
+     * The limiter is idle once its theoretical arrival time has passed.
+     */
+    @Override
+    public boolean isIdle() {
+        BucketLimits limits = this.limits;
+        return BucketAlgorithm.GCRA.isIdle(arrivalTick, limits.now(timeElapsed()), limits.capacity);
+    }
+
+    /**
+     * Changes the capacity and rate of the limiter, keeping the share of the capacity that is free.
+     * Requests keep being decided meanwhile, without waiting for the change.
+     */
+    @Override
+    public void reconfigure(long capacity, long rate) {
+        BucketLimits.reconfigure(BucketAlgorithm.GCRA, ARRIVAL_TICK, LIMITS, this, clock, startTime, capacity, rate);
+    }
+
+    /**
+     * @return The time elapsed since the limiter was created, in nanoseconds.
+     */
+    private long timeElapsed() {
+        return Math.max(0, clock.nanoTime() - startTime);
+    }
+}
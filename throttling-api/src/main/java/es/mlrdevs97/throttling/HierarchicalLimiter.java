@@ -0,0 +1,277 @@
+package es.mlrdevs97.throttling;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Enforces nested token bucket limits: a global ceiling, a budget per tenant and a limit per user.
+ * A request is let through only if it fits all three, and then takes its permits from all three.
+ * <p>
+ * No lock is taken. Each bucket is a single state word of {@link BucketAlgorithm#TOKEN_BUCKET}, and a decision
+ * runs in two passes from the innermost level outwards:
+ * <ol>
+ *     <li>Every level is read, and the first one without enough tokens throttles the request, without writing
+ *     anything. An abusive user is thus turned away without even reading the shared global bucket.</li>
+ *     <li>Each level is then taken from with a compare-and-set. If another request took the last tokens of a level
+ *     in between, the levels already taken from are refunded and the request is throttled.</li>
+ * </ol>
+ * No level ever grants more than its limit. A refund only gives back what is left of the request's own tokens: if the
+ * level refilled since they were taken, the refill may have gone to another request, which the refund must not
+ * forgive, so the refund shrinks by a token per tick elapsed. While the clock stands still, a throttled request leaves
+ * every level as it found it, and the only trace of a refund is that a concurrent request may find a user or tenant
+ * short of those tokens for as long as the outer levels are tried.
+ * <p>
+ * User keys are not scoped to their tenant: a user key seen under two tenants shares a single bucket, as does
+ * an API key.
+ */
+public class HierarchicalLimiter {
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(Bucket.class, "state", long.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    // The source of time, and its reading from which the ticks of every level are counted.
+    private final NanoClock clock;
+    private final long startTime;
+
+    // The levels, and the capacities of the tenants and users not tracked yet.
+    private final Bucket global;
+    private final long tenantCapacity;
+    private final long userCapacity;
+    private final LimiterRegistry<Bucket> tenants;
+    private final LimiterRegistry<Bucket> users;
+
+    public HierarchicalLimiter(long globalCapacity, long globalRate, long tenantCapacity, long tenantRate,
+                               long userCapacity, long userRate, int maxKeys) {
+        this(globalCapacity, globalRate, tenantCapacity, tenantRate, userCapacity, userRate, maxKeys, NanoClock.SYSTEM);
+    }
+
+    /**
+     * Each capacity is the burst allowed at its level, and each rate the number of tokens it refills per second,
+     * up to {@link BucketAlgorithm#MAX_RATE}.
+     * @param maxKeys The maximum number of tenants, and of users, tracked at once.
+     * @param clock The source of time of the buckets.
+     */
+    public HierarchicalLimiter(long globalCapacity, long globalRate, long tenantCapacity, long tenantRate,
+                               long userCapacity, long userRate, int maxKeys, NanoClock clock) {
+        if (globalCapacity <= 0 || tenantCapacity <= 0 || userCapacity <= 0) {
+            throw new IllegalArgumentException("The capacities must be positive.");
+        }
+        BucketAlgorithm.checkRate(globalRate);
+        BucketAlgorithm.checkRate(tenantRate);
+        BucketAlgorithm.checkRate(userRate);
+
+        this.clock = clock;
+        this.startTime = clock.nanoTime();
+        this.global = new Bucket(globalCapacity, globalRate);
+        this.tenantCapacity = tenantCapacity;
+        this.userCapacity = userCapacity;
+        this.tenants = new LimiterRegistry<>(() -> new Bucket(tenantCapacity, tenantRate), maxKeys);
+        this.users = new LimiterRegistry<>(() -> new Bucket(userCapacity, userRate), maxKeys);
+    }
+
+    /**
+     * Attempts to let a weighted request of a user through, taking its permits from every level or from none.
+     * @param tenant The tenant key.
+     * @param user The user key.
+     * @param permits The cost of the request, in tokens.
+     * @param decision Filled with the details of the decision, or null if only the outcome matters. A throttled
+     * request is described by the level that throttled it, and a granted one by the level with the fewest tokens left.
+     * @return The outcome of the decision.
+     */
+    public KeyedLimiter.Outcome tryAcquire(String tenant, String user, long permits, Decision decision) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("The number of permits must be positive.");
+        }
+
+        Bucket userBucket = users.get(user);
+        Bucket tenantBucket = userBucket == null ? null : tenants.get(tenant);
+        if (tenantBucket == null) {
+            return KeyedLimiter.Outcome.KEY_LIMIT_REACHED;
+        }
+
+        long timeElapsed = timeElapsed();
+        if (userBucket.denies(timeElapsed, permits, decision)
+                || tenantBucket.denies(timeElapsed, permits, decision)
+                || global.denies(timeElapsed, permits, decision)) {
+            return KeyedLimiter.Outcome.THROTTLED;
+        }
+
+        // The shared global bucket is taken from last, so that its compare-and-set is rarely retried for nothing.
+        long userState = userBucket.take(timeElapsed, permits, decision);
+        if (userState == BucketAlgorithm.DENIED) {
+            return KeyedLimiter.Outcome.THROTTLED;
+        }
+        long tenantState = tenantBucket.take(timeElapsed, permits, decision);
+        if (tenantState == BucketAlgorithm.DENIED) {
+            userBucket.refund(timeElapsed, permits);
+            return KeyedLimiter.Outcome.THROTTLED;
+        }
+        long globalState = global.take(timeElapsed, permits, decision);
+        if (globalState == BucketAlgorithm.DENIED) {
+            tenantBucket.refund(timeElapsed, permits);
+            userBucket.refund(timeElapsed, permits);
+            return KeyedLimiter.Outcome.THROTTLED;
+        }
+
+        if (decision != null) {
+            Bucket tightest = userBucket;
+            long state = userState;
+            if (tenantBucket.remaining(tenantState, timeElapsed) < tightest.remaining(state, timeElapsed)) {
+                tightest = tenantBucket;
+                state = tenantState;
+            }
+            if (global.remaining(globalState, timeElapsed) < tightest.remaining(state, timeElapsed)) {
+                tightest = global;
+                state = globalState;
+            }
+            tightest.describe(decision, true, state, timeElapsed, permits);
+        }
+        return KeyedLimiter.Outcome.GRANTED;
+    }
+
+    /**
+     * @return The tokens a user can take right now: the fewest left at any of its levels.
+     * A tenant or user not tracked has a full bucket.
+     */
+    public long getLevel(String tenant, String user) {
+        Bucket tenantBucket = tenants.peek(tenant);
+        Bucket userBucket = users.peek(user);
+        long level = Math.min(global.getLevel(), tenantBucket == null ? tenantCapacity : tenantBucket.getLevel());
+        return Math.min(level, userBucket == null ? userCapacity : userBucket.getLevel());
+    }
+
+    /**
+     * Drops the tenants and users whose buckets are full.
+     * @return The number of tenants and users dropped.
+     */
+    public int evictIdle() {
+        return users.evictIdle() + tenants.evictIdle();
+    }
+
+    /**
+     * @return The number of users currently tracked.
+     */
+    public int size() {
+        return users.size();
+    }
+
+    private long timeElapsed() {
+        return Math.max(0, clock.nanoTime() - startTime);
+    }
+
+    /**
+     * The token bucket of a level.
+     */
+    private final class Bucket implements RateLimiter {
+        // The maximum number of tokens the bucket can hold.
+        private final long CAPACITY;
+
+        // The number of tokens added to the bucket per second.
+        private final long RATE;
+
+        // The tick at which the bucket holds no tokens. Not private, for the VarHandle lookup from the outer class.
+        volatile long state;
+
+        Bucket(long capacity, long rate) {
+            this.CAPACITY = capacity;
+            this.RATE = rate;
+            this.state = BucketAlgorithm.TOKEN_BUCKET.initialState(BucketAlgorithm.ticks(timeElapsed(), rate), capacity);
+        }
+
+        /**
+         * Checks, without taking anything, whether the bucket holds too few tokens for a request.
+         * @return true if it does, after describing the refusal.
+         */
+        boolean denies(long timeElapsed, long permits, Decision decision) {
+            long now = BucketAlgorithm.ticks(timeElapsed, RATE);
+            long current = state;
+            if (BucketAlgorithm.TOKEN_BUCKET.acquire(current, now, CAPACITY, permits) != BucketAlgorithm.DENIED) {
+                return false;
+            }
+            if (decision != null) {
+                BucketAlgorithm.TOKEN_BUCKET.describe(decision, false, current, now, timeElapsed, CAPACITY, RATE, permits);
+            }
+            return true;
+        }
+
+        /**
+         * Takes the tokens of a request.
+         * @return The new state, or {@link BucketAlgorithm#DENIED} after describing the refusal.
+         */
+        long take(long timeElapsed, long permits, Decision decision) {
+            long now = BucketAlgorithm.ticks(timeElapsed, RATE);
+            while (true) {
+                long current = state;
+                long next = BucketAlgorithm.TOKEN_BUCKET.acquire(current, now, CAPACITY, permits);
+                if (next == BucketAlgorithm.DENIED) {
+                    if (decision != null) {
+                        BucketAlgorithm.TOKEN_BUCKET.describe(decision, false, current, now, timeElapsed, CAPACITY, RATE, permits);
+                    }
+                    return next;
+                }
+                if (STATE.compareAndSet(this, current, next)) {
+                    return next;
+                }
+            }
+        }
+
+        /**
+         * Gives back the tokens taken by a request that another level throttled, less a token per tick elapsed since
+         * they were taken. Moving the empty tick back adds tokens, and a bucket whose empty tick is more than its
+         * capacity behind is simply full.
+         * <p>
+         * Each tick may have refilled a token that the request's own would have overflowed, and that another request
+         * has taken since: giving those back would forgive its grant. The tokens not given back are only lost until
+         * the bucket refills.
+         * @param timeElapsed The time elapsed when the tokens were taken.
+         */
+        void refund(long timeElapsed, long permits) {
+            long refilled = BucketAlgorithm.ticks(timeElapsed(), RATE) - BucketAlgorithm.ticks(timeElapsed, RATE);
+            if (refilled < permits) {
+                STATE.getAndAdd(this, refilled - permits);
+            }
+        }
+
+        long remaining(long state, long timeElapsed) {
+            return BucketAlgorithm.TOKEN_BUCKET.getRemaining(state, BucketAlgorithm.ticks(timeElapsed, RATE), CAPACITY);
+        }
+
+        void describe(Decision decision, boolean granted, long state, long timeElapsed, long permits) {
+            long now = BucketAlgorithm.ticks(timeElapsed, RATE);
+            BucketAlgorithm.TOKEN_BUCKET.describe(decision, granted, state, now, timeElapsed, CAPACITY, RATE, permits);
+        }
+
+        @Override
+        public boolean tryAcquire(long permits, Decision decision) {
+            if (permits <= 0) {
+                throw new IllegalArgumentException("The number of permits must be positive.");
+            }
+
+            long timeElapsed = timeElapsed();
+            long next = take(timeElapsed, permits, decision);
+            if (next == BucketAlgorithm.DENIED) {
+                return false;
+            }
+            if (decision != null) {
+                describe(decision, true, next, timeElapsed, permits);
+            }
+            return true;
+        }
+
+        @Override
+        public long getLevel() {
+            return BucketAlgorithm.TOKEN_BUCKET.getLevel(state, BucketAlgorithm.ticks(timeElapsed(), RATE), CAPACITY);
+        }
+
+        @Override
+        public boolean isIdle() {
+            return BucketAlgorithm.TOKEN_BUCKET.isIdle(state, BucketAlgorithm.ticks(timeElapsed(), RATE), CAPACITY);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package es.mlrdevs97.throttling;
+
+/**
+ * A rate limiter that throttles each client key separately.
+ */
+public interface KeyedLimiter {
+
+    /**
+     * The outcome of a keyed decision.
+     */
+    enum Outcome {
+        // The request is allowed.
+        GRANTED,
+        // The client has exhausted its limit.
+        THROTTLED,
+        // The limiter cannot track any more clients.
+        KEY_LIMIT_REACHED
+    }
+
+    /**
+     * Attempts to let a single request of a client through.
+     * @param key The client key.
+     * @return The outcome of the decision.
+     */
+    default Outcome tryAcquire(String key) {
+        return tryAcquire(key, 1);
+    }
+
+    /**
+     * Attempts to let a weighted request of a client through, taking all its permits in a single step.
+     * @param key The client key.
+     * @param permits The cost of the request, in tokens or queue slots.
+     * @return The outcome of the decision.
+     */
+    default Outcome tryAcquire(String key, long permits) {
+        return tryAcquire(key, permits, null);
+    }
+
+    /**
+     * Attempts to let a weighted request of a client through, and describes the decision in the same step.
+     * @param key The client key.
+     * @param permits The cost of the request, in tokens or queue slots.
+     * @param decision Filled with the details of the decision, or null if only the outcome matters.
+     * It is left untouched when the outcome is {@link Outcome#KEY_LIMIT_REACHED}.
+     * @return The outcome of the decision.
+     */
+    Outcome tryAcquire(String key, long permits, Decision decision);
+
+    /**
+     * Gets the current fill level of a client's limiter.
+     * @param key The client key.
+     * @return The level as defined by {@link RateLimiter#getLevel()}, or 0 if the key is not tracked.
+     */
+    long getLevel(String key);
+
+    /**
+     * Drops every client whose limiter is idle.
+     * @return The number of clients dropped.
+     */
+    int evictIdle();
+
+    /**
+     * @return The number of clients currently tracked.
+     */
+    int size();
+}
@@ -1,63 +1,191 @@
 package es.mlrdevs97.throttling;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Implements the Leaky Bucket algorithm for rate limiting.
+ * <p>
+ * The bucket is lock-free. Its whole state is a single {@code long}: the leak tick at which every queued
+ * request will have leaked out, where a tick is the time it takes to process one request. The current size
+ * is the number of ticks still left until then, so leaking and adding happen in one compare-and-set.
+ * <p>
+ * Ticks are counted from the creation of the bucket on a monotonic nanosecond clock, never from the previous
+ * call, so the fraction of a tick left over by one call is kept, and rates up to
+ * {@link BucketAlgorithm#MAX_RATE} per second are enforced exactly.
  */
-public class LeakyBucket {
-    // The maximum number of requests the bucket (queue) can hold.
-    private final long CAPACITY;
+public class LeakyBucket implements RateLimiter, Reconfigurable {
+    private static final VarHandle DRAINED_TICK;
+    private static final VarHandle LIMITS;
+
+    static {
+        try {
+            DRAINED_TICK = MethodHandles.lookup().findVarHandle(LeakyBucket.class, "drainedTick", long.class);
+            LIMITS = MethodHandles.lookup().findVarHandle(LeakyBucket.class, "limits", BucketLimits.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    // The capacity and rate, replaced as a whole when reconfigured.
+    private volatile BucketLimits limits;
 
-    // The rate at which requests are processed (leaked) per second.
-    private final long LEAK_RATE;
+    // The source of time, and its reading from which leak ticks are counted.
+    private final NanoClock clock;
+    private final long startTime;
 
-    private long currentSize;
-    private long lastLeakTime;
+    // The leak tick at which the bucket will be empty again.
+    private volatile long drainedTick;
 
     public LeakyBucket(long CAPACITY, long LEAK_RATE) {
-        this.CAPACITY = CAPACITY;
-        this.LEAK_RATE = LEAK_RATE;
-        this.currentSize = 0; // Start with an empty bucket.
-        this.lastLeakTime = System.currentTimeMillis();
+        this(CAPACITY, LEAK_RATE, NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param CAPACITY The maximum number of requests the bucket can hold.
+     * @param LEAK_RATE The number of requests leaked per second, up to {@link BucketAlgorithm#MAX_RATE}.
+     * @param clock The source of time of the bucket.
+     */
+    public LeakyBucket(long CAPACITY, long LEAK_RATE, NanoClock clock) {
+        BucketAlgorithm.checkRate(LEAK_RATE);
+        this.limits = new BucketLimits(CAPACITY, LEAK_RATE);
+        this.clock = clock;
+        this.startTime = clock.nanoTime();
+        this.drainedTick = BucketAlgorithm.LEAKY_BUCKET.initialState(0, CAPACITY);
     }
 
     /**
      * Attempts to add a request to the bucket.
      * @return true if the request is accepted (added to the queue), false otherwise (request dropped).
      */
-    public synchronized boolean tryAdd() {
-        leak();
-        if (currentSize >= CAPACITY) {
-            return false;
+    public boolean tryAdd() {
+        return tryAdd(1);
+    }
+
+    /**
+     * Attempts to add a weighted request, taking several slots of the bucket in a single step.
+     * Either all the slots are taken or none is.
+     * @param requests The number of slots the request takes.
+     * @return true if the request is accepted (added to the queue), false otherwise (request dropped).
+     */
+    public boolean tryAdd(long requests) {
+        return tryAdd(requests, null);
+    }
+
+    /**
+     * Same as {@link #tryAdd(long)}, also describing the decision.
+     * @param requests The number of requests the request takes.
+     * @param decision Filled with the details of the decision, or null.
+     * @return true if the request is accepted (added to the queue), false otherwise.
+     */
+    public boolean tryAdd(long requests, Decision decision) {
+        if (requests <= 0) {
+            throw new IllegalArgumentException("The number of requests must be positive.");
         }
 
-        currentSize++;
-        return true;
+        long timeElapsed = timeElapsed();
+        BucketLimits limits = this.limits;
+        long now = limits.now(timeElapsed);
+        while (true) {
+            long current = drainedTick;
+            long next = BucketAlgorithm.LEAKY_BUCKET.acquire(current, now, limits.capacity, requests);
+            if (next == BucketAlgorithm.DENIED) {
+                if (decision != null) {
+                    limits.describe(BucketAlgorithm.LEAKY_BUCKET, decision, false, current, now, timeElapsed, requests);
+                }
+                return false;
+            }
+
+            if (DRAINED_TICK.compareAndSet(this, current, next)) {
+                if (decision != null) {
+                    limits.describe(BucketAlgorithm.LEAKY_BUCKET, decision, true, next, now, timeElapsed, requests);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Waits until enough of the queue has leaked out, then adds the request to the queue.
+     * <p>
+     * The exact wait is computed up front, and the queue slots are reserved in the same compare-and-set, so waiters
+     * are served in the order they arrive: a large request is never starved by a stream of smaller ones, which
+     * queue behind it. The thread then parks on the clock, without spinning or holding a monitor, so thousands
+     * of virtual threads can wait on the same bucket without pinning their carriers.
+     * @param requests The number of slots the request takes.
+     * @param timeout The longest time to wait.
+     * @param unit The unit of the timeout.
+     * @return true once the request is added, or false at once if that would take longer than the timeout.
+     * @throws InterruptedException if the thread is interrupted while waiting. The reserved slots stay taken.
+     */
+    public boolean acquire(long requests, long timeout, TimeUnit unit) throws InterruptedException {
+        if (requests <= 0) {
+            throw new IllegalArgumentException("The number of requests must be positive.");
+        }
+
+        long timeElapsed = timeElapsed();
+        BucketLimits limits = this.limits;
+        long now = limits.now(timeElapsed);
+        long maxWait = limits.deadlineTick(timeElapsed, unit.toNanos(timeout)) - now;
+        while (true) {
+            long current = drainedTick;
+            long wait = BucketAlgorithm.LEAKY_BUCKET.ticksUntil(current, now, limits.capacity, requests);
+            if (wait > maxWait || wait == Long.MAX_VALUE) {
+                return false;
+            }
+
+            long next = BucketAlgorithm.LEAKY_BUCKET.acquire(current, now + wait, limits.capacity, requests);
+            if (DRAINED_TICK.compareAndSet(this, current, next)) {
+                if (wait > 0) {
+                    clock.parkUntil(startTime + limits.nanosAt(now + wait));
+                }
+                return true;
+            }
+        }
     }
 
     /**
      * Gets the current number of requests in the bucket after accounting for any leaks.
      * @return The current size of the bucket.
      */
-    public synchronized long getCurrentSize() {
-        leak();
-        return currentSize;
+    public long getCurrentSize() {
+        BucketLimits limits = this.limits;
+        return BucketAlgorithm.LEAKY_BUCKET.getLevel(drainedTick, limits.now(timeElapsed()), limits.capacity);
+    }
+
+    @Override
+    public boolean tryAcquire(long permits, Decision decision) {
+        return tryAdd(permits, decision);
+    }
+
+    @Override
+    public long getLevel() {
+        return getCurrentSize();
     }
 
     /**
-     * Calculates and removes requests from the bucket that have "leaked" out over time.
+     * The bucket is idle once every queued request has leaked out.
      */
-    private void leak() {
-        long now = System.currentTimeMillis();
-        long timeElapsed = now - lastLeakTime;
-        if (timeElapsed <= 0) {
-            return;
-        }
+    @Override
+    public boolean isIdle() {
+        BucketLimits limits = this.limits;
+        return BucketAlgorithm.LEAKY_BUCKET.isIdle(drainedTick, limits.now(timeElapsed()), limits.capacity);
+    }
 
-        long leakRequests = timeElapsed * LEAK_RATE / 1000;
-        if (leakRequests <= 0) {
-            return;
-        }
+    /**
+     * Changes the capacity and leak rate of the bucket, keeping the share of the capacity that is free.
+     * Requests keep being decided meanwhile, without waiting for the change.
+     */
+    @Override
+    public void reconfigure(long capacity, long leakRate) {
+        BucketLimits.reconfigure(BucketAlgorithm.LEAKY_BUCKET, DRAINED_TICK, LIMITS, this, clock, startTime, capacity, leakRate);
+    }
 
-        currentSize = Math.max(0, currentSize - leakRequests);
-        lastLeakTime = now;
+    /**
+     * @return The time elapsed since the bucket was created, in nanoseconds.
+     */
+    private long timeElapsed() {
+        return Math.max(0, clock.nanoTime() - startTime);
     }
-}
\ No newline at end of file
+}
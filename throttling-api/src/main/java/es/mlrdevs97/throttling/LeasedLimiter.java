@@ -0,0 +1,393 @@
+package es.mlrdevs97.throttling;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Enforces limits owned by a {@link QuotaAuthority} shared by several nodes, so that N replicas together grant
+ * no more than the configured limit rather than N times it.
+ * <p>
+ * Each key holds a lease: an allowance of permits taken from the authority in chunks. Requests are decided locally
+ * by a compare-and-set on the allowance, and once it runs below half a chunk a single renewal is sent in the
+ * background, so the authority is only waited for when a key starts, or when its requests outrun the renewals.
+ * Only one lease per key is on its way to the authority at a time: requests that need it wait for its answer rather
+ * than sending their own, and are throttled locally if it takes longer than {@link #MAX_RENEWAL_WAIT_NANOS}, so that
+ * a slow authority does not hold up every request of the key. A refusal is remembered until the budget is due to have refilled, and the requests it
+ * covers are throttled locally meanwhile, so that a client hammering a spent budget costs no round trips.
+ * A lease unused for the idle time is returned in the background once its key is evicted, for other nodes to lease.
+ * <p>
+ * Leased permits are spent by one node only, so the global limit is never exceeded, but a node may throttle a
+ * request while another holds unused permits, by at most a chunk per node and key. Decisions served from a lease
+ * describe the local allowance; only those that reach the authority describe the global budget.
+ */
+public class LeasedLimiter implements KeyedLimiter, AutoCloseable {
+    private static final VarHandle ALLOWANCE;
+
+    static {
+        try {
+            ALLOWANCE = MethodHandles.lookup().findVarHandle(Lease.class, "allowance", long.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    // How long a request waits for the renewal on its way to be answered, before it is throttled, in nanoseconds.
+    static final long MAX_RENEWAL_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final QuotaAuthority authority;
+
+    // The number of permits leased at once, unless a request needs more.
+    private final long CHUNK;
+
+    // How long a lease stays unused before it is returned, in nanoseconds.
+    private final long IDLE_TIME;
+
+    private final NanoClock clock;
+    private final LimiterRegistry<Lease> leases;
+
+    private volatile boolean closed;
+
+    // Renews and returns leases off the request path. Its single thread is only started by the first of them.
+    private final ExecutorService background = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "leased-limiter-renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LeasedLimiter(QuotaAuthority authority, long chunk, long idleMillis, int maxKeys) {
+        this(authority, chunk, idleMillis, maxKeys, NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param authority The owner of the global budgets.
+     * @param chunk The number of permits leased at once. Larger chunks mean fewer round trips,
+     * and more permits held back from the other nodes.
+     * @param idleMillis How long a lease stays unused before it is returned, in milliseconds.
+     * @param maxKeys The maximum number of keys holding a lease at once.
+     * @param clock The source of time of the idle leases.
+     */
+    public LeasedLimiter(QuotaAuthority authority, long chunk, long idleMillis, int maxKeys, NanoClock clock) {
+        if (chunk <= 0) {
+            throw new IllegalArgumentException("The lease chunk must be positive.");
+        }
+        if (idleMillis < 0) {
+            throw new IllegalArgumentException("The idle time must not be negative.");
+        }
+        this.authority = authority;
+        this.CHUNK = chunk;
+        this.IDLE_TIME = idleMillis * 1_000_000L;
+        this.clock = clock;
+        this.leases = new LimiterRegistry<>(Lease::new, maxKeys, Lease::retire, clock);
+    }
+
+    @Override
+    public Outcome tryAcquire(String key, long permits, Decision decision) {
+        Lease lease = leases.get(key);
+        if (lease == null) {
+            return Outcome.KEY_LIMIT_REACHED;
+        }
+        return lease.tryAcquire(permits, decision) ? Outcome.GRANTED : Outcome.THROTTLED;
+    }
+
+    /**
+     * @return The permits left in the key's lease on this node.
+     */
+    @Override
+    public long getLevel(String key) {
+        return leases.getLevel(key);
+    }
+
+    /**
+     * Drops the keys whose lease has been unused for the idle time, returning what is left of them.
+     */
+    @Override
+    public int evictIdle() {
+        return leases.evictIdle();
+    }
+
+    @Override
+    public int size() {
+        return leases.size();
+    }
+
+    /**
+     * Stops renewing and returning leases. Those still held are lost to the authority until its budgets refill.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        // The tasks never started skip the authority, and end the renewals that requests may be waiting for.
+        for (Runnable dropped : background.shutdownNow()) {
+            dropped.run();
+        }
+    }
+
+    /**
+     * @return false if the limiter is closed, and the task will not run.
+     */
+    private boolean inBackground(Runnable task) {
+        try {
+            background.execute(task);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * The permits a node holds for one key.
+     */
+    private final class Lease implements RateLimiter {
+        private final String key;
+
+        // The permits left to grant locally. Not private, for the VarHandle lookup from the outer class.
+        volatile long allowance;
+
+        // When the lease was last used, on the clock.
+        private volatile long lastUsed = clock.nanoTime();
+
+        // The global limit of the key, as last described by the authority.
+        private volatile long limit;
+
+        // Set while a lease is on its way to the authority, so that there is only one at a time.
+        private final AtomicBoolean renewing = new AtomicBoolean();
+
+        // The answers of the authority when the request has no decision to fill. Only touched while renewing.
+        private final Decision answer = new Decision();
+
+        // Signalled when a renewal is answered, for the requests waiting for it. A lock rather than a monitor, so
+        // that a virtual thread waiting does not pin its carrier.
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition answered = lock.newCondition();
+
+        // The last refusal of the authority, while it may still stand, or null.
+        private volatile Denial denial;
+
+        // Whether the key has been evicted, so that any permit credited from then on is returned.
+        private volatile boolean retired;
+
+        Lease(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public boolean tryAcquire(long permits, Decision decision) {
+            if (permits <= 0) {
+                throw new IllegalArgumentException("The number of permits must be positive.");
+            }
+
+            long now = clock.nanoTime();
+            lastUsed = now;
+            while (true) {
+                long available = allowance;
+                if (available >= permits) {
+                    if (!ALLOWANCE.compareAndSet(this, available, available - permits)) {
+                        continue;
+                    }
+                    long left = available - permits;
+                    if (retired) {
+                        handBack();
+                    } else if (left < CHUNK / 2) {
+                        renew(now);
+                    }
+                    if (decision != null) {
+                        decision.set(true, left, left, limit, 0, 0);
+                    }
+                    return true;
+                }
+
+                // Not enough left here: the authority refused as much not long ago, or it must be asked.
+                long missing = permits - available;
+                Denial refused = denial;
+                if (refused != null && refused.covers(missing, now)) {
+                    if (decision != null) {
+                        refused.describe(decision, available, limit, now);
+                    }
+                    return false;
+                }
+                if (!renewing.compareAndSet(false, true)) {
+                    if (!awaitRenewal()) {
+                        // The authority is slow: throttled rather than held until it answers.
+                        if (decision != null) {
+                            long left = allowance;
+                            decision.set(false, left, left, limit, MAX_RENEWAL_WAIT_NANOS, MAX_RENEWAL_WAIT_NANOS);
+                        }
+                        return false;
+                    }
+                    now = clock.nanoTime(); // Its answer may cover this request.
+                    continue;
+                }
+                long leased;
+                try {
+                    leased = lease(missing, Math.max(CHUNK, missing), decision != null ? decision : answer);
+                } finally {
+                    endRenewal();
+                }
+                if (leased == 0) {
+                    return false;
+                }
+            }
+        }
+
+        @Override
+        public long getLevel() {
+            return allowance;
+        }
+
+        /**
+         * A lease is idle once unused for the idle time, and not waiting for the authority.
+         */
+        @Override
+        public boolean isIdle() {
+            return clock.nanoTime() - lastUsed >= IDLE_TIME && !renewing.get();
+        }
+
+        /**
+         * Returns what is left of the lease once its key is evicted. A request that got hold of it before may still
+         * lease permits into it: whatever it leaves is returned too.
+         */
+        void retire() {
+            retired = true;
+            handBack();
+        }
+
+        /**
+         * Leases another chunk in the background, unless a renewal is already on its way, or the authority has
+         * just refused one.
+         */
+        private void renew(long now) {
+            Denial refused = denial;
+            if (refused != null && refused.covers(1, now) || !renewing.compareAndSet(false, true)) {
+                return;
+            }
+            boolean sent = inBackground(() -> {
+                try {
+                    if (!closed) {
+                        lease(1, CHUNK, answer);
+                        if (retired) {
+                            handBack();
+                        }
+                    }
+                } finally {
+                    endRenewal();
+                }
+            });
+            if (!sent) {
+                endRenewal();
+            }
+        }
+
+        /**
+         * Asks the authority for permits, and credits them or remembers the refusal. Only called while renewing.
+         * @param details Filled with the authority's answer.
+         * @return The number of permits leased, or 0.
+         */
+        private long lease(long minPermits, long maxPermits, Decision details) {
+            long leased = authority.lease(key, minPermits, maxPermits, details);
+            limit = details.getLimit();
+            if (leased == 0) {
+                denial = new Denial(minPermits, details, clock.nanoTime());
+                return 0;
+            }
+            denial = null;
+            ALLOWANCE.getAndAdd(this, leased);
+            return leased;
+        }
+
+        private void endRenewal() {
+            renewing.set(false);
+            lock.lock();
+            try {
+                answered.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Waits until the renewal on its way is answered, for {@link #MAX_RENEWAL_WAIT_NANOS} at most.
+         * Renewals are not interrupted halfway, so neither is this.
+         * @return false if the renewal was not answered in time.
+         */
+        private boolean awaitRenewal() {
+            long deadline = System.nanoTime() + MAX_RENEWAL_WAIT_NANOS;
+            boolean interrupted = false;
+            lock.lock();
+            try {
+                while (renewing.get()) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) {
+                        return false;
+                    }
+                    try {
+                        answered.awaitNanos(left);
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+                return true;
+            } finally {
+                lock.unlock();
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        /**
+         * Returns the whole allowance to the authority in the background.
+         */
+        private void handBack() {
+            long left = (long) ALLOWANCE.getAndSet(this, 0L);
+            if (left > 0) {
+                inBackground(() -> {
+                    if (!closed) {
+                        authority.release(key, left);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * A refusal of the authority. It stands for the requests missing as many permits or more, until the budget is
+     * due to have refilled enough for them.
+     */
+    private static final class Denial {
+        // The fewest permits that were refused.
+        private final long permits;
+
+        // When the refusal expires, and when the budget is due to be full, on the clock.
+        private final long until;
+        private final long resetAt;
+
+        // Whether the permits refused were more than the budget can ever hold.
+        private final boolean never;
+
+        Denial(long permits, Decision answer, long now) {
+            this.permits = permits;
+            this.never = answer.getRetryAfterNanos() == Decision.NEVER;
+            this.until = now + Math.min(answer.getRetryAfterNanos(), answer.getResetNanos());
+            this.resetAt = now + answer.getResetNanos();
+        }
+
+        boolean covers(long missing, long now) {
+            return missing >= permits && now - until < 0;
+        }
+
+        /**
+         * Describes a request throttled locally as the authority would have.
+         */
+        void describe(Decision decision, long available, long limit, long now) {
+            long retryAfter = never ? Decision.NEVER : until - now;
+            decision.set(false, available, available, limit, retryAfter, Math.max(0, resetAt - now));
+        }
+    }
+}
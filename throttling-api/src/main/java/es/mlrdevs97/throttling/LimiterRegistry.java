@@ -0,0 +1,231 @@
+package es.mlrdevs97.throttling;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Keeps one rate limiter per client key, so that each client is throttled on its own.
+ * <p>
+ * Limiters are created lazily on the first request of a key. The number of keys is capped: when the registry is
+ * full, idle limiters are evicted to make room, since recreating an idle limiter gives back the same state.
+ * If no limiter is idle, new keys are refused until one becomes idle. As sweeping visits every key, new keys sweep
+ * at most once per {@link #INLINE_SWEEP_INTERVAL_NANOS}, so that a flood of them against a full registry does not
+ * cost a full scan each.
+ * <p>
+ * A request racing with the eviction of its key may be charged to the dropped limiter. As only idle limiters
+ * are dropped, this can at most grant that client one extra burst worth of in-flight requests.
+ * <p>
+ * A registry of {@link Reconfigurable} limiters can be reconfigured as a whole: every limiter tracked keeps its
+ * state under the new limits, and those created afterwards get them too.
+ *
+ * @param <L> The type of rate limiter kept for each key.
+ */
+public class LimiterRegistry<L extends RateLimiter> implements KeyedLimiter, Reconfigurable {
+    // How often new keys may sweep a full registry for idle limiters, in nanoseconds.
+    static final long INLINE_SWEEP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ConcurrentHashMap<String, L> limiters = new ConcurrentHashMap<>();
+    private final Function<String, L> factory;
+
+    // Told of each limiter evicted, once it is removed.
+    private final Consumer<L> onEviction;
+
+    // The maximum number of keys the registry can hold.
+    private final int MAX_KEYS;
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    // When a new key last swept the full registry, on the clock.
+    private final NanoClock clock;
+    private final AtomicLong lastInlineSweep;
+
+    // Applied to the limiters created by the factory once the registry is reconfigured, or null until then.
+    private volatile Consumer<L> reconfiguration;
+
+    public LimiterRegistry(Supplier<L> factory, int maxKeys) {
+        this(key -> factory.get(), maxKeys);
+    }
+
+    /**
+     * @param factory Creates the limiter of a key, for limiters that need to know the key they limit.
+     * @param maxKeys The maximum number of keys the registry can hold.
+     */
+    public LimiterRegistry(Function<String, L> factory, int maxKeys) {
+        this(factory, maxKeys, limiter -> { });
+    }
+
+    /**
+     * @param factory Creates the limiter of a key, for limiters that need to know the key they limit.
+     * @param maxKeys The maximum number of keys the registry can hold.
+     * @param onEviction Told of each limiter evicted, once it is removed from the registry, for limiters holding
+     * resources to give back.
+     */
+    public LimiterRegistry(Function<String, L> factory, int maxKeys, Consumer<L> onEviction) {
+        this(factory, maxKeys, onEviction, NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param factory Creates the limiter of a key, for limiters that need to know the key they limit.
+     * @param maxKeys The maximum number of keys the registry can hold.
+     * @param onEviction Told of each limiter evicted, once it is removed from the registry, for limiters holding
+     * resources to give back.
+     * @param clock The source of time of the sweeps made by new keys.
+     */
+    public LimiterRegistry(Function<String, L> factory, int maxKeys, Consumer<L> onEviction, NanoClock clock) {
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("The maximum number of keys must be positive.");
+        }
+        this.factory = factory;
+        this.MAX_KEYS = maxKeys;
+        this.onEviction = onEviction;
+        this.clock = clock;
+        this.lastInlineSweep = new AtomicLong(clock.nanoTime() - INLINE_SWEEP_INTERVAL_NANOS);
+    }
+
+    /**
+     * Gets the limiter of a key, creating it if the key has none yet.
+     * @param key The client key.
+     * @return The limiter of the key, or null if the registry is full and no idle limiter could be evicted.
+     */
+    public L get(String key) {
+        L limiter = limiters.get(key);
+        if (limiter != null) {
+            return limiter;
+        }
+
+        if (!tryReserve()) {
+            sweepIfDue();
+            // Tried again even if another thread is sweeping, as it frees room as it goes.
+            if (!tryReserve()) {
+                return null;
+            }
+        }
+
+        L created = factory.apply(key);
+        L existing = limiters.putIfAbsent(key, created);
+        if (existing != null) {
+            size.decrementAndGet();
+            return existing;
+        }
+
+        // Read once the limiter is visible to the others, so that a reconfiguration either is seen here, or sees
+        // the limiter while applying itself to the registry.
+        Consumer<L> change = reconfiguration;
+        if (change != null) {
+            change.accept(created);
+        }
+        return created;
+    }
+
+    /**
+     * Gets the limiter of a key, without creating it.
+     * @param key The client key.
+     * @return The limiter of the key, or null if the key has none.
+     */
+    public L peek(String key) {
+        return limiters.get(key);
+    }
+
+    @Override
+    public Outcome tryAcquire(String key, long permits, Decision decision) {
+        L limiter = get(key);
+        if (limiter == null) {
+            return Outcome.KEY_LIMIT_REACHED;
+        }
+        return limiter.tryAcquire(permits, decision) ? Outcome.GRANTED : Outcome.THROTTLED;
+    }
+
+    @Override
+    public long getLevel(String key) {
+        L limiter = limiters.get(key);
+        return limiter == null ? 0 : limiter.getLevel();
+    }
+
+    /**
+     * Changes the capacity and rate of every limiter, keeping the share of its capacity that is free,
+     * and of the limiters created from now on. Requests keep being decided meanwhile.
+     * @throws UnsupportedOperationException if the limiters of the registry are not {@link Reconfigurable}.
+     */
+    @Override
+    public synchronized void reconfigure(long capacity, long rate) {
+        BucketLimits.check(capacity, rate);
+        for (L limiter : limiters.values()) {
+            if (!(limiter instanceof Reconfigurable)) {
+                throw new UnsupportedOperationException("The limiters of the registry cannot be reconfigured.");
+            }
+        }
+
+        reconfiguration = limiter -> ((Reconfigurable) limiter).reconfigure(capacity, rate);
+        for (L limiter : limiters.values()) {
+            ((Reconfigurable) limiter).reconfigure(capacity, rate);
+        }
+    }
+
+    /**
+     * Removes every idle limiter from the registry.
+     * Only one thread sweeps at a time; concurrent callers return immediately.
+     * @return The number of limiters evicted.
+     */
+    @Override
+    public int evictIdle() {
+        if (!evicting.compareAndSet(false, true)) {
+            return 0;
+        }
+
+        try {
+            int evicted = 0;
+            for (Map.Entry<String, L> entry : limiters.entrySet()) {
+                if (entry.getValue().isIdle() && limiters.remove(entry.getKey(), entry.getValue())) {
+                    size.decrementAndGet();
+                    onEviction.accept(entry.getValue());
+                    evicted++;
+                }
+            }
+            return evicted;
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * @return The number of keys currently held.
+     */
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Sweeps the full registry for idle limiters, unless a new key already did within the interval.
+     */
+    private void sweepIfDue() {
+        long now = clock.nanoTime();
+        long last = lastInlineSweep.get();
+        if (now - last >= INLINE_SWEEP_INTERVAL_NANOS && lastInlineSweep.compareAndSet(last, now)) {
+            evictIdle();
+        }
+    }
+
+    /**
+     * Reserves room for a new key if the registry is not full.
+     */
+    private boolean tryReserve() {
+        while (true) {
+            int current = size.get();
+            if (current >= MAX_KEYS) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+}
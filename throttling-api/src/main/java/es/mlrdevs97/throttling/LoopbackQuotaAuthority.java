@@ -0,0 +1,109 @@
+package es.mlrdevs97.throttling;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process {@link QuotaAuthority}, standing in for a shared store so that several {@link LeasedLimiter}s,
+ * one per simulated node, can enforce a global limit on a single machine.
+ * <p>
+ * Each key's budget is a token bucket state word, as in {@link BucketAlgorithm#TOKEN_BUCKET}: leasing consumes
+ * tokens, releasing puts them back, and the budget refills at the rate. Every key seen is kept, so this is meant for
+ * tests and single-machine deployments rather than for an unbounded number of clients.
+ */
+public class LoopbackQuotaAuthority implements QuotaAuthority {
+    private final ConcurrentHashMap<String, AtomicLong> budgets = new ConcurrentHashMap<>();
+
+    // The maximum number of tokens a key's budget can hold.
+    private final long CAPACITY;
+
+    // The number of tokens added to each key's budget per second.
+    private final long RATE;
+
+    // The source of time, and its reading from which refill ticks are counted.
+    private final NanoClock clock;
+    private final long startTime;
+
+    public LoopbackQuotaAuthority(long capacity, long rate) {
+        this(capacity, rate, NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param capacity The maximum number of tokens a key's budget can hold.
+     * @param rate The number of tokens added per second, up to {@link BucketAlgorithm#MAX_RATE}.
+     * @param clock The source of time of the budgets.
+     */
+    public LoopbackQuotaAuthority(long capacity, long rate, NanoClock clock) {
+        BucketAlgorithm.checkRate(rate);
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive.");
+        }
+        this.CAPACITY = capacity;
+        this.RATE = rate;
+        this.clock = clock;
+        this.startTime = clock.nanoTime();
+    }
+
+    @Override
+    public long lease(String key, long minPermits, long maxPermits, Decision decision) {
+        if (minPermits <= 0 || maxPermits < minPermits) {
+            throw new IllegalArgumentException("The bounds of a lease must be positive and ordered.");
+        }
+
+        AtomicLong budget = budgetOf(key);
+        long timeElapsed = timeElapsed();
+        long now = BucketAlgorithm.ticks(timeElapsed, RATE);
+        while (true) {
+            long current = budget.get();
+            long leased = Math.min(maxPermits, BucketAlgorithm.TOKEN_BUCKET.getLevel(current, now, CAPACITY));
+            if (leased < minPermits) {
+                if (decision != null) {
+                    BucketAlgorithm.TOKEN_BUCKET.describe(decision, false, current, now, timeElapsed, CAPACITY, RATE, minPermits);
+                }
+                return 0;
+            }
+
+            long next = BucketAlgorithm.TOKEN_BUCKET.acquire(current, now, CAPACITY, leased);
+            if (budget.compareAndSet(current, next)) {
+                if (decision != null) {
+                    BucketAlgorithm.TOKEN_BUCKET.describe(decision, true, next, now, timeElapsed, CAPACITY, RATE, leased);
+                }
+                return leased;
+            }
+        }
+    }
+
+    @Override
+    public void release(String key, long permits) {
+        if (permits <= 0) {
+            return;
+        }
+
+        AtomicLong budget = budgetOf(key);
+        long now = BucketAlgorithm.ticks(timeElapsed(), RATE);
+        // Moving the empty tick back adds tokens, and a budget is never fuller than its capacity.
+        budget.getAndUpdate(current -> Math.max(current - permits, now - CAPACITY));
+    }
+
+    /**
+     * @return The tokens left in a key's budget, not counting those leased.
+     */
+    public long getLevel(String key) {
+        AtomicLong budget = budgets.get(key);
+        long now = BucketAlgorithm.ticks(timeElapsed(), RATE);
+        return budget == null ? CAPACITY : BucketAlgorithm.TOKEN_BUCKET.getLevel(budget.get(), now, CAPACITY);
+    }
+
+    private AtomicLong budgetOf(String key) {
+        AtomicLong budget = budgets.get(key);
+        if (budget == null) {
+            long initial = BucketAlgorithm.TOKEN_BUCKET.initialState(BucketAlgorithm.ticks(timeElapsed(), RATE), CAPACITY);
+            budget = budgets.computeIfAbsent(key, k -> new AtomicLong(initial));
+        }
+        return budget;
+    }
+
+    private long timeElapsed() {
+        return Math.max(0, clock.nanoTime() - startTime);
+    }
+}
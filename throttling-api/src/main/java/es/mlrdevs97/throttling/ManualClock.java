@@ -0,0 +1,96 @@
+package es.mlrdevs97.throttling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A clock that only moves when told to, so that tests and simulations can drive the buckets deterministically.
+ * It is thread-safe: several threads may read it, or wait on it, while another one advances it.
+ */
+public class ManualClock implements NanoClock {
+    private final AtomicLong now;
+
+    // Wakes the threads waiting for the clock to reach a reading.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition advanced = lock.newCondition();
+
+    // The number of threads waiting on the clock, guarded by the lock.
+    private int waiting;
+
+    public ManualClock() {
+        this(0);
+    }
+
+    public ManualClock(long startNanos) {
+        this.now = new AtomicLong(startNanos);
+    }
+
+    @Override
+    public long nanoTime() {
+        return now.get();
+    }
+
+    /**
+     * Moves the clock forward.
+     * @param nanos The time to advance, in nanoseconds.
+     * @return The new reading of the clock.
+     */
+    public long advance(long nanos) {
+        if (nanos < 0) {
+            throw new IllegalArgumentException("The clock cannot go backwards.");
+        }
+        long reading = now.addAndGet(nanos);
+        lock.lock();
+        try {
+            advanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return reading;
+    }
+
+    /**
+     * Moves the clock forward.
+     * @param duration The time to advance.
+     * @param unit The unit of the duration.
+     * @return The new reading of the clock.
+     */
+    public long advance(long duration, TimeUnit unit) {
+        return advance(unit.toNanos(duration));
+    }
+
+    /**
+     * Blocks the calling thread until the clock is advanced up to a reading.
+     */
+    @Override
+    public void parkUntil(long deadline) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            waiting++;
+            try {
+                while (deadline - now.get() > 0) {
+                    advanced.await();
+                }
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of threads waiting for the clock to be advanced, so that simulations can tell
+     * when every actor is blocked.
+     */
+    public int getWaitingThreads() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package es.mlrdevs97.throttling;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A monotonic source of time with nanosecond resolution, from which the buckets count their ticks.
+ * <p>
+ * Only differences between two readings are meaningful, as with {@link System#nanoTime()}.
+ * Buckets use {@link #SYSTEM} unless given another clock, such as a {@link ManualClock} in tests and simulations.
+ */
+@FunctionalInterface
+public interface NanoClock {
+    /**
+     * The clock of the running JVM.
+     */
+    NanoClock SYSTEM = System::nanoTime;
+
+    /**
+     * @return The current reading of the clock, in nanoseconds.
+     */
+    long nanoTime();
+
+    /**
+     * Blocks the calling thread until the clock reaches a reading.
+     * The thread is parked rather than spinning or waiting on a monitor, so waiting virtual threads
+     * release their carrier thread.
+     * @param deadline The reading to wait for, in nanoseconds.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    default void parkUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
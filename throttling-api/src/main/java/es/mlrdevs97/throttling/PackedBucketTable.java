@@ -0,0 +1,613 @@
+package es.mlrdevs97.throttling;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * A keyed store of token or leaky buckets that keeps every client in a packed table of longs,
+ * instead of one bucket object and one map entry per client.
+ * <p>
+ * The table is split in stripes. Each stripe is an open-addressing {@code long[]} where a slot takes two
+ * adjacent longs: the 64-bit hash of the client key and the bucket state word of {@link BucketAlgorithm}.
+ * Keys are hashed straight from their characters, and decisions update the state word in place with
+ * compare-and-set, so an allowed or throttled request allocates nothing. Only adding a new client takes
+ * the lock of its stripe.
+ * <p>
+ * Clients are told apart by their 64-bit key hash alone: two keys with the same hash share a bucket.
+ * <p>
+ * The memory is allocated up front and never grows. When a stripe is full, idle clients are evicted to make
+ * room; if none is idle, new clients are refused until one becomes idle.
+ * <p>
+ * Each stripe carries its own capacity and rate, so that the table can be reconfigured a stripe at a time,
+ * the states of a stripe being converted to the new limits as it is rebuilt.
+ * <p>
+ * The busy buckets can be checkpointed to a file and restored after a restart, so that clients do not come back
+ * to full buckets. The file is written through a memory mapping, in a fixed-width little-endian layout that is read
+ * back without parsing:
+ * <pre>
+ * offset  size  field
+ *      0     8  magic number
+ *      8     4  layout version
+ *     12     4  algorithm ordinal
+ *     16     8  capacity
+ *     24     8  rate
+ *     32     8  wall-clock time of the checkpoint, in milliseconds since the epoch
+ *     40     8  record count
+ *     48     8  CRC-32 of the records
+ *     56     8  reserved
+ *     64  16 n  records: key hash, then state minus the tick of the checkpoint
+ * </pre>
+ */
+public class PackedBucketTable implements KeyedLimiter, Reconfigurable {
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle STRIPES = MethodHandles.arrayElementVarHandle(long[][].class);
+    private static final VarHandle LIMITS = MethodHandles.arrayElementVarHandle(BucketLimits[].class);
+
+    // The key hash of a slot that was never used. Real key hashes are never 0.
+    private static final long FREE = 0;
+
+    // The state of a slot whose client was evicted. The slot can be reused by another client.
+    private static final long EVICTED = Long.MIN_VALUE + 1;
+
+    // The maximum fraction of slots in use, so that probing always ends on a free slot.
+    private static final double MAX_LOAD = 0.75;
+
+    // The number of keys below which the table uses a single stripe.
+    private static final int KEYS_PER_STRIPE = 1024;
+
+    // "BKTCKPT" followed by a zero byte, read as a little-endian long.
+    private static final long CHECKPOINT_MAGIC = 0x0054504B43544B42L;
+    private static final int CHECKPOINT_VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_BYTES = 16;
+
+    private final BucketAlgorithm algorithm;
+
+    // The capacity and rate of every bucket, as last configured. Guarded by the lock of the table.
+    private BucketLimits configured;
+
+    // The source of time, and its reading from which ticks are counted.
+    private final NanoClock clock;
+    private final long startTime;
+
+    // Each stripe stores slot i as its key hash at [2 * i] and its state at [2 * i + 1].
+    private final long[][] stripes;
+
+    // The capacity and rate each stripe is counted with. They only differ while the table is reconfigured.
+    // A stripe is always published after its limits, and read before them.
+    private final BucketLimits[] limits;
+
+    // Guard the addition of clients and the compaction of each stripe.
+    private final ReentrantLock[] locks;
+
+    // The number of non-free slots of each stripe, guarded by the stripe lock.
+    private final int[] used;
+
+    private final int stripeShift;
+    private final int slotMask;
+    private final int maxUsed;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public PackedBucketTable(BucketAlgorithm algorithm, long capacity, long rate, int maxKeys) {
+        this(algorithm, capacity, rate, maxKeys, nextPowerOfTwo(Math.min(
+                Math.max(1, maxKeys / KEYS_PER_STRIPE), 4 * Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * @param algorithm The bucket algorithm of every client.
+     * @param capacity The capacity of each client's bucket.
+     * @param rate The refill (or leak) rate of each client's bucket, per second.
+     * @param maxKeys The number of clients the table must be able to hold.
+     * @param stripeCount The number of stripes, rounded up to a power of two.
+     */
+    public PackedBucketTable(BucketAlgorithm algorithm, long capacity, long rate, int maxKeys, int stripeCount) {
+        this(algorithm, capacity, rate, maxKeys, stripeCount, NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param algorithm The bucket algorithm of every client.
+     * @param capacity The capacity of each client's bucket.
+     * @param rate The refill (or leak) rate of each client's bucket, per second, up to {@link BucketAlgorithm#MAX_RATE}.
+     * @param maxKeys The number of clients the table must be able to hold.
+     * @param stripeCount The number of stripes, rounded up to a power of two.
+     * @param clock The source of time of the buckets.
+     */
+    public PackedBucketTable(BucketAlgorithm algorithm, long capacity, long rate, int maxKeys, int stripeCount,
+                             NanoClock clock) {
+        BucketAlgorithm.checkRate(rate);
+        if (maxKeys <= 0 || stripeCount <= 0) {
+            throw new IllegalArgumentException("The maximum number of keys and the stripe count must be positive.");
+        }
+
+        int stripesLength = nextPowerOfTwo(stripeCount);
+        int slotsPerStripe = nextPowerOfTwo(Math.max(2, (int) Math.ceil((double) maxKeys / stripesLength / MAX_LOAD)));
+        if (slotsPerStripe > 1 << 29) {
+            throw new IllegalArgumentException("Too many keys per stripe. Use more stripes.");
+        }
+
+        this.algorithm = algorithm;
+        this.configured = new BucketLimits(capacity, rate);
+        this.clock = clock;
+        this.startTime = clock.nanoTime();
+        this.stripes = new long[stripesLength][];
+        this.limits = new BucketLimits[stripesLength];
+        this.locks = new ReentrantLock[stripesLength];
+        this.used = new int[stripesLength];
+        for (int i = 0; i < stripesLength; i++) {
+            stripes[i] = new long[2 * slotsPerStripe];
+            limits[i] = configured;
+            locks[i] = new ReentrantLock();
+        }
+        this.stripeShift = 64 - Integer.numberOfTrailingZeros(stripesLength);
+        this.slotMask = slotsPerStripe - 1;
+        this.maxUsed = Math.min(slotsPerStripe - 1, Math.max(1, (int) (slotsPerStripe * MAX_LOAD)));
+    }
+
+    @Override
+    public Outcome tryAcquire(String key, long permits, Decision decision) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("The number of permits must be positive.");
+        }
+
+        long hash = hash(key);
+        int stripe = stripeOf(hash);
+        long timeElapsed = timeElapsed();
+        while (true) {
+            long[] slots = (long[]) STRIPES.getAcquire(stripes, stripe);
+            BucketLimits limits = (BucketLimits) LIMITS.getAcquire(this.limits, stripe);
+            long now = limits.now(timeElapsed);
+            int index = find(slots, hash);
+            if (index < 0) {
+                if (!insert(stripe, hash, limits, algorithm.initialState(now, limits.capacity))) {
+                    return Outcome.KEY_LIMIT_REACHED;
+                }
+                continue;
+            }
+
+            while (true) {
+                long state = (long) SLOTS.getVolatile(slots, index + 1);
+                if (state == EVICTED || (long) SLOTS.getAcquire(slots, index) != hash) {
+                    break; // The client was evicted or moved meanwhile, or its stripe reconfigured: look it up again.
+                }
+
+                long next = algorithm.acquire(state, now, limits.capacity, permits);
+                if (next == BucketAlgorithm.DENIED) {
+                    if (decision != null) {
+                        limits.describe(algorithm, decision, false, state, now, timeElapsed, permits);
+                    }
+                    return Outcome.THROTTLED;
+                }
+                if (SLOTS.compareAndSet(slots, index + 1, state, next)) {
+                    if (decision != null) {
+                        limits.describe(algorithm, decision, true, next, now, timeElapsed, permits);
+                    }
+                    return Outcome.GRANTED;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long getLevel(String key) {
+        long hash = hash(key);
+        int stripe = stripeOf(hash);
+        long[] slots = (long[]) STRIPES.getAcquire(stripes, stripe);
+        BucketLimits limits = (BucketLimits) LIMITS.getAcquire(this.limits, stripe);
+        int index = find(slots, hash);
+        if (index < 0) {
+            return 0;
+        }
+
+        long state = (long) SLOTS.getVolatile(slots, index + 1);
+        return state == EVICTED ? 0 : algorithm.getLevel(state, limits.now(timeElapsed()), limits.capacity);
+    }
+
+    /**
+     * Marks every idle client as evicted. Evicted slots are reused by new clients without allocating.
+     * @return The number of clients evicted.
+     */
+    @Override
+    public int evictIdle() {
+        int evicted = 0;
+        long timeElapsed = timeElapsed();
+        for (int stripe = 0; stripe < stripes.length; stripe++) {
+            locks[stripe].lock();
+            try {
+                evicted += evictIdle(stripes[stripe], limits[stripe], timeElapsed);
+            } finally {
+                locks[stripe].unlock();
+            }
+        }
+        return evicted;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Changes the capacity and rate of every bucket, keeping the share of its capacity that is free.
+     * The stripes are rebuilt one at a time: requests keep being decided meanwhile, except those of new clients
+     * and of the clients of the stripe being rebuilt, which wait for it to be copied.
+     */
+    @Override
+    public synchronized void reconfigure(long capacity, long rate) {
+        BucketLimits.check(capacity, rate);
+        BucketLimits next = new BucketLimits(capacity, rate);
+        for (int stripe = 0; stripe < stripes.length; stripe++) {
+            locks[stripe].lock();
+            try {
+                rebuild(stripe, next);
+            } finally {
+                locks[stripe].unlock();
+            }
+        }
+        configured = next;
+    }
+
+    /**
+     * Writes the busy buckets to a file, replacing it once complete, so that a crash while writing leaves the
+     * previous checkpoint in place. Idle buckets are left out, as they are restored full (or empty) anyway.
+     * <p>
+     * Requests keep being decided while the table is written: each bucket is saved as it was at some point
+     * during the checkpoint.
+     * @param file The checkpoint file. A sibling file with the ".tmp" suffix is written first.
+     * @return The number of buckets written.
+     * @throws IOException if the file cannot be written. The previous checkpoint, if any, is left as it was.
+     */
+    public int checkpoint(Path file) throws IOException {
+        return checkpoint(file, System.currentTimeMillis());
+    }
+
+    synchronized int checkpoint(Path file, long epochMillis) throws IOException {
+        // Every stripe is counted with the configured limits, as reconfiguring takes the lock of the table too.
+        BucketLimits limits = configured;
+        long now = limits.now(timeElapsed());
+        long busy = 0;
+        for (int stripe = 0; stripe < stripes.length; stripe++) {
+            busy += countBusy((long[]) STRIPES.getAcquire(stripes, stripe), limits, now);
+        }
+        if (HEADER_BYTES + busy * RECORD_BYTES > Integer.MAX_VALUE) {
+            throw new IOException("Too many keys to checkpoint in a single mapping: " + busy + ".");
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int written = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + busy * RECORD_BYTES);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            // Keys added since the count wait for the next checkpoint.
+            int position = HEADER_BYTES;
+            for (int stripe = 0; stripe < stripes.length && written < busy; stripe++) {
+                long[] slots = (long[]) STRIPES.getAcquire(stripes, stripe);
+                for (int index = 0; index < slots.length && written < busy; index += 2) {
+                    long hash = (long) SLOTS.getAcquire(slots, index);
+                    long state = (long) SLOTS.getVolatile(slots, index + 1);
+                    if (hash == FREE || state == EVICTED || algorithm.isIdle(state, now, limits.capacity)) {
+                        continue;
+                    }
+                    buffer.putLong(position, hash);
+                    buffer.putLong(position + 8, state - now);
+                    position += RECORD_BYTES;
+                    written++;
+                }
+            }
+
+            buffer.putLong(0, CHECKPOINT_MAGIC);
+            buffer.putInt(8, CHECKPOINT_VERSION);
+            buffer.putInt(12, algorithm.ordinal());
+            buffer.putLong(16, limits.capacity);
+            buffer.putLong(24, limits.rate);
+            buffer.putLong(32, epochMillis);
+            buffer.putLong(40, written);
+            buffer.putLong(48, checksum(buffer, written));
+            buffer.force();
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    /**
+     * Adds the buckets of a checkpoint to the table, aged by the wall-clock time elapsed since it was written.
+     * Keys already in the table, buckets that became idle meanwhile and keys that do not fit are skipped.
+     * <p>
+     * A checkpoint written with another algorithm, capacity or rate is ignored, so that a change of limits
+     * starts afresh.
+     * @param file The checkpoint file.
+     * @return The number of buckets restored, or 0 if the file does not exist or was written for other limits.
+     * @throws IOException if the file cannot be read, or is not a complete checkpoint.
+     */
+    public int restore(Path file) throws IOException {
+        return restore(file, System.currentTimeMillis());
+    }
+
+    synchronized int restore(Path file, long epochMillis) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException ex) {
+            return 0;
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.capacity() < HEADER_BYTES || buffer.getLong(0) != CHECKPOINT_MAGIC
+                || buffer.getInt(8) != CHECKPOINT_VERSION) {
+            throw new IOException("Not a bucket checkpoint: " + file + ".");
+        }
+        long count = buffer.getLong(40);
+        if (count < 0 || count > (buffer.capacity() - HEADER_BYTES) / RECORD_BYTES
+                || buffer.getLong(48) != checksum(buffer, (int) count)) {
+            throw new IOException("Incomplete bucket checkpoint: " + file + ".");
+        }
+        BucketLimits limits = configured;
+        if (buffer.getInt(12) != algorithm.ordinal() || buffer.getLong(16) != limits.capacity || buffer.getLong(24) != limits.rate) {
+            return 0;
+        }
+
+        // The wall clock may have been set back meanwhile: then no time is assumed to have passed.
+        long elapsedMillis = Math.max(0, epochMillis - buffer.getLong(32));
+        long elapsedTicks = BucketAlgorithm.ticks(Math.min(elapsedMillis, Long.MAX_VALUE / 4 / 1_000_000L) * 1_000_000L, limits.rate);
+        long now = limits.now(timeElapsed());
+        int restored = 0;
+        for (int record = 0; record < count; record++) {
+            int position = HEADER_BYTES + record * RECORD_BYTES;
+            long hash = buffer.getLong(position);
+            long state = now + buffer.getLong(position + 8) - elapsedTicks;
+            if (hash == FREE || algorithm.isIdle(state, now, limits.capacity)) {
+                continue;
+            }
+
+            int stripe = stripeOf(hash);
+            if (find((long[]) STRIPES.getAcquire(stripes, stripe), hash) < 0 && insert(stripe, hash, limits, state)) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Finds the slot of a client.
+     * @return The index of the key hash of the client's slot, or -1 if the client is not in the table.
+     */
+    private int find(long[] slots, long hash) {
+        int slot = (int) hash & slotMask;
+        for (int probes = 0; probes <= slotMask; probes++) {
+            int index = slot << 1;
+            long current = (long) SLOTS.getAcquire(slots, index);
+            if (current == FREE) {
+                return -1;
+            }
+            if (current == hash && (long) SLOTS.getVolatile(slots, index + 1) != EVICTED) {
+                return index;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a client to its stripe, unless another thread already did.
+     * @param limits The limits the initial state was computed with. If the stripe was reconfigured since,
+     * nothing is added, and the caller looks the client up again.
+     * @return false if the stripe is full and no idle client could be evicted.
+     */
+    private boolean insert(int stripe, long hash, BucketLimits limits, long initial) {
+        ReentrantLock lock = locks[stripe];
+        lock.lock();
+        try {
+            long[] slots = stripes[stripe];
+            if (find(slots, hash) >= 0 || this.limits[stripe] != limits) {
+                return true;
+            }
+
+            int index = findInsertionSlot(slots, hash);
+            if ((long) SLOTS.getAcquire(slots, index) == FREE && used[stripe] >= maxUsed) {
+                long timeElapsed = timeElapsed();
+                evictIdle(slots, limits, timeElapsed);
+                index = findInsertionSlot(slots, hash);
+                if ((long) SLOTS.getAcquire(slots, index) == FREE) {
+                    slots = compact(stripe);
+                    if (slots == null) {
+                        return false;
+                    }
+                    index = findInsertionSlot(slots, hash);
+                }
+            }
+
+            if ((long) SLOTS.getAcquire(slots, index) == FREE) {
+                // Publish the state before the key, so that a reader finding the key also sees its state.
+                SLOTS.setVolatile(slots, index + 1, initial);
+                SLOTS.setRelease(slots, index, hash);
+                used[stripe]++;
+            } else {
+                // Readers skip the slot until its state is no longer evicted.
+                SLOTS.setVolatile(slots, index, hash);
+                SLOTS.setVolatile(slots, index + 1, initial);
+            }
+            size.incrementAndGet();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finds where a client would be added: the first evicted slot on its probe path, or else the free slot ending it.
+     */
+    private int findInsertionSlot(long[] slots, long hash) {
+        int slot = (int) hash & slotMask;
+        while (true) {
+            int index = slot << 1;
+            if ((long) SLOTS.getAcquire(slots, index) == FREE || (long) SLOTS.getVolatile(slots, index + 1) == EVICTED) {
+                return index;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    /**
+     * Marks the idle clients of a stripe as evicted. Must be called with the stripe lock held.
+     */
+    private int evictIdle(long[] slots, BucketLimits limits, long timeElapsed) {
+        long now = limits.now(timeElapsed);
+        int evicted = 0;
+        for (int index = 0; index < slots.length; index += 2) {
+            if ((long) SLOTS.getAcquire(slots, index) == FREE) {
+                continue;
+            }
+
+            long state = (long) SLOTS.getVolatile(slots, index + 1);
+            if (state != EVICTED && algorithm.isIdle(state, now, limits.capacity)
+                    && SLOTS.compareAndSet(slots, index + 1, state, EVICTED)) {
+                evicted++;
+            }
+        }
+        size.addAndGet(-evicted);
+        return evicted;
+    }
+
+    /**
+     * Rebuilds a full stripe without its evicted and idle slots, so that they become free again.
+     * Must be called with the stripe lock held.
+     * @return The new stripe, or null if it would still be full.
+     */
+    private long[] compact(int stripe) {
+        if (countLive(stripes[stripe]) >= maxUsed) {
+            return null;
+        }
+        return rebuild(stripe, limits[stripe]);
+    }
+
+    /**
+     * Copies the busy clients of a stripe to a new stripe counted with the given limits, each keeping the share
+     * of its capacity that is free. Each state is frozen as evicted before it is copied, so that concurrent updates
+     * to the old stripe fail and their threads retry on the new one. The clock is read once every state is frozen:
+     * a request decided meanwhile may have read it after this thread began, and counting its state at an earlier
+     * tick would leave its debt behind. Must be called with the stripe lock held.
+     * @return The new stripe.
+     */
+    private long[] rebuild(int stripe, BucketLimits next) {
+        long[] slots = stripes[stripe];
+        BucketLimits previous = limits[stripe];
+        long[] frozen = new long[slots.length];
+        for (int index = 0; index < slots.length; index += 2) {
+            frozen[index] = (long) SLOTS.getAcquire(slots, index);
+            frozen[index + 1] = frozen[index] == FREE ? EVICTED : (long) SLOTS.getAndSet(slots, index + 1, EVICTED);
+        }
+        long timeElapsed = timeElapsed();
+        long before = previous.now(timeElapsed);
+        long after = next.now(timeElapsed);
+
+        long[] rebuilt = new long[slots.length];
+        int copied = 0;
+        int dropped = 0;
+        for (int index = 0; index < frozen.length; index += 2) {
+            long hash = frozen[index];
+            long state = frozen[index + 1];
+            if (state == EVICTED) {
+                continue;
+            }
+            if (algorithm.isIdle(state, before, previous.capacity)) {
+                dropped++;
+                continue;
+            }
+
+            int target = findInsertionSlot(rebuilt, hash);
+            rebuilt[target] = hash;
+            rebuilt[target + 1] = next == previous ? state : algorithm.stateAt(after,
+                    BucketLimits.scale(algorithm.getRemaining(state, before, previous.capacity), previous.capacity, next.capacity),
+                    next.capacity);
+            copied++;
+        }
+
+        size.addAndGet(-dropped);
+        used[stripe] = copied;
+        LIMITS.setRelease(limits, stripe, next);
+        STRIPES.setRelease(stripes, stripe, rebuilt);
+        return rebuilt;
+    }
+
+    /**
+     * Counts the clients of a stripe whose bucket is not idle.
+     */
+    private int countBusy(long[] slots, BucketLimits limits, long now) {
+        int busy = 0;
+        for (int index = 0; index < slots.length; index += 2) {
+            long state = (long) SLOTS.getVolatile(slots, index + 1);
+            if ((long) SLOTS.getAcquire(slots, index) != FREE && state != EVICTED && !algorithm.isIdle(state, now, limits.capacity)) {
+                busy++;
+            }
+        }
+        return busy;
+    }
+
+    /**
+     * Computes the CRC-32 of the records of a checkpoint, so that a truncated or torn file is not restored.
+     */
+    private static long checksum(MappedByteBuffer buffer, int count) {
+        CRC32 crc = new CRC32();
+        ByteBuffer records = buffer.duplicate();
+        records.position(HEADER_BYTES);
+        records.limit(HEADER_BYTES + count * RECORD_BYTES);
+        crc.update(records);
+        return crc.getValue();
+    }
+
+    private static int countLive(long[] slots) {
+        int live = 0;
+        for (int index = 0; index < slots.length; index += 2) {
+            if ((long) SLOTS.getAcquire(slots, index) != FREE && (long) SLOTS.getVolatile(slots, index + 1) != EVICTED) {
+                live++;
+            }
+        }
+        return live;
+    }
+
+    private int stripeOf(long hash) {
+        return stripes.length == 1 ? 0 : (int) (hash >>> stripeShift);
+    }
+
+    private long timeElapsed() {
+        return Math.max(0, clock.nanoTime() - startTime);
+    }
+
+    /**
+     * Hashes a key to 64 bits without copying it: FNV-1a over its characters, followed by the MurmurHash3 finalizer
+     * so that both the high bits (stripe) and the low bits (slot) are well mixed.
+     */
+    static long hash(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == FREE ? 1 : hash;
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+}
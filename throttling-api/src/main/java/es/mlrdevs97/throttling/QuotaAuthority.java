@@ -0,0 +1,30 @@
+package es.mlrdevs97.throttling;
+
+/**
+ * Owns the global budget of each client key when several nodes enforce a single limit together.
+ * <p>
+ * Nodes do not ask the authority about every request: a {@link LeasedLimiter} leases a chunk of permits and serves
+ * requests from it locally, so an implementation backed by a remote store costs a round trip per chunk rather than
+ * per request. Implementations must be thread-safe, and may block for the duration of a round trip.
+ */
+public interface QuotaAuthority {
+
+    /**
+     * Leases as many permits of a key's budget as possible, within bounds. The permits leased are taken from the
+     * budget until they are released.
+     * @param key The client key.
+     * @param minPermits The fewest permits worth leasing: if fewer are left, none is leased.
+     * @param maxPermits The most permits to lease.
+     * @param decision Filled with the details of the lease as a decision on the key's budget, throttled if nothing
+     * was leased, or null if only the outcome matters.
+     * @return The number of permits leased, between {@code minPermits} and {@code maxPermits}, or 0.
+     */
+    long lease(String key, long minPermits, long maxPermits, Decision decision);
+
+    /**
+     * Gives unused leased permits back to a key's budget, so that other nodes can lease them.
+     * @param key The client key.
+     * @param permits The number of permits given back.
+     */
+    void release(String key, long permits);
+}
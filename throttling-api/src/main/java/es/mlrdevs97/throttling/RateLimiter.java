@@ -0,0 +1,46 @@
+package es.mlrdevs97.throttling;
+
+/**
+ * Common operations of the rate limiting algorithms, used by components that work with any of them.
+ */
+public interface RateLimiter {
+
+    /**
+     * Attempts to let a single request through the limiter.
+     * @return true if the request is allowed, false if it is throttled.
+     */
+    default boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Attempts to let a weighted request through the limiter, taking all its permits in a single step.
+     * @param permits The cost of the request, in tokens or queue slots.
+     * @return true if the request is allowed, false if it is throttled.
+     */
+    default boolean tryAcquire(long permits) {
+        return tryAcquire(permits, null);
+    }
+
+    /**
+     * Attempts to let a weighted request through the limiter, and describes the decision in the same step.
+     * @param permits The cost of the request, in tokens or queue slots.
+     * @param decision Filled with the details of the decision, or null if only the outcome matters.
+     * @return true if the request is allowed, false if it is throttled.
+     */
+    boolean tryAcquire(long permits, Decision decision);
+
+    /**
+     * Gets the current fill level of the limiter, as reported to clients.
+     * @return The tokens left in a token bucket, the requests queued in a leaky bucket,
+     * or the permits counted in the current window of a sliding window limiter.
+     */
+    long getLevel();
+
+    /**
+     * Tells whether the limiter is back to its initial state, i.e. it has seen no activity for at least
+     * the time it takes to fully recover. An idle limiter can be dropped and recreated without changing any decision.
+     * @return true if the limiter is idle.
+     */
+    boolean isIdle();
+}
@@ -0,0 +1,16 @@
+package es.mlrdevs97.throttling;
+
+/**
+ * A limiter whose capacity and rate can be changed while it is in use, without starting afresh.
+ */
+public interface Reconfigurable {
+
+    /**
+     * Changes the capacity and rate, keeping the share of the capacity that is free: a bucket with half its tokens
+     * left still has half of the new capacity left, rounded down. Requests keep being decided meanwhile, and those
+     * racing with the change may still be decided under the previous limits.
+     * @param capacity The new capacity.
+     * @param rate The new rate, per second, up to {@link BucketAlgorithm#MAX_RATE}.
+     */
+    void reconfigure(long capacity, long rate);
+}
@@ -0,0 +1,197 @@
+package es.mlrdevs97.throttling;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implements the Sliding Window Counter algorithm: an approximation of the sliding window log in constant memory.
+ * <p>
+ * Time is split in fixed windows, and only the permits granted in the current and the previous one are counted.
+ * The permits in the rolling window are estimated as if those of the previous window had been granted evenly:
+ * {@code previous * (1 - elapsed fraction of the current window) + current}. A request is granted if its permits
+ * fit under the limit on top of that estimate. Unlike a fixed window, there is no double burst at window edges.
+ * <p>
+ * The three counters are only read and updated together, under a {@link ReentrantLock}, as in {@link SlidingWindowLog}.
+ */
+public class SlidingWindowCounter implements RateLimiter {
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    // The longest window supported, so that times a window apart never overflow.
+    public static final long MAX_WINDOW_MILLIS = Long.MAX_VALUE / 4 / NANOS_PER_MILLI;
+
+    // The maximum number of permits granted in any window.
+    private final long LIMIT;
+
+    // The length of the window, in nanoseconds.
+    private final long WINDOW;
+
+    // The source of time, and its reading from which windows are counted.
+    private final NanoClock clock;
+    private final long startTime;
+
+    // The index of the current window, and the permits granted in it and in the one before it.
+    private long window;
+    private long current;
+    private long previous;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public SlidingWindowCounter(long limit, long windowMillis) {
+        this(limit, windowMillis, NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param limit The maximum number of permits granted in any window.
+     * @param windowMillis The length of the window, in milliseconds.
+     * @param clock The source of time of the counter.
+     */
+    public SlidingWindowCounter(long limit, long windowMillis, NanoClock clock) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive.");
+        }
+        if (windowMillis <= 0 || windowMillis > MAX_WINDOW_MILLIS) {
+            throw new IllegalArgumentException("The window must be a positive number of milliseconds.");
+        }
+
+        this.LIMIT = limit;
+        this.WINDOW = windowMillis * NANOS_PER_MILLI;
+        this.clock = clock;
+        this.startTime = clock.nanoTime();
+    }
+
+    @Override
+    public boolean tryAcquire(long permits, Decision decision) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("The number of permits must be positive.");
+        }
+
+        lock.lock();
+        try {
+            long now = timeElapsed();
+            roll(now);
+            boolean granted = permits <= LIMIT - estimate(now);
+            if (granted) {
+                current += permits;
+            }
+
+            if (decision != null) {
+                long level = estimate(now);
+                // After a grant, wait for one more permit to fit; after a throttle, for the same request to fit.
+                long retryAfter = waitFor(granted ? 1 : permits, now);
+                decision.set(granted, level, Math.max(0, LIMIT - level), LIMIT, retryAfter, drainedIn(now));
+            }
+            return granted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The estimated number of permits granted in the rolling window.
+     */
+    @Override
+    public long getLevel() {
+        lock.lock();
+        try {
+            long now = timeElapsed();
+            roll(now);
+            return estimate(now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The counter is idle once no permit was granted in the current window nor in the previous one.
+     */
+    @Override
+    public boolean isIdle() {
+        lock.lock();
+        try {
+            roll(timeElapsed());
+            return current == 0 && previous == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the counters on to the window the given time falls in.
+     */
+    private void roll(long now) {
+        long index = now / WINDOW;
+        if (index == window) {
+            return;
+        }
+        previous = index == window + 1 ? current : 0;
+        current = 0;
+        window = index;
+    }
+
+    /**
+     * @return The estimated permits in the rolling window, counting a fraction of a permit as a whole one.
+     */
+    private long estimate(long now) {
+        return previous - scale(previous, now - window * WINDOW) + current;
+    }
+
+    /**
+     * Computes how long until the given permits fit under the limit, if no more are granted meanwhile.
+     */
+    private long waitFor(long permits, long now) {
+        if (permits > LIMIT) {
+            return Decision.NEVER;
+        }
+
+        long intoWindow = now - window * WINDOW;
+        long room = LIMIT - current - permits;
+        if (room >= 0) {
+            return Math.max(0, decayedTo(previous, room) - intoWindow);
+        }
+        // Not before the next window, where the current permits start to decay in turn.
+        return WINDOW - intoWindow + decayedTo(current, LIMIT - permits);
+    }
+
+    /**
+     * @return How far into a window the given permits, granted in the window before, weigh no more than the room.
+     */
+    private long decayedTo(long permits, long room) {
+        if (permits <= room) {
+            return 0;
+        }
+        return WINDOW - scale(room, WINDOW, permits);
+    }
+
+    /**
+     * @return How long until every permit granted so far is out of the rolling window.
+     */
+    private long drainedIn(long now) {
+        long leftInWindow = WINDOW - (now - window * WINDOW);
+        if (current > 0) {
+            return leftInWindow + WINDOW;
+        }
+        return previous > 0 ? leftInWindow : 0;
+    }
+
+    /**
+     * @return The given permits scaled by a fraction of the window, rounded down.
+     */
+    private long scale(long permits, long nanos) {
+        return scale(permits, nanos, WINDOW);
+    }
+
+    /**
+     * @return {@code value * numerator / denominator}, rounded down, without overflowing the product when it fits in
+     * a long and approximated otherwise.
+     */
+    private static long scale(long value, long numerator, long denominator) {
+        long product = value * numerator;
+        if (Math.multiplyHigh(value, numerator) == 0 && product >= 0) {
+            return product / denominator;
+        }
+        return (long) ((double) value * numerator / denominator);
+    }
+
+    private long timeElapsed() {
+        return Math.max(0, clock.nanoTime() - startTime);
+    }
+}
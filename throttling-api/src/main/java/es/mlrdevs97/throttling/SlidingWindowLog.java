@@ -0,0 +1,209 @@
+package es.mlrdevs97.throttling;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Implements the Sliding Window Log algorithm: at most {@code limit} permits are granted in any rolling window.
+ * <p>
+ * The log keeps the time of the last {@code limit} permits granted in a ring buffer of longs, oldest first. A request
+ * of {@code n} permits fits in the window if the n-th oldest entry has expired, since the newer entries are the only
+ * ones that can still count. The limit is exact at any instant, with no burst at window edges, at the cost of memory
+ * proportional to the permits granted in a window.
+ * <p>
+ * The ring starts small, and doubles, up to the limit, only when the entry it would overwrite is still in the window.
+ * The entries it has no room for are older than all the others, and treated as expired. So a client costs memory for
+ * the permits it was actually granted in a window, not for those it could be, and logging allocates nothing once the
+ * ring has grown to the client's pace.
+ * <p>
+ * The ring buffer is guarded by a lock rather than a monitor, so that waiting virtual threads do not pin their carriers.
+ */
+public class SlidingWindowLog implements RateLimiter {
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    // The longest window supported, so that times a window apart never overflow.
+    public static final long MAX_WINDOW_MILLIS = Long.MAX_VALUE / 4 / NANOS_PER_MILLI;
+
+    // The highest limit supported, so that the log of a client never takes more than 64 KB.
+    public static final long MAX_LIMIT = 8192;
+
+    // The entries the ring holds at first.
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The time logged in the slots no permit was granted in yet: expired whatever the current time.
+    private static final long NEVER_GRANTED = Long.MIN_VALUE / 2;
+
+    // The maximum number of permits granted in any window.
+    private final long LIMIT;
+
+    // The length of the window, in nanoseconds.
+    private final long WINDOW;
+
+    // The source of time, and its reading from which logged times are counted.
+    private final NanoClock clock;
+    private final long startTime;
+
+    // The time each of the last granted permits was granted, in nanoseconds, oldest first from 'head'. The entries
+    // older than those it holds, up to the limit, are expired.
+    private long[] log;
+
+    // The slot of the oldest entry, where the next permit is logged.
+    private int head;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public SlidingWindowLog(long limit, long windowMillis) {
+        this(limit, windowMillis, NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param limit The maximum number of permits granted in any window. Up to one long is allocated per permit.
+     * @param windowMillis The length of the window, in milliseconds.
+     * @param clock The source of time of the log.
+     */
+    public SlidingWindowLog(long limit, long windowMillis, NanoClock clock) {
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("The limit must be between 1 and " + MAX_LIMIT + ".");
+        }
+        if (windowMillis <= 0 || windowMillis > MAX_WINDOW_MILLIS) {
+            throw new IllegalArgumentException("The window must be a positive number of milliseconds.");
+        }
+
+        this.LIMIT = limit;
+        this.WINDOW = windowMillis * NANOS_PER_MILLI;
+        this.clock = clock;
+        this.startTime = clock.nanoTime();
+        this.log = new long[(int) Math.min(limit, INITIAL_CAPACITY)];
+        Arrays.fill(log, NEVER_GRANTED);
+    }
+
+    @Override
+    public boolean tryAcquire(long permits, Decision decision) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("The number of permits must be positive.");
+        }
+
+        lock.lock();
+        try {
+            long now = timeElapsed();
+            boolean granted = permits <= LIMIT && isExpired(slot(permits - 1), now);
+            if (granted) {
+                for (long i = 0; i < permits; i++) {
+                    append(now);
+                }
+            }
+
+            if (decision != null) {
+                describe(decision, granted, now, permits);
+            }
+            return granted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of permits granted in the current window.
+     */
+    @Override
+    public long getLevel() {
+        lock.lock();
+        try {
+            return countInWindow(timeElapsed());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The log is idle once its newest entry has expired.
+     */
+    @Override
+    public boolean isIdle() {
+        lock.lock();
+        try {
+            return isExpired(slot(LIMIT - 1), timeElapsed());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void describe(Decision decision, boolean granted, long now, long permits) {
+        long count = countInWindow(now);
+        long retryAfter;
+        if (permits > LIMIT) {
+            retryAfter = Decision.NEVER;
+        } else {
+            // After a grant, wait for one more permit to fit; after a throttle, for the same request to fit.
+            retryAfter = expiresIn(slot(granted ? 0 : permits - 1), now);
+        }
+        decision.set(granted, count, LIMIT - count, LIMIT, retryAfter, expiresIn(slot(LIMIT - 1), now));
+    }
+
+    /**
+     * Logs a permit in place of the oldest entry, or in a ring twice as large if that entry is still in the window.
+     */
+    private void append(long now) {
+        if (!isExpired(log[head], now) && log.length < LIMIT) {
+            grow();
+        }
+        log[head] = now;
+        head = head + 1 == log.length ? 0 : head + 1;
+    }
+
+    /**
+     * Doubles the ring, up to the limit. The entries keep their order, after expired ones filling the new room.
+     */
+    private void grow() {
+        int length = (int) Math.min(LIMIT, 2L * log.length);
+        long[] grown = new long[length];
+        int room = length - log.length;
+        Arrays.fill(grown, 0, room, NEVER_GRANTED);
+        System.arraycopy(log, head, grown, room, log.length - head);
+        System.arraycopy(log, 0, grown, room + log.length - head, head);
+        log = grown;
+        head = 0;
+    }
+
+    /**
+     * Counts the entries still in the window. They are sorted, so the first one still in it is found by bisection.
+     */
+    private long countInWindow(long now) {
+        long low = 0;
+        long high = LIMIT;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (isExpired(slot(middle), now)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return LIMIT - low;
+    }
+
+    /**
+     * @param age The position of an entry, from 0 for the oldest to limit - 1 for the newest.
+     * @return The time logged in the entry.
+     */
+    private long slot(long age) {
+        long dropped = LIMIT - log.length;
+        if (age < dropped) {
+            return NEVER_GRANTED; // Older than every entry the ring holds.
+        }
+        long index = head + age - dropped;
+        return log[(int) (index >= log.length ? index - log.length : index)];
+    }
+
+    private boolean isExpired(long time, long now) {
+        return now - time >= WINDOW;
+    }
+
+    private long expiresIn(long time, long now) {
+        return Math.max(0, time + WINDOW - now);
+    }
+
+    private long timeElapsed() {
+        return Math.max(0, clock.nanoTime() - startTime);
+    }
+}
@@ -0,0 +1,383 @@
+package es.mlrdevs97.throttling;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs tasks after a delay on a single thread, for timers counted in millions: the releases of held requests,
+ * the sweeps of idle buckets and the other housekeeping of the limiters.
+ * <p>
+ * Time is cut into ticks, and each level of the wheel has 64 slots: a slot of the first level holds the timers
+ * of one tick, a slot of the next level those of 64 ticks, and so on. A timer is linked into the slot of the
+ * highest level where its deadline differs from the current tick, and moved down a level each time the wheel
+ * reaches that slot, so scheduling and cancelling take constant time whatever the number of timers, and each tick
+ * only visits the timers due in it.
+ * <p>
+ * Scheduling and cancelling threads do not touch the slots: they push the timer onto a lock-free stack that the
+ * wheel thread drains at every tick, so the slots need no lock. A timer is a single small object, linked into
+ * its slot through its own fields. Deadlines are rounded up to the next tick, so timers never fire early, and
+ * fire up to a tick late.
+ * <p>
+ * The thread is only started by the first timer, and only wakes once a tick while there are timers. Tasks run on it
+ * one after the other, so they must be short: dispatching a request, not processing it.
+ */
+public class TimingWheel implements AutoCloseable {
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(Timer.class, "state", int.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    // The slots of a level, as a power of two.
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = (Long.SIZE + SLOT_BITS - 1) / SLOT_BITS;
+
+    // The states of a timer.
+    private static final int PENDING = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    private static final int CANCELLED = 3;
+
+    // The slot of a timer that is not linked into the wheel.
+    private static final int UNLINKED = -1;
+
+    private final long TICK;
+    private final NanoClock clock;
+    private final long startTime;
+    private final String threadName;
+
+    // The first timer of each slot, level after level. Only touched by the wheel thread.
+    private final Timer[] slots = new Timer[LEVELS * SLOTS];
+
+    // The timers scheduled and cancelled since the last tick, for the wheel thread to link and unlink.
+    private final AtomicReference<Timer> scheduled = new AtomicReference<>();
+    private final AtomicReference<Timer> cancelled = new AtomicReference<>();
+
+    // The last tick processed, and the number of timers linked into the slots. Only touched by the wheel thread.
+    private long currentTick;
+    private int linked;
+
+    private final AtomicReference<Thread> worker = new AtomicReference<>();
+
+    // The tasks that threw. Only written by the wheel thread.
+    private volatile long failures;
+
+    // Whether the wheel thread is parked until a timer is scheduled, as there are none.
+    private volatile boolean idle;
+    private volatile boolean closed;
+
+    /**
+     * @param tickNanos The resolution of the timers, in nanoseconds.
+     * @param threadName The name of the thread running the tasks.
+     */
+    public TimingWheel(long tickNanos, String threadName) {
+        this(tickNanos, threadName, NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param tickNanos The resolution of the timers, in nanoseconds.
+     * @param threadName The name of the thread running the tasks.
+     * @param clock The source of time of the timers.
+     */
+    public TimingWheel(long tickNanos, String threadName, NanoClock clock) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("The tick must be positive.");
+        }
+        this.TICK = tickNanos;
+        this.threadName = threadName;
+        this.clock = clock;
+        this.startTime = clock.nanoTime();
+    }
+
+    /**
+     * Runs a task once, after a delay.
+     * @param delayNanos The delay, in nanoseconds. The task runs as soon as the wheel thread gets to it if it is not
+     * positive.
+     * @return The timer, to cancel the task.
+     * @throws RejectedExecutionException if the wheel is closed.
+     */
+    public Timer schedule(Runnable task, long delayNanos) {
+        return add(new Timer(task, deadlineAfter(delayNanos), 0));
+    }
+
+    /**
+     * Runs a task every period, until its timer is cancelled. Each run is a period after the tick of the previous
+     * one, so runs are not bunched up after a slow one.
+     * @param periodNanos The period, in nanoseconds.
+     * @return The timer, to stop the task.
+     * @throws RejectedExecutionException if the wheel is closed.
+     */
+    public Timer scheduleRepeatedly(Runnable task, long periodNanos) {
+        if (periodNanos <= 0) {
+            throw new IllegalArgumentException("The period must be positive.");
+        }
+        long periodTicks = (Math.min(periodNanos, Long.MAX_VALUE / 2) + TICK - 1) / TICK;
+        return add(new Timer(task, deadlineAfter(periodNanos), periodTicks));
+    }
+
+    /**
+     * @return The number of times a task threw an exception. A repeating task still runs at its next period.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Stops the wheel thread. The tasks still scheduled never run, and new ones are rejected.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread thread = worker.get();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * @return The first tick at or after the delay, so that the timer never fires early.
+     */
+    private long deadlineAfter(long delayNanos) {
+        long elapsed = clock.nanoTime() - startTime + Math.min(Math.max(0, delayNanos), Long.MAX_VALUE / 2);
+        return (elapsed + TICK - 1) / TICK;
+    }
+
+    private Timer add(Timer timer) {
+        if (closed) {
+            throw new RejectedExecutionException("The timing wheel is closed.");
+        }
+        push(scheduled, timer, false);
+        Thread thread = worker.get();
+        if (thread == null) {
+            start();
+        } else if (idle) {
+            LockSupport.unpark(thread);
+        }
+        return timer;
+    }
+
+    private void start() {
+        Thread thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        if (worker.compareAndSet(null, thread)) {
+            thread.start();
+        } else {
+            LockSupport.unpark(worker.get()); // Started by another thread meanwhile, maybe already idle.
+        }
+    }
+
+    /**
+     * Pushes a timer onto a stack drained by the wheel thread, through its 'next' field or its 'nextCancelled' one.
+     */
+    private static void push(AtomicReference<Timer> stack, Timer timer, boolean cancellation) {
+        while (true) {
+            Timer top = stack.get();
+            if (cancellation) {
+                timer.nextCancelled = top;
+            } else {
+                timer.next = top;
+            }
+            if (stack.compareAndSet(top, timer)) {
+                return;
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                unlinkCancelled();
+                linkScheduled();
+                advanceTo((clock.nanoTime() - startTime) / TICK);
+                if (scheduled.get() != null) {
+                    continue; // Scheduled by the tasks just run, maybe already due.
+                }
+                if (linked == 0) {
+                    // Nothing to wait for: sleep until a timer is scheduled, checking again once marked idle.
+                    idle = true;
+                    if (scheduled.get() == null && !closed) {
+                        LockSupport.park(this);
+                    }
+                    idle = false;
+                } else {
+                    clock.parkUntil(startTime + (currentTick + 1) * TICK);
+                }
+            }
+        } catch (InterruptedException ex) {
+            // Closed.
+        }
+    }
+
+    private void unlinkCancelled() {
+        for (Timer timer = cancelled.getAndSet(null); timer != null; ) {
+            Timer next = timer.nextCancelled;
+            timer.nextCancelled = null;
+            if (timer.slot != UNLINKED) {
+                unlink(timer);
+                timer.task = null;
+            }
+            timer = next;
+        }
+    }
+
+    private void linkScheduled() {
+        for (Timer timer = scheduled.getAndSet(null); timer != null; ) {
+            Timer next = timer.next;
+            timer.next = null;
+            if ((int) STATE.getVolatile(timer) == PENDING) {
+                link(timer);
+            } else {
+                timer.task = null;
+            }
+            timer = next;
+        }
+    }
+
+    /**
+     * Processes every tick up to the given one: moves the timers of the higher levels whose slot is reached down
+     * the wheel, and runs those of the first level.
+     */
+    private void advanceTo(long tick) {
+        while (currentTick < tick) {
+            if (linked == 0) {
+                currentTick = tick; // Nothing can fire in between.
+                return;
+            }
+            long next = currentTick + 1;
+            currentTick = next;
+            // A slot of level L is reached when the lower levels wrap around: cascade from the highest one.
+            int wrapped = next == 0 ? LEVELS - 1 : Math.min(LEVELS - 1, Long.numberOfTrailingZeros(next) / SLOT_BITS);
+            for (int level = wrapped; level >= 0; level--) {
+                int slot = level * SLOTS + (int) ((next >>> (level * SLOT_BITS)) & (SLOTS - 1));
+                Timer timer = slots[slot];
+                while (timer != null) {
+                    Timer following = timer.next;
+                    unlink(timer);
+                    if (timer.deadline <= next) {
+                        expire(timer);
+                    } else {
+                        link(timer);
+                    }
+                    timer = following;
+                }
+            }
+        }
+    }
+
+    /**
+     * Links a timer into the slot of the highest level where its deadline differs from the current tick, which is
+     * reached before the deadline and within the current turn of that level. Timers already due run at once.
+     */
+    private void link(Timer timer) {
+        long deadline = timer.deadline;
+        if (deadline <= currentTick) {
+            expire(timer);
+            return;
+        }
+        int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(deadline ^ currentTick)) / SLOT_BITS;
+        int slot = level * SLOTS + (int) ((deadline >>> (level * SLOT_BITS)) & (SLOTS - 1));
+        Timer first = slots[slot];
+        timer.next = first;
+        timer.prev = null;
+        if (first != null) {
+            first.prev = timer;
+        }
+        slots[slot] = timer;
+        timer.slot = slot;
+        linked++;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            slots[timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.next = null;
+        timer.prev = null;
+        timer.slot = UNLINKED;
+        linked--;
+    }
+
+    /**
+     * Runs the task of a timer, unless it was cancelled, and links it again if it repeats.
+     */
+    private void expire(Timer timer) {
+        if (!STATE.compareAndSet(timer, PENDING, RUNNING)) {
+            return;
+        }
+        try {
+            timer.task.run();
+        } catch (RuntimeException ex) {
+            failures++; // Counted rather than printed, which would hold up every timer behind it.
+        }
+        if (timer.period > 0 && STATE.compareAndSet(timer, RUNNING, PENDING)) {
+            timer.deadline = currentTick + timer.period;
+            link(timer);
+        } else {
+            STATE.compareAndSet(timer, RUNNING, DONE);
+            timer.task = null;
+        }
+    }
+
+    /**
+     * A task scheduled on the wheel.
+     */
+    public final class Timer {
+        private Runnable task;
+
+        // The tick the task is due at, and the ticks between its runs if it repeats.
+        private long deadline;
+        private final long period;
+
+        // Not private, for the VarHandle lookup from the outer class.
+        volatile int state = PENDING;
+
+        // The links of the timer in its slot or in the stack of scheduled timers, and in the stack of cancelled ones.
+        private Timer next;
+        private Timer prev;
+        private Timer nextCancelled;
+        private int slot = UNLINKED;
+
+        private Timer(Runnable task, long deadline, long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        /**
+         * Stops the task from running again. The timer is unlinked at the next tick.
+         * @return true if the task will not run again, false if it has already run once and for all or was
+         * already cancelled.
+         */
+        public boolean cancel() {
+            while (true) {
+                int current = state;
+                if (current == DONE || current == CANCELLED) {
+                    return false;
+                }
+                if (STATE.compareAndSet(this, current, CANCELLED)) {
+                    if (current == PENDING) {
+                        push(cancelled, this, true);
+                    }
+                    return true;
+                }
+            }
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+    }
+}
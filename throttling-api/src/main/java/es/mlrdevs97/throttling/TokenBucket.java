@@ -1,61 +1,188 @@
 package es.mlrdevs97.throttling;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Implements the Token Bucket algorithm for rate limiting.
+ * <p>
+ * The bucket is lock-free. Instead of keeping the token count and the last refill time in two fields,
+ * its whole state is a single {@code long}: the refill tick at which the bucket is empty, where a tick is
+ * the time it takes to refill one token. The available tokens are the ticks elapsed since then, capped at
+ * the capacity, so refilling and consuming happen in one compare-and-set.
+ * <p>
+ * Ticks are counted from the creation of the bucket on a monotonic nanosecond clock, never from the previous
+ * call, so the fraction of a tick left over by one call is kept, and rates up to
+ * {@link BucketAlgorithm#MAX_RATE} per second are enforced exactly.
  */
-public class TokenBucket {
+public class TokenBucket implements RateLimiter, Reconfigurable {
+    private static final VarHandle EMPTY_TICK;
+    private static final VarHandle LIMITS;
 
-    // The maximum number of tokens the bucket can hold.
-    private final long CAPACITY;
+    static {
+        try {
+            EMPTY_TICK = MethodHandles.lookup().findVarHandle(TokenBucket.class, "emptyTick", long.class);
+            LIMITS = MethodHandles.lookup().findVarHandle(TokenBucket.class, "limits", BucketLimits.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
 
-    // The number of tokens added to the bucket per second.
-    private final long REFILL_RATE;
+    // The capacity and rate, replaced as a whole when reconfigured.
+    private volatile BucketLimits limits;
 
-    private long currentTokens;
-    private long lastRefillTime;
+    // The source of time, and its reading from which refill ticks are counted.
+    private final NanoClock clock;
+    private final long startTime;
+
+    // The refill tick at which the bucket holds no tokens.
+    private volatile long emptyTick;
 
     public TokenBucket(long capacity, long refillRate) {
-        this.CAPACITY = capacity;
-        this.REFILL_RATE = refillRate;
-        this.currentTokens = capacity; // Start with a full bucket.
-        this.lastRefillTime = System.currentTimeMillis();
+        this(capacity, refillRate, NanoClock.SYSTEM);
+    }
+
+    /**
+     * @param capacity The maximum number of tokens the bucket can hold.
+     * @param refillRate The number of tokens added per second, up to {@link BucketAlgorithm#MAX_RATE}.
+     * @param clock The source of time of the bucket.
+     */
+    public TokenBucket(long capacity, long refillRate, NanoClock clock) {
+        BucketAlgorithm.checkRate(refillRate);
+        this.limits = new BucketLimits(capacity, refillRate);
+        this.clock = clock;
+        this.startTime = clock.nanoTime();
+        this.emptyTick = BucketAlgorithm.TOKEN_BUCKET.initialState(0, capacity);
     }
 
     /**
      * Attempts to consume a single token from the bucket.
      * @return true if a token was consumed (request allowed), false otherwise (request throttled).
      */
-    public synchronized boolean tryConsume() {
-        refill();
-        if (currentTokens <= 0) {
-            return false;
-        }
+    public boolean tryConsume() {
+        return tryConsume(1);
+    }
 
-        currentTokens--;
-        return true;
+    /**
+     * Attempts to consume several tokens from the bucket in a single step.
+     * Either all the tokens are consumed or none is.
+     * @param tokens The number of tokens to consume.
+     * @return true if the tokens were consumed (request allowed), false otherwise (request throttled).
+     */
+    public boolean tryConsume(long tokens) {
+        return tryConsume(tokens, null);
     }
 
-    public synchronized long getCurrentTokens() {
-        refill();
-        return currentTokens;
+    /**
+     * Same as {@link #tryConsume(long)}, also describing the decision.
+     * @param tokens The number of tokens to consume.
+     * @param decision Filled with the details of the decision, or null.
+     * @return true if the tokens were consumed (request allowed), false otherwise.
+     */
+    public boolean tryConsume(long tokens, Decision decision) {
+        if (tokens <= 0) {
+            throw new IllegalArgumentException("The number of tokens must be positive.");
+        }
+
+        long timeElapsed = timeElapsed();
+        BucketLimits limits = this.limits;
+        long now = limits.now(timeElapsed);
+        while (true) {
+            long current = emptyTick;
+            long next = BucketAlgorithm.TOKEN_BUCKET.acquire(current, now, limits.capacity, tokens);
+            if (next == BucketAlgorithm.DENIED) {
+                if (decision != null) {
+                    limits.describe(BucketAlgorithm.TOKEN_BUCKET, decision, false, current, now, timeElapsed, tokens);
+                }
+                return false;
+            }
+
+            if (EMPTY_TICK.compareAndSet(this, current, next)) {
+                if (decision != null) {
+                    limits.describe(BucketAlgorithm.TOKEN_BUCKET, decision, true, next, now, timeElapsed, tokens);
+                }
+                return true;
+            }
+        }
     }
 
     /**
-     * Calculates and adds new tokens to the bucket based on the elapsed time.
+     * Waits until enough tokens are refilled, then consumes the tokens.
+     * <p>
+     * The exact wait is computed up front, and the tokens are reserved in the same compare-and-set, so waiters
+     * are served in the order they arrive: a large request is never starved by a stream of smaller ones, which
+     * queue behind it. The thread then parks on the clock, without spinning or holding a monitor, so thousands
+     * of virtual threads can wait on the same bucket without pinning their carriers.
+     * @param tokens The number of tokens to consume.
+     * @param timeout The longest time to wait.
+     * @param unit The unit of the timeout.
+     * @return true once the tokens are consumed, or false at once if that would take longer than the timeout.
+     * @throws InterruptedException if the thread is interrupted while waiting. The reserved tokens stay taken.
      */
-    private void refill() {
-        long now = System.currentTimeMillis();
-        long timeElapsed = now - lastRefillTime;
-        if (timeElapsed <= 0) {
-            return;
+    public boolean acquire(long tokens, long timeout, TimeUnit unit) throws InterruptedException {
+        if (tokens <= 0) {
+            throw new IllegalArgumentException("The number of tokens must be positive.");
         }
 
-        long tokensToAdd = (timeElapsed * REFILL_RATE) / 1000;
-        if (tokensToAdd <= 0) {
-            return;
+        long timeElapsed = timeElapsed();
+        BucketLimits limits = this.limits;
+        long now = limits.now(timeElapsed);
+        long maxWait = limits.deadlineTick(timeElapsed, unit.toNanos(timeout)) - now;
+        while (true) {
+            long current = emptyTick;
+            long wait = BucketAlgorithm.TOKEN_BUCKET.ticksUntil(current, now, limits.capacity, tokens);
+            if (wait > maxWait || wait == Long.MAX_VALUE) {
+                return false;
+            }
+
+            long next = BucketAlgorithm.TOKEN_BUCKET.acquire(current, now + wait, limits.capacity, tokens);
+            if (EMPTY_TICK.compareAndSet(this, current, next)) {
+                if (wait > 0) {
+                    clock.parkUntil(startTime + limits.nanosAt(now + wait));
+                }
+                return true;
+            }
         }
+    }
+
+    public long getCurrentTokens() {
+        BucketLimits limits = this.limits;
+        return BucketAlgorithm.TOKEN_BUCKET.getLevel(emptyTick, limits.now(timeElapsed()), limits.capacity);
+    }
+
+    @Override
+    public boolean tryAcquire(long permits, Decision decision) {
+        return tryConsume(permits, decision);
+    }
+
+    @Override
+    public long getLevel() {
+        return getCurrentTokens();
+    }
+
+    /**
+     * The bucket is idle once it has refilled up to its capacity.
+     */
+    @Override
+    public boolean isIdle() {
+        BucketLimits limits = this.limits;
+        return BucketAlgorithm.TOKEN_BUCKET.isIdle(emptyTick, limits.now(timeElapsed()), limits.capacity);
+    }
 
-        this.currentTokens = Math.min(CAPACITY, this.currentTokens + tokensToAdd);
-        this.lastRefillTime = now;
+    /**
+     * Changes the capacity and refill rate of the bucket, keeping the share of the capacity that is free.
+     * Requests keep being decided meanwhile, without waiting for the change.
+     */
+    @Override
+    public void reconfigure(long capacity, long refillRate) {
+        BucketLimits.reconfigure(BucketAlgorithm.TOKEN_BUCKET, EMPTY_TICK, LIMITS, this, clock, startTime, capacity, refillRate);
+    }
+
+    /**
+     * @return The time elapsed since the bucket was created, in nanoseconds.
+     */
+    private long timeElapsed() {
+        return Math.max(0, clock.nanoTime() - startTime);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,447 @@
+package es.mlrdevs97.filters;
+
+import es.mlrdevs97.throttling.ManualClock;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.FilterConfig;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static jakarta.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ThrottlingFilterTest {
+    @Mock
+    private FilterConfig config;
+
+    @Mock
+    private HttpServletRequest req;
+
+    @Mock
+    private HttpServletResponse res;
+
+    @Mock
+    private FilterChain chain;
+
+    @Mock
+    private ServletContext context;
+
+    private final ThrottlingFilter filter = new ThrottlingFilter();
+
+    @Nested
+    class Init {
+        @Test
+        void whenCapacityMissing_shouldFail() {
+            // Arrange
+            initParams("algorithm", "tokenBucket");
+
+            // Act & Assert
+            assertThrows(ServletException.class, () -> filter.init(config));
+        }
+
+        @Test
+        void whenRateNotPositive_shouldFail() {
+            // Arrange
+            initParams("capacity", "10", "rate", "0");
+
+            // Act & Assert
+            assertThrows(ServletException.class, () -> filter.init(config));
+        }
+
+        @Test
+        void whenAlgorithmUnknown_shouldFail() {
+            // Arrange
+            initParams("algorithm", "fixedWindow", "capacity", "10", "rate", "1");
+
+            // Act & Assert
+            assertThrows(ServletException.class, () -> filter.init(config));
+        }
+
+        @Test
+        void whenKeyByUnknown_shouldFail() {
+            // Arrange
+            initParams("capacity", "10", "rate", "1", "keyBy", "cookie");
+
+            // Act & Assert
+            assertThrows(ServletException.class, () -> filter.init(config));
+        }
+
+        @Test
+        void whenLeasingALeakyBucket_shouldFail() {
+            // Arrange
+            initParams("algorithm", "leakyBucket", "capacity", "10", "rate", "1", "store", "leased");
+
+            // Act & Assert
+            assertThrows(ServletException.class, () -> filter.init(config));
+        }
+
+        @Test
+        void whenCheckpointingAnUnpackedStore_shouldFail() {
+            // Arrange
+            initParams("capacity", "10", "rate", "1", "checkpointFile", "buckets.bin");
+
+            // Act & Assert
+            assertThrows(ServletException.class, () -> filter.init(config));
+        }
+
+        @Test
+        void whenCheckpointMillisIsNotPositive_shouldFailWithoutStartingTimers() {
+            // Arrange
+            initParams("capacity", "10", "rate", "1", "store", "packed", "checkpointFile", "buckets.bin",
+                    "checkpointMillis", "0");
+            long before = timerThreads();
+
+            // Act & Assert: destroy() is not called after a failed init, so nothing may be left running
+            assertThrows(ServletException.class, () -> filter.init(config));
+            assertTrue(timerThreads() <= before);
+        }
+
+        @Test
+        void whenCheckpointFileIsNotAPath_shouldFailWithoutStartingTimers() {
+            // Arrange
+            initParams("capacity", "10", "rate", "1", "store", "packed", "checkpointFile", "buckets\0.bin");
+            long before = timerThreads();
+
+            // Act & Assert
+            assertThrows(ServletException.class, () -> filter.init(config));
+            assertTrue(timerThreads() <= before);
+        }
+
+        @Test
+        void whenEvictIdleMillisIsNotPositive_shouldFail() {
+            // Arrange
+            initParams("capacity", "10", "rate", "1", "evictIdleMillis", "0");
+
+            // Act & Assert
+            assertThrows(ServletException.class, () -> filter.init(config));
+        }
+
+        @Test
+        void whenAdaptiveWithoutTargetLatency_shouldFail() {
+            // Arrange
+            initParams("algorithm", "adaptive", "capacity", "10");
+
+            // Act & Assert
+            assertThrows(ServletException.class, () -> filter.init(config));
+        }
+
+        @Test
+        void whenAuthorityIsNotAQuotaAuthority_shouldFail() {
+            // Arrange
+            initParams("capacity", "10", "rate", "1", "store", "leased", "authority", "java.lang.String");
+
+            // Act & Assert
+            assertThrows(ServletException.class, () -> filter.init(config));
+        }
+    }
+
+    @Nested
+    class Filtering {
+        @Test
+        void whenWithinLimit_shouldPassRequestDownTheChain() throws Exception {
+            // Arrange
+            configure("tokenBucket", "2", null);
+
+            // Act
+            filter.doFilter(req, res, chain);
+            filter.doFilter(req, res, chain);
+
+            // Assert
+            verify(chain, times(2)).doFilter(req, res);
+            verify(res, never()).setStatus(429);
+            verify(res).setHeader("RateLimit-Remaining", "0");
+        }
+
+        @Test
+        void whenLimitExceeded_shouldRejectBeforeTheChain() throws Exception {
+            // Arrange
+            configure("tokenBucket", "1", null);
+
+            // Act
+            filter.doFilter(req, res, chain);
+            filter.doFilter(req, res, chain);
+
+            // Assert
+            verify(chain, times(1)).doFilter(req, res);
+            verify(res).setStatus(429);
+            verify(res).setContentLength(0);
+            verify(res).setHeader("Retry-After", "1");
+        }
+
+        @Test
+        void whenLeakyBucketIsFull_shouldRejectBeforeTheChain() throws Exception {
+            // Arrange
+            configure("leakyBucket", "1", null);
+
+            // Act
+            filter.doFilter(req, res, chain);
+            filter.doFilter(req, res, chain);
+
+            // Assert
+            verify(chain, times(1)).doFilter(req, res);
+            verify(res).setStatus(429);
+        }
+
+        @Test
+        void whenGcraLimitExceeded_shouldRejectBeforeTheChain() throws Exception {
+            // Arrange
+            configure("gcra", "1", null);
+
+            // Act
+            filter.doFilter(req, res, chain);
+            filter.doFilter(req, res, chain);
+
+            // Assert
+            verify(chain, times(1)).doFilter(req, res);
+            verify(res).setStatus(429);
+            verify(res).setHeader("Retry-After", "1");
+        }
+
+        @Test
+        void whenLeasedLimitExceeded_shouldRejectBeforeTheChain() throws Exception {
+            // Arrange
+            initParams("capacity", "2", "rate", "1", "store", "leased");
+            filter.init(config);
+
+            // Act
+            filter.doFilter(req, res, chain);
+            filter.doFilter(req, res, chain);
+            filter.doFilter(req, res, chain);
+            filter.destroy();
+
+            // Assert
+            verify(chain, times(2)).doFilter(req, res);
+            verify(res).setStatus(429);
+        }
+
+        @Test
+        void whenRestarted_shouldKeepTheBucketsOfTheCheckpoint(@TempDir Path dir) throws Exception {
+            // Arrange
+            initParams("capacity", "2", "rate", "1", "store", "packed",
+                    "checkpointFile", dir.resolve("buckets.bin").toString());
+            when(config.getServletContext()).thenReturn(context);
+            filter.init(config);
+            filter.doFilter(req, res, chain);
+            filter.doFilter(req, res, chain);
+            filter.destroy();
+            ThrottlingFilter restarted = new ThrottlingFilter();
+            restarted.init(config);
+
+            // Act
+            restarted.doFilter(req, res, chain);
+            restarted.destroy();
+
+            // Assert
+            verify(chain, times(2)).doFilter(req, res);
+            verify(res).setStatus(429);
+            verify(context).log(contains("restored 1 buckets"));
+            assertEquals(0, filter.getHousekeepingFailures());
+        }
+
+        @Test
+        void whenCheckpointCannotBeSaved_shouldCountTheFailure(@TempDir Path dir) throws Exception {
+            // Arrange: the directory of the checkpoint does not exist
+            initParams("capacity", "2", "rate", "1", "store", "packed",
+                    "checkpointFile", dir.resolve("missing").resolve("buckets.bin").toString());
+            when(config.getServletContext()).thenReturn(context);
+            filter.init(config);
+
+            // Act
+            filter.destroy();
+
+            // Assert
+            verify(context).log(contains("restored 0 buckets"));
+            assertEquals(1, filter.getHousekeepingFailures());
+        }
+
+        @Test
+        void whenKeyedByIp_shouldLimitEachClientSeparately() throws Exception {
+            // Arrange
+            configure("tokenBucket", "1", "ip");
+            when(req.getRemoteAddr()).thenReturn("10.0.0.1", "10.0.0.2", "10.0.0.1");
+
+            // Act
+            filter.doFilter(req, res, chain);
+            filter.doFilter(req, res, chain);
+            filter.doFilter(req, res, chain);
+
+            // Assert
+            verify(chain, times(2)).doFilter(req, res);
+            verify(res, times(1)).setStatus(429);
+        }
+
+        @Test
+        void whenCostInvalid_shouldReturnBadRequest() throws Exception {
+            // Arrange
+            configure("tokenBucket", "1", null);
+            when(req.getParameter("cost")).thenReturn("abc");
+
+            // Act
+            filter.doFilter(req, res, chain);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            verify(chain, never()).doFilter(req, res);
+            verify(res, never()).setHeader(anyString(), anyString());
+        }
+
+        @Test
+        void whenShapingAndRequestMustWait_shouldHoldItAndPassItOnLater() throws Exception {
+            // Arrange: a request leaks every 10 ms, on a clock that only moves when told to
+            ManualClock clock = new ManualClock();
+            ThrottlingFilter shaper = new ThrottlingFilter(clock);
+            initParams("algorithm", "leakyBucket", "capacity", "5", "rate", "100", "mode", "shaping");
+            shaper.init(config);
+            AsyncContext async = mock(AsyncContext.class);
+            when(req.isAsyncSupported()).thenReturn(true);
+            when(req.startAsync()).thenReturn(async);
+
+            try {
+                // Act
+                shaper.doFilter(req, res, chain);
+                shaper.doFilter(req, res, chain);
+
+                // Assert: the first request goes on at once, and the second one is held until its turn
+                verify(chain, times(1)).doFilter(req, res);
+                verify(req).setAttribute(ThrottlingFilter.RELEASED, Boolean.TRUE);
+                verify(async).setTimeout(0);
+                clock.advance(9, TimeUnit.MILLISECONDS);
+                verify(async, after(50).never()).dispatch();
+
+                // Act & Assert: once its turn comes, it is dispatched again
+                clock.advance(1, TimeUnit.MILLISECONDS);
+                verify(async, timeout(2000)).dispatch();
+            } finally {
+                shaper.destroy();
+            }
+        }
+
+        @Test
+        void whenHeldRequestIsDispatchedAgain_shouldPassItOnWithoutCharging() throws Exception {
+            // Arrange
+            configure("tokenBucket", "1", null);
+            filter.doFilter(req, res, chain);
+            when(req.getDispatcherType()).thenReturn(DispatcherType.ASYNC);
+            when(req.getAttribute(ThrottlingFilter.RELEASED)).thenReturn(Boolean.TRUE);
+
+            // Act
+            filter.doFilter(req, res, chain);
+
+            // Assert
+            verify(chain, times(2)).doFilter(req, res);
+            verify(res, never()).setStatus(429);
+        }
+
+        @Test
+        void whenAdaptiveLimitReached_shouldRejectUntilASlotIsReleased() throws Exception {
+            // Arrange: a single slot, and a first request still in flight while the second one arrives
+            initParams("algorithm", "adaptive", "capacity", "1", "targetLatencyMillis", "100");
+            filter.init(config);
+            HttpServletRequest second = mock(HttpServletRequest.class);
+            HttpServletResponse secondRes = mock(HttpServletResponse.class);
+            doAnswer(invocation -> {
+                filter.doFilter(second, secondRes, chain);
+                return null;
+            }).when(chain).doFilter(req, res);
+
+            // Act
+            filter.doFilter(req, res, chain);
+            filter.doFilter(second, secondRes, chain);
+
+            // Assert: the slot was taken by the first request until it completed
+            verify(secondRes, times(1)).setStatus(429);
+            verify(chain, times(1)).doFilter(second, secondRes);
+            verify(res).setHeader("RateLimit-Remaining", "0");
+        }
+
+        @Test
+        void whenAdaptiveRequestGoesAsync_shouldHoldItsSlotUntilComplete() throws Exception {
+            // Arrange
+            initParams("algorithm", "adaptive", "capacity", "1", "targetLatencyMillis", "100");
+            filter.init(config);
+            AsyncContext async = mock(AsyncContext.class);
+            when(req.isAsyncStarted()).thenReturn(true);
+            when(req.getAsyncContext()).thenReturn(async);
+            HttpServletResponse secondRes = mock(HttpServletResponse.class);
+
+            // Act
+            filter.doFilter(req, res, chain);
+            filter.doFilter(mock(HttpServletRequest.class), secondRes, chain);
+
+            // Assert: the slot is given back by the listener once the response is complete
+            ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+            verify(async).addListener(listener.capture());
+            verify(secondRes).setStatus(429);
+            listener.getValue().onComplete(new AsyncEvent(async));
+            filter.doFilter(mock(HttpServletRequest.class), secondRes, chain);
+            verify(chain, times(2)).doFilter(any(), any());
+        }
+
+        @Test
+        void whenModeUnknown_shouldFail() {
+            // Arrange
+            initParams("capacity", "10", "rate", "1", "mode", "buffering");
+
+            // Act & Assert
+            assertThrows(ServletException.class, () -> filter.init(config));
+        }
+
+        private void configure(String algorithm, String capacity, String keyBy) throws ServletException {
+            initParams("algorithm", algorithm, "capacity", capacity, "rate", "1", "keyBy", keyBy);
+            filter.init(config);
+        }
+    }
+
+    /**
+     * Stubs the filter init parameters, given as name and value pairs. Any other parameter is missing.
+     */
+    private void initParams(String... namesAndValues) {
+        when(config.getInitParameter(anyString())).thenAnswer(invocation -> {
+            String name = invocation.getArgument(0);
+            for (int i = 0; i < namesAndValues.length; i += 2) {
+                if (namesAndValues[i].equals(name)) {
+                    return namesAndValues[i + 1];
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @return The number of live timer threads of the filters.
+     */
+    private static long timerThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("throttling-filter-timers"))
+                .count();
+    }
+}
@@ -0,0 +1,127 @@
+package es.mlrdevs97.logging;
+
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.ManualClock;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecisionLogTest {
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final PrintStream out = new PrintStream(output, true);
+
+    @Test
+    void whenDecisionsAreRecorded_thenTheWriterWritesThemInOrder() {
+        // Arrange
+        DecisionLog log = new DecisionLog(16, 1, 10, out, new ManualClock(), false);
+
+        // Act
+        log.record("token_bucket", "10.0.0.1", KeyedLimiter.Outcome.GRANTED, 1, 4);
+        log.record("token_bucket", "10.0.0.2", KeyedLimiter.Outcome.THROTTLED, 2, 0);
+        int written = log.drain();
+
+        // Assert
+        String[] lines = output.toString().split("\n");
+        assertEquals(2, written);
+        assertTrue(lines[0].endsWith(" token_bucket GRANTED key=10.0.0.1 cost=1 level=4"));
+        assertTrue(lines[1].endsWith(" token_bucket THROTTLED key=10.0.0.2 cost=2 level=0"));
+        assertEquals(0, log.drain());
+    }
+
+    @Test
+    void whenTheBufferIsFull_thenDecisionsAreDroppedAndCounted() {
+        // Arrange
+        DecisionLog log = new DecisionLog(4, 1, 10, out, new ManualClock(), false);
+
+        // Act
+        for (int i = 0; i < 6; i++) {
+            log.record("gcra", "client-" + i, KeyedLimiter.Outcome.GRANTED, 1, 0);
+        }
+        int written = log.drain();
+        log.record("gcra", "client-6", KeyedLimiter.Outcome.GRANTED, 1, 0);
+
+        // Assert
+        assertEquals(4, written);
+        assertEquals(2, log.getDropped());
+        assertTrue(output.toString().contains("Decision log: 2 decisions dropped (buffer full), 0 denials not logged"));
+        assertEquals(1, log.drain());
+    }
+
+    @Test
+    void whenDenialsFlood_thenOnlyTheirRateIsLogged() {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        DecisionLog log = new DecisionLog(64, 1, 2, out, clock, false);
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            log.record("leaky_bucket", "attacker", KeyedLimiter.Outcome.THROTTLED, 1, 10);
+        }
+        int burst = log.drain();
+        clock.advance(500, TimeUnit.MILLISECONDS);
+        log.record("leaky_bucket", "attacker", KeyedLimiter.Outcome.KEY_LIMIT_REACHED, 1, 0);
+        log.record("leaky_bucket", "attacker", KeyedLimiter.Outcome.THROTTLED, 1, 10);
+
+        // Assert
+        assertEquals(2, burst);
+        assertEquals(1, log.drain());
+        assertEquals(4, log.getSuppressed());
+    }
+
+    @Test
+    void whenGrantedDecisionsAreSampled_thenAboutOneInNIsLogged() {
+        // Arrange
+        DecisionLog log = new DecisionLog(4096, 10, 10, out, new ManualClock(), false);
+
+        // Act
+        for (int i = 0; i < 20_000; i++) {
+            log.record("token_bucket", "client", KeyedLimiter.Outcome.GRANTED, 1, 0);
+        }
+        int written = log.drain();
+
+        // Assert
+        assertTrue(written > 1_500 && written < 2_500, "written " + written);
+        assertEquals(0, log.getDropped());
+    }
+
+    @Test
+    void whenManyThreadsRecordAtOnce_thenEveryDecisionIsWrittenOrCounted() throws InterruptedException {
+        // Arrange
+        DecisionLog log = new DecisionLog(256, 1, 10, out, new ManualClock(), true);
+        int threadCount = 4;
+        int perThread = 5_000;
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            String key = "client-" + t;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    log.record("token_bucket", key, KeyedLimiter.Outcome.GRANTED, 1, i);
+                }
+            });
+            threads[t].start();
+        }
+
+        // Act
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        log.close();
+
+        // Assert
+        long lines = output.toString().split("\n").length;
+        long reports = output.toString().split("Decision log:", -1).length - 1;
+        assertEquals(threadCount * perThread, lines - reports + log.getDropped());
+    }
+}
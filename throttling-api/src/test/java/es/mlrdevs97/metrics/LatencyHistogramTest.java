@@ -0,0 +1,48 @@
+package es.mlrdevs97.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void whenDurationsAreRecorded_thenBucketsAreCumulative() {
+        // Arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+        StringBuilder out = new StringBuilder();
+
+        // Act
+        histogram.record(80);
+        histogram.record(100);
+        histogram.record(700);
+        histogram.record(5_000_000);
+        histogram.writeTo(out, "decision_seconds", "limiter=\"test\",");
+
+        // Assert
+        String text = out.toString();
+        assertTrue(text.contains("decision_seconds_bucket{limiter=\"test\",le=\"0.0000001\"} 2\n"));
+        assertTrue(text.contains("decision_seconds_bucket{limiter=\"test\",le=\"0.00000025\"} 2\n"));
+        assertTrue(text.contains("decision_seconds_bucket{limiter=\"test\",le=\"0.000001\"} 3\n"));
+        assertTrue(text.contains("decision_seconds_bucket{limiter=\"test\",le=\"0.001\"} 3\n"));
+        assertTrue(text.contains("decision_seconds_bucket{limiter=\"test\",le=\"+Inf\"} 4\n"));
+        assertTrue(text.contains("decision_seconds_sum{limiter=\"test\"} 0.00500088\n"));
+        assertTrue(text.contains("decision_seconds_count{limiter=\"test\"} 4\n"));
+    }
+
+    @Test
+    void whenNothingIsRecorded_thenEveryBucketIsZero() {
+        // Arrange
+        LatencyHistogram histogram = new LatencyHistogram();
+        StringBuilder out = new StringBuilder();
+
+        // Act
+        histogram.writeTo(out, "decision_seconds", "");
+
+        // Assert
+        String text = out.toString();
+        assertEquals(LatencyHistogram.BOUNDS.length + 3, text.split("\n").length);
+        assertTrue(text.contains("decision_seconds_bucket{le=\"+Inf\"} 0\n"));
+        assertTrue(text.contains("decision_seconds_count 0\n"));
+    }
+}
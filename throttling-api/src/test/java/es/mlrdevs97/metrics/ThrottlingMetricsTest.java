@@ -0,0 +1,88 @@
+package es.mlrdevs97.metrics;
+
+import es.mlrdevs97.throttling.AdaptiveConcurrencyLimiter;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.LimiterRegistry;
+import es.mlrdevs97.throttling.ManualClock;
+import es.mlrdevs97.throttling.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThrottlingMetricsTest {
+
+    @Test
+    void whenDecisionsAreRecorded_thenTheyAreCountedByLimiterKeyClassAndOutcome() {
+        // Arrange
+        ThrottlingMetrics metrics = new ThrottlingMetrics();
+        DecisionMetrics byIp = metrics.decisions("token_bucket", "ip");
+
+        // Act
+        byIp.record(KeyedLimiter.Outcome.GRANTED, 300);
+        byIp.record(KeyedLimiter.Outcome.GRANTED, 300);
+        byIp.record(KeyedLimiter.Outcome.THROTTLED, 200);
+        metrics.decisions("gcra", "global").record(KeyedLimiter.Outcome.KEY_LIMIT_REACHED, 100);
+        String text = metrics.render();
+
+        // Assert
+        assertSame(byIp, metrics.decisions("token_bucket", "ip"));
+        assertEquals(2, byIp.getGranted());
+        assertTrue(text.contains("# TYPE throttling_decisions_total counter\n"));
+        assertTrue(text.contains("throttling_decisions_total{limiter=\"token_bucket\",key_class=\"ip\",outcome=\"granted\"} 2\n"));
+        assertTrue(text.contains("throttling_decisions_total{limiter=\"token_bucket\",key_class=\"ip\",outcome=\"throttled\"} 1\n"));
+        assertTrue(text.contains("throttling_decisions_total{limiter=\"gcra\",key_class=\"global\",outcome=\"key_limit_reached\"} 1\n"));
+        assertTrue(text.contains("throttling_decision_duration_seconds_count{limiter=\"token_bucket\",key_class=\"ip\"} 3\n"));
+        assertTrue(text.indexOf("limiter=\"gcra\"") < text.indexOf("limiter=\"token_bucket\""));
+    }
+
+    @Test
+    void whenALimiterIsTracked_thenItsGaugesAreReadAtRenderTime() {
+        // Arrange
+        ThrottlingMetrics metrics = new ThrottlingMetrics();
+        KeyedLimiter shared = new LimiterRegistry<>(() -> new TokenBucket(10, 1, new ManualClock()), 100);
+        metrics.track("token_bucket", shared, "");
+
+        // Act
+        shared.tryAcquire("", 3);
+        String text = metrics.render();
+
+        // Assert
+        assertTrue(text.contains("# TYPE throttling_level gauge\n"));
+        assertTrue(text.contains("throttling_tracked_keys{limiter=\"token_bucket\"} 1\n"));
+        assertTrue(text.contains("throttling_level{limiter=\"token_bucket\"} 7\n"));
+    }
+
+    @Test
+    void whenALimiterIsReconfiguredPerClient_thenItsLevelGaugeIsDropped() {
+        // Arrange
+        ThrottlingMetrics metrics = new ThrottlingMetrics();
+        metrics.track("token_bucket", new LimiterRegistry<>(() -> new TokenBucket(10, 1), 100), "");
+
+        // Act
+        metrics.track("token_bucket", new LimiterRegistry<>(() -> new TokenBucket(10, 1), 100), null);
+        String text = metrics.render();
+
+        // Assert
+        assertTrue(text.contains("throttling_tracked_keys{limiter=\"token_bucket\"} 0\n"));
+        assertFalse(text.contains("throttling_level{"));
+    }
+
+    @Test
+    void whenAnAdaptiveLimiterIsTracked_thenItsLimitAndRequestsInFlightAreGauged() {
+        // Arrange
+        ThrottlingMetrics metrics = new ThrottlingMetrics();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 1, 100, 1_000_000);
+        metrics.track("adaptive", limiter);
+
+        // Act
+        limiter.tryAcquire(null);
+        String text = metrics.render();
+
+        // Assert
+        assertTrue(text.contains("# TYPE throttling_concurrency_limit gauge\n"));
+        assertTrue(text.contains("throttling_concurrency_limit{limiter=\"adaptive\"} 8\n"));
+        assertTrue(text.contains("throttling_level{limiter=\"adaptive\"} 1\n"));
+        assertFalse(text.contains("throttling_tracked_keys{limiter=\"adaptive\"}"));
+    }
+
+}
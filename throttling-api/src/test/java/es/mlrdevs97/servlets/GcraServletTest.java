@@ -0,0 +1,387 @@
+package es.mlrdevs97.servlets;
+
+import es.mlrdevs97.throttling.Decision;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+
+import static jakarta.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static jakarta.servlet.http.HttpServletResponse.SC_OK;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class GcraServletTest {
+    @Mock
+    private HttpServletRequest req;
+
+    @Mock
+    private HttpServletResponse res;
+
+    @Mock
+    private KeyedLimiter mockLimiter;
+
+    @InjectMocks
+    private GcraServlet servlet;
+
+    private StringWriter stringWriter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stringWriter = new StringWriter();
+        PrintWriter printWriter = new PrintWriter(stringWriter);
+        // POST requests answer through the writer, and GET requests through the output stream.
+        lenient().when(res.getWriter()).thenReturn(printWriter);
+        lenient().when(res.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                // Writes never block.
+            }
+
+            @Override
+            public void write(int b) {
+                stringWriter.write(b); // The bodies are ASCII.
+            }
+        });
+    }
+
+    @Nested
+    class GetRequests {
+        @Test
+        void whenLimiterNotConfigured_shouldReturnBadRequest() throws IOException, NoSuchFieldException, IllegalAccessException {
+            // Arrange: Use reflection to set the private field to null for this test
+            Field limiterField = KeyedLimiterServlet.class.getDeclaredField("apiLimiters");
+            limiterField.setAccessible(true);
+            limiterField.set(servlet, null);
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("GCRA limiter not configured"));
+        }
+
+        @Test
+        void whenRequestConforms_shouldReturnOk() throws IOException {
+            // Arrange: the request conforms
+            when(mockLimiter.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.GRANTED);
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_OK);
+            assertTrue(stringWriter.toString().contains("Request processed."));
+        }
+
+        @Test
+        void whenRequestDoesNotConform_shouldReturnTooManyRequests() throws IOException {
+            // Arrange: the request would push its arrival time too far ahead
+            when(mockLimiter.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.THROTTLED);
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(429);
+            assertTrue(stringWriter.toString().contains("Too Many Requests. Please try again later."));
+        }
+
+        @Test
+        void whenCostParamGiven_shouldChargeItInOneDecision() throws IOException {
+            // Arrange
+            when(req.getParameter(CostExtractor.COST_PARAM)).thenReturn("500");
+            when(mockLimiter.tryAcquire(anyString(), eq(500L), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.GRANTED);
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(mockLimiter).tryAcquire(eq(""), eq(500L), any(Decision.class));
+            verify(res).setStatus(SC_OK);
+        }
+
+        @Test
+        void whenCostInvalid_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter(CostExtractor.COST_PARAM)).thenReturn("-3");
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid request cost."));
+        }
+
+        @Test
+        void whenRequestAllowed_shouldSendRateLimitHeaders() throws IOException {
+            // Arrange: the decision leaves 3 of 10 permits, and the limit resets in 2.5 seconds
+            when(mockLimiter.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(true, 3, 3, 10, 0, 2_500_000_000L);
+                return KeyedLimiter.Outcome.GRANTED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_OK);
+            verify(res).setHeader("RateLimit-Limit", "10");
+            verify(res).setHeader("RateLimit-Remaining", "3");
+            verify(res).setHeader("RateLimit-Reset", "3");
+            verify(res, never()).setHeader(eq("Retry-After"), anyString());
+            assertTrue(stringWriter.toString().contains("\"remaining\": 3"));
+        }
+
+        @Test
+        void whenRequestThrottled_shouldSendRetryAfter() throws IOException {
+            // Arrange: the request could be let through in 0.2 seconds
+            when(mockLimiter.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(false, 0, 0, 10, 200_000_000L, 2_000_000_000L);
+                return KeyedLimiter.Outcome.THROTTLED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(429);
+            verify(res).setHeader("RateLimit-Remaining", "0");
+            verify(res).setHeader("Retry-After", "1");
+        }
+
+        @Test
+        void whenRequestCostsMoreThanTheLimit_shouldNotSendRetryAfter() throws IOException {
+            // Arrange
+            when(mockLimiter.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(false, 3, 3, 10, Decision.NEVER, 0);
+                return KeyedLimiter.Outcome.THROTTLED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(429);
+            verify(res, never()).setHeader(eq("Retry-After"), anyString());
+        }
+
+        @Test
+        void whenClientLimitReached_shouldReturnTooManyRequests() throws IOException {
+            // Arrange: the registry has no room for a new client key
+            when(mockLimiter.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.KEY_LIMIT_REACHED);
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(429);
+            assertTrue(stringWriter.toString().contains("Too many clients. Please try again later."));
+        }
+    }
+
+    @Nested
+    class PostRequests {
+        @Test
+        void whenParamsMissing_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn(null);
+            when(req.getParameter("rate")).thenReturn(null);
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Missing 'capacity' or 'rate' parameters."));
+        }
+
+        @Test
+        void whenParamsBlank_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("");
+            when(req.getParameter("rate")).thenReturn("");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Missing 'capacity' or 'rate' parameters."));
+        }
+
+        @Test
+        void whenParamsINVALID_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("invalid");
+            when(req.getParameter("rate")).thenReturn("invalid");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'capacity' or 'rate' format. Must be numbers."));
+        }
+
+        @Test
+        void whenParamsNotGreaterThanZero_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("0");
+            when(req.getParameter("rate")).thenReturn("0");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'capacity' or 'rate' value. Must be valid positive numbers."));
+        }
+
+        @Test
+        void whenRateAboveMaximum_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("10");
+            when(req.getParameter("rate")).thenReturn("1000000001");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'rate' value. Must not exceed 1000000000 per second."));
+        }
+
+        @Test
+        void whenParametersValid_shouldReturnOk() throws Exception {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("10");
+            when(req.getParameter("rate")).thenReturn("5");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_OK);
+            assertTrue(stringWriter.toString().contains("GCRA limiter configured successfully"));
+        }
+
+        @Test
+        void whenStoreIsPacked_shouldLimitWithPackedTable() throws Exception {
+            // Arrange: select the packed store as the 'store' init parameter would
+            Field storeField = GcraServlet.class.getDeclaredField("packedStore");
+            storeField.setAccessible(true);
+            storeField.set(servlet, true);
+            when(req.getParameter("capacity")).thenReturn("1");
+            when(req.getParameter("rate")).thenReturn("1");
+
+            // Act
+            servlet.doPost(req, res);
+            servlet.doGet(req, res);
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res, times(2)).setStatus(SC_OK);
+            verify(res).setStatus(429);
+            assertTrue(stringWriter.toString().contains("Too Many Requests. Please try again later."));
+        }
+
+        @Test
+        void whenCostByBytes_shouldChargeThePayloadSize() throws IOException {
+            // Arrange: configure a bandwidth limit of 1000 bytes
+            when(req.getParameter("capacity")).thenReturn("1000");
+            when(req.getParameter("rate")).thenReturn("100");
+            when(req.getParameter("keyBy")).thenReturn("global");
+            when(req.getParameter("costBy")).thenReturn("bytes");
+            servlet.doPost(req, res);
+            when(req.getContentLengthLong()).thenReturn(600L);
+
+            // Act
+            servlet.doGet(req, res);
+            servlet.doGet(req, res);
+
+            // Assert: the second payload does not fit in what is left
+            verify(res, times(2)).setStatus(SC_OK);
+            verify(res).setStatus(429);
+            assertTrue(stringWriter.toString().contains("\"costBy\": \"bytes\""));
+        }
+
+        @Test
+        void whenCostByInvalid_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("10");
+            when(req.getParameter("rate")).thenReturn("5");
+            when(req.getParameter("keyBy")).thenReturn("global");
+            when(req.getParameter("costBy")).thenReturn("items");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'costBy' value."));
+        }
+
+        @Test
+        void whenKeyByInvalid_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("10");
+            when(req.getParameter("rate")).thenReturn("5");
+            when(req.getParameter("keyBy")).thenReturn("cookie");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'keyBy' value."));
+        }
+
+        @Test
+        void whenKeyByIp_shouldLimitEachClientSeparately() throws IOException {
+            // Arrange: configure a burst of a single permit per client IP
+            when(req.getParameter("capacity")).thenReturn("1");
+            when(req.getParameter("rate")).thenReturn("1");
+            when(req.getParameter("keyBy")).thenReturn("ip");
+            servlet.doPost(req, res);
+            when(req.getRemoteAddr()).thenReturn("10.0.0.1", "10.0.0.2");
+
+            // Act
+            servlet.doGet(req, res);
+            servlet.doGet(req, res);
+
+            // Assert: both clients get their own arrival time
+            verify(res, times(3)).setStatus(SC_OK);
+            assertTrue(stringWriter.toString().contains("\"keyBy\": \"ip\""));
+        }
+    }
+}
\ No newline at end of file
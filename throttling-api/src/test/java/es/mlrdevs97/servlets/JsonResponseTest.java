@@ -0,0 +1,24 @@
+package es.mlrdevs97.servlets;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JsonResponseTest {
+    @Test
+    void writeDigits_shouldMatchLongToString() {
+        // Arrange
+        long[] values = {0, 7, 10, 1234567890L, -1, -42, Long.MAX_VALUE, Long.MIN_VALUE};
+        byte[] buffer = new byte[32];
+
+        for (long value : values) {
+            // Act
+            int end = JsonResponse.writeDigits(buffer, 2, value);
+
+            // Assert
+            assertEquals(Long.toString(value), new String(buffer, 2, end - 2, StandardCharsets.US_ASCII));
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package es.mlrdevs97.servlets;
 
-import es.mlrdevs97.throttling.LeakyBucket;
+import es.mlrdevs97.throttling.Decision;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.junit.jupiter.api.BeforeEach;
@@ -19,6 +23,15 @@ import java.lang.reflect.Field;
 import static jakarta.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static jakarta.servlet.http.HttpServletResponse.SC_OK;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -31,7 +44,7 @@ class LeakyBucketServletTest {
     private HttpServletResponse res;
 
     @Mock
-    private LeakyBucket mockBucket;
+    private KeyedLimiter mockBucket;
 
     @InjectMocks
     private LeakyBucketServlet servlet;
@@ -42,7 +55,24 @@ class LeakyBucketServletTest {
     void setup() throws IOException {
         stringWriter = new StringWriter();
         PrintWriter printWriter = new PrintWriter(stringWriter);
-        when(res.getWriter()).thenReturn(printWriter);
+        // POST requests answer through the writer, and GET requests through the output stream.
+        lenient().when(res.getWriter()).thenReturn(printWriter);
+        lenient().when(res.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                // Writes never block.
+            }
+
+            @Override
+            public void write(int b) {
+                stringWriter.write(b); // The bodies are ASCII.
+            }
+        });
     }
 
     @Nested
@@ -50,7 +80,7 @@ class LeakyBucketServletTest {
         @Test
         void whenBucketIsNotConfigured_thenShouldReturnBadRequest() throws NoSuchFieldException, IllegalAccessException, IOException {
             // Arrange: Use reflection to set the private field to null for this test
-            Field bucketField = LeakyBucketServlet.class.getDeclaredField("apiBucket");
+            Field bucketField = LeakyBucketServlet.class.getDeclaredField("apiBuckets");
             bucketField.setAccessible(true);
             bucketField.set(servlet, null);
 
@@ -65,7 +95,7 @@ class LeakyBucketServletTest {
         @Test
         void whenBucketIsNotFull_thenShouldReturnOk() throws IOException {
             // Arrange
-            when(mockBucket.tryAdd()).thenReturn(true);
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.GRANTED);
 
             // Act
             servlet.doGet(req, res);
@@ -78,7 +108,7 @@ class LeakyBucketServletTest {
         @Test
         void whenBucketIsFull_thenShouldReturn429() throws IOException {
             // Arrange
-            when(mockBucket.tryAdd()).thenReturn(false);
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.THROTTLED);
 
             // Act
             servlet.doGet(req, res);
@@ -87,6 +117,142 @@ class LeakyBucketServletTest {
             verify(res).setStatus(429);
             assertTrue(stringWriter.toString().contains("Too Many Requests. Please try again later."));
         }
+
+        @Test
+        void whenCostHeaderIsGiven_thenShouldChargeItInOneDecision() throws IOException {
+            // Arrange
+            when(req.getHeader(CostExtractor.COST_HEADER)).thenReturn("20");
+            when(mockBucket.tryAcquire(anyString(), eq(20L), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.THROTTLED);
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(mockBucket).tryAcquire(eq(""), eq(20L), any(Decision.class));
+            verify(res).setStatus(429);
+        }
+
+        @Test
+        void whenCostIsInvalid_thenShouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter(CostExtractor.COST_PARAM)).thenReturn("many");
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid request cost."));
+        }
+
+        @Test
+        void whenRequestIsAccepted_thenShouldSendRateLimitHeaders() throws IOException {
+            // Arrange: the decision leaves 3 of 10 slots free, and the queue drains in 2.5 seconds
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(true, 7, 3, 10, 0, 2_500_000_000L);
+                return KeyedLimiter.Outcome.GRANTED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_OK);
+            verify(res).setHeader("RateLimit-Limit", "10");
+            verify(res).setHeader("RateLimit-Remaining", "3");
+            verify(res).setHeader("RateLimit-Reset", "3");
+            verify(res, never()).setHeader(eq("Retry-After"), anyString());
+            assertTrue(stringWriter.toString().contains("\"currentSize\": 7"));
+        }
+
+        @Test
+        void whenRequestIsThrottled_thenShouldSendRetryAfter() throws IOException {
+            // Arrange: a slot frees up in 0.2 seconds
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(false, 10, 0, 10, 200_000_000L, 5_000_000_000L);
+                return KeyedLimiter.Outcome.THROTTLED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(429);
+            verify(res).setHeader("RateLimit-Remaining", "0");
+            verify(res).setHeader("Retry-After", "1");
+        }
+
+        @Test
+        void whenRequestCostsMoreThanTheCapacity_thenShouldNotSendRetryAfter() throws IOException {
+            // Arrange
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(false, 0, 10, 10, Decision.NEVER, 0);
+                return KeyedLimiter.Outcome.THROTTLED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(429);
+            verify(res, never()).setHeader(eq("Retry-After"), anyString());
+        }
+
+        @Test
+        void whenShapingAndRequestMustWait_thenShouldHoldItUntilItLeaksOut() throws Exception {
+            // Arrange: the request is accepted with a 50 ms wait for its turn
+            Field shapingField = LeakyBucketServlet.class.getDeclaredField("shaping");
+            shapingField.setAccessible(true);
+            shapingField.set(servlet, true);
+            AsyncContext async = mock(AsyncContext.class);
+            when(req.isAsyncSupported()).thenReturn(true);
+            when(req.startAsync()).thenReturn(async);
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(true, 4, 6, 10, 0, 200_000_000L, 50_000_000L);
+                return KeyedLimiter.Outcome.GRANTED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert: the request thread returns at once, and the answer is sent once the wait is over
+            verify(async).setTimeout(0);
+            verify(async, timeout(2000)).complete();
+            verify(res).setStatus(SC_OK);
+            assertTrue(stringWriter.toString().contains("\"currentSize\": 4"));
+        }
+
+        @Test
+        void whenShapingAndRequestIsFirstInLine_thenShouldAnswerAtOnce() throws Exception {
+            // Arrange
+            Field shapingField = LeakyBucketServlet.class.getDeclaredField("shaping");
+            shapingField.setAccessible(true);
+            shapingField.set(servlet, true);
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(true, 1, 9, 10, 0, 500_000_000L, 0);
+                return KeyedLimiter.Outcome.GRANTED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(req, never()).startAsync();
+            verify(res).setStatus(SC_OK);
+        }
+
+        @Test
+        void whenClientLimitIsReached_thenShouldReturn429() throws IOException {
+            // Arrange: the registry has no room for a new client key
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.KEY_LIMIT_REACHED);
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(429);
+            assertTrue(stringWriter.toString().contains("Too many clients. Please try again later."));
+        }
     }
 
     @Nested
@@ -147,6 +313,20 @@ class LeakyBucketServletTest {
             assertTrue(stringWriter.toString().contains("Invalid 'capacity' or 'leakRate' value. Must be valid positive numbers."));
         }
 
+        @Test
+        void whenRateIsAboveMaximum_thenShouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("10");
+            when(req.getParameter("leakRate")).thenReturn("1000000001");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'leakRate' value. Must not exceed 1000000000 per second."));
+        }
+
         @Test
         void whenParamsAreCorrect_thenShouldReturnOk() throws IOException {
             // Arrange
@@ -160,5 +340,72 @@ class LeakyBucketServletTest {
             verify(res).setStatus(SC_OK);
             assertTrue(stringWriter.toString().contains("Leaky Bucket configured successfully"));
         }
+
+        @Test
+        void whenModeIsInvalid_thenShouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("10");
+            when(req.getParameter("leakRate")).thenReturn("2");
+            when(req.getParameter("keyBy")).thenReturn("global");
+            when(req.getParameter("costBy")).thenReturn("request");
+            when(req.getParameter("mode")).thenReturn("buffering");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'mode' value."));
+        }
+
+        @Test
+        void whenModeIsShaping_thenShouldReturnOk() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("10");
+            when(req.getParameter("leakRate")).thenReturn("2");
+            when(req.getParameter("keyBy")).thenReturn("global");
+            when(req.getParameter("costBy")).thenReturn("request");
+            when(req.getParameter("mode")).thenReturn("shaping");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_OK);
+            assertTrue(stringWriter.toString().contains("\"mode\": \"shaping\""));
+        }
+
+        @Test
+        void whenKeyByIsInvalid_thenShouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("10");
+            when(req.getParameter("leakRate")).thenReturn("2");
+            when(req.getParameter("keyBy")).thenReturn("cookie");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'keyBy' value."));
+        }
+
+        @Test
+        void whenKeyByIsApiKey_thenShouldLimitEachClientSeparately() throws IOException {
+            // Arrange: configure a queue of a single request per API key
+            when(req.getParameter("capacity")).thenReturn("1");
+            when(req.getParameter("leakRate")).thenReturn("1");
+            when(req.getParameter("keyBy")).thenReturn("apiKey");
+            servlet.doPost(req, res);
+            when(req.getHeader(KeyExtractor.API_KEY_HEADER)).thenReturn("client-a", "client-b");
+
+            // Act
+            servlet.doGet(req, res);
+            servlet.doGet(req, res);
+
+            // Assert: both clients get their own slot
+            verify(res, times(3)).setStatus(SC_OK);
+            assertTrue(stringWriter.toString().contains("\"keyBy\": \"apiKey\""));
+        }
     }
 }
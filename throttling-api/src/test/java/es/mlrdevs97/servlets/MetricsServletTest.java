@@ -0,0 +1,106 @@
+package es.mlrdevs97.servlets;
+
+import es.mlrdevs97.metrics.ThrottlingMetrics;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.ManualClock;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static jakarta.servlet.http.HttpServletResponse.SC_OK;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsServletTest {
+    @Mock
+    private HttpServletRequest req;
+
+    @Mock
+    private HttpServletResponse res;
+
+    private final MetricsServlet servlet = new MetricsServlet();
+    private final ThrottlingMetrics metrics = new ThrottlingMetrics();
+    private final ManualClock clock = new ManualClock();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        set("metrics", metrics);
+        set("clock", clock);
+        when(res.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                // Writes never block.
+            }
+
+            @Override
+            public void write(int b) {
+                body.write(b);
+            }
+        });
+    }
+
+    @Test
+    void whenScraped_shouldAnswerWithThePrometheusTextFormat() throws IOException {
+        // Arrange
+        metrics.decisions("token_bucket", "global").record(KeyedLimiter.Outcome.GRANTED, 100);
+
+        // Act
+        servlet.doGet(req, res);
+
+        // Assert
+        String text = body.toString(StandardCharsets.UTF_8.name());
+        verify(res).setStatus(SC_OK);
+        verify(res).setContentType("text/plain; version=0.0.4; charset=utf-8");
+        verify(res).setContentLength(text.getBytes(StandardCharsets.UTF_8).length);
+        assertTrue(text.contains("throttling_decisions_total{limiter=\"token_bucket\",key_class=\"global\",outcome=\"granted\"} 1\n"));
+    }
+
+    @Test
+    void whenScrapedAgainWithinTheCachePeriod_shouldServeTheSameRendering() throws IOException {
+        // Arrange
+        servlet.doGet(req, res);
+        String first = body.toString(StandardCharsets.UTF_8.name());
+        metrics.decisions("token_bucket", "global").record(KeyedLimiter.Outcome.GRANTED, 100);
+        body.reset();
+
+        // Act
+        clock.advance(999, TimeUnit.MILLISECONDS);
+        servlet.doGet(req, res);
+        String cached = body.toString(StandardCharsets.UTF_8.name());
+        body.reset();
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        servlet.doGet(req, res);
+        String refreshed = body.toString(StandardCharsets.UTF_8.name());
+
+        // Assert
+        assertEquals(first, cached);
+        assertTrue(refreshed.contains("outcome=\"granted\"} 1\n"));
+    }
+
+    private void set(String name, Object value) throws NoSuchFieldException, IllegalAccessException {
+        Field field = MetricsServlet.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(servlet, value);
+    }
+}
@@ -0,0 +1,282 @@
+package es.mlrdevs97.servlets;
+
+import es.mlrdevs97.throttling.Decision;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.SlidingWindowLog;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+
+import static jakarta.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static jakarta.servlet.http.HttpServletResponse.SC_OK;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SlidingWindowLogServletTest {
+    @Mock
+    private HttpServletRequest req;
+
+    @Mock
+    private HttpServletResponse res;
+
+    @Mock
+    private KeyedLimiter mockLimiter;
+
+    @InjectMocks
+    private SlidingWindowLogServlet servlet;
+
+    private StringWriter stringWriter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stringWriter = new StringWriter();
+        PrintWriter printWriter = new PrintWriter(stringWriter);
+        // POST requests answer through the writer, and GET requests through the output stream.
+        lenient().when(res.getWriter()).thenReturn(printWriter);
+        lenient().when(res.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                // Writes never block.
+            }
+
+            @Override
+            public void write(int b) {
+                stringWriter.write(b); // The bodies are ASCII.
+            }
+        });
+    }
+
+    @Nested
+    class GetRequests {
+        @Test
+        void whenLogNotConfigured_shouldReturnBadRequest() throws Exception {
+            // Arrange: Use reflection to set the private field to null for this test
+            Field limiterField = KeyedLimiterServlet.class.getDeclaredField("apiLimiters");
+            limiterField.setAccessible(true);
+            limiterField.set(servlet, null);
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Sliding Window Log not configured"));
+        }
+
+        @Test
+        void whenRequestFits_shouldReturnOkWithRateLimitHeaders() throws IOException {
+            // Arrange: the decision counts 7 of 10 permits in the window, which empties in 1.5 seconds
+            when(mockLimiter.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(true, 7, 3, 10, 0, 1_500_000_000L);
+                return KeyedLimiter.Outcome.GRANTED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_OK);
+            verify(res).setHeader("RateLimit-Remaining", "3");
+            verify(res).setHeader("RateLimit-Reset", "2");
+            assertTrue(stringWriter.toString().contains("\"currentCount\": 7"));
+        }
+
+        @Test
+        void whenRequestThrottled_shouldReturnTooManyRequestsWithRetryAfter() throws IOException {
+            // Arrange: the oldest entry expires in 0.4 seconds
+            when(mockLimiter.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(false, 10, 0, 10, 400_000_000L, 1_000_000_000L);
+                return KeyedLimiter.Outcome.THROTTLED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(429);
+            verify(res).setHeader("Retry-After", "1");
+            assertTrue(stringWriter.toString().contains("Too Many Requests. Please try again later."));
+        }
+
+        @Test
+        void whenClientLimitReached_shouldReturnTooManyRequests() throws IOException {
+            // Arrange: the registry has no room for a new client key
+            when(mockLimiter.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.KEY_LIMIT_REACHED);
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(429);
+            assertTrue(stringWriter.toString().contains("Too many clients. Please try again later."));
+        }
+
+        @Test
+        void whenCostInvalid_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter(CostExtractor.COST_PARAM)).thenReturn("0");
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid request cost."));
+        }
+    }
+
+    @Nested
+    class PostRequests {
+        @Test
+        void whenParamsMissing_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("limit")).thenReturn(null);
+            when(req.getParameter("windowMillis")).thenReturn(null);
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Missing 'limit' or 'windowMillis' parameters."));
+        }
+
+        @Test
+        void whenParamsInvalid_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("limit")).thenReturn("ten");
+            when(req.getParameter("windowMillis")).thenReturn("1000");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'limit' or 'windowMillis' format. Must be numbers."));
+        }
+
+        @Test
+        void whenParamsNotGreaterThanZero_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("limit")).thenReturn("10");
+            when(req.getParameter("windowMillis")).thenReturn("0");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'limit' or 'windowMillis' value. Must be valid positive numbers."));
+        }
+
+        @Test
+        void whenLimitAboveMaximum_shouldReturnBadRequest() throws IOException {
+            // Arrange: a single client could make the log hold that many entries
+            when(req.getParameter("limit")).thenReturn(String.valueOf(SlidingWindowLog.MAX_LIMIT + 1));
+            when(req.getParameter("windowMillis")).thenReturn("1000");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'limit' value."));
+        }
+
+        @Test
+        void whenHugeLimitIsPosted_shouldReturnBadRequestAndKeepTheLimiter() throws Exception {
+            // Arrange: an unauthenticated client asking for gigabytes of log per address
+            when(req.getParameter("limit")).thenReturn("2147483639");
+            when(req.getParameter("windowMillis")).thenReturn("1000");
+            lenient().when(req.getParameter("keyBy")).thenReturn("ip");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'limit' value. Must not exceed " + SlidingWindowLog.MAX_LIMIT + "."));
+            Field field = KeyedLimiterServlet.class.getDeclaredField("apiLimiters");
+            field.setAccessible(true);
+            assertSame(mockLimiter, field.get(servlet));
+        }
+
+        @Test
+        void whenKeyByInvalid_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("limit")).thenReturn("10");
+            when(req.getParameter("windowMillis")).thenReturn("1000");
+            when(req.getParameter("keyBy")).thenReturn("cookie");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'keyBy' value."));
+        }
+
+        @Test
+        void whenParametersValid_shouldLimitRequestsInTheWindow() throws IOException {
+            // Arrange: two requests per minute
+            when(req.getParameter("limit")).thenReturn("2");
+            when(req.getParameter("windowMillis")).thenReturn("60000");
+            servlet.doPost(req, res);
+
+            // Act
+            servlet.doGet(req, res);
+            servlet.doGet(req, res);
+            servlet.doGet(req, res);
+
+            // Assert: the configuration and the first two requests succeed
+            verify(res, times(3)).setStatus(SC_OK);
+            verify(res).setStatus(429);
+            assertTrue(stringWriter.toString().contains("Sliding Window Log configured successfully"));
+            assertTrue(stringWriter.toString().contains("\"windowMillis\": 60000"));
+        }
+
+        @Test
+        void whenKeyByIp_shouldLimitEachClientSeparately() throws IOException {
+            // Arrange: a single request per minute and client IP
+            when(req.getParameter("limit")).thenReturn("1");
+            when(req.getParameter("windowMillis")).thenReturn("60000");
+            when(req.getParameter("keyBy")).thenReturn("ip");
+            servlet.doPost(req, res);
+            when(req.getRemoteAddr()).thenReturn("10.0.0.1", "10.0.0.2");
+
+            // Act
+            servlet.doGet(req, res);
+            servlet.doGet(req, res);
+
+            // Assert: both clients get their own window
+            verify(res, times(3)).setStatus(SC_OK);
+            assertTrue(stringWriter.toString().contains("\"keyBy\": \"ip\""));
+        }
+    }
+}
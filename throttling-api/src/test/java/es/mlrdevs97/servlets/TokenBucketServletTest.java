@@ -1,6 +1,9 @@
 package es.mlrdevs97.servlets;
 
-import es.mlrdevs97.throttling.TokenBucket;
+import es.mlrdevs97.throttling.Decision;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.junit.jupiter.api.BeforeEach;
@@ -18,7 +21,15 @@ import java.lang.reflect.Field;
 
 import static jakarta.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static jakarta.servlet.http.HttpServletResponse.SC_OK;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -31,7 +42,7 @@ class TokenBucketServletTest {
     private HttpServletResponse res;
 
     @Mock
-    private TokenBucket mockBucket;
+    private KeyedLimiter mockBucket;
 
     @InjectMocks
     private TokenBucketServlet servlet;
@@ -42,7 +53,24 @@ class TokenBucketServletTest {
     void setUp() throws IOException {
         stringWriter = new StringWriter();
         PrintWriter printWriter = new PrintWriter(stringWriter);
-        when(res.getWriter()).thenReturn(printWriter);
+        // POST requests answer through the writer, and GET requests through the output stream.
+        lenient().when(res.getWriter()).thenReturn(printWriter);
+        lenient().when(res.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                // Writes never block.
+            }
+
+            @Override
+            public void write(int b) {
+                stringWriter.write(b); // The bodies are ASCII.
+            }
+        });
     }
 
     @Nested
@@ -50,7 +78,7 @@ class TokenBucketServletTest {
         @Test
         void whenBucketNotConfigured_shouldReturnBadRequest() throws IOException, NoSuchFieldException, IllegalAccessException {
             // Arrange: Use reflection to set the private field to null for this test
-            Field bucketField = TokenBucketServlet.class.getDeclaredField("apiBucket");
+            Field bucketField = KeyedLimiterServlet.class.getDeclaredField("apiLimiters");
             bucketField.setAccessible(true);
             bucketField.set(servlet, null);
 
@@ -65,7 +93,7 @@ class TokenBucketServletTest {
         @Test
         void whenTokensAvailable_shouldReturnOk() throws IOException {
             // Arrange: mock bucket returns true when try consume
-            when(mockBucket.tryConsume()).thenReturn(true);
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.GRANTED);
 
             // Act
             servlet.doGet(req, res);
@@ -78,7 +106,7 @@ class TokenBucketServletTest {
         @Test
         void shouldReturnTooManyRequestsErrorIfNoTokensAvailable() throws IOException {
             // Arrange: mock bucket returns true when try consume
-            when(mockBucket.tryConsume()).thenReturn(false);
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.THROTTLED);
 
             // Act
             servlet.doGet(req, res);
@@ -87,6 +115,117 @@ class TokenBucketServletTest {
             verify(res).setStatus(429);
             assertTrue(stringWriter.toString().contains("Too Many Requests. Please try again later."));
         }
+
+        @Test
+        void whenRequestAllowed_shouldSendTheBodyWithItsLength() throws IOException {
+            // Arrange
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(true, 1234, 1234, 5000, 0, 0);
+                return KeyedLimiter.Outcome.GRANTED;
+            });
+            String expected = "{\"status\": \"success\", \"message\": \"Request processed.\", \"currentTokens\": 1234}\n";
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            assertEquals(expected, stringWriter.toString());
+            verify(res).setContentLength(expected.length());
+            verify(res, never()).getWriter();
+        }
+
+        @Test
+        void whenCostParamGiven_shouldChargeItInOneDecision() throws IOException {
+            // Arrange
+            when(req.getParameter(CostExtractor.COST_PARAM)).thenReturn("500");
+            when(mockBucket.tryAcquire(anyString(), eq(500L), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.GRANTED);
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(mockBucket).tryAcquire(eq(""), eq(500L), any(Decision.class));
+            verify(res).setStatus(SC_OK);
+        }
+
+        @Test
+        void whenCostInvalid_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter(CostExtractor.COST_PARAM)).thenReturn("-3");
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid request cost."));
+        }
+
+        @Test
+        void whenRequestAllowed_shouldSendRateLimitHeaders() throws IOException {
+            // Arrange: the decision leaves 3 of 10 permits, and the limit resets in 2.5 seconds
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(true, 3, 3, 10, 0, 2_500_000_000L);
+                return KeyedLimiter.Outcome.GRANTED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_OK);
+            verify(res).setHeader("RateLimit-Limit", "10");
+            verify(res).setHeader("RateLimit-Remaining", "3");
+            verify(res).setHeader("RateLimit-Reset", "3");
+            verify(res, never()).setHeader(eq("Retry-After"), anyString());
+            assertTrue(stringWriter.toString().contains("\"currentTokens\": 3"));
+        }
+
+        @Test
+        void whenRequestThrottled_shouldSendRetryAfter() throws IOException {
+            // Arrange: the request could be let through in 0.2 seconds
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(false, 0, 0, 10, 200_000_000L, 2_000_000_000L);
+                return KeyedLimiter.Outcome.THROTTLED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(429);
+            verify(res).setHeader("RateLimit-Remaining", "0");
+            verify(res).setHeader("Retry-After", "1");
+        }
+
+        @Test
+        void whenRequestCostsMoreThanTheLimit_shouldNotSendRetryAfter() throws IOException {
+            // Arrange
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenAnswer(invocation -> {
+                invocation.getArgument(2, Decision.class).set(false, 3, 3, 10, Decision.NEVER, 0);
+                return KeyedLimiter.Outcome.THROTTLED;
+            });
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(429);
+            verify(res, never()).setHeader(eq("Retry-After"), anyString());
+        }
+
+        @Test
+        void whenClientLimitReached_shouldReturnTooManyRequests() throws IOException {
+            // Arrange: the registry has no room for a new client key
+            when(mockBucket.tryAcquire(anyString(), anyLong(), any(Decision.class))).thenReturn(KeyedLimiter.Outcome.KEY_LIMIT_REACHED);
+
+            // Act
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res).setStatus(429);
+            assertTrue(stringWriter.toString().contains("Too many clients. Please try again later."));
+        }
     }
 
     @Nested
@@ -147,6 +286,20 @@ class TokenBucketServletTest {
             assertTrue(stringWriter.toString().contains("Invalid 'capacity' or 'refillRate' value. Must be valid positive numbers."));
         }
 
+        @Test
+        void whenRateAboveMaximum_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("10");
+            when(req.getParameter("refillRate")).thenReturn("1000000001");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'refillRate' value. Must not exceed 1000000000 per second."));
+        }
+
         @Test
         void whenParametersValid_shouldReturnOk() throws Exception {
             // Arrange
@@ -160,5 +313,113 @@ class TokenBucketServletTest {
             verify(res).setStatus(SC_OK);
             assertTrue(stringWriter.toString().contains("Token Bucket configured successfully"));
         }
+
+        @Test
+        void whenStoreIsPacked_shouldLimitWithPackedTable() throws Exception {
+            // Arrange: select the packed store as the 'store' init parameter would
+            Field storeField = TokenBucketServlet.class.getDeclaredField("packedStore");
+            storeField.setAccessible(true);
+            storeField.set(servlet, true);
+            when(req.getParameter("capacity")).thenReturn("1");
+            when(req.getParameter("refillRate")).thenReturn("1");
+
+            // Act
+            servlet.doPost(req, res);
+            servlet.doGet(req, res);
+            servlet.doGet(req, res);
+
+            // Assert
+            verify(res, times(2)).setStatus(SC_OK);
+            verify(res).setStatus(429);
+            assertTrue(stringWriter.toString().contains("Too Many Requests. Please try again later."));
+        }
+
+        @Test
+        void whenCostByBytes_shouldChargeThePayloadSize() throws IOException {
+            // Arrange: configure a bandwidth limit of 1000 bytes
+            when(req.getParameter("capacity")).thenReturn("1000");
+            when(req.getParameter("refillRate")).thenReturn("100");
+            when(req.getParameter("keyBy")).thenReturn("global");
+            when(req.getParameter("costBy")).thenReturn("bytes");
+            servlet.doPost(req, res);
+            when(req.getContentLengthLong()).thenReturn(600L);
+
+            // Act
+            servlet.doGet(req, res);
+            servlet.doGet(req, res);
+
+            // Assert: the second payload does not fit in what is left
+            verify(res, times(2)).setStatus(SC_OK);
+            verify(res).setStatus(429);
+            assertTrue(stringWriter.toString().contains("\"costBy\": \"bytes\""));
+        }
+
+        @Test
+        void whenReconfiguredWithTheSameKey_shouldKeepTheShareOfTokensLeft() throws IOException {
+            // Arrange: half of a 10-token bucket is spent
+            when(req.getParameter("capacity")).thenReturn("10", "20");
+            when(req.getParameter("refillRate")).thenReturn("1");
+            when(req.getParameter("keyBy")).thenReturn("global");
+            when(req.getParameter("costBy")).thenReturn("request");
+            when(req.getParameter(CostExtractor.COST_PARAM)).thenReturn("5", "1");
+            servlet.doPost(req, res);
+            servlet.doGet(req, res);
+
+            // Act: double the capacity, then spend one token
+            servlet.doPost(req, res);
+            servlet.doGet(req, res);
+
+            // Assert: half of the new capacity was left, not a fresh bucket
+            assertTrue(stringWriter.toString().contains("\"currentTokens\": 9}"));
+        }
+
+        @Test
+        void whenCostByInvalid_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("10");
+            when(req.getParameter("refillRate")).thenReturn("5");
+            when(req.getParameter("keyBy")).thenReturn("global");
+            when(req.getParameter("costBy")).thenReturn("items");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'costBy' value."));
+        }
+
+        @Test
+        void whenKeyByInvalid_shouldReturnBadRequest() throws IOException {
+            // Arrange
+            when(req.getParameter("capacity")).thenReturn("10");
+            when(req.getParameter("refillRate")).thenReturn("5");
+            when(req.getParameter("keyBy")).thenReturn("cookie");
+
+            // Act
+            servlet.doPost(req, res);
+
+            // Assert
+            verify(res).setStatus(SC_BAD_REQUEST);
+            assertTrue(stringWriter.toString().contains("Invalid 'keyBy' value."));
+        }
+
+        @Test
+        void whenKeyByIp_shouldLimitEachClientSeparately() throws IOException {
+            // Arrange: configure a bucket of a single token per client IP
+            when(req.getParameter("capacity")).thenReturn("1");
+            when(req.getParameter("refillRate")).thenReturn("1");
+            when(req.getParameter("keyBy")).thenReturn("ip");
+            servlet.doPost(req, res);
+            when(req.getRemoteAddr()).thenReturn("10.0.0.1", "10.0.0.2");
+
+            // Act
+            servlet.doGet(req, res);
+            servlet.doGet(req, res);
+
+            // Assert: both clients get their own token
+            verify(res, times(3)).setStatus(SC_OK);
+            assertTrue(stringWriter.toString().contains("\"keyBy\": \"ip\""));
+        }
     }
 }
\ No newline at end of file
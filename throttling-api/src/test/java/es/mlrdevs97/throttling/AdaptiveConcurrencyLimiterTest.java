@@ -0,0 +1,181 @@
+package es.mlrdevs97.throttling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+    private static final long TARGET = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void whenLimitReached_thenRequestsAreThrottledUntilASlotIsReleased() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, TARGET);
+        Decision decision = new Decision();
+
+        // Act
+        boolean first = limiter.tryAcquire(null);
+        boolean second = limiter.tryAcquire(null);
+        boolean third = limiter.tryAcquire(decision);
+        limiter.release(1_000);
+        boolean fourth = limiter.tryAcquire(null);
+
+        // Assert
+        assertTrue(first);
+        assertTrue(second);
+        assertFalse(third);
+        assertTrue(fourth);
+        assertEquals(2, decision.getLimit());
+        assertEquals(0, decision.getRemaining());
+        assertEquals(TARGET, decision.getRetryAfterNanos());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void whenLatencyIsWithinTargetAndTheLimitIsUsed_thenTheLimitGrows() {
+        // Arrange: the whole limit is in use, and requests complete well within the target
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 1, 100, TARGET);
+        fill(limiter, 16);
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(5));
+
+        // Act
+        long limit = limiter.adjust();
+
+        // Assert: grown by its square root
+        assertEquals(20, limit);
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    void whenLatencyIsWithinTargetButTheLimitIsBarelyUsed_thenTheLimitStays() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 1, 100, TARGET);
+        fill(limiter, 2);
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(5));
+
+        // Act
+        long limit = limiter.adjust();
+
+        // Assert
+        assertEquals(16, limit);
+    }
+
+    @Test
+    void whenTailLatencyExceedsTarget_thenTheLimitIsCut() {
+        // Arrange: 98 fast requests and 2 slow ones, so that the 99th percentile is slow
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(50, 1, 100, TARGET);
+        for (int i = 0; i < 100; i++) {
+            limiter.tryAcquire(null);
+            limiter.release(i < 98 ? TimeUnit.MILLISECONDS.toNanos(1) : TimeUnit.MILLISECONDS.toNanos(500));
+        }
+
+        // Act
+        long limit = limiter.adjust();
+
+        // Assert
+        assertEquals(45, limit);
+    }
+
+    @Test
+    void whenOnlyAFewRequestsAreSlow_thenTheTailIgnoresThem() {
+        // Arrange: 1 slow request in 200
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 100, TARGET);
+        for (int i = 0; i < 200; i++) {
+            limiter.tryAcquire(null);
+            limiter.release(i == 0 ? TimeUnit.SECONDS.toNanos(5) : TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        // Act
+        long limit = limiter.adjust();
+
+        // Assert
+        assertEquals(2, limit);
+    }
+
+    @Test
+    void whenSaturatedAndNothingCompletes_thenTheLimitIsCut() {
+        // Arrange: a downstream that stopped answering
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, TARGET);
+        fill(limiter, 10);
+
+        // Act
+        long limit = limiter.adjust();
+
+        // Assert
+        assertEquals(9, limit);
+    }
+
+    @Test
+    void whenIdle_thenTheLimitStays() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, TARGET);
+
+        // Act
+        long limit = limiter.adjust();
+
+        // Assert
+        assertEquals(10, limit);
+    }
+
+    @Test
+    void whenAdjustedRepeatedly_thenTheLimitStaysWithinItsBounds() {
+        // Arrange
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(3, 2, 4, TARGET);
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            runAtTheLimit(limiter, 1_000);
+        }
+        long raised = limiter.getLimit();
+        for (int i = 0; i < 5; i++) {
+            runAtTheLimit(limiter, TimeUnit.SECONDS.toNanos(1));
+        }
+
+        // Assert
+        assertEquals(4, raised);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void whenLimitsAreInvalid_thenItFails() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(1, 0, 10, TARGET));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(1, 5, 4, TARGET));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(1, 1, 4, 0));
+    }
+
+    @Test
+    void bucketOf_shouldCountALatencyInABucketAQuarterWideAtMost() {
+        // Arrange
+        long[] latencies = {0, 1, 3, 4, 5, 7, 8, 1_000, 1_023, 1_024, 99_999_999, 1L << 47};
+
+        for (long latency : latencies) {
+            // Act
+            long upperBound = AdaptiveConcurrencyLimiter.upperBound(AdaptiveConcurrencyLimiter.bucketOf(latency));
+
+            // Assert
+            assertTrue(latency <= upperBound);
+            assertTrue(upperBound <= latency + latency / 4);
+        }
+    }
+
+    private static void fill(AdaptiveConcurrencyLimiter limiter, int requests) {
+        for (int i = 0; i < requests; i++) {
+            assertTrue(limiter.tryAcquire(null));
+        }
+    }
+
+    /**
+     * Takes every slot, gives them back after the given latency, and adjusts the limit.
+     */
+    private static void runAtTheLimit(AdaptiveConcurrencyLimiter limiter, long latency) {
+        int limit = (int) limiter.getLimit();
+        fill(limiter, limit);
+        for (int i = 0; i < limit; i++) {
+            limiter.release(latency);
+        }
+        limiter.adjust();
+    }
+}
@@ -0,0 +1,169 @@
+package es.mlrdevs97.throttling;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FixedWindowCounterTest {
+    private ManualClock clock;
+    private FixedWindowCounter counter;
+    private final long LIMIT = 100;
+    private final long WINDOW_MILLIS = 1000;
+
+    @BeforeEach
+    void setUp() {
+        clock = new ManualClock();
+        counter = new FixedWindowCounter(LIMIT, WINDOW_MILLIS, 8, clock);
+    }
+
+    @Test
+    void whenNewCounterIsCreated_thenItIsEmptyAndIdle() {
+        // Act & Assert
+        assertEquals(0, counter.getLevel());
+        assertTrue(counter.isIdle());
+    }
+
+    @Test
+    void whenRequestsAreWithinLimit_thenTheyAreGrantedUpToIt() {
+        // Act & Assert
+        for (int i = 0; i < LIMIT; i++) {
+            assertTrue(counter.tryAcquire());
+        }
+        assertFalse(counter.tryAcquire());
+        assertEquals(LIMIT, counter.getLevel());
+        assertFalse(counter.isIdle());
+    }
+
+    @Test
+    void whenSeveralPermitsAreRequestedAtOnce_thenAllOrNoneAreGranted() {
+        // Act & Assert
+        assertTrue(counter.tryAcquire(LIMIT - 10));
+        assertFalse(counter.tryAcquire(11));
+        assertEquals(LIMIT - 10, counter.getLevel());
+        assertTrue(counter.tryAcquire(10));
+        assertFalse(counter.tryAcquire(LIMIT + 1));
+        assertThrows(IllegalArgumentException.class, () -> counter.tryAcquire(0));
+    }
+
+    @Test
+    void whenWindowRollsOver_thenTheWholeLimitIsAvailableAgain() {
+        // Arrange
+        assertTrue(counter.tryAcquire(LIMIT));
+
+        // Act & Assert: not a nanosecond before the next window
+        clock.advance(WINDOW_MILLIS * 1_000_000L - 1);
+        assertFalse(counter.tryAcquire());
+        clock.advance(1);
+        assertEquals(0, counter.getLevel());
+        assertTrue(counter.tryAcquire(LIMIT));
+
+        // Act & Assert: nor after many idle windows
+        clock.advance(1000 * WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        assertTrue(counter.isIdle());
+        assertTrue(counter.tryAcquire(LIMIT));
+        assertFalse(counter.tryAcquire());
+    }
+
+    @Test
+    void whenAllowanceIsLeftInOtherStripes_thenItIsReclaimedNearTheLimit() throws InterruptedException {
+        // Arrange: another thread leases part of the budget, then leaves
+        Thread other = new Thread(() -> assertTrue(counter.tryAcquire()));
+        other.start();
+        other.join();
+
+        // Act & Assert: this thread still gets every permit left in the window
+        assertTrue(counter.tryAcquire(LIMIT - 1));
+        assertFalse(counter.tryAcquire());
+    }
+
+    @Test
+    void whenAllowanceIsLeftInOtherStripes_thenDecisionsNeverOverstateWhatIsLeft() throws InterruptedException {
+        // Arrange: another thread leases part of the budget, then leaves
+        Thread other = new Thread(() -> assertTrue(counter.tryAcquire()));
+        other.start();
+        other.join();
+        Decision decision = new Decision();
+
+        // Act
+        assertTrue(counter.tryAcquire(10, decision));
+
+        // Assert: the allowance of the other cell may count as granted, but never as left
+        assertTrue(decision.getRemaining() <= LIMIT - 11, "remaining: " + decision.getRemaining());
+        assertEquals(LIMIT - decision.getRemaining(), decision.getLevel());
+        assertEquals(11, counter.getLevel());
+    }
+
+    @Test
+    void whenManyThreadsRaceForTheWindow_thenNoMoreThanTheLimitIsGranted() throws InterruptedException {
+        // Arrange
+        int threads = 16;
+        AtomicLong granted = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < LIMIT; i++) {
+                        if (counter.tryAcquire()) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        // Act
+        start.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        while (counter.tryAcquire()) {
+            granted.incrementAndGet(); // Whatever a lost race left behind.
+        }
+
+        // Assert
+        assertEquals(LIMIT, granted.get());
+        assertEquals(LIMIT, counter.getLevel());
+    }
+
+    @Test
+    void whenDecisionIsDescribed_thenItAgreesWithTheCounter() {
+        // Arrange
+        Decision decision = new Decision();
+        clock.advance(300, TimeUnit.MILLISECONDS);
+
+        // Act & Assert: permits left mean nothing to wait for, and the window resets in 700 ms
+        assertTrue(counter.tryAcquire(60, decision));
+        assertTrue(decision.isGranted());
+        assertEquals(60, decision.getLevel());
+        assertEquals(40, decision.getRemaining());
+        assertEquals(LIMIT, decision.getLimit());
+        assertEquals(0, decision.getRetryAfterNanos());
+        assertEquals(700_000_000L, decision.getResetNanos());
+
+        // Act & Assert: a throttled request waits for the next window
+        assertFalse(counter.tryAcquire(41, decision));
+        assertFalse(decision.isGranted());
+        assertEquals(700_000_000L, decision.getRetryAfterNanos());
+
+        // Act & Assert: a request above the limit never goes through
+        assertFalse(counter.tryAcquire(LIMIT + 1, decision));
+        assertEquals(Decision.NEVER, decision.getRetryAfterNanos());
+    }
+
+    @Test
+    void whenParametersAreOutOfRange_thenCreationFails() {
+        assertThrows(IllegalArgumentException.class, () -> new FixedWindowCounter(0, WINDOW_MILLIS, clock));
+        assertThrows(IllegalArgumentException.class, () -> new FixedWindowCounter(FixedWindowCounter.MAX_LIMIT + 1, WINDOW_MILLIS, clock));
+        assertThrows(IllegalArgumentException.class, () -> new FixedWindowCounter(LIMIT, 0, clock));
+        assertThrows(IllegalArgumentException.class, () -> new FixedWindowCounter(LIMIT, WINDOW_MILLIS, 0, clock));
+    }
+}
@@ -0,0 +1,159 @@
+package es.mlrdevs97.throttling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GcraLimiterTest {
+    private final long CAPACITY = 5;
+    private final long RATE = 1;
+
+    @Test
+    void whenNewLimiterIsCreated_thenItGrantsAFullBurst() {
+        // Arrange
+        GcraLimiter limiter = new GcraLimiter(CAPACITY, RATE, new ManualClock());
+
+        // Act & Assert
+        assertTrue(limiter.isIdle());
+        for (int i = 0; i < CAPACITY; i++) {
+            assertTrue(limiter.tryAcquire());
+            assertEquals(CAPACITY - (i + 1), limiter.getLevel());
+        }
+        assertFalse(limiter.tryAcquire());
+        assertFalse(limiter.isIdle());
+    }
+
+    @Test
+    void whenSeveralPermitsAreRequestedAtOnce_thenAllOrNoneAreTaken() {
+        // Arrange
+        GcraLimiter limiter = new GcraLimiter(CAPACITY, RATE, new ManualClock());
+
+        // Act & Assert
+        assertTrue(limiter.tryAcquire(CAPACITY - 1));
+        assertFalse(limiter.tryAcquire(2));
+        assertEquals(1, limiter.getLevel());
+        assertFalse(limiter.tryAcquire(CAPACITY + 1));
+        assertThrows(IllegalArgumentException.class, () -> limiter.tryAcquire(0));
+    }
+
+    @Test
+    void whenThrottled_thenRetryAfterIsTheExcessOfTheArrivalTime() {
+        // Arrange: 4 permits per second, so one every 250 ms
+        ManualClock clock = new ManualClock();
+        GcraLimiter limiter = new GcraLimiter(10, 4, clock);
+        Decision decision = new Decision();
+        assertTrue(limiter.tryAcquire(10));
+
+        // Act
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        boolean granted = limiter.tryAcquire(1, decision);
+
+        // Assert
+        assertFalse(granted);
+        assertEquals(150_000_000L, decision.getRetryAfterNanos());
+        assertEquals(2_400_000_000L, decision.getResetNanos());
+    }
+
+    @Test
+    void whenDrivenLikeATokenBucket_thenEveryDecisionIsTheSame() {
+        // Rates that divide a second and rates that do not, down to a tick per nanosecond
+        long[][] configurations = {{5, 1}, {10, 4}, {100, 3}, {1, 7}, {1_000, 1_000_000_000}, {50, 999_999_937}};
+        Random random = new Random(42);
+        for (long[] configuration : configurations) {
+            // Arrange
+            long capacity = configuration[0];
+            long rate = configuration[1];
+            ManualClock clock = new ManualClock();
+            GcraLimiter gcra = new GcraLimiter(capacity, rate, clock);
+            TokenBucket bucket = new TokenBucket(capacity, rate, clock);
+            Decision gcraDecision = new Decision();
+            Decision bucketDecision = new Decision();
+            long period = Math.max(1, 1_000_000_000L / rate);
+
+            for (int step = 0; step < 10_000; step++) {
+                // Act: a random pause of up to a few refills, then a random cost of up to a bit over the capacity
+                clock.advance((long) (random.nextDouble() * 3 * period));
+                long permits = 1 + random.nextInt((int) Math.min(capacity + 1, Integer.MAX_VALUE));
+                boolean gcraGranted = gcra.tryAcquire(permits, gcraDecision);
+                boolean bucketGranted = bucket.tryConsume(permits, bucketDecision);
+
+                // Assert
+                String at = "capacity " + capacity + ", rate " + rate + ", step " + step;
+                assertEquals(bucketGranted, gcraGranted, at);
+                assertEquals(bucket.getLevel(), gcra.getLevel(), at);
+                assertEquals(bucket.isIdle(), gcra.isIdle(), at);
+                assertEquals(bucketDecision.getLevel(), gcraDecision.getLevel(), at);
+                assertEquals(bucketDecision.getRemaining(), gcraDecision.getRemaining(), at);
+                assertEquals(bucketDecision.getRetryAfterNanos(), gcraDecision.getRetryAfterNanos(), at);
+                assertEquals(bucketDecision.getResetNanos(), gcraDecision.getResetNanos(), at);
+            }
+        }
+    }
+
+    @Test
+    void whenWaitersQueueUp_thenTheyWaitAsOnATokenBucket() throws Exception {
+        // Arrange: an empty limiter refilling a permit per second
+        ManualClock clock = new ManualClock();
+        GcraLimiter limiter = new GcraLimiter(CAPACITY, RATE, clock);
+        assertTrue(limiter.tryAcquire(CAPACITY));
+
+        // Act & Assert: a wait beyond the timeout fails at once, without reserving
+        assertFalse(limiter.acquire(2, 1, TimeUnit.SECONDS));
+
+        // Act: a waiter reserves the next permit and parks until it is due
+        Thread waiter = new Thread(() -> {
+            try {
+                assertTrue(limiter.acquire(1, 5, TimeUnit.SECONDS));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        while (clock.getWaitingThreads() == 0) {
+            Thread.sleep(1);
+        }
+        clock.advance(1, TimeUnit.SECONDS);
+        waiter.join(5_000);
+
+        // Assert
+        assertFalse(waiter.isAlive());
+        assertEquals(0, limiter.getLevel());
+    }
+
+    @Test
+    void whenKeptInAPackedTable_thenEachKeyIsLimitedAlike() {
+        // Arrange
+        PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.GCRA, CAPACITY, RATE, 100);
+
+        // Act & Assert
+        assertEquals(KeyedLimiter.Outcome.GRANTED, table.tryAcquire("client", CAPACITY));
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, table.tryAcquire("client"));
+        assertEquals(KeyedLimiter.Outcome.GRANTED, table.tryAcquire("other"));
+        assertEquals(CAPACITY - 1, table.getLevel("other"));
+    }
+
+    @Test
+    void whenRateIsOutOfRange_thenCreationFails() {
+        assertThrows(IllegalArgumentException.class, () -> new GcraLimiter(CAPACITY, 0));
+        assertThrows(IllegalArgumentException.class, () -> new GcraLimiter(CAPACITY, BucketAlgorithm.MAX_RATE + 1));
+    }
+
+    @Test
+    void whenCapacityIsRaised_thenTheShareOfFreePermitsIsKept() {
+        // Arrange: half of the burst is taken
+        ManualClock clock = new ManualClock();
+        GcraLimiter limiter = new GcraLimiter(10, 1, clock);
+        limiter.tryAcquire(5);
+
+        // Act
+        limiter.reconfigure(20, 1);
+
+        // Assert
+        assertEquals(10, limiter.getLevel());
+        assertTrue(limiter.tryAcquire(10));
+        assertFalse(limiter.tryAcquire());
+    }
+}
@@ -0,0 +1,174 @@
+package es.mlrdevs97.throttling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchicalLimiterTest {
+    private final long GLOBAL_CAPACITY = 10;
+    private final long TENANT_CAPACITY = 5;
+    private final long USER_CAPACITY = 3;
+    private final long RATE = 1;
+
+    private HierarchicalLimiter limiter(ManualClock clock) {
+        return new HierarchicalLimiter(GLOBAL_CAPACITY, RATE, TENANT_CAPACITY, RATE, USER_CAPACITY, RATE, 100, clock);
+    }
+
+    @Test
+    void whenUserLimitIsExhausted_thenOuterLevelsAreNotCharged() {
+        // Arrange
+        HierarchicalLimiter limiter = limiter(new ManualClock());
+        Decision decision = new Decision();
+
+        // Act
+        assertEquals(KeyedLimiter.Outcome.GRANTED, limiter.tryAcquire("acme", "alice", USER_CAPACITY, null));
+        KeyedLimiter.Outcome outcome = limiter.tryAcquire("acme", "alice", 1, decision);
+
+        // Assert
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, outcome);
+        assertEquals(USER_CAPACITY, decision.getLimit());
+        assertEquals(TENANT_CAPACITY - USER_CAPACITY, limiter.getLevel("acme", "bob"));
+    }
+
+    @Test
+    void whenTenantBudgetIsExhausted_thenItsUsersAreThrottledWithoutCharge() {
+        // Arrange
+        HierarchicalLimiter limiter = limiter(new ManualClock());
+        Decision decision = new Decision();
+        assertEquals(KeyedLimiter.Outcome.GRANTED, limiter.tryAcquire("acme", "alice", 3, null));
+        assertEquals(KeyedLimiter.Outcome.GRANTED, limiter.tryAcquire("acme", "bob", 2, null));
+
+        // Act
+        KeyedLimiter.Outcome outcome = limiter.tryAcquire("acme", "carol", 1, decision);
+
+        // Assert
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, outcome);
+        assertEquals(TENANT_CAPACITY, decision.getLimit());
+        assertEquals(1_000_000_000L, decision.getRetryAfterNanos());
+        assertEquals(KeyedLimiter.Outcome.GRANTED, limiter.tryAcquire("initech", "carol", USER_CAPACITY, null));
+        assertEquals(KeyedLimiter.Outcome.GRANTED, limiter.tryAcquire("initech", "dave", 2, null));
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, limiter.tryAcquire("globex", "erin", 1, decision));
+        assertEquals(GLOBAL_CAPACITY, decision.getLimit());
+    }
+
+    @Test
+    void whenGlobalCeilingIsReached_thenEveryTenantIsThrottled() {
+        // Arrange
+        HierarchicalLimiter limiter = limiter(new ManualClock());
+        Decision decision = new Decision();
+        for (String tenant : new String[] {"acme", "initech", "globex"}) {
+            limiter.tryAcquire(tenant, tenant + "-user", USER_CAPACITY, null);
+        }
+
+        // Act
+        KeyedLimiter.Outcome last = limiter.tryAcquire("umbrella", "eve", 1, decision);
+        KeyedLimiter.Outcome denied = limiter.tryAcquire("umbrella", "frank", 1, decision);
+
+        // Assert
+        assertEquals(KeyedLimiter.Outcome.GRANTED, last);
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, denied);
+        assertEquals(GLOBAL_CAPACITY, decision.getLimit());
+        assertEquals(0, limiter.getLevel("umbrella", "frank"));
+    }
+
+    @Test
+    void whenGranted_thenTheTightestLevelIsDescribed() {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        HierarchicalLimiter limiter = limiter(clock);
+        Decision decision = new Decision();
+
+        // Act
+        limiter.tryAcquire("acme", "alice", 1, decision);
+
+        // Assert: the user has 2 tokens left, the tenant 4 and the global ceiling 9
+        assertTrue(decision.isGranted());
+        assertEquals(USER_CAPACITY, decision.getLimit());
+        assertEquals(USER_CAPACITY - 1, decision.getRemaining());
+
+        // Act: other users of the tenant take a token each, until the tenant is the tightest
+        for (String user : new String[] {"bob", "carol", "dave"}) {
+            limiter.tryAcquire("acme", user, 1, decision);
+        }
+
+        // Assert
+        assertEquals(TENANT_CAPACITY, decision.getLimit());
+        assertEquals(1, decision.getRemaining());
+    }
+
+    @Test
+    void whenTimePasses_thenEveryLevelRefillsAtItsOwnRate() {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        HierarchicalLimiter limiter = new HierarchicalLimiter(4, 1, 4, 2, 4, 4, 100, clock);
+        assertEquals(KeyedLimiter.Outcome.GRANTED, limiter.tryAcquire("acme", "alice", 4, null));
+
+        // Act
+        clock.advance(500, TimeUnit.MILLISECONDS);
+
+        // Assert: the user has 2 tokens back and the tenant 1, but the global ceiling none yet
+        assertEquals(0, limiter.getLevel("acme", "alice"));
+        clock.advance(500, TimeUnit.MILLISECONDS);
+        assertEquals(1, limiter.getLevel("acme", "alice"));
+    }
+
+    @Test
+    void whenManyThreadsRace_thenNoLevelIsExceededAndNothingIsLost() throws InterruptedException {
+        // Arrange: a frozen clock, so that nothing refills while the threads race
+        HierarchicalLimiter limiter = new HierarchicalLimiter(200, 1, 60, 1, 7, 1, 1_000, new ManualClock());
+        int tenants = 5;
+        int usersPerTenant = 20;
+        AtomicLongArray grantedPerTenant = new AtomicLongArray(tenants);
+        AtomicLongArray grantedPerUser = new AtomicLongArray(tenants * usersPerTenant);
+        int threadCount = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            int seed = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < 2_000; i++) {
+                    int user = (seed * 31 + i * 17) % (tenants * usersPerTenant);
+                    int tenant = user / usersPerTenant;
+                    long permits = 1 + (i + seed) % 3;
+                    if (limiter.tryAcquire("tenant-" + tenant, "user-" + user, permits, null) == KeyedLimiter.Outcome.GRANTED) {
+                        grantedPerTenant.addAndGet(tenant, permits);
+                        grantedPerUser.addAndGet(user, permits);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        // Act
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Assert
+        long total = 0;
+        for (int tenant = 0; tenant < tenants; tenant++) {
+            assertTrue(grantedPerTenant.get(tenant) <= 60);
+            total += grantedPerTenant.get(tenant);
+        }
+        for (int user = 0; user < tenants * usersPerTenant; user++) {
+            assertTrue(grantedPerUser.get(user) <= 7);
+        }
+        assertTrue(total <= 200);
+        // Every token missing from a level was granted: refunds gave back all the others.
+        assertEquals(Math.min(7, 200 - total), limiter.getLevel("tenant-new", "user-new"));
+        for (int tenant = 0; tenant < tenants; tenant++) {
+            long tenantLeft = 60 - grantedPerTenant.get(tenant);
+            assertEquals(Math.min(Math.min(7, tenantLeft), 200 - total), limiter.getLevel("tenant-" + tenant, "user-new-" + tenant));
+        }
+    }
+}
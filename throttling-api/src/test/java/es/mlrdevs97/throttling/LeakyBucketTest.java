@@ -3,6 +3,9 @@ package es.mlrdevs97.throttling;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -57,6 +60,22 @@ class LeakyBucketTest {
         assertEquals(leakyBucket.getCurrentSize(), CAPACITY);
     }
 
+    @Test
+    void whenWeightedRequestIsAdded_thenItTakesAllItsSlotsOrNone() {
+        // Act & Assert
+        assertTrue(leakyBucket.tryAdd(CAPACITY - 1));
+        assertEquals(CAPACITY - 1, leakyBucket.getCurrentSize());
+        assertFalse(leakyBucket.tryAdd(2));
+        assertEquals(CAPACITY - 1, leakyBucket.getCurrentSize());
+        assertTrue(leakyBucket.tryAdd(1));
+        assertEquals(CAPACITY, leakyBucket.getCurrentSize());
+    }
+
+    @Test
+    void whenRequestWeightIsNotPositive_thenItIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> leakyBucket.tryAdd(-1));
+    }
+
     @Test
     void whenBucketIsNotEmpty_thenShouldLeakOverTime() throws InterruptedException {
         // Arrange
@@ -130,4 +149,207 @@ class LeakyBucketTest {
         assertTrue(grantedRequest[0] > 0);
         assertTrue(grantedRequest[0] < LEAK_RATE * timeElapsed);
     }
+
+    @Test
+    void whenManyThreadsRaceForTheLastSlots_thenNoMoreThanCapacityIsAccepted() throws InterruptedException {
+        // Arrange: A large bucket with a slow leak so that only the queue capacity can be accepted
+        final long capacity = 1000;
+        final LeakyBucket bucket = new LeakyBucket(capacity, 1);
+        final int numThreads = 8;
+        final AtomicLong accepted = new AtomicLong();
+        Thread[] threads = new Thread[numThreads];
+
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < capacity; j++) {
+                    if (bucket.tryAdd()) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        // Act
+        long start = System.currentTimeMillis();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long timeElapsed = System.currentTimeMillis() - start;
+
+        // Assert
+        assertTrue(accepted.get() >= capacity);
+        assertTrue(accepted.get() <= capacity + (timeElapsed / 1000) + 1);
+    }
+
+    @Test
+    void whenTimeAdvancesInFractionsOfATick_thenTheRemainderIsKept() {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        LeakyBucket bucket = new LeakyBucket(1, 3, clock);
+
+        // Act
+        long accepted = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (bucket.tryAdd()) {
+                accepted++;
+            }
+            clock.advance(1, TimeUnit.MILLISECONDS);
+        }
+
+        // Assert
+        assertEquals(3, accepted);
+    }
+
+    @Test
+    void whenRateIsAboveOnePerMillisecond_thenItIsEnforcedExactly() {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        long rate = 1_000_000;
+        LeakyBucket bucket = new LeakyBucket(1, rate, clock);
+
+        // Act
+        long accepted = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (bucket.tryAdd()) {
+                accepted++;
+            }
+            clock.advance(100);
+        }
+
+        // Assert
+        assertEquals(rate * 10_000 * 100 / 1_000_000_000, accepted);
+    }
+
+    @Test
+    void whenRateIsOutOfRange_thenCreationFails() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> new LeakyBucket(CAPACITY, 0));
+        assertThrows(IllegalArgumentException.class, () -> new LeakyBucket(CAPACITY, BucketAlgorithm.MAX_RATE + 1));
+    }
+
+    @Test
+    void whenDecisionIsDescribed_thenItAgreesWithTheBucket() {
+        // Arrange: 4 requests leak per second, so a slot frees up every 250 ms
+        ManualClock clock = new ManualClock();
+        LeakyBucket bucket = new LeakyBucket(2, 4, clock);
+        Decision decision = new Decision();
+
+        // Act & Assert: filling the queue leaves no free slot, and the queue drains in 500 ms
+        assertTrue(bucket.tryAdd(2, decision));
+        assertTrue(decision.isGranted());
+        assertEquals(2, decision.getLevel());
+        assertEquals(0, decision.getRemaining());
+        assertEquals(2, decision.getLimit());
+        assertEquals(250_000_000L, decision.getRetryAfterNanos());
+        assertEquals(500_000_000L, decision.getResetNanos());
+
+        // Act & Assert: 100 ms later, a request taking both slots must wait for the whole queue to drain
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertFalse(bucket.tryAdd(2, decision));
+        assertFalse(decision.isGranted());
+        assertEquals(400_000_000L, decision.getRetryAfterNanos());
+
+        // Act & Assert: a request costing more than the capacity never goes through
+        assertFalse(bucket.tryAdd(3, decision));
+        assertEquals(Decision.NEVER, decision.getRetryAfterNanos());
+    }
+
+    @Test
+    void whenRequestsAreQueued_thenEachWaitsForItsTurnToLeak() {
+        // Arrange: 4 requests leak per second, so one every 250 ms
+        ManualClock clock = new ManualClock();
+        LeakyBucket bucket = new LeakyBucket(5, 4, clock);
+        Decision decision = new Decision();
+
+        // Act & Assert: the first request leaks at once, the next ones 250 ms apart
+        assertTrue(bucket.tryAdd(1, decision));
+        assertEquals(0, decision.getDelayNanos());
+        assertTrue(bucket.tryAdd(1, decision));
+        assertEquals(250_000_000L, decision.getDelayNanos());
+        assertTrue(bucket.tryAdd(2, decision));
+        assertEquals(500_000_000L, decision.getDelayNanos());
+
+        // Act & Assert: time moves on, and a new request queues behind the four slots taken
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertTrue(bucket.tryAdd(1, decision));
+        assertEquals(900_000_000L, decision.getDelayNanos());
+    }
+
+    @Test
+    void whenQueueIsFull_thenAcquireWaitsForRoom() throws Exception {
+        // Arrange: 10 requests leak per second, so a slot frees up every 100 ms
+        ManualClock clock = new ManualClock();
+        LeakyBucket bucket = new LeakyBucket(2, 10, clock);
+        bucket.tryAdd(2);
+        AtomicBoolean added = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            try {
+                added.set(bucket.acquire(2, 1, TimeUnit.MINUTES));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // Act
+        waiter.start();
+        while (clock.getWaitingThreads() < 1) {
+            Thread.sleep(1);
+        }
+
+        // Assert: the slot freed after 100 ms is kept for the waiter, which gets in once both are free
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertFalse(bucket.tryAdd());
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        waiter.join(2000);
+        assertTrue(added.get());
+        assertEquals(2, bucket.getCurrentSize());
+    }
+
+    @Test
+    void whenWaitWouldExceedTimeout_thenAcquireFailsAtOnce() throws InterruptedException {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        LeakyBucket bucket = new LeakyBucket(2, 10, clock);
+        bucket.tryAdd(2);
+
+        // Act & Assert
+        assertFalse(bucket.acquire(1, 50, TimeUnit.MILLISECONDS));
+        assertFalse(bucket.acquire(1, 0, TimeUnit.MILLISECONDS));
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertTrue(bucket.tryAdd());
+    }
+
+    @Test
+    void whenCapacityIsRaised_thenTheShareOfTheQueueIsKept() {
+        // Arrange: 4 of 10 slots are taken
+        ManualClock clock = new ManualClock();
+        LeakyBucket bucket = new LeakyBucket(10, 1, clock);
+        bucket.tryAdd(4);
+
+        // Act
+        bucket.reconfigure(20, 2);
+
+        // Assert: 8 of 20 slots are taken, and leak at the new rate
+        assertEquals(8, bucket.getCurrentSize());
+        clock.advance(1, TimeUnit.SECONDS);
+        assertEquals(6, bucket.getCurrentSize());
+    }
+
+    @Test
+    void whenCapacityIsLowered_thenTheQueueIsScaledDown() {
+        // Arrange: the queue is full
+        ManualClock clock = new ManualClock();
+        LeakyBucket bucket = new LeakyBucket(10, 1, clock);
+        bucket.tryAdd(10);
+
+        // Act
+        bucket.reconfigure(5, 1);
+
+        // Assert
+        assertEquals(5, bucket.getCurrentSize());
+        assertFalse(bucket.tryAdd());
+    }
 }
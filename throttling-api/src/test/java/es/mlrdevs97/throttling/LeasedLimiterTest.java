@@ -0,0 +1,226 @@
+package es.mlrdevs97.throttling;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LeasedLimiterTest {
+    private final long CAPACITY = 100;
+    private final long CHUNK = 10;
+    private final long IDLE_MILLIS = 1000;
+
+    private ManualClock clock;
+    private CountingAuthority authority;
+    private LeasedLimiter node;
+    private LeasedLimiter otherNode;
+
+    @BeforeEach
+    void setUp() {
+        clock = new ManualClock();
+        authority = new CountingAuthority(new LoopbackQuotaAuthority(CAPACITY, 1, clock));
+        node = new LeasedLimiter(authority, CHUNK, IDLE_MILLIS, 100, clock);
+        otherNode = new LeasedLimiter(authority, CHUNK, IDLE_MILLIS, 100, clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        node.close();
+        otherNode.close();
+    }
+
+    @Test
+    void whenRequestsAreServedFromTheLease_thenTheAuthorityIsRarelyAsked() {
+        // Act
+        for (int i = 0; i < 50; i++) {
+            assertEquals(KeyedLimiter.Outcome.GRANTED, node.tryAcquire("client"));
+        }
+
+        // Assert: about one round trip per chunk, not one per request
+        assertTrue(authority.leases.get() <= 50 / CHUNK + 1, "leases: " + authority.leases.get());
+    }
+
+    @Test
+    void whenSeveralNodesShareAKey_thenTogetherTheyGrantNoMoreThanTheGlobalLimit() throws InterruptedException {
+        // Act: both nodes ask for far more than the limit
+        int granted = 0;
+        for (int i = 0; i < 2 * CAPACITY; i++) {
+            if (node.tryAcquire("client") == KeyedLimiter.Outcome.GRANTED) {
+                granted++;
+            }
+            if (otherNode.tryAcquire("client") == KeyedLimiter.Outcome.GRANTED) {
+                granted++;
+            }
+        }
+        awaitRenewals();
+
+        // Assert: what was granted, plus what the nodes still hold, is the whole budget
+        assertTrue(granted <= CAPACITY, "granted: " + granted);
+        assertEquals(CAPACITY, granted + node.getLevel("client") + otherNode.getLevel("client")
+                + authority.delegate.getLevel("client"));
+    }
+
+    @Test
+    void whenGlobalBudgetIsExhausted_thenTheDecisionComesFromTheAuthority() throws InterruptedException {
+        // Arrange: the other node takes almost everything
+        assertEquals(KeyedLimiter.Outcome.GRANTED, otherNode.tryAcquire("client", CAPACITY - 5));
+        awaitRenewals();
+        Decision decision = new Decision();
+
+        // Act
+        KeyedLimiter.Outcome outcome = node.tryAcquire("client", 20, decision);
+
+        // Assert
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, outcome);
+        assertFalse(decision.isGranted());
+        assertEquals(CAPACITY, decision.getLimit());
+        assertTrue(decision.getRetryAfterNanos() > 0);
+    }
+
+    @Test
+    void whenTheAuthorityRefuses_thenRequestsAreThrottledLocallyUntilTheBudgetRefills() throws InterruptedException {
+        // Arrange: the other node takes everything, and this one is refused once
+        assertEquals(KeyedLimiter.Outcome.GRANTED, otherNode.tryAcquire("client", CAPACITY));
+        awaitRenewals();
+        Decision refusal = new Decision();
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, node.tryAcquire("client", 1, refusal));
+        int leases = authority.leases.get();
+
+        // Act
+        Decision decision = new Decision();
+        for (int i = 0; i < 50; i++) {
+            assertEquals(KeyedLimiter.Outcome.THROTTLED, node.tryAcquire("client", 1, decision));
+        }
+        int whileRefused = authority.leases.get() - leases;
+        clock.advance(refusal.getRetryAfterNanos(), TimeUnit.NANOSECONDS);
+        KeyedLimiter.Outcome refilled = node.tryAcquire("client");
+
+        // Assert
+        assertEquals(0, whileRefused);
+        assertFalse(decision.isGranted());
+        assertEquals(CAPACITY, decision.getLimit());
+        assertEquals(refusal.getRetryAfterNanos(), decision.getRetryAfterNanos());
+        assertEquals(KeyedLimiter.Outcome.GRANTED, refilled);
+    }
+
+    @Test
+    void whenLeaseIsIdle_thenWhatIsLeftIsReturned() throws InterruptedException {
+        // Arrange: 50 permits spent, and a chunk held for the next ones
+        assertEquals(KeyedLimiter.Outcome.GRANTED, node.tryAcquire("client", 50));
+        awaitRenewals();
+        assertEquals(CHUNK, node.getLevel("client"));
+
+        // Act: not before the idle time
+        assertEquals(0, node.evictIdle());
+        clock.advance(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+        int evicted = node.evictIdle();
+
+        // Assert: the chunk is back in the budget, along with the permit refilled meanwhile
+        assertEquals(1, evicted);
+        assertEquals(0, node.size());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (authority.releases.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(CAPACITY - 50 + 1, authority.delegate.getLevel("client"));
+    }
+
+    @Test
+    void whenTheAuthorityIsSlow_thenRequestsWaitingForItAreThrottledInTime() throws Exception {
+        // Arrange: the authority does not answer the first lease until told to
+        CountDownLatch answer = new CountDownLatch(1);
+        CountDownLatch asked = new CountDownLatch(1);
+        QuotaAuthority slow = new QuotaAuthority() {
+            @Override
+            public long lease(String key, long minPermits, long maxPermits, Decision decision) {
+                asked.countDown();
+                try {
+                    answer.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return authority.lease(key, minPermits, maxPermits, decision);
+            }
+
+            @Override
+            public void release(String key, long permits) {
+                authority.release(key, permits);
+            }
+        };
+        LeasedLimiter slowNode = new LeasedLimiter(slow, CHUNK, IDLE_MILLIS, 100, clock);
+        ExecutorService first = Executors.newSingleThreadExecutor();
+        try {
+            Future<KeyedLimiter.Outcome> leasing = first.submit(() -> slowNode.tryAcquire("client"));
+            assertTrue(asked.await(5, TimeUnit.SECONDS));
+            Decision decision = new Decision();
+
+            // Act
+            long start = System.nanoTime();
+            KeyedLimiter.Outcome outcome = slowNode.tryAcquire("client", 1, decision);
+            long waited = System.nanoTime() - start;
+
+            // Assert: throttled after a bounded wait, while the request that asked still gets its answer
+            assertEquals(KeyedLimiter.Outcome.THROTTLED, outcome);
+            assertTrue(waited >= LeasedLimiter.MAX_RENEWAL_WAIT_NANOS, "waited: " + waited);
+            assertTrue(waited < TimeUnit.SECONDS.toNanos(5), "waited: " + waited);
+            assertEquals(LeasedLimiter.MAX_RENEWAL_WAIT_NANOS, decision.getRetryAfterNanos());
+            answer.countDown();
+            assertEquals(KeyedLimiter.Outcome.GRANTED, leasing.get(5, TimeUnit.SECONDS));
+            assertEquals(KeyedLimiter.Outcome.GRANTED, slowNode.tryAcquire("client"));
+        } finally {
+            answer.countDown();
+            first.shutdownNow();
+            slowNode.close();
+        }
+    }
+
+    @Test
+    void whenChunkIsNotPositive_thenCreationFails() {
+        assertThrows(IllegalArgumentException.class, () -> new LeasedLimiter(authority, 0, IDLE_MILLIS, 100));
+    }
+
+    /**
+     * Waits until no renewal is in flight, so that the leases held are settled.
+     */
+    private void awaitRenewals() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        int seen;
+        do {
+            seen = authority.leases.get();
+            Thread.sleep(20);
+        } while (seen != authority.leases.get() && System.nanoTime() < deadline);
+    }
+
+    /**
+     * Counts the round trips to the authority.
+     */
+    private static final class CountingAuthority implements QuotaAuthority {
+        private final LoopbackQuotaAuthority delegate;
+        private final AtomicInteger leases = new AtomicInteger();
+        private final AtomicInteger releases = new AtomicInteger();
+
+        CountingAuthority(LoopbackQuotaAuthority delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public long lease(String key, long minPermits, long maxPermits, Decision decision) {
+            leases.incrementAndGet();
+            return delegate.lease(key, minPermits, maxPermits, decision);
+        }
+
+        @Override
+        public void release(String key, long permits) {
+            delegate.release(key, permits);
+            releases.incrementAndGet();
+        }
+    }
+}
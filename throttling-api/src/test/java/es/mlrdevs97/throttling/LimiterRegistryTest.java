@@ -0,0 +1,162 @@
+package es.mlrdevs97.throttling;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimiterRegistryTest {
+    private final long CAPACITY = 2;
+    private final long REFILL_RATE = 1;
+    private final int MAX_KEYS = 3;
+    private LimiterRegistry<TokenBucket> registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new LimiterRegistry<>(() -> new TokenBucket(CAPACITY, REFILL_RATE), MAX_KEYS);
+    }
+
+    @Test
+    void whenKeyIsRequestedTwice_thenTheSameLimiterIsReturned() {
+        // Act
+        TokenBucket first = registry.get("client");
+        TokenBucket second = registry.get("client");
+
+        // Assert
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void whenKeysDiffer_thenEachKeyIsLimitedSeparately() {
+        // Arrange: exhaust the first client
+        for (int i = 0; i < CAPACITY; i++) {
+            registry.get("first").tryConsume();
+        }
+
+        // Act & Assert
+        assertFalse(registry.get("first").tryConsume());
+        assertTrue(registry.get("second").tryConsume());
+    }
+
+    @Test
+    void whenRegistryIsFull_thenIdleLimitersAreEvicted() {
+        // Arrange: fill the registry with untouched (idle) buckets
+        for (int i = 0; i < MAX_KEYS; i++) {
+            registry.get("client-" + i);
+        }
+
+        // Act
+        TokenBucket limiter = registry.get("newcomer");
+
+        // Assert
+        assertNotNull(limiter);
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void whenRegistryIsFullOfActiveLimiters_thenNewKeysAreRefused() {
+        // Arrange: fill the registry with buckets that have consumed tokens
+        for (int i = 0; i < MAX_KEYS; i++) {
+            registry.get("client-" + i).tryConsume();
+        }
+
+        // Act
+        TokenBucket limiter = registry.get("newcomer");
+
+        // Assert
+        assertNull(limiter);
+        assertEquals(MAX_KEYS, registry.size());
+        assertNotNull(registry.get("client-0"));
+    }
+
+    @Test
+    void whenRegistryIsFull_thenNewKeysSweepItAtMostOncePerInterval() {
+        // Arrange: a full registry of active buckets, swept once by the first key refused
+        ManualClock bucketClock = new ManualClock();
+        ManualClock sweepClock = new ManualClock();
+        List<TokenBucket> evicted = new ArrayList<>();
+        LimiterRegistry<TokenBucket> swept = new LimiterRegistry<>(key -> new TokenBucket(CAPACITY, REFILL_RATE, bucketClock),
+                MAX_KEYS, evicted::add, sweepClock);
+        for (int i = 0; i < MAX_KEYS; i++) {
+            swept.get("client-" + i).tryConsume();
+        }
+        assertNull(swept.get("newcomer"));
+
+        // Act & Assert: the buckets become idle, but are only swept once the interval is over
+        bucketClock.advance(1, TimeUnit.SECONDS);
+        for (int i = 0; i < 10; i++) {
+            assertNull(swept.get("newcomer-" + i));
+        }
+        assertTrue(evicted.isEmpty());
+        sweepClock.advance(LimiterRegistry.INLINE_SWEEP_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+        assertNotNull(swept.get("newcomer"));
+        assertEquals(MAX_KEYS, evicted.size());
+        assertEquals(1, swept.size());
+    }
+
+    @Test
+    void whenLimitersAreActive_thenEvictIdleKeepsThem() {
+        // Arrange
+        registry.get("active").tryConsume();
+        registry.get("idle");
+
+        // Act
+        int evicted = registry.evictIdle();
+
+        // Assert
+        assertEquals(1, evicted);
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void whenLimitersAreEvicted_thenOnlyThoseRemovedAreReported() {
+        // Arrange
+        List<TokenBucket> evicted = new ArrayList<>();
+        LimiterRegistry<TokenBucket> tracked = new LimiterRegistry<>(key -> new TokenBucket(CAPACITY, REFILL_RATE),
+                MAX_KEYS, evicted::add);
+        tracked.get("active").tryConsume();
+        TokenBucket idle = tracked.get("idle");
+
+        // Act
+        tracked.evictIdle();
+
+        // Assert
+        assertEquals(List.of(idle), evicted);
+        assertNull(tracked.peek("idle"));
+    }
+
+    @Test
+    void whenMaxKeysIsNotPositive_thenCreationFails() {
+        assertThrows(IllegalArgumentException.class, () -> new LimiterRegistry<>(() -> new TokenBucket(CAPACITY, REFILL_RATE), 0));
+    }
+
+    @Test
+    void whenReconfigured_thenTrackedAndNewLimitersGetTheNewLimits() {
+        // Arrange: one of the two tokens of "a" is taken
+        registry.tryAcquire("a");
+
+        // Act
+        registry.reconfigure(4, REFILL_RATE);
+
+        // Assert
+        assertEquals(2, registry.getLevel("a"));
+        assertEquals(KeyedLimiter.Outcome.GRANTED, registry.tryAcquire("b", 4));
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, registry.tryAcquire("b"));
+    }
+
+    @Test
+    void whenLimitersCannotBeReconfigured_thenReconfiguringFails() {
+        // Arrange
+        LimiterRegistry<SlidingWindowLog> logs = new LimiterRegistry<>(() -> new SlidingWindowLog(2, 1000), MAX_KEYS);
+        logs.tryAcquire("a");
+
+        // Act & Assert
+        assertThrows(UnsupportedOperationException.class, () -> logs.reconfigure(4, 1));
+    }
+}
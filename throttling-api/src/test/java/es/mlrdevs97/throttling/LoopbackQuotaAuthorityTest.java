@@ -0,0 +1,72 @@
+package es.mlrdevs97.throttling;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoopbackQuotaAuthorityTest {
+    private ManualClock clock;
+    private LoopbackQuotaAuthority authority;
+    private final long CAPACITY = 100;
+    private final long RATE = 10;
+
+    @BeforeEach
+    void setUp() {
+        clock = new ManualClock();
+        authority = new LoopbackQuotaAuthority(CAPACITY, RATE, clock);
+    }
+
+    @Test
+    void whenLeasing_thenAsManyPermitsAsPossibleWithinBoundsAreTaken() {
+        // Act & Assert: a full budget leases the most asked for
+        assertEquals(60, authority.lease("client", 1, 60, null));
+        assertEquals(40, authority.getLevel("client"));
+
+        // Act & Assert: fewer left than the most, but enough for the fewest
+        assertEquals(40, authority.lease("client", 10, 60, null));
+        assertEquals(0, authority.getLevel("client"));
+
+        // Act & Assert: fewer left than the fewest
+        assertEquals(0, authority.lease("client", 1, 60, null));
+        assertEquals(CAPACITY, authority.getLevel("other"));
+    }
+
+    @Test
+    void whenLeaseIsRefused_thenTheDecisionTellsWhenItWouldFit() {
+        // Arrange
+        Decision decision = new Decision();
+        assertEquals(CAPACITY, authority.lease("client", 1, CAPACITY, decision));
+        assertTrue(decision.isGranted());
+        assertEquals(CAPACITY, decision.getLimit());
+
+        // Act
+        long leased = authority.lease("client", 5, 10, decision);
+
+        // Assert: 5 tokens refill in half a second
+        assertEquals(0, leased);
+        assertFalse(decision.isGranted());
+        assertEquals(500_000_000L, decision.getRetryAfterNanos());
+    }
+
+    @Test
+    void whenPermitsAreReleased_thenTheyAreBackInTheBudgetUpToItsCapacity() {
+        // Arrange
+        assertEquals(30, authority.lease("client", 30, 30, null));
+
+        // Act & Assert
+        authority.release("client", 20);
+        assertEquals(90, authority.getLevel("client"));
+        clock.advance(1, TimeUnit.SECONDS);
+        authority.release("client", 10);
+        assertEquals(CAPACITY, authority.getLevel("client"));
+    }
+
+    @Test
+    void whenBoundsAreInvalid_thenLeasingIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> authority.lease("client", 0, 10, null));
+        assertThrows(IllegalArgumentException.class, () -> authority.lease("client", 10, 5, null));
+    }
+}
@@ -0,0 +1,331 @@
+package es.mlrdevs97.throttling;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackedBucketTableTest {
+    private final long CAPACITY = 5;
+    private final long RATE = 1;
+
+    @Test
+    void whenTokenBucketKeyIsNew_thenItStartsFullAndThrottlesAfterCapacity() {
+        // Arrange
+        PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, CAPACITY, RATE, 100);
+
+        // Act & Assert
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(KeyedLimiter.Outcome.GRANTED, table.tryAcquire("client"));
+            assertEquals(CAPACITY - (i + 1), table.getLevel("client"));
+        }
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, table.tryAcquire("client"));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void whenLeakyBucketKeyIsNew_thenItStartsEmptyAndThrottlesWhenFull() {
+        // Arrange
+        PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.LEAKY_BUCKET, CAPACITY, RATE, 100);
+
+        // Act & Assert
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(KeyedLimiter.Outcome.GRANTED, table.tryAcquire("client"));
+            assertEquals(i + 1, table.getLevel("client"));
+        }
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, table.tryAcquire("client"));
+    }
+
+    @Test
+    void whenSeveralPermitsAreRequested_thenAllOrNoneAreTaken() {
+        // Arrange
+        PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, CAPACITY, RATE, 100);
+
+        // Act & Assert
+        assertEquals(KeyedLimiter.Outcome.GRANTED, table.tryAcquire("client", CAPACITY - 1));
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, table.tryAcquire("client", 2));
+        assertEquals(1, table.getLevel("client"));
+    }
+
+    @Test
+    void whenKeysDiffer_thenEachKeyIsLimitedSeparately() {
+        // Arrange
+        PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, 1, RATE, 100, 4);
+
+        // Act & Assert
+        for (int i = 0; i < 50; i++) {
+            assertEquals(KeyedLimiter.Outcome.GRANTED, table.tryAcquire("client-" + i));
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals(KeyedLimiter.Outcome.THROTTLED, table.tryAcquire("client-" + i));
+        }
+        assertEquals(50, table.size());
+    }
+
+    @Test
+    void whenTableIsFullOfActiveKeys_thenNewKeysAreRefused() {
+        // Arrange: a single stripe of 4 slots holds at most 3 keys
+        PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, CAPACITY, RATE, 3, 1);
+        for (int i = 0; i < 3; i++) {
+            table.tryAcquire("client-" + i);
+        }
+
+        // Act
+        KeyedLimiter.Outcome outcome = table.tryAcquire("newcomer");
+
+        // Assert
+        assertEquals(KeyedLimiter.Outcome.KEY_LIMIT_REACHED, outcome);
+        assertEquals(KeyedLimiter.Outcome.GRANTED, table.tryAcquire("client-0"));
+    }
+
+    @Test
+    void whenNoKeyIsIdle_thenEvictionFreesNothing() {
+        // Arrange: fill the table with clients that have requests queued
+        PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.LEAKY_BUCKET, CAPACITY, RATE, 3, 1);
+        for (int i = 0; i < 3; i++) {
+            table.tryAcquire("client-" + i);
+        }
+
+        // Act
+        int evicted = table.evictIdle();
+
+        // Assert
+        assertEquals(0, evicted);
+        assertEquals(3, table.size());
+        assertEquals(KeyedLimiter.Outcome.KEY_LIMIT_REACHED, table.tryAcquire("newcomer"));
+    }
+
+    @Test
+    void whenTableIsFullOfIdleKeys_thenTheirSlotsAreReused() {
+        // Arrange: buckets refilling a token every microsecond are idle again one microsecond later
+        ManualClock clock = new ManualClock();
+        PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, 1, 1_000_000, 3, 1, clock);
+
+        // Act & Assert: many more clients than slots get through, one after the other
+        for (int i = 0; i < 100; i++) {
+            assertEquals(KeyedLimiter.Outcome.GRANTED, table.tryAcquire("client-" + i));
+            clock.advance(1, TimeUnit.MICROSECONDS);
+        }
+        assertTrue(table.size() <= 3);
+    }
+
+    @Test
+    void whenManyThreadsRaceOnTheSameKey_thenNoMoreThanCapacityIsGranted() throws InterruptedException {
+        // Arrange
+        final long capacity = 1000;
+        final PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, capacity, RATE, 16);
+        final AtomicLong granted = new AtomicLong();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < capacity; j++) {
+                    if (table.tryAcquire("shared") == KeyedLimiter.Outcome.GRANTED) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        // Act
+        long start = System.currentTimeMillis();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long timeElapsed = System.currentTimeMillis() - start;
+
+        // Assert
+        assertTrue(granted.get() >= capacity);
+        assertTrue(granted.get() <= capacity + (timeElapsed / 1000) + 1);
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void whenRestoredFromACheckpoint_thenBusyBucketsKeepTheirLevel(@TempDir Path dir) throws IOException {
+        // Arrange
+        Path file = dir.resolve("buckets.bin");
+        PackedBucketTable before = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, CAPACITY, RATE, 100, 4, new ManualClock());
+        assertEquals(KeyedLimiter.Outcome.GRANTED, before.tryAcquire("client", CAPACITY - 1));
+        assertEquals(KeyedLimiter.Outcome.GRANTED, before.tryAcquire("idle"));
+        ManualClock clock = new ManualClock();
+        PackedBucketTable after = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, CAPACITY, RATE, 100, 4, clock);
+
+        // Act
+        assertEquals(2, before.checkpoint(file, 1_000));
+        clock.advance(1, TimeUnit.SECONDS);
+        int restored = after.restore(file, 1_000);
+
+        // Assert
+        assertEquals(2, restored);
+        assertEquals(1, after.getLevel("client"));
+        assertEquals(CAPACITY - 1, after.getLevel("idle"));
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, after.tryAcquire("client", 2));
+        assertFalse(Files.exists(dir.resolve("buckets.bin.tmp")));
+    }
+
+    @Test
+    void whenTimePassesBeforeTheRestore_thenBucketsAreAgedAndIdleOnesSkipped(@TempDir Path dir) throws IOException {
+        // Arrange
+        Path file = dir.resolve("buckets.bin");
+        PackedBucketTable before = new PackedBucketTable(BucketAlgorithm.LEAKY_BUCKET, CAPACITY, RATE, 100, 1, new ManualClock());
+        before.tryAcquire("busy", CAPACITY);
+        before.tryAcquire("quiet", 1);
+        before.checkpoint(file, 10_000);
+        PackedBucketTable after = new PackedBucketTable(BucketAlgorithm.LEAKY_BUCKET, CAPACITY, RATE, 100, 1, new ManualClock());
+
+        // Act: two seconds of wall-clock time pass while the node is down
+        int restored = after.restore(file, 12_000);
+
+        // Assert
+        assertEquals(1, restored);
+        assertEquals(CAPACITY - 2, after.getLevel("busy"));
+        assertEquals(0, after.getLevel("quiet"));
+        assertEquals(1, after.size());
+    }
+
+    @Test
+    void whenCheckpointIsMissingOrForOtherLimits_thenNothingIsRestored(@TempDir Path dir) throws IOException {
+        // Arrange
+        Path file = dir.resolve("buckets.bin");
+        PackedBucketTable before = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, CAPACITY, RATE, 100);
+        PackedBucketTable after = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, CAPACITY, RATE + 1, 100);
+
+        // Act & Assert
+        assertEquals(0, after.restore(file));
+        before.tryAcquire("client");
+        before.checkpoint(file);
+        assertEquals(0, after.restore(file));
+        assertEquals(0, after.size());
+    }
+
+    @Test
+    void whenCheckpointIsTorn_thenRestoreFails(@TempDir Path dir) throws IOException {
+        // Arrange
+        Path file = dir.resolve("buckets.bin");
+        PackedBucketTable before = new PackedBucketTable(BucketAlgorithm.GCRA, CAPACITY, RATE, 100);
+        before.tryAcquire("client");
+        before.tryAcquire("other");
+        before.checkpoint(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 8);
+        }
+        PackedBucketTable after = new PackedBucketTable(BucketAlgorithm.GCRA, CAPACITY, RATE, 100);
+
+        // Act & Assert
+        assertThrows(IOException.class, () -> after.restore(file));
+        Files.write(file, new byte[] {1, 2, 3});
+        assertThrows(IOException.class, () -> after.restore(file));
+        assertEquals(0, after.size());
+    }
+
+    @Test
+    void whenKeysAreHashed_thenEqualKeysGetEqualHashes() {
+        assertEquals(PackedBucketTable.hash("10.0.0.1"), PackedBucketTable.hash(new StringBuilder("10.0.0.1")));
+        assertNotEquals(PackedBucketTable.hash("10.0.0.1"), PackedBucketTable.hash("10.0.0.2"));
+        assertNotEquals(0, PackedBucketTable.hash(""));
+    }
+
+    @Test
+    void whenReconfigured_thenEveryKeyKeepsItsShareAndNewKeysGetTheNewCapacity() {
+        // Arrange: two stripes, and keys with half and a fifth of their tokens taken
+        ManualClock clock = new ManualClock();
+        PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, 10, 1, 64, 2, clock);
+        table.tryAcquire("alice", 5);
+        table.tryAcquire("bob", 2);
+
+        // Act
+        table.reconfigure(20, 1);
+
+        // Assert
+        assertEquals(10, table.getLevel("alice"));
+        assertEquals(16, table.getLevel("bob"));
+        assertEquals(KeyedLimiter.Outcome.GRANTED, table.tryAcquire("carol", 20));
+        assertEquals(KeyedLimiter.Outcome.THROTTLED, table.tryAcquire("carol"));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    void whenReconfiguredWhileDeciding_thenNoPermitIsGrantedTwice() throws InterruptedException {
+        // Arrange: the clock is frozen, so only the capacity can be granted however often the limits are reapplied
+        ManualClock clock = new ManualClock();
+        PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, 1000, 1, 16, 1, clock);
+        AtomicLong granted = new AtomicLong();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    if (table.tryAcquire("key") == KeyedLimiter.Outcome.GRANTED) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        // Act
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (int i = 0; i < 200; i++) {
+            table.reconfigure(1000, 1);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Assert
+        assertEquals(1000, granted.get() + table.getLevel("key"));
+    }
+
+    @Test
+    void whenReconfiguredWhileTheClockMoves_thenNoMoreThanTheCapacityPlusTheRefillIsGranted() throws InterruptedException {
+        // Arrange: requests decided at a later reading than the rebuild's must keep their debt through it
+        ManualClock clock = new ManualClock();
+        PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, 10, 1000, 16, 1, clock);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong granted = new AtomicLong();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                while (!stop.get()) {
+                    if (table.tryAcquire("key") == KeyedLimiter.Outcome.GRANTED) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        Thread reconfigurer = new Thread(() -> {
+            while (!stop.get()) {
+                table.reconfigure(10, 1000);
+            }
+        });
+
+        // Act
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        reconfigurer.start();
+        for (int i = 0; i < 500; i++) {
+            clock.advance(TimeUnit.MILLISECONDS.toNanos(1));
+            Thread.yield();
+        }
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        reconfigurer.join();
+
+        // Assert
+        assertTrue(granted.get() <= 10 + 500, granted.get() + " permits granted");
+    }
+}
@@ -0,0 +1,120 @@
+package es.mlrdevs97.throttling;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowCounterTest {
+    private ManualClock clock;
+    private SlidingWindowCounter counter;
+    private final long LIMIT = 10;
+    private final long WINDOW_MILLIS = 1000;
+
+    @BeforeEach
+    void setUp() {
+        clock = new ManualClock();
+        counter = new SlidingWindowCounter(LIMIT, WINDOW_MILLIS, clock);
+    }
+
+    @Test
+    void whenNewCounterIsCreated_thenItIsEmptyAndIdle() {
+        // Act & Assert
+        assertEquals(0, counter.getLevel());
+        assertTrue(counter.isIdle());
+    }
+
+    @Test
+    void whenRequestsAreWithinLimit_thenTheyAreGranted() {
+        // Act & Assert
+        assertTrue(counter.tryAcquire(LIMIT - 1));
+        assertFalse(counter.tryAcquire(2));
+        assertTrue(counter.tryAcquire());
+        assertFalse(counter.tryAcquire());
+        assertEquals(LIMIT, counter.getLevel());
+        assertThrows(IllegalArgumentException.class, () -> counter.tryAcquire(0));
+    }
+
+    @Test
+    void whenNextWindowStarts_thenThePreviousPermitsWeighByTheTimeLeftInIt() {
+        // Arrange: the whole limit in the first window
+        assertTrue(counter.tryAcquire(LIMIT));
+
+        // Act & Assert: at the start of the next one, unlike a fixed window, the previous permits still count in full
+        clock.advance(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        assertFalse(counter.tryAcquire());
+
+        // Act & Assert: halfway through, they weigh half
+        clock.advance(500, TimeUnit.MILLISECONDS);
+        assertEquals(5, counter.getLevel());
+        assertTrue(counter.tryAcquire(5));
+        assertFalse(counter.tryAcquire());
+    }
+
+    @Test
+    void whenWeightIsFractional_thenItIsRoundedUp() {
+        // Arrange
+        assertTrue(counter.tryAcquire(3));
+
+        // Act: 3 permits at a weight of 0.9 are 2.7
+        clock.advance(1100, TimeUnit.MILLISECONDS);
+
+        // Assert
+        assertEquals(3, counter.getLevel());
+        assertTrue(counter.tryAcquire(7));
+        assertFalse(counter.tryAcquire());
+    }
+
+    @Test
+    void whenDecisionIsDescribed_thenItAgreesWithTheCounter() {
+        // Arrange: 10 permits in the first window, 5 more halfway through the second
+        Decision decision = new Decision();
+        assertTrue(counter.tryAcquire(LIMIT));
+        clock.advance(1500, TimeUnit.MILLISECONDS);
+
+        // Act & Assert: the next permit fits once the previous ones weigh 4, 100 ms later
+        assertTrue(counter.tryAcquire(5, decision));
+        assertTrue(decision.isGranted());
+        assertEquals(LIMIT, decision.getLevel());
+        assertEquals(0, decision.getRemaining());
+        assertEquals(LIMIT, decision.getLimit());
+        assertEquals(100_000_000L, decision.getRetryAfterNanos());
+        assertEquals(1_500_000_000L, decision.getResetNanos());
+
+        // Act & Assert: 6 permits only fit in the next window, once the current 5 weigh 4, 200 ms into it
+        assertFalse(counter.tryAcquire(6, decision));
+        assertFalse(decision.isGranted());
+        assertEquals(700_000_000L, decision.getRetryAfterNanos());
+
+        // Act & Assert: and they are indeed granted then, but not a nanosecond before
+        clock.advance(700_000_000L - 1);
+        assertFalse(counter.tryAcquire(6));
+        clock.advance(1);
+        assertTrue(counter.tryAcquire(6));
+
+        // Act & Assert: a request above the limit never goes through
+        assertFalse(counter.tryAcquire(LIMIT + 1, decision));
+        assertEquals(Decision.NEVER, decision.getRetryAfterNanos());
+    }
+
+    @Test
+    void whenTwoWindowsPassWithoutRequests_thenTheCounterIsIdle() {
+        // Arrange
+        assertTrue(counter.tryAcquire());
+
+        // Act & Assert
+        clock.advance(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        assertFalse(counter.isIdle());
+        clock.advance(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+        assertTrue(counter.isIdle());
+        assertEquals(0, counter.getLevel());
+    }
+
+    @Test
+    void whenLimitOrWindowIsNotPositive_thenCreationFails() {
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowCounter(0, WINDOW_MILLIS, clock));
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowCounter(LIMIT, 0, clock));
+    }
+}
@@ -0,0 +1,153 @@
+package es.mlrdevs97.throttling;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowLogTest {
+    private ManualClock clock;
+    private SlidingWindowLog log;
+    private final long LIMIT = 5;
+    private final long WINDOW_MILLIS = 1000;
+
+    @BeforeEach
+    void setUp() {
+        clock = new ManualClock();
+        log = new SlidingWindowLog(LIMIT, WINDOW_MILLIS, clock);
+    }
+
+    @Test
+    void whenNewLogIsCreated_thenItIsEmptyAndIdle() {
+        // Act & Assert
+        assertEquals(0, log.getLevel());
+        assertTrue(log.isIdle());
+    }
+
+    @Test
+    void whenRequestsAreWithinLimit_thenTheyAreGranted() {
+        // Act & Assert
+        for (int i = 0; i < LIMIT; i++) {
+            assertTrue(log.tryAcquire());
+            assertEquals(i + 1, log.getLevel());
+        }
+        assertFalse(log.tryAcquire());
+        assertEquals(LIMIT, log.getLevel());
+    }
+
+    @Test
+    void whenSeveralPermitsAreRequestedAtOnce_thenAllOrNoneAreGranted() {
+        // Act & Assert
+        assertTrue(log.tryAcquire(LIMIT - 1));
+        assertFalse(log.tryAcquire(2));
+        assertEquals(LIMIT - 1, log.getLevel());
+        assertTrue(log.tryAcquire(1));
+        assertFalse(log.tryAcquire(LIMIT + 1));
+        assertThrows(IllegalArgumentException.class, () -> log.tryAcquire(0));
+    }
+
+    @Test
+    void whenWindowSlides_thenOnlyTheExpiredEntriesFreeRoom() {
+        // Arrange: 3 permits at 0 ms and 2 at 600 ms
+        assertTrue(log.tryAcquire(3));
+        clock.advance(600, TimeUnit.MILLISECONDS);
+        assertTrue(log.tryAcquire(2));
+
+        // Act & Assert: just before the first ones expire, nothing fits
+        clock.advance(399, TimeUnit.MILLISECONDS);
+        assertFalse(log.tryAcquire());
+
+        // Act & Assert: at 1000 ms the first 3 expire, and only those
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(2, log.getLevel());
+        assertTrue(log.tryAcquire(3));
+        assertFalse(log.tryAcquire());
+        assertFalse(log.isIdle());
+    }
+
+    @Test
+    void whenWindowIsFullAtItsEdge_thenNoBurstIsAllowedAcrossIt() {
+        // Arrange: the whole limit at the end of a second
+        clock.advance(999, TimeUnit.MILLISECONDS);
+        assertTrue(log.tryAcquire(LIMIT));
+
+        // Act & Assert: at the start of the next second, unlike a fixed window, the limit still holds
+        clock.advance(2, TimeUnit.MILLISECONDS);
+        assertFalse(log.tryAcquire());
+    }
+
+    @Test
+    void whenDecisionIsDescribed_thenItAgreesWithTheLog() {
+        // Arrange
+        Decision decision = new Decision();
+        assertTrue(log.tryAcquire(2, decision));
+        clock.advance(400, TimeUnit.MILLISECONDS);
+
+        // Act & Assert: filling the window leaves nothing, and the first entries expire in 600 ms
+        assertTrue(log.tryAcquire(3, decision));
+        assertTrue(decision.isGranted());
+        assertEquals(LIMIT, decision.getLevel());
+        assertEquals(0, decision.getRemaining());
+        assertEquals(LIMIT, decision.getLimit());
+        assertEquals(600_000_000L, decision.getRetryAfterNanos());
+        assertEquals(1_000_000_000L, decision.getResetNanos());
+
+        // Act & Assert: 3 more permits must wait for the 3rd oldest entry, logged at 400 ms
+        assertFalse(log.tryAcquire(3, decision));
+        assertFalse(decision.isGranted());
+        assertEquals(1_000_000_000L, decision.getRetryAfterNanos());
+
+        // Act & Assert: a request above the limit never goes through
+        assertFalse(log.tryAcquire(LIMIT + 1, decision));
+        assertEquals(Decision.NEVER, decision.getRetryAfterNanos());
+    }
+
+    @Test
+    void whenEveryEntryHasExpired_thenTheLogIsIdle() {
+        // Arrange
+        assertTrue(log.tryAcquire());
+        assertFalse(log.isIdle());
+
+        // Act
+        clock.advance(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+
+        // Assert
+        assertTrue(log.isIdle());
+        assertEquals(0, log.getLevel());
+    }
+
+    @Test
+    void whenLimitIsAboveTheInitialRing_thenItGrowsAndStillGrantsExactlyTheLimit() {
+        // Arrange
+        SlidingWindowLog large = new SlidingWindowLog(100, WINDOW_MILLIS, clock);
+        Decision decision = new Decision();
+
+        // Act & Assert: the ring grows as the window fills, in single permits and in batches
+        for (int i = 0; i < 30; i++) {
+            assertTrue(large.tryAcquire());
+        }
+        assertTrue(large.tryAcquire(60));
+        clock.advance(WINDOW_MILLIS / 2, TimeUnit.MILLISECONDS);
+        assertTrue(large.tryAcquire(10, decision));
+        assertEquals(100, large.getLevel());
+        assertEquals(0, decision.getRemaining());
+        assertFalse(large.tryAcquire());
+
+        // Act & Assert: the oldest 90 permits expire together, the last 10 half a window later
+        clock.advance(WINDOW_MILLIS / 2, TimeUnit.MILLISECONDS);
+        assertEquals(10, large.getLevel());
+        assertTrue(large.tryAcquire(90));
+        assertFalse(large.tryAcquire());
+        clock.advance(WINDOW_MILLIS / 2, TimeUnit.MILLISECONDS);
+        assertEquals(90, large.getLevel());
+    }
+
+    @Test
+    void whenLimitOrWindowIsOutOfRange_thenCreationFails() {
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowLog(0, WINDOW_MILLIS, clock));
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowLog(SlidingWindowLog.MAX_LIMIT + 1, WINDOW_MILLIS, clock));
+        assertThrows(IllegalArgumentException.class, () -> new SlidingWindowLog(LIMIT, 0, clock));
+    }
+}
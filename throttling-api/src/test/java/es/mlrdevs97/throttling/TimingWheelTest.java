@@ -0,0 +1,191 @@
+package es.mlrdevs97.throttling;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+    private final long TICK = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private ManualClock clock;
+    private TimingWheel wheel;
+
+    @BeforeEach
+    void setUp() {
+        clock = new ManualClock();
+        wheel = new TimingWheel(TICK, "timing-wheel-test", clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        wheel.close();
+    }
+
+    @Test
+    void schedule_shouldRunTheTaskOnceItsDelayHasPassed_andNotBefore() throws InterruptedException {
+        // Arrange
+        AtomicInteger runs = new AtomicInteger();
+        wheel.schedule(runs::incrementAndGet, 10 * TICK);
+
+        // Act
+        advance(9 * TICK);
+        int early = runs.get();
+        advance(TICK);
+
+        // Assert
+        assertEquals(0, early);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void schedule_shouldRunATimerOfAHigherLevelAtItsOwnTick() throws InterruptedException {
+        // Arrange: beyond the second level, so that the timer is moved down the wheel twice
+        long delay = (64 * 64 + 70) * TICK;
+        AtomicLong ranAt = new AtomicLong(-1);
+        wheel.schedule(() -> ranAt.set(clock.nanoTime()), delay);
+
+        // Act
+        advance(delay - TICK);
+        long early = ranAt.get();
+        advance(TICK);
+
+        // Assert
+        assertEquals(-1, early);
+        assertEquals(delay, ranAt.get());
+    }
+
+    @Test
+    void cancel_shouldStopTheTaskFromRunning() throws InterruptedException {
+        // Arrange
+        AtomicInteger runs = new AtomicInteger();
+        TimingWheel.Timer timer = wheel.schedule(runs::incrementAndGet, 5 * TICK);
+
+        // Act
+        boolean cancelled = timer.cancel();
+        advance(10 * TICK);
+
+        // Assert
+        assertTrue(cancelled);
+        assertTrue(timer.isCancelled());
+        assertFalse(timer.cancel());
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void cancel_shouldReturnFalseOnceTheTaskHasRun() throws InterruptedException {
+        // Arrange
+        TimingWheel.Timer timer = wheel.schedule(() -> { }, TICK);
+
+        // Act
+        advance(TICK);
+
+        // Assert
+        assertFalse(timer.cancel());
+        assertFalse(timer.isCancelled());
+    }
+
+    @Test
+    void scheduleRepeatedly_shouldRunTheTaskEveryPeriodUntilCancelled() throws InterruptedException {
+        // Arrange
+        AtomicInteger runs = new AtomicInteger();
+        TimingWheel.Timer timer = wheel.scheduleRepeatedly(runs::incrementAndGet, 10 * TICK);
+
+        // Act
+        for (int i = 0; i < 3; i++) {
+            advance(10 * TICK);
+        }
+        timer.cancel();
+        advance(30 * TICK);
+
+        // Assert
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    void whenManyTimersAreScheduled_thenEachRunsOnce_andNeverBeforeItsDeadline() throws InterruptedException {
+        // Arrange: delays spread over three levels, with every tenth timer cancelled
+        Random random = new Random(42);
+        int count = 100_000;
+        long[] deadlines = new long[count];
+        long[] ranAt = new long[count];
+        AtomicInteger runs = new AtomicInteger();
+        int cancelled = 0;
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            deadlines[i] = (1 + random.nextInt(300_000)) * TICK;
+            TimingWheel.Timer timer = wheel.schedule(() -> {
+                ranAt[index] = clock.nanoTime();
+                runs.incrementAndGet();
+            }, deadlines[i]);
+            if (i % 10 == 0) {
+                timer.cancel();
+                deadlines[i] = -1;
+                cancelled++;
+            }
+        }
+
+        // Act: in uneven steps, so that the wheel catches up on several ticks at once
+        for (long elapsed = 0; elapsed < 300_000 * TICK; ) {
+            long step = Math.min((1 + random.nextInt(5_000)) * TICK, 300_000 * TICK - elapsed);
+            advance(step);
+            elapsed += step;
+        }
+
+        // Assert
+        assertEquals(count - cancelled, runs.get());
+        for (int i = 0; i < count; i++) {
+            if (deadlines[i] < 0) {
+                assertEquals(0, ranAt[i], "cancelled timer " + i + " ran");
+            } else {
+                assertTrue(ranAt[i] >= deadlines[i], "timer " + i + " ran at " + ranAt[i] + ", before " + deadlines[i]);
+            }
+        }
+    }
+
+    @Test
+    void whenATaskFails_thenTheOthersStillRun() throws InterruptedException {
+        // Arrange
+        AtomicInteger runs = new AtomicInteger();
+        wheel.schedule(() -> {
+            throw new IllegalStateException("Failing on purpose.");
+        }, TICK);
+        wheel.schedule(runs::incrementAndGet, 2 * TICK);
+
+        // Act
+        advance(2 * TICK);
+
+        // Assert
+        assertEquals(1, runs.get());
+        assertEquals(1, wheel.getFailures());
+    }
+
+    @Test
+    void whenClosed_thenNewTimersAreRejected() {
+        // Act
+        wheel.close();
+
+        // Assert
+        assertThrows(RejectedExecutionException.class, () -> wheel.schedule(() -> { }, TICK));
+    }
+
+    /**
+     * Moves the clock forward, and waits for the wheel to process every tick up to the new reading: a probe timer
+     * due at that reading runs in the same pass as all the timers due before it, and the timer it schedules
+     * without delay runs once that pass is over.
+     */
+    private void advance(long nanos) throws InterruptedException {
+        CountDownLatch probe = new CountDownLatch(1);
+        wheel.schedule(() -> wheel.schedule(probe::countDown, 0), nanos);
+        clock.advance(nanos);
+        assertTrue(probe.await(5, TimeUnit.SECONDS), "The wheel did not reach " + clock.nanoTime());
+    }
+}
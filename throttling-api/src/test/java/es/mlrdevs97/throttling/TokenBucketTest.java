@@ -3,6 +3,10 @@ package es.mlrdevs97.throttling;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class TokenBucketTest {
@@ -52,6 +56,29 @@ class TokenBucketTest {
         assertEquals(0, tokenBucket.getCurrentTokens());
     }
 
+    @Test
+    void whenSeveralTokensAreConsumedAtOnce_thenAllOrNoneAreTaken() {
+        // Act & Assert
+        assertTrue(tokenBucket.tryConsume(CAPACITY - 1));
+        assertEquals(1, tokenBucket.getCurrentTokens());
+        assertFalse(tokenBucket.tryConsume(2));
+        assertEquals(1, tokenBucket.getCurrentTokens());
+        assertTrue(tokenBucket.tryConsume(1));
+        assertEquals(0, tokenBucket.getCurrentTokens());
+    }
+
+    @Test
+    void whenMoreTokensThanCapacityAreRequested_thenConsumptionFails() {
+        // Act & Assert
+        assertFalse(tokenBucket.tryConsume(CAPACITY + 1));
+        assertEquals(CAPACITY, tokenBucket.getCurrentTokens());
+    }
+
+    @Test
+    void whenTokenCountIsNotPositive_thenConsumptionIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> tokenBucket.tryConsume(0));
+    }
+
     @Test
     void whenBucketIsEmpty_thenItRefillsOverTime() throws InterruptedException {
         // Arrange: Consume all tokens
@@ -126,4 +153,309 @@ class TokenBucketTest {
         assertTrue(grantedAccess[0] >= 0);
         assertTrue(grantedAccess[0] <= (REFILL_RATE * timeElapsed));
     }
-}
\ No newline at end of file
+
+    @Test
+    void whenManyThreadsRaceForTheLastTokens_thenNoMoreThanCapacityIsGranted() throws InterruptedException {
+        // Arrange: A large bucket with a slow refill so that only the burst can be granted
+        final long capacity = 1000;
+        final TokenBucket bucket = new TokenBucket(capacity, 1);
+        final int numThreads = 8;
+        final AtomicLong granted = new AtomicLong();
+        Thread[] threads = new Thread[numThreads];
+
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < capacity; j++) {
+                    if (bucket.tryConsume()) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        // Act
+        long testStart = System.currentTimeMillis();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long timeElapsed = System.currentTimeMillis() - testStart;
+
+        // Assert
+        assertTrue(granted.get() >= capacity);
+        assertTrue(granted.get() <= capacity + (timeElapsed / 1000) + 1);
+    }
+
+    @Test
+    void whenTimeAdvancesInFractionsOfATick_thenTheRemainderIsKept() {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(10, 3, clock);
+        for (int i = 0; i < 10; i++) {
+            bucket.tryConsume();
+        }
+
+        // Act
+        long granted = 0;
+        for (int i = 0; i < 1000; i++) {
+            clock.advance(1, TimeUnit.MILLISECONDS);
+            if (bucket.tryConsume()) {
+                granted++;
+            }
+        }
+
+        // Assert
+        assertEquals(3, granted);
+    }
+
+    @Test
+    void whenRateIsAboveOnePerMillisecond_thenItIsEnforcedExactly() {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        long rate = 1_000_000;
+        TokenBucket bucket = new TokenBucket(1, rate, clock);
+        bucket.tryConsume();
+
+        // Act
+        long granted = 0;
+        for (int i = 0; i < 10_000; i++) {
+            clock.advance(100);
+            if (bucket.tryConsume()) {
+                granted++;
+            }
+        }
+
+        // Assert
+        assertEquals(rate * 10_000 * 100 / 1_000_000_000, granted);
+    }
+
+    @Test
+    void whenRateIsAtMaximum_thenEachNanosecondRefillsOneToken() {
+        // Arrange
+        ManualClock clock = new ManualClock(Long.MAX_VALUE / 2);
+        TokenBucket bucket = new TokenBucket(1000, BucketAlgorithm.MAX_RATE, clock);
+        bucket.tryConsume(1000);
+
+        // Act
+        clock.advance(1, TimeUnit.DAYS);
+        clock.advance(7);
+
+        // Assert
+        assertEquals(1000, bucket.getCurrentTokens());
+        assertTrue(bucket.tryConsume(1000));
+        assertEquals(0, bucket.getCurrentTokens());
+        clock.advance(7);
+        assertEquals(7, bucket.getCurrentTokens());
+    }
+
+    @Test
+    void whenRateIsOutOfRange_thenCreationFails() {
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(CAPACITY, 0));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(CAPACITY, BucketAlgorithm.MAX_RATE + 1));
+    }
+
+    @Test
+    void whenDecisionIsDescribed_thenItAgreesWithTheBucket() {
+        // Arrange: 4 tokens per second, so a token every 250 ms
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(10, 4, clock);
+        Decision decision = new Decision();
+
+        // Act & Assert: emptying the bucket leaves nothing, and the next token comes in 250 ms
+        assertTrue(bucket.tryConsume(10, decision));
+        assertTrue(decision.isGranted());
+        assertEquals(0, decision.getRemaining());
+        assertEquals(10, decision.getLimit());
+        assertEquals(250_000_000L, decision.getRetryAfterNanos());
+        assertEquals(2_500_000_000L, decision.getResetNanos());
+
+        // Act & Assert: 100 ms later, the throttled request must wait the other 150 ms
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertFalse(bucket.tryConsume(1, decision));
+        assertFalse(decision.isGranted());
+        assertEquals(150_000_000L, decision.getRetryAfterNanos());
+        assertEquals(2_400_000_000L, decision.getResetNanos());
+
+        // Act & Assert: a request costing more than the capacity never goes through
+        assertFalse(bucket.tryConsume(11, decision));
+        assertEquals(Decision.NEVER, decision.getRetryAfterNanos());
+
+        // Act & Assert: once refilled, a request leaving tokens behind has nothing to wait for
+        clock.advance(1, TimeUnit.SECONDS);
+        assertTrue(bucket.tryConsume(1, decision));
+        assertEquals(3, decision.getRemaining());
+        assertEquals(3, decision.getLevel());
+        assertEquals(0, decision.getRetryAfterNanos());
+    }
+
+    @Test
+    void whenWaitersQueueUp_thenTheyAreServedInArrivalOrder() throws Exception {
+        // Arrange: 10 tokens per second, so one every 100 ms, starting empty
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(10, 10, clock);
+        bucket.tryConsume(10);
+        AtomicBoolean largeDone = new AtomicBoolean();
+        AtomicBoolean smallDone = new AtomicBoolean();
+        Thread large = new Thread(() -> acquireQuietly(bucket, 5, largeDone));
+        Thread small = new Thread(() -> acquireQuietly(bucket, 1, smallDone));
+
+        // Act: a large request waits first, then a small one
+        large.start();
+        awaitWaiting(clock, 1);
+        small.start();
+        awaitWaiting(clock, 2);
+
+        // Assert: the tokens refilled meanwhile go to the large request, not to newcomers
+        clock.advance(300, TimeUnit.MILLISECONDS);
+        assertFalse(bucket.tryConsume());
+        clock.advance(200, TimeUnit.MILLISECONDS);
+        large.join(2000);
+        assertTrue(largeDone.get());
+        assertFalse(smallDone.get());
+
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        small.join(2000);
+        assertTrue(smallDone.get());
+    }
+
+    @Test
+    void whenWaitWouldExceedTimeout_thenAcquireFailsAtOnceWithoutReserving() throws InterruptedException {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(10, 10, clock);
+        bucket.tryConsume(10);
+
+        // Act
+        boolean acquired = bucket.acquire(5, 100, TimeUnit.MILLISECONDS);
+
+        // Assert
+        assertFalse(acquired);
+        assertFalse(bucket.acquire(11, 1, TimeUnit.DAYS));
+        clock.advance(100, TimeUnit.MILLISECONDS);
+        assertTrue(bucket.tryConsume());
+    }
+
+    @Test
+    void whenTokensAreAvailable_thenAcquireDoesNotWait() throws InterruptedException {
+        // Arrange (handled in setUp)
+
+        // Act & Assert
+        assertTrue(tokenBucket.acquire(CAPACITY, 0, TimeUnit.SECONDS));
+        assertEquals(0, tokenBucket.getCurrentTokens());
+    }
+
+    @Test
+    void whenWaiterIsInterrupted_thenAcquireThrows() throws Exception {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(1, 1, clock);
+        bucket.tryConsume();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            try {
+                bucket.acquire(1, 1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                interrupted.set(true);
+            }
+        });
+
+        // Act
+        waiter.start();
+        awaitWaiting(clock, 1);
+        waiter.interrupt();
+        waiter.join(2000);
+
+        // Assert
+        assertTrue(interrupted.get());
+    }
+
+    @Test
+    void whenCapacityIsRaised_thenTheShareOfFreeTokensIsKept() {
+        // Arrange: half of the tokens are taken
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(10, 1, clock);
+        bucket.tryConsume(5);
+
+        // Act
+        bucket.reconfigure(20, 1);
+
+        // Assert: half of the new capacity is left, not a full burst
+        assertEquals(10, bucket.getCurrentTokens());
+        assertTrue(bucket.tryConsume(10));
+        assertFalse(bucket.tryConsume());
+    }
+
+    @Test
+    void whenRateIsRaised_thenTokensRefillAtTheNewRate() {
+        // Arrange: an empty bucket
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(10, 1, clock);
+        bucket.tryConsume(10);
+
+        // Act
+        bucket.reconfigure(10, 1000);
+        clock.advance(5, TimeUnit.MILLISECONDS);
+
+        // Assert
+        assertEquals(5, bucket.getCurrentTokens());
+    }
+
+    @Test
+    void whenReconfiguredAfterBeingIdle_thenOnlyTheNewCapacityIsAvailable() {
+        // Arrange: a bucket left idle for much longer than it takes to refill
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(5, 1, clock);
+        clock.advance(1, TimeUnit.HOURS);
+
+        // Act
+        bucket.reconfigure(8, 1);
+
+        // Assert
+        assertTrue(bucket.tryConsume(8));
+        assertFalse(bucket.tryConsume());
+    }
+
+    @Test
+    void whenReconfigured_thenDecisionsDescribeTheNewLimits() {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(10, 1, clock);
+        bucket.tryConsume(10);
+        bucket.reconfigure(10, 2);
+        Decision decision = new Decision();
+
+        // Act
+        boolean granted = bucket.tryConsume(1, decision);
+
+        // Assert: the next token comes after half a second at the new rate
+        assertFalse(granted);
+        assertEquals(10, decision.getLimit());
+        assertEquals(500_000_000L, decision.getRetryAfterNanos());
+    }
+
+    @Test
+    void whenReconfiguredWithInvalidLimits_thenItFails() {
+        // Arrange (handled in setUp)
+
+        // Act & Assert
+        assertThrows(IllegalArgumentException.class, () -> tokenBucket.reconfigure(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> tokenBucket.reconfigure(5, 0));
+    }
+
+    private static void acquireQuietly(TokenBucket bucket, long tokens, AtomicBoolean done) {
+        try {
+            done.set(bucket.acquire(tokens, 1, TimeUnit.MINUTES));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitWaiting(ManualClock clock, int threads) throws InterruptedException {
+        while (clock.getWaitingThreads() < threads) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package es.mlrdevs97.benchmarks;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * When the requests of a load test are sent, decided before the test starts so that a slow server cannot slow
+ * the senders down: the arrivals are open-loop, as those of independent clients are.
+ */
+public enum ArrivalPattern {
+    /**
+     * One request every 1/qps seconds.
+     */
+    CONSTANT {
+        @Override
+        long[] schedule(double qps, double seconds, int burstSize, Random random) {
+            long[] starts = new long[count(qps, seconds)];
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = (long) (i * NANOS_PER_SECOND / qps);
+            }
+            return starts;
+        }
+    },
+
+    /**
+     * Bursts of requests sent at once, spaced so that the average rate is qps.
+     */
+    BURST {
+        @Override
+        long[] schedule(double qps, double seconds, int burstSize, Random random) {
+            long[] starts = new long[count(qps, seconds)];
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = (long) ((i / burstSize) * burstSize * NANOS_PER_SECOND / qps);
+            }
+            return starts;
+        }
+    },
+
+    /**
+     * Requests sent at exponentially distributed intervals, as independent clients arrive, averaging qps.
+     */
+    POISSON {
+        @Override
+        long[] schedule(double qps, double seconds, int burstSize, Random random) {
+            long[] starts = new long[count(qps, seconds)];
+            double next = 0;
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = (long) next;
+                next += -Math.log(1 - random.nextDouble()) * NANOS_PER_SECOND / qps;
+            }
+            return starts;
+        }
+    };
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Computes the intended start of every request.
+     * @param qps The average number of requests per second.
+     * @param seconds The duration of the test.
+     * @param burstSize The number of requests sent at once, for {@link #BURST}.
+     * @param random The source of the intervals, for {@link #POISSON}.
+     * @return The start of each request, in nanoseconds from the start of the test, in ascending order.
+     */
+    abstract long[] schedule(double qps, double seconds, int burstSize, Random random);
+
+    private static int count(double qps, double seconds) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.round(qps * seconds));
+    }
+
+    /**
+     * @return The pattern of the given name, regardless of case.
+     * @throws IllegalArgumentException if there is none.
+     */
+    static ArrivalPattern fromParam(String param) {
+        return valueOf(param.toUpperCase(Locale.ROOT));
+    }
+}
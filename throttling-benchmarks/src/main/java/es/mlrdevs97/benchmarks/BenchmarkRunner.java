@@ -0,0 +1,32 @@
+package es.mlrdevs97.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the decision benchmarks with the GC profiler, so that every result reports throughput, average time and
+ * allocation rate, and stores them as JSON to compare releases.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar es.mlrdevs97.benchmarks.BenchmarkRunner [result file] [benchmark regex]}
+ */
+public class BenchmarkRunner {
+    private static final String DEFAULT_RESULT_FILE = "jmh-results.json";
+    private static final String DEFAULT_INCLUDE = "(TokenBucket|LeakyBucket|KeyedLimiter)Benchmark";
+
+    public static void main(String[] args) throws RunnerException {
+        String resultFile = args.length > 0 ? args[0] : DEFAULT_RESULT_FILE;
+        String include = args.length > 1 ? args[1] : DEFAULT_INCLUDE;
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+    }
+}
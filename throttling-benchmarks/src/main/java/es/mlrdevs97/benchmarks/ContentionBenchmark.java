@@ -0,0 +1,105 @@
+package es.mlrdevs97.benchmarks;
+
+import es.mlrdevs97.throttling.FixedWindowCounter;
+import es.mlrdevs97.throttling.HierarchicalLimiter;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.LeakyBucket;
+import es.mlrdevs97.throttling.TokenBucket;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the lock-free buckets against the original synchronized ones when every thread hits the same bucket.
+ * The striped fixed window is measured against the lock-free token bucket on a limit high enough for the calls to
+ * be granted, which is the path it is made to scale. The hierarchical limiter, with the same limit at its three levels,
+ * shows the cost of deciding on three words instead of one.
+ * Run {@link #main(String[])} to measure the throughput at 1, 8, 32 and 128 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentionBenchmark {
+    private static final int[] THREAD_COUNTS = {1, 8, 32, 128};
+
+    // A small bucket with a fast rate, so that the threads keep alternating between granted and throttled calls.
+    private static final long CAPACITY = 1_000;
+    private static final long RATE = 1_000_000;
+
+    // A limit the threads cannot reach within a one-second window or an iteration.
+    private static final long HIGH_LIMIT = 1_000_000_000_000L;
+
+    private TokenBucket tokenBucket;
+    private SynchronizedTokenBucket synchronizedTokenBucket;
+    private LeakyBucket leakyBucket;
+    private SynchronizedLeakyBucket synchronizedLeakyBucket;
+    private TokenBucket grantingTokenBucket;
+    private FixedWindowCounter fixedWindowCounter;
+    private HierarchicalLimiter hierarchicalLimiter;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        tokenBucket = new TokenBucket(CAPACITY, RATE);
+        synchronizedTokenBucket = new SynchronizedTokenBucket(CAPACITY, RATE);
+        leakyBucket = new LeakyBucket(CAPACITY, RATE);
+        synchronizedLeakyBucket = new SynchronizedLeakyBucket(CAPACITY, RATE);
+        grantingTokenBucket = new TokenBucket(HIGH_LIMIT, 1);
+        fixedWindowCounter = new FixedWindowCounter(HIGH_LIMIT, 1000);
+        hierarchicalLimiter = new HierarchicalLimiter(CAPACITY, RATE, CAPACITY, RATE, CAPACITY, RATE, 1);
+    }
+
+    @Benchmark
+    public boolean tokenBucketLockFree() {
+        return tokenBucket.tryConsume();
+    }
+
+    @Benchmark
+    public boolean tokenBucketSynchronized() {
+        return synchronizedTokenBucket.tryConsume();
+    }
+
+    @Benchmark
+    public boolean leakyBucketLockFree() {
+        return leakyBucket.tryAdd();
+    }
+
+    @Benchmark
+    public boolean leakyBucketSynchronized() {
+        return synchronizedLeakyBucket.tryAdd();
+    }
+
+    @Benchmark
+    public boolean tokenBucketGranting() {
+        return grantingTokenBucket.tryConsume();
+    }
+
+    @Benchmark
+    public boolean fixedWindowStripedGranting() {
+        return fixedWindowCounter.tryAcquire();
+    }
+
+    @Benchmark
+    public KeyedLimiter.Outcome hierarchicalLockFree() {
+        return hierarchicalLimiter.tryAcquire("tenant", "user", 1, null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .include(ContentionBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.CSV)
+                    .result("contention-" + threads + "-threads.csv")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
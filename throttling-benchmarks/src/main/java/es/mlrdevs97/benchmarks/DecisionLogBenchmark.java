@@ -0,0 +1,71 @@
+package es.mlrdevs97.benchmarks;
+
+import es.mlrdevs97.logging.DecisionLog;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of logging a decision on the request path, against the synchronized {@code System.out.println}
+ * of a concatenated line it replaces. Both write to a stream that discards its output, so that only the cost paid by
+ * the request thread is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecisionLogBenchmark {
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+            // Discarded.
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            // Discarded.
+        }
+    });
+
+    private DecisionLog sampled;
+    private DecisionLog unsampled;
+    private long level;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        sampled = new DecisionLog(DecisionLog.DEFAULT_CAPACITY, DecisionLog.DEFAULT_SAMPLE_EVERY,
+                DecisionLog.DEFAULT_MAX_DENIALS_PER_SECOND, DISCARD);
+        unsampled = new DecisionLog(DecisionLog.DEFAULT_CAPACITY, 1, DecisionLog.DEFAULT_MAX_DENIALS_PER_SECOND, DISCARD);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        sampled.close();
+        unsampled.close();
+    }
+
+    @Benchmark
+    public void grantedSampled() {
+        sampled.record("token_bucket", "10.0.0.1", KeyedLimiter.Outcome.GRANTED, 1, level++);
+    }
+
+    @Benchmark
+    public void grantedUnsampled() {
+        unsampled.record("token_bucket", "10.0.0.1", KeyedLimiter.Outcome.GRANTED, 1, level++);
+    }
+
+    @Benchmark
+    public void deniedRateLimited() {
+        sampled.record("token_bucket", "10.0.0.1", KeyedLimiter.Outcome.THROTTLED, 1, level++);
+    }
+
+    @Benchmark
+    public void printlnConcatenated() {
+        DISCARD.println("Request GRANTED. Current tokens: " + level++);
+    }
+}
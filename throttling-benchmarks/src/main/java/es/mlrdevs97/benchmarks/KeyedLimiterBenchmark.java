@@ -0,0 +1,66 @@
+package es.mlrdevs97.benchmarks;
+
+import es.mlrdevs97.throttling.BucketAlgorithm;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.LimiterRegistry;
+import es.mlrdevs97.throttling.PackedBucketTable;
+import es.mlrdevs97.throttling.TokenBucket;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-client stores: one {@link TokenBucket} object per key in a {@link LimiterRegistry},
+ * against a {@link PackedBucketTable}, with requests spread over many client keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyedLimiterBenchmark {
+    private static final long CAPACITY = 100;
+    private static final long RATE = 10;
+
+    @Param({"registry", "packed"})
+    public String store;
+
+    @Param({"10000", "1000000"})
+    public int keyCount;
+
+    private KeyedLimiter limiter;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "10." + (i >>> 16) + "." + ((i >>> 8) & 0xff) + "." + (i & 0xff);
+        }
+
+        limiter = "packed".equals(store)
+                ? new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, CAPACITY, RATE, keyCount)
+                : new LimiterRegistry<>(() -> new TokenBucket(CAPACITY, RATE), keyCount);
+        for (String key : keys) {
+            limiter.tryAcquire(key);
+        }
+    }
+
+    @Benchmark
+    public KeyedLimiter.Outcome tryAcquire() {
+        return limiter.tryAcquire(keys[ThreadLocalRandom.current().nextInt(keyCount)]);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public KeyedLimiter.Outcome tryAcquireContended() {
+        return limiter.tryAcquire(keys[ThreadLocalRandom.current().nextInt(keyCount)]);
+    }
+
+    @Benchmark
+    public long getLevel() {
+        return limiter.getLevel(keys[ThreadLocalRandom.current().nextInt(keyCount)]);
+    }
+}
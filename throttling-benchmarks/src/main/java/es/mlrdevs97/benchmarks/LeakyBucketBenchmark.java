@@ -0,0 +1,94 @@
+package es.mlrdevs97.benchmarks;
+
+import es.mlrdevs97.throttling.LeakyBucket;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a {@link LeakyBucket} decision on the allowed and throttled paths,
+ * from a single thread and from every available core.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LeakyBucketBenchmark {
+
+    // A queue so large that every request is accepted.
+    @State(Scope.Benchmark)
+    public static class Allowed {
+        LeakyBucket bucket;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            bucket = new LeakyBucket(Long.MAX_VALUE / 2, 1);
+        }
+    }
+
+    // A full queue with the slowest leak, so that every request is throttled.
+    @State(Scope.Benchmark)
+    public static class Denied {
+        LeakyBucket bucket;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            bucket = new LeakyBucket(1, 1);
+            bucket.tryAdd();
+        }
+    }
+
+    // Realistic configurations, where requests alternate between accepted and throttled.
+    @State(Scope.Benchmark)
+    public static class Configured {
+        @Param({"10:1", "1000:100", "1000000:1000000"})
+        public String capacityAndRate;
+
+        LeakyBucket bucket;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            String[] values = capacityAndRate.split(":");
+            bucket = new LeakyBucket(Long.parseLong(values[0]), Long.parseLong(values[1]));
+        }
+    }
+
+    @Benchmark
+    public boolean tryAddAllowed(Allowed state) {
+        return state.bucket.tryAdd();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean tryAddAllowedContended(Allowed state) {
+        return state.bucket.tryAdd();
+    }
+
+    @Benchmark
+    public boolean tryAddDenied(Denied state) {
+        return state.bucket.tryAdd();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean tryAddDeniedContended(Denied state) {
+        return state.bucket.tryAdd();
+    }
+
+    @Benchmark
+    public boolean tryAdd(Configured state) {
+        return state.bucket.tryAdd();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean tryAddContended(Configured state) {
+        return state.bucket.tryAdd();
+    }
+
+    @Benchmark
+    public long getCurrentSize(Configured state) {
+        return state.bucket.getCurrentSize();
+    }
+}
@@ -0,0 +1,117 @@
+package es.mlrdevs97.benchmarks;
+
+import es.mlrdevs97.throttling.NanoClock;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends GET requests to a URI on a schedule fixed in advance, and records when each of them was answered.
+ * <p>
+ * A single thread walks the schedule and hands each request to a worker when its time comes, without waiting for
+ * the previous ones to be answered. Latencies are measured from the intended start, not from the moment the request
+ * was actually sent, so a stalled server is charged for every request it held back rather than for the one it was
+ * answering: the percentiles are free of coordinated omission. The time from the actual send is recorded as well,
+ * to show the difference.
+ * <p>
+ * Each request is sent on its own virtual thread when the JVM has them (Java 21 and later), and on a pooled platform
+ * thread otherwise.
+ */
+public class LoadGenerator {
+    // The most time a request may take before it counts as failed.
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * The status recorded for a request that got no response.
+     */
+    static final int FAILED = -1;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(REQUEST_TIMEOUT)
+            .build();
+
+    /**
+     * Sends the requests, and waits for every one of them to be answered or to fail.
+     * @param uri The URI to send GET requests to.
+     * @param starts The intended start of each request, in nanoseconds from the start of the run, in ascending order.
+     * @return What each request got, and when.
+     */
+    public LoadResult run(URI uri, long[] starts) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(REQUEST_TIMEOUT).GET().build();
+        int[] statuses = new int[starts.length];
+        long[] responseTimes = new long[starts.length];
+        long[] serviceTimes = new long[starts.length];
+
+        ExecutorService workers = newWorkers();
+        long origin = System.nanoTime();
+        try {
+            for (int i = 0; i < starts.length; i++) {
+                long intended = origin + starts[i];
+                NanoClock.SYSTEM.parkUntil(intended);
+                int index = i;
+                workers.execute(() -> {
+                    long sent = System.nanoTime();
+                    int status;
+                    try {
+                        status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (IOException ex) {
+                        status = FAILED;
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        status = FAILED;
+                    }
+                    long answered = System.nanoTime();
+                    statuses[index] = status;
+                    responseTimes[index] = answered - intended;
+                    serviceTimes[index] = answered - sent;
+                });
+            }
+        } finally {
+            workers.shutdown();
+        }
+        // Waiting for the workers to terminate also makes their writes to the arrays visible.
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        return new LoadResult(statuses, responseTimes, serviceTimes, System.nanoTime() - origin);
+    }
+
+    /**
+     * Sends a POST request with a form body, to configure a limiter.
+     * @return The body of the response.
+     * @throws IOException if the request fails, or is answered with an error.
+     */
+    public String post(URI uri, String form) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("POST " + uri + " answered " + response.statusCode() + ": " + response.body());
+        }
+        return response.body();
+    }
+
+    /**
+     * @return An executor starting a virtual thread per request if the JVM has them, or pooling platform threads.
+     */
+    private static ExecutorService newWorkers() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "load-generator-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
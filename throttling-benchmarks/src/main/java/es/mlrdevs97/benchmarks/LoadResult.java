@@ -0,0 +1,101 @@
+package es.mlrdevs97.benchmarks;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * What the requests of a load test got: the status of each, and its latencies.
+ */
+public class LoadResult {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 100};
+
+    private final int[] statuses;
+    private final long[] responseTimes;
+    private final long[] serviceTimes;
+    private final long elapsedNanos;
+
+    /**
+     * @param statuses The HTTP status of each request, or {@link LoadGenerator#FAILED}.
+     * @param responseTimes The time from the intended start of each request to its response, in nanoseconds.
+     * @param serviceTimes The time from the actual send of each request to its response, in nanoseconds.
+     * @param elapsedNanos The time from the start of the run to the last response.
+     */
+    LoadResult(int[] statuses, long[] responseTimes, long[] serviceTimes, long elapsedNanos) {
+        this.statuses = statuses;
+        this.responseTimes = responseTimes;
+        this.serviceTimes = serviceTimes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return The number of requests answered with the given status.
+     */
+    public long count(int status) {
+        long count = 0;
+        for (int s : statuses) {
+            if (s == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Prints the achieved throughput, the share of requests granted against what the limit allows, and the
+     * latency percentiles.
+     * @param out Where to print.
+     * @param allowed The most requests the limit can grant over the run.
+     */
+    public void printTo(PrintStream out, long allowed) {
+        double seconds = elapsedNanos / 1e9;
+        long granted = count(200);
+        long throttled = count(429);
+        long failed = count(LoadGenerator.FAILED);
+        long other = statuses.length - granted - throttled - failed;
+
+        out.printf(Locale.ROOT, "Requests:   %d in %.2f s, %.1f req/s answered%n", statuses.length, seconds,
+                (statuses.length - failed) / seconds);
+        out.printf(Locale.ROOT, "Outcomes:   %d granted (%.1f%%), %d throttled, %d failed, %d other%n", granted,
+                percentOf(granted, statuses.length), throttled, failed, other);
+        out.printf(Locale.ROOT, "Limit:      at most %d grants over the run, %.1f%% of them granted (%.1f req/s)%n",
+                allowed, percentOf(granted, allowed), granted / seconds);
+        printPercentiles(out, "Response:  ", responseTimes);
+        printPercentiles(out, "Service:   ", serviceTimes);
+        out.println("(response times from the intended start of each request, service times from its actual send)");
+    }
+
+    private static void printPercentiles(PrintStream out, String label, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        StringBuilder line = new StringBuilder(label);
+        for (double percentile : PERCENTILES) {
+            line.append(percentile == 100 ? " max " : String.format(Locale.ROOT, " p%s ", format(percentile)))
+                    .append(String.format(Locale.ROOT, "%.3f ms", percentile(sorted, percentile) / 1e6));
+        }
+        out.println(line);
+    }
+
+    /**
+     * @return The latency below or at which the given percentage of the sorted latencies fall, by nearest rank.
+     */
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    private static double percentOf(long part, long whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+}
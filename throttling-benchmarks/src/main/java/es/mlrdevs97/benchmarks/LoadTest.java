@@ -0,0 +1,98 @@
+package es.mlrdevs97.benchmarks;
+
+import es.mlrdevs97.server.ThrottlingServer;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures an endpoint end to end: starts the servlets in a {@link ThrottlingServer} on localhost, configures the
+ * limiter, drives it with a {@link LoadGenerator} and prints the achieved throughput, the share of requests granted
+ * against what the limit allows, and the latency percentiles. Nothing leaves the machine.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar es.mlrdevs97.benchmarks.LoadTest [name=value]...}, with:
+ * <ul>
+ *     <li>'endpoint': 'token-bucket' (default), 'leaky-bucket', 'gcra', 'sliding-window-log' or
+ *     'sliding-window-counter'.</li>
+ *     <li>'capacity' and 'rate': the limit, 100 and 1000 per second by default. The sliding windows are given
+ *     'capacity' as their limit, over the window in which 'rate' lets that many requests through.</li>
+ *     <li>'pattern': 'constant' (default), 'burst' or 'poisson', with 'burst' requests at once (50 by default).</li>
+ *     <li>'qps' and 'seconds': the offered load, 2000 requests per second for 10 seconds by default.</li>
+ *     <li>'warmup': the seconds the same load is first sent to the endpoint before its limiter is configured, so that
+ *     the HTTP stack of both sides is compiled before measuring. 2 by default.</li>
+ *     <li>'seed': the seed of the Poisson arrivals, so that runs can be repeated.</li>
+ * </ul>
+ */
+public class LoadTest {
+    private static final Map<String, String> DEFAULTS = new HashMap<>();
+
+    static {
+        DEFAULTS.put("endpoint", "token-bucket");
+        DEFAULTS.put("capacity", "100");
+        DEFAULTS.put("rate", "1000");
+        DEFAULTS.put("pattern", "constant");
+        DEFAULTS.put("burst", "50");
+        DEFAULTS.put("qps", "2000");
+        DEFAULTS.put("seconds", "10");
+        DEFAULTS.put("warmup", "2");
+        DEFAULTS.put("seed", "42");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = new HashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals <= 0 || !DEFAULTS.containsKey(arg.substring(0, equals))) {
+                throw new IllegalArgumentException("Unknown argument '" + arg + "'. Expected one of "
+                        + DEFAULTS.keySet() + " as name=value.");
+            }
+            params.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+
+        String endpoint = params.get("endpoint");
+        long capacity = Long.parseLong(params.get("capacity"));
+        long rate = Long.parseLong(params.get("rate"));
+        ArrivalPattern pattern = ArrivalPattern.fromParam(params.get("pattern"));
+        double qps = Double.parseDouble(params.get("qps"));
+        double seconds = Double.parseDouble(params.get("seconds"));
+        int burst = Integer.parseInt(params.get("burst"));
+        Random random = new Random(Long.parseLong(params.get("seed")));
+        long[] warmup = pattern.schedule(qps, Double.parseDouble(params.get("warmup")), burst, random);
+        long[] starts = pattern.schedule(qps, seconds, burst, random);
+
+        LoadResult result;
+        try (ThrottlingServer server = new ThrottlingServer("127.0.0.1", 0)) {
+            LoadGenerator generator = new LoadGenerator();
+            generator.run(server.uri("/" + endpoint), warmup); // Answered 400 until the limiter is configured.
+            generator.post(server.uri("/" + endpoint), configuration(endpoint, capacity, rate));
+            result = generator.run(server.uri("/" + endpoint), starts);
+        }
+
+        // Printed once the server is closed, so that the decision log has been written out before.
+        System.out.printf(Locale.ROOT, "Offered %s load of %.0f req/s for %.1f s to /%s (capacity %d, rate %d/s)%n",
+                pattern.name().toLowerCase(Locale.ROOT), qps, seconds, endpoint, capacity, rate);
+        long allowed = capacity + (long) Math.ceil(rate * (result.getElapsedNanos() / 1e9));
+        result.printTo(System.out, allowed);
+    }
+
+    /**
+     * @return The form that configures the limiter of an endpoint, shared by every client.
+     */
+    private static String configuration(String endpoint, long capacity, long rate) {
+        switch (endpoint) {
+            case "token-bucket":
+                return "capacity=" + capacity + "&refillRate=" + rate;
+            case "leaky-bucket":
+                return "capacity=" + capacity + "&leakRate=" + rate;
+            case "gcra":
+                return "capacity=" + capacity + "&rate=" + rate;
+            case "sliding-window-log":
+            case "sliding-window-counter":
+                return "limit=" + capacity + "&windowMillis=" + Math.max(1, capacity * 1000 / rate);
+            default:
+                throw new IllegalArgumentException("Unknown endpoint '" + endpoint + "'.");
+        }
+    }
+}
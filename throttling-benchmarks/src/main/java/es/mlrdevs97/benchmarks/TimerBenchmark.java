@@ -0,0 +1,70 @@
+package es.mlrdevs97.benchmarks;
+
+import es.mlrdevs97.throttling.TimingWheel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the timers the held requests and the housekeeping are scheduled on: the {@link TimingWheel} against
+ * a {@link ScheduledThreadPoolExecutor}, whose queue is a heap. Each operation schedules a timer and cancels it,
+ * as a request released early or a sweep that is no longer needed would, with many other timers pending.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimerBenchmark {
+    private static final Runnable NOTHING = () -> { };
+
+    @Param({"wheel", "executor"})
+    public String timers;
+
+    @Param({"10000", "1000000"})
+    public int pending;
+
+    private TimingWheel wheel;
+    private ScheduledThreadPoolExecutor executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("wheel".equals(timers)) {
+            wheel = new TimingWheel(TimeUnit.MILLISECONDS.toNanos(1), "benchmark-timing-wheel");
+        } else {
+            executor = new ScheduledThreadPoolExecutor(1);
+            executor.setRemoveOnCancelPolicy(true);
+        }
+        // Spread over an hour, so that none of them fires during the run.
+        for (int i = 0; i < pending; i++) {
+            long delay = TimeUnit.MINUTES.toNanos(1) + i * (TimeUnit.HOURS.toNanos(1) / pending);
+            if (wheel != null) {
+                wheel.schedule(NOTHING, delay);
+            } else {
+                executor.schedule(NOTHING, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (wheel != null) {
+            wheel.close();
+        } else {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean scheduleAndCancel() {
+        if (wheel != null) {
+            return wheel.schedule(NOTHING, TimeUnit.SECONDS.toNanos(30)).cancel();
+        }
+        ScheduledFuture<?> future = executor.schedule(NOTHING, 30, TimeUnit.SECONDS);
+        return future.cancel(false);
+    }
+}
@@ -0,0 +1,94 @@
+package es.mlrdevs97.benchmarks;
+
+import es.mlrdevs97.throttling.TokenBucket;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of a {@link TokenBucket} decision on the allowed and throttled paths,
+ * from a single thread and from every available core.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenBucketBenchmark {
+
+    // A bucket so large that every request is allowed.
+    @State(Scope.Benchmark)
+    public static class Allowed {
+        TokenBucket bucket;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            bucket = new TokenBucket(Long.MAX_VALUE / 2, 1);
+        }
+    }
+
+    // A drained bucket with the slowest refill, so that every request is throttled.
+    @State(Scope.Benchmark)
+    public static class Denied {
+        TokenBucket bucket;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            bucket = new TokenBucket(1, 1);
+            bucket.tryConsume();
+        }
+    }
+
+    // Realistic configurations, where requests alternate between allowed and throttled.
+    @State(Scope.Benchmark)
+    public static class Configured {
+        @Param({"10:1", "1000:100", "1000000:1000000"})
+        public String capacityAndRate;
+
+        TokenBucket bucket;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            String[] values = capacityAndRate.split(":");
+            bucket = new TokenBucket(Long.parseLong(values[0]), Long.parseLong(values[1]));
+        }
+    }
+
+    @Benchmark
+    public boolean tryConsumeAllowed(Allowed state) {
+        return state.bucket.tryConsume();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean tryConsumeAllowedContended(Allowed state) {
+        return state.bucket.tryConsume();
+    }
+
+    @Benchmark
+    public boolean tryConsumeDenied(Denied state) {
+        return state.bucket.tryConsume();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean tryConsumeDeniedContended(Denied state) {
+        return state.bucket.tryConsume();
+    }
+
+    @Benchmark
+    public boolean tryConsume(Configured state) {
+        return state.bucket.tryConsume();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean tryConsumeContended(Configured state) {
+        return state.bucket.tryConsume();
+    }
+
+    @Benchmark
+    public long getCurrentTokens(Configured state) {
+        return state.bucket.getCurrentTokens();
+    }
+}
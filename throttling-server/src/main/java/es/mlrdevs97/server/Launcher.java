@@ -0,0 +1,117 @@
+package es.mlrdevs97.server;
+
+import org.apache.catalina.LifecycleException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Starts the API on its own, without a servlet container to deploy into.
+ * <p>
+ * Usage: {@code java -jar throttling-server.jar [--address=...] [--port=...] [--training-run]}. The port defaults to
+ * the PORT environment variable, or 8080, and the address to every interface.
+ * <p>
+ * With '--training-run', the server configures and calls every endpoint once over loopback, then stops. Run so with
+ * {@code -XX:ArchiveClassesAtExit=throttling-server.jsa}, it records the classes that serving loads into an AppCDS
+ * archive, and later starts given {@code -XX:SharedArchiveFile=throttling-server.jsa} map them from the archive
+ * already parsed and verified, instead of loading them from the jar.
+ */
+public class Launcher {
+    private static final int DEFAULT_PORT = 8080;
+
+    // The form that configures each endpoint during a training run, and the requests then sent to it.
+    private static final String[][] TRAINING = {
+            {"/token-bucket", "capacity=10&refillRate=5"},
+            {"/leaky-bucket", "capacity=10&leakRate=5"},
+            {"/gcra", "capacity=10&rate=5"},
+            {"/sliding-window-log", "limit=10&windowMillis=1000"},
+            {"/sliding-window-counter", "limit=10&windowMillis=1000"}
+    };
+    private static final int TRAINING_REQUESTS = 20;
+
+    public static void main(String[] args) throws Exception {
+        String address = "0.0.0.0";
+        String portEnv = System.getenv("PORT");
+        int port = portEnv != null && !portEnv.isEmpty() ? Integer.parseInt(portEnv) : DEFAULT_PORT;
+        boolean trainingRun = false;
+        for (String arg : args) {
+            if (arg.startsWith("--address=")) {
+                address = arg.substring("--address=".length());
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if ("--training-run".equals(arg)) {
+                trainingRun = true;
+            } else {
+                throw new IllegalArgumentException("Unknown argument '" + arg
+                        + "'. Expected --address=..., --port=... or --training-run.");
+            }
+        }
+
+        ThrottlingServer server = new ThrottlingServer(address, port);
+        System.out.println("Throttling API listening on " + server.uri("") + startupTime()
+                + (server.usesVirtualThreads() ? ", serving on virtual threads." : "."));
+        if (trainingRun) {
+            train(server);
+            server.close();
+            return;
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (LifecycleException ex) {
+                System.out.println("Shutdown of the server failed: " + ex.getMessage());
+            }
+        }, "throttling-server-shutdown"));
+        server.await();
+    }
+
+    /**
+     * @return The time since the JVM was started.
+     */
+    private static String startupTime() {
+        return ", started in " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms";
+    }
+
+    /**
+     * Configures every endpoint and sends it requests, enough to be throttled, and reads the metrics.
+     */
+    private static void train(ThrottlingServer server) throws IOException {
+        for (String[] endpoint : TRAINING) {
+            URI uri = server.uri(endpoint[0]);
+            send(uri, "OPTIONS", null);
+            send(uri, "POST", endpoint[1]);
+            for (int i = 0; i < TRAINING_REQUESTS; i++) {
+                send(uri, "GET", null);
+            }
+        }
+        send(server.uri("/metrics"), "GET", null);
+    }
+
+    private static void send(URI uri, String method, String form) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+        try {
+            connection.setRequestMethod(method);
+            if (form != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+                try (OutputStream body = connection.getOutputStream()) {
+                    body.write(form.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int status = connection.getResponseCode();
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (body != null) {
+                    body.readAllBytes();
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
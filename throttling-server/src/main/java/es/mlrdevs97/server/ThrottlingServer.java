@@ -0,0 +1,138 @@
+package es.mlrdevs97.server;
+
+import es.mlrdevs97.filters.CORSFilter;
+import es.mlrdevs97.logging.DecisionLogListener;
+import es.mlrdevs97.servlets.GcraServlet;
+import es.mlrdevs97.servlets.LeakyBucketServlet;
+import es.mlrdevs97.servlets.MetricsServlet;
+import es.mlrdevs97.servlets.SlidingWindowCounterServlet;
+import es.mlrdevs97.servlets.SlidingWindowLogServlet;
+import es.mlrdevs97.servlets.TokenBucketServlet;
+import jakarta.servlet.Servlet;
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.core.StandardServer;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import org.apache.tomcat.util.modeler.Registry;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Serves the limiter endpoints from an embedded Tomcat, registered as in web.xml, so that the API starts without
+ * a container to deploy into: no WAR to expand, no descriptor to parse and no classpath to scan for annotations.
+ * <p>
+ * Requests are handled on virtual threads when the JVM has them (Java 21 and later), so that requests waiting
+ * on a slow client or held by the leaky bucket cost no platform thread.
+ */
+public class ThrottlingServer implements AutoCloseable {
+    // The endpoints answering the frontend, behind the CORS filter.
+    private static final String[] CORS_PATHS = {
+            "/token-bucket", "/leaky-bucket", "/sliding-window-log", "/sliding-window-counter", "/gcra"
+    };
+
+    static {
+        // Tomcat's MBeans are described in XML files parsed at startup. The API exposes its own metrics instead.
+        Registry.disableRegistry();
+    }
+
+    private final Tomcat tomcat = new Tomcat();
+    private final Connector connector;
+    private final boolean virtualThreads = Runtime.version().feature() >= 21;
+
+    /**
+     * Starts the server.
+     * @param address The address to listen on, such as "0.0.0.0" for every interface.
+     * @param port The port to listen on, or 0 for a free one.
+     */
+    public ThrottlingServer(String address, int port) throws IOException, LifecycleException {
+        Path baseDir = Files.createTempDirectory("throttling-tomcat");
+        tomcat.setBaseDir(baseDir.toString());
+        tomcat.setPort(port);
+        tomcat.getHost().setAutoDeploy(false);
+        ((StandardServer) tomcat.getServer()).setUtilityThreadsAsDaemon(true); // So that the JVM exits once the server is closed.
+        connector = tomcat.getConnector();
+        connector.setProperty("address", address);
+        connector.setProperty("maxKeepAliveRequests", "-1"); // Proxies and load tests reuse their connections.
+        if (virtualThreads) {
+            connector.setProperty("useVirtualThreads", "true");
+        }
+
+        Context context = tomcat.addContext("", baseDir.toString());
+        context.addParameter("decisionLogSampleEvery", "100");
+        context.addParameter("decisionLogMaxDenialsPerSecond", "10");
+        context.addApplicationListener(DecisionLogListener.class.getName());
+        addCorsFilter(context);
+        addServlet(context, "/token-bucket", new TokenBucketServlet());
+        addServlet(context, "/leaky-bucket", new LeakyBucketServlet());
+        addServlet(context, "/gcra", new GcraServlet());
+        addServlet(context, "/sliding-window-log", new SlidingWindowLogServlet());
+        addServlet(context, "/sliding-window-counter", new SlidingWindowCounterServlet());
+        addServlet(context, "/metrics", new MetricsServlet());
+        tomcat.start();
+    }
+
+    /**
+     * @return The URI of an endpoint, such as "/token-bucket", on the loopback interface if the server listens
+     * on every interface.
+     */
+    public URI uri(String path) throws UnknownHostException {
+        Object bound = connector.getProperty("address");
+        InetAddress address = bound instanceof InetAddress ? (InetAddress) bound : InetAddress.getByName(String.valueOf(bound));
+        String host = address.isAnyLocalAddress() ? "127.0.0.1" : address.getHostAddress();
+        if (host.contains(":")) {
+            host = "[" + host + "]";
+        }
+        return URI.create("http://" + host + ":" + connector.getLocalPort() + path);
+    }
+
+    /**
+     * @return true if requests are handled on virtual threads.
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Blocks until the server is closed.
+     */
+    public void await() {
+        tomcat.getServer().await();
+    }
+
+    @Override
+    public void close() throws LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+
+    private static void addCorsFilter(Context context) {
+        FilterDef filter = new FilterDef();
+        filter.setFilterName("CORSFilter");
+        filter.setFilter(new CORSFilter());
+        filter.setAsyncSupported("true");
+        context.addFilterDef(filter);
+
+        FilterMap mapping = new FilterMap();
+        mapping.setFilterName("CORSFilter");
+        for (String path : CORS_PATHS) {
+            mapping.addURLPatternDecoded(path);
+        }
+        context.addFilterMap(mapping);
+    }
+
+    private static void addServlet(Context context, String path, Servlet servlet) {
+        String name = servlet.getClass().getSimpleName();
+        Wrapper wrapper = Tomcat.addServlet(context, name, servlet);
+        wrapper.setAsyncSupported(true); // The leaky bucket holds requests asynchronously when shaping.
+        context.addServletMappingDecoded(path, name);
+    }
+}
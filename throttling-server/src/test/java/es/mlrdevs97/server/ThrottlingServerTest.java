@@ -0,0 +1,111 @@
+package es.mlrdevs97.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThrottlingServerTest {
+    private ThrottlingServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new ThrottlingServer("127.0.0.1", 0);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    void uri_shouldPointAtTheBoundPort() throws IOException {
+        // Act
+        String uri = server.uri("/token-bucket").toString();
+
+        // Assert
+        assertTrue(uri.matches("http://127\\.0\\.0\\.1:[1-9][0-9]*/token-bucket"), uri);
+    }
+
+    @Test
+    void whenPreflightRequested_shouldAnswerWithTheCorsHeaders() throws IOException {
+        // Act
+        HttpURLConnection connection = open("/token-bucket", "OPTIONS");
+
+        // Assert
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("*", connection.getHeaderField("Access-Control-Allow-Origin"));
+        connection.disconnect();
+    }
+
+    @Test
+    void whenNotConfigured_shouldRejectConsumption() throws IOException {
+        // Act
+        HttpURLConnection connection = open("/token-bucket", "GET");
+
+        // Assert
+        assertEquals(400, connection.getResponseCode());
+        assertEquals("*", connection.getHeaderField("Access-Control-Allow-Origin"));
+        connection.disconnect();
+    }
+
+    @Test
+    void whenConfigured_shouldGrantUpToTheCapacity_thenThrottle() throws IOException {
+        // Arrange
+        HttpURLConnection configure = open("/token-bucket", "POST");
+        configure.setDoOutput(true);
+        configure.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        try (OutputStream body = configure.getOutputStream()) {
+            body.write("capacity=2&refillRate=1".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(200, configure.getResponseCode());
+        configure.disconnect();
+
+        // Act
+        int first = status("/token-bucket");
+        int second = status("/token-bucket");
+        int third = status("/token-bucket");
+
+        // Assert
+        assertEquals(200, first);
+        assertEquals(200, second);
+        assertEquals(429, third);
+    }
+
+    @Test
+    void metrics_shouldBeServed() throws IOException {
+        // Act
+        int status = status("/metrics");
+
+        // Assert
+        assertEquals(200, status);
+    }
+
+    private HttpURLConnection open(String path, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) server.uri(path).toURL().openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private int status(String path) throws IOException {
+        HttpURLConnection connection = open(path, "GET");
+        try {
+            int status = connection.getResponseCode();
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (body != null) {
+                    body.readAllBytes();
+                }
+            }
+            return status;
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package es.mlrdevs97.stress;
+
+import es.mlrdevs97.throttling.FixedWindowCounter;
+import es.mlrdevs97.throttling.ManualClock;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZZ_Result;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE_INTERESTING;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Races on the stripes of a {@link FixedWindowCounter}. Each result lists whether each request was granted.
+ */
+public class FixedWindowCounterStress {
+
+    /**
+     * Three requests race for the two permits of a window, from stripes that lease them from the budget and
+     * take over each other's allowances near the limit.
+     */
+    @JCStressTest
+    @Outcome(id = {"true, true, false", "true, false, true", "false, true, true"}, expect = ACCEPTABLE,
+            desc = "The two permits were granted once each.")
+    @Outcome(id = "true, true, true", expect = FORBIDDEN, desc = "More permits granted than the limit.")
+    @Outcome(id = {"true, false, false", "false, true, false", "false, false, true", "false, false, false"},
+            expect = ACCEPTABLE_INTERESTING, desc = "Throttled while another stripe held a permit, as documented.")
+    @State
+    public static class AcquireRacingAcquire {
+        private final FixedWindowCounter counter = new FixedWindowCounter(2, 60_000, 4, new ManualClock());
+
+        @Actor
+        public void first(ZZZ_Result r) {
+            r.r1 = counter.tryAcquire(1, null);
+        }
+
+        @Actor
+        public void second(ZZZ_Result r) {
+            r.r2 = counter.tryAcquire(1, null);
+        }
+
+        @Actor
+        public void third(ZZZ_Result r) {
+            r.r3 = counter.tryAcquire(1, null);
+        }
+    }
+}
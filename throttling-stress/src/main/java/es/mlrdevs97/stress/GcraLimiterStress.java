@@ -0,0 +1,80 @@
+package es.mlrdevs97.stress;
+
+import es.mlrdevs97.throttling.GcraLimiter;
+import es.mlrdevs97.throttling.ManualClock;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZZ_Result;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Races on the theoretical arrival time of a {@link GcraLimiter}. Each result lists whether each request was granted.
+ */
+public class GcraLimiterStress {
+
+    /**
+     * Two requests race for a burst of one.
+     */
+    @JCStressTest
+    @Outcome(id = {"true, false", "false, true"}, expect = ACCEPTABLE, desc = "One request got the permit.")
+    @Outcome(id = "true, true", expect = FORBIDDEN, desc = "Both requests got the only permit.")
+    @Outcome(id = "false, false", expect = FORBIDDEN, desc = "The permit was lost.")
+    @State
+    public static class AcquireRacingAcquire {
+        private final GcraLimiter limiter = new GcraLimiter(1, 1, new ManualClock());
+
+        @Actor
+        public void first(ZZ_Result r) {
+            r.r1 = limiter.tryAcquire(1, null);
+        }
+
+        @Actor
+        public void second(ZZ_Result r) {
+            r.r2 = limiter.tryAcquire(1, null);
+        }
+    }
+
+    /**
+     * Two requests race for a burst of one while a second passes, emitting another permit. A last request comes after
+     * them: over the second, at most the burst plus one permit can be granted, and no fewer.
+     */
+    @JCStressTest
+    @Outcome(id = {"true, false, true", "false, true, true", "true, true, false"}, expect = ACCEPTABLE,
+            desc = "The burst and the next permit were granted once each.")
+    @Outcome(id = "true, true, true", expect = FORBIDDEN, desc = "More permits granted than the burst plus the rate.")
+    @Outcome(id = {"true, false, false", "false, true, false", "false, false, true", "false, false, false"},
+            expect = FORBIDDEN, desc = "A permit was lost.")
+    @State
+    public static class EmissionRacingAcquire {
+        private final ManualClock clock = new ManualClock();
+        private final GcraLimiter limiter = new GcraLimiter(1, 1, clock);
+
+        @Actor
+        public void first(ZZZ_Result r) {
+            r.r1 = limiter.tryAcquire(1, null);
+        }
+
+        @Actor
+        public void second(ZZZ_Result r) {
+            r.r2 = limiter.tryAcquire(1, null);
+        }
+
+        @Actor
+        public void tick() {
+            clock.advance(1, TimeUnit.SECONDS);
+        }
+
+        @Arbiter
+        public void last(ZZZ_Result r) {
+            r.r3 = limiter.tryAcquire(1, null);
+        }
+    }
+}
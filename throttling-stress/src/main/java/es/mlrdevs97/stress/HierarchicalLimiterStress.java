@@ -0,0 +1,113 @@
+package es.mlrdevs97.stress;
+
+import es.mlrdevs97.throttling.HierarchicalLimiter;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.ManualClock;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZZZ_Result;
+import org.openjdk.jcstress.infra.results.ZZZ_Result;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE_INTERESTING;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Races on the levels of a {@link HierarchicalLimiter}.
+ */
+public class HierarchicalLimiterStress {
+
+    /**
+     * Two users race for the last global token, with tokens to spare at their own levels. The loser must be refunded
+     * at the inner levels: the result lists whether each request was granted, and whether the user that lost can
+     * still spend its whole budget once the global level refills.
+     */
+    @JCStressTest
+    @Outcome(id = {"true, false, true", "false, true, true"}, expect = ACCEPTABLE,
+            desc = "One user got the global token, and the other one was refunded.")
+    @Outcome(id = {"true, true, true", "true, true, false"}, expect = FORBIDDEN, desc = "The global token was granted twice.")
+    @Outcome(id = {"true, false, false", "false, true, false"}, expect = FORBIDDEN, desc = "The loser was not refunded.")
+    @Outcome(id = {"false, false, true", "false, false, false"}, expect = FORBIDDEN, desc = "The global token was lost.")
+    @State
+    public static class UsersRacingForTheGlobalLevel {
+        private final ManualClock clock = new ManualClock();
+        private final HierarchicalLimiter limiter = new HierarchicalLimiter(1, 1_000_000, 10, 1, 2, 1, 16, clock);
+
+        @Actor
+        public void alice(ZZZ_Result r) {
+            r.r1 = limiter.tryAcquire("tenant", "alice", 1, null) == KeyedLimiter.Outcome.GRANTED;
+        }
+
+        @Actor
+        public void bob(ZZZ_Result r) {
+            r.r2 = limiter.tryAcquire("tenant", "bob", 1, null) == KeyedLimiter.Outcome.GRANTED;
+        }
+
+        @Arbiter
+        public void loserSpendsItsBudget(ZZZ_Result r) {
+            String loser = r.r1 ? "bob" : "alice";
+            clock.advance(1_000); // A global token, and nothing at the other levels.
+            boolean first = limiter.tryAcquire("tenant", loser, 1, null) == KeyedLimiter.Outcome.GRANTED;
+            clock.advance(1_000);
+            boolean second = limiter.tryAcquire("tenant", loser, 1, null) == KeyedLimiter.Outcome.GRANTED;
+            r.r3 = first && second;
+        }
+    }
+
+    /**
+     * A refund races a refill of the level it gives back to. Alice and Xavier race for the last token of their tenant,
+     * so Alice may take her user token and then be refunded it. Meanwhile Rita, under another tenant but with the
+     * same user key as Alice, refills that user bucket by one tick and takes from it. The result lists whether Alice,
+     * Xavier and Rita were granted, and whether the user bucket has a token left.
+     * <p>
+     * Without Alice's request the user bucket is full when it refills, so the refill is lost to its capacity. A
+     * refund after Rita took the refill would give Alice's token back on top of it, forgiving Rita's grant.
+     */
+    @JCStressTest
+    @Outcome(id = {"true, false, true, false", "true, false, false, false", "false, true, true, false"},
+            expect = ACCEPTABLE, desc = "Every user token missing was granted.")
+    @Outcome(id = "false, true, false, true", expect = ACCEPTABLE,
+            desc = "Rita found the user token taken while Alice was being refunded, and it was given back.")
+    @Outcome(id = "false, true, false, false", expect = ACCEPTABLE_INTERESTING,
+            desc = "Alice's refund was cut short by the refill, and the token is lost until the next one.")
+    @Outcome(id = {"true, false, true, true", "true, false, false, true", "false, true, true, true"},
+            expect = FORBIDDEN, desc = "A refund forgave a grant of the refilled token.")
+    @Outcome(id = {"true, true, .*", "false, false, .*"}, expect = FORBIDDEN,
+            desc = "The last tenant token was granted twice, or lost.")
+    @State
+    public static class RefundRacingRefill {
+        private final ManualClock clock = new ManualClock();
+
+        // Users refill a token per microsecond, tenants one per second and the global level holds plenty.
+        private final HierarchicalLimiter limiter = new HierarchicalLimiter(100, 1, 2, 1, 1, 1_000_000, 16, clock);
+
+        public RefundRacingRefill() {
+            limiter.tryAcquire("spent", "warden", 1, null); // The tenant of Alice and Xavier has one token left.
+        }
+
+        @Actor
+        public void alice(ZZZZ_Result r) {
+            r.r1 = limiter.tryAcquire("spent", "alice", 1, null) == KeyedLimiter.Outcome.GRANTED;
+        }
+
+        @Actor
+        public void xavier(ZZZZ_Result r) {
+            r.r2 = limiter.tryAcquire("spent", "xavier", 1, null) == KeyedLimiter.Outcome.GRANTED;
+        }
+
+        @Actor
+        public void rita(ZZZZ_Result r) {
+            clock.advance(1_000);
+            r.r3 = limiter.tryAcquire("open", "alice", 1, null) == KeyedLimiter.Outcome.GRANTED;
+        }
+
+        @Arbiter
+        public void userLevel(ZZZZ_Result r) {
+            // The tenant and global levels of Rita's tenant hold more than a user can.
+            r.r4 = limiter.getLevel("open", "alice") > 0;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package es.mlrdevs97.stress;
+
+import es.mlrdevs97.throttling.LeakyBucket;
+import es.mlrdevs97.throttling.ManualClock;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZZ_Result;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Races on the single word of a {@link LeakyBucket}. Each result lists whether each request was queued.
+ */
+public class LeakyBucketStress {
+
+    /**
+     * Two requests race for the only slot of the queue.
+     */
+    @JCStressTest
+    @Outcome(id = {"true, false", "false, true"}, expect = ACCEPTABLE, desc = "One request got the slot.")
+    @Outcome(id = "true, true", expect = FORBIDDEN, desc = "Both requests got the only slot.")
+    @Outcome(id = "false, false", expect = FORBIDDEN, desc = "The slot was lost.")
+    @State
+    public static class AddRacingAdd {
+        private final LeakyBucket bucket = new LeakyBucket(1, 1, new ManualClock());
+
+        @Actor
+        public void first(ZZ_Result r) {
+            r.r1 = bucket.tryAdd();
+        }
+
+        @Actor
+        public void second(ZZ_Result r) {
+            r.r2 = bucket.tryAdd();
+        }
+    }
+
+    /**
+     * Two requests race for the only slot while a second passes, leaking one request out. A last request comes after
+     * them: over the second, at most the capacity plus one request can be queued, and no fewer.
+     */
+    @JCStressTest
+    @Outcome(id = {"true, false, true", "false, true, true", "true, true, false"}, expect = ACCEPTABLE,
+            desc = "The slot and the leaked one were taken once each.")
+    @Outcome(id = "true, true, true", expect = FORBIDDEN, desc = "More requests queued than the capacity plus the leak.")
+    @Outcome(id = {"true, false, false", "false, true, false", "false, false, true", "false, false, false"},
+            expect = FORBIDDEN, desc = "A slot or the leak was lost.")
+    @State
+    public static class LeakRacingAdd {
+        private final ManualClock clock = new ManualClock();
+        private final LeakyBucket bucket = new LeakyBucket(1, 1, clock);
+
+        @Actor
+        public void first(ZZZ_Result r) {
+            r.r1 = bucket.tryAdd();
+        }
+
+        @Actor
+        public void second(ZZZ_Result r) {
+            r.r2 = bucket.tryAdd();
+        }
+
+        @Actor
+        public void tick() {
+            clock.advance(1, TimeUnit.SECONDS);
+        }
+
+        @Arbiter
+        public void last(ZZZ_Result r) {
+            r.r3 = bucket.tryAdd();
+        }
+    }
+
+    /**
+     * Two requests race for the two slots of a frozen queue while the same limits are applied again.
+     */
+    @JCStressTest
+    @Outcome(id = "true, true, false", expect = ACCEPTABLE, desc = "Both slots taken, once each.")
+    @Outcome(id = "true, true, true", expect = FORBIDDEN, desc = "Reconfiguring freed a slot.")
+    @Outcome(id = {"true, false, true", "false, true, true", "false, false, true", "true, false, false",
+            "false, true, false", "false, false, false"}, expect = FORBIDDEN, desc = "Reconfiguring lost a slot.")
+    @State
+    public static class ReconfigureRacingAdd {
+        private final LeakyBucket bucket = new LeakyBucket(2, 1, new ManualClock());
+
+        @Actor
+        public void first(ZZZ_Result r) {
+            r.r1 = bucket.tryAdd();
+        }
+
+        @Actor
+        public void second(ZZZ_Result r) {
+            r.r2 = bucket.tryAdd();
+        }
+
+        @Actor
+        public void reconfigure() {
+            bucket.reconfigure(2, 1);
+        }
+
+        @Arbiter
+        public void last(ZZZ_Result r) {
+            r.r3 = bucket.tryAdd();
+        }
+    }
+}
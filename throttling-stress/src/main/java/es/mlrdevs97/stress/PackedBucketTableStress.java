@@ -0,0 +1,85 @@
+package es.mlrdevs97.stress;
+
+import es.mlrdevs97.throttling.BucketAlgorithm;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.ManualClock;
+import es.mlrdevs97.throttling.PackedBucketTable;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZZ_Result;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Races on the slots of a {@link PackedBucketTable}, including the insertion of a key and the rebuild of its stripe.
+ * Each result lists whether each request was granted.
+ */
+public class PackedBucketTableStress {
+
+    /**
+     * Two requests of a new key race to insert its bucket and take its only token.
+     */
+    @JCStressTest
+    @Outcome(id = {"true, false", "false, true"}, expect = ACCEPTABLE, desc = "One request got the token.")
+    @Outcome(id = "true, true", expect = FORBIDDEN, desc = "The key was inserted twice, or its token granted twice.")
+    @Outcome(id = "false, false", expect = FORBIDDEN, desc = "The token was lost.")
+    @State
+    public static class InsertRacingInsert {
+        private final PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, 1, 1, 16, 1,
+                new ManualClock());
+
+        @Actor
+        public void first(ZZ_Result r) {
+            r.r1 = table.tryAcquire("key") == KeyedLimiter.Outcome.GRANTED;
+        }
+
+        @Actor
+        public void second(ZZ_Result r) {
+            r.r2 = table.tryAcquire("key") == KeyedLimiter.Outcome.GRANTED;
+        }
+    }
+
+    /**
+     * Two requests race for the last two tokens of a key while the same limits are applied again, which rebuilds
+     * the stripe of the key. The rebuild must neither hand out nor lose a token.
+     */
+    @JCStressTest
+    @Outcome(id = "true, true, false", expect = ACCEPTABLE, desc = "Both tokens granted, once each.")
+    @Outcome(id = "true, true, true", expect = FORBIDDEN, desc = "The rebuild handed out a token.")
+    @Outcome(id = {"true, false, true", "false, true, true", "false, false, true", "true, false, false",
+            "false, true, false", "false, false, false"}, expect = FORBIDDEN, desc = "The rebuild lost a token.")
+    @State
+    public static class ReconfigureRacingAcquire {
+        private final PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, 3, 1, 16, 1,
+                new ManualClock());
+
+        public ReconfigureRacingAcquire() {
+            table.tryAcquire("key"); // Inserts the key, so that the rebuild has a bucket to carry over.
+        }
+
+        @Actor
+        public void first(ZZZ_Result r) {
+            r.r1 = table.tryAcquire("key") == KeyedLimiter.Outcome.GRANTED;
+        }
+
+        @Actor
+        public void second(ZZZ_Result r) {
+            r.r2 = table.tryAcquire("key") == KeyedLimiter.Outcome.GRANTED;
+        }
+
+        @Actor
+        public void reconfigure() {
+            table.reconfigure(3, 1);
+        }
+
+        @Arbiter
+        public void last(ZZZ_Result r) {
+            r.r3 = table.tryAcquire("key") == KeyedLimiter.Outcome.GRANTED;
+        }
+    }
+}
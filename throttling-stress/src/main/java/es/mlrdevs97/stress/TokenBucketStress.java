@@ -0,0 +1,150 @@
+package es.mlrdevs97.stress;
+
+import es.mlrdevs97.throttling.ManualClock;
+import es.mlrdevs97.throttling.TokenBucket;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZZ_Result;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Races on the single word of a {@link TokenBucket}. Each result lists whether each request was granted.
+ */
+public class TokenBucketStress {
+
+    /**
+     * Two requests race for the only token.
+     */
+    @JCStressTest
+    @Outcome(id = {"true, false", "false, true"}, expect = ACCEPTABLE, desc = "One request got the token.")
+    @Outcome(id = "true, true", expect = FORBIDDEN, desc = "Both requests got the only token.")
+    @Outcome(id = "false, false", expect = FORBIDDEN, desc = "The token was lost.")
+    @State
+    public static class ConsumeRacingConsume {
+        private final TokenBucket bucket = new TokenBucket(1, 1, new ManualClock());
+
+        @Actor
+        public void first(ZZ_Result r) {
+            r.r1 = bucket.tryConsume();
+        }
+
+        @Actor
+        public void second(ZZ_Result r) {
+            r.r2 = bucket.tryConsume();
+        }
+    }
+
+    /**
+     * Two requests race for the only token while a second passes, refilling another one. A last request comes after
+     * them: over the second, at most the capacity plus one token can be granted, and no fewer.
+     */
+    @JCStressTest
+    @Outcome(id = {"true, false, true", "false, true, true", "true, true, false"}, expect = ACCEPTABLE,
+            desc = "The token and its refill were granted once each.")
+    @Outcome(id = "true, true, true", expect = FORBIDDEN, desc = "More tokens granted than the capacity plus the refill.")
+    @Outcome(id = {"true, false, false", "false, true, false", "false, false, true", "false, false, false"},
+            expect = FORBIDDEN, desc = "A token or its refill was lost.")
+    @State
+    public static class RefillRacingConsume {
+        private final ManualClock clock = new ManualClock();
+        private final TokenBucket bucket = new TokenBucket(1, 1, clock);
+
+        @Actor
+        public void first(ZZZ_Result r) {
+            r.r1 = bucket.tryConsume();
+        }
+
+        @Actor
+        public void second(ZZZ_Result r) {
+            r.r2 = bucket.tryConsume();
+        }
+
+        @Actor
+        public void tick() {
+            clock.advance(1, TimeUnit.SECONDS);
+        }
+
+        @Arbiter
+        public void last(ZZZ_Result r) {
+            r.r3 = bucket.tryConsume();
+        }
+    }
+
+    /**
+     * Two requests race for the two tokens of a frozen bucket while the same limits are applied again.
+     * Reconfiguring must neither hand out nor lose a token, so the last request always finds the bucket empty.
+     */
+    @JCStressTest
+    @Outcome(id = "true, true, false", expect = ACCEPTABLE, desc = "Both tokens granted, once each.")
+    @Outcome(id = "true, true, true", expect = FORBIDDEN, desc = "Reconfiguring handed out a token.")
+    @Outcome(id = {"true, false, true", "false, true, true", "false, false, true", "true, false, false",
+            "false, true, false", "false, false, false"}, expect = FORBIDDEN, desc = "Reconfiguring lost a token.")
+    @State
+    public static class ReconfigureRacingConsume {
+        private final TokenBucket bucket = new TokenBucket(2, 1, new ManualClock());
+
+        @Actor
+        public void first(ZZZ_Result r) {
+            r.r1 = bucket.tryConsume();
+        }
+
+        @Actor
+        public void second(ZZZ_Result r) {
+            r.r2 = bucket.tryConsume();
+        }
+
+        @Actor
+        public void reconfigure() {
+            bucket.reconfigure(2, 1);
+        }
+
+        @Arbiter
+        public void last(ZZZ_Result r) {
+            r.r3 = bucket.tryConsume();
+        }
+    }
+
+    /**
+     * Two requests race for the two tokens of a frozen bucket while its capacity is halved, which keeps half of the
+     * tokens left, rounded down. Whatever the order, no token is left for the last request.
+     */
+    @JCStressTest
+    @Outcome(id = "true, true, false", expect = ACCEPTABLE, desc = "Both requests came before the new capacity.")
+    @Outcome(id = {"true, false, false", "false, true, false"}, expect = ACCEPTABLE,
+            desc = "The new capacity left a single token, or none after the first request.")
+    @Outcome(id = {"true, true, true", "true, false, true", "false, true, true", "false, false, true"},
+            expect = FORBIDDEN, desc = "More tokens granted than the new capacity allows.")
+    @Outcome(id = "false, false, false", expect = FORBIDDEN, desc = "The token left by the new capacity was lost.")
+    @State
+    public static class ShrinkRacingConsume {
+        private final TokenBucket bucket = new TokenBucket(2, 1, new ManualClock());
+
+        @Actor
+        public void first(ZZZ_Result r) {
+            r.r1 = bucket.tryConsume();
+        }
+
+        @Actor
+        public void second(ZZZ_Result r) {
+            r.r2 = bucket.tryConsume();
+        }
+
+        @Actor
+        public void reconfigure() {
+            bucket.reconfigure(1, 1);
+        }
+
+        @Arbiter
+        public void last(ZZZ_Result r) {
+            r.r3 = bucket.tryConsume();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package es.mlrdevs97.stress;
+
+import es.mlrdevs97.throttling.BucketAlgorithm;
+import es.mlrdevs97.throttling.FixedWindowCounter;
+import es.mlrdevs97.throttling.GcraLimiter;
+import es.mlrdevs97.throttling.HierarchicalLimiter;
+import es.mlrdevs97.throttling.KeyedLimiter;
+import es.mlrdevs97.throttling.LeakyBucket;
+import es.mlrdevs97.throttling.ManualClock;
+import es.mlrdevs97.throttling.PackedBucketTable;
+import es.mlrdevs97.throttling.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hammers each limiter from several threads while another one moves a manual clock forward, and checks that no
+ * more permits were granted than the capacity plus the rate times the time elapsed on that clock.
+ */
+class GrantBoundTest {
+    private static final int THREADS = 4;
+
+    private static final long CAPACITY = 10;
+    private static final long RATE = 1_000;
+
+    // The clock moves a millisecond, one permit at the rate above, at each of its steps.
+    private static final long STEP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int STEPS = 500;
+
+    @Test
+    void tokenBucket_shouldNeverGrantMoreThanCapacityPlusRateTimesElapsed() throws InterruptedException {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(CAPACITY, RATE, clock);
+
+        // Act
+        long granted = hammer(clock, bucket::tryConsume, null);
+
+        // Assert
+        assertWithinBound(granted, CAPACITY, RATE);
+    }
+
+    @Test
+    void tokenBucket_whileReconfigured_shouldNeverGrantMoreThanCapacityPlusRateTimesElapsed() throws InterruptedException {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(CAPACITY, RATE, clock);
+
+        // Act
+        long granted = hammer(clock, bucket::tryConsume, () -> bucket.reconfigure(CAPACITY, RATE));
+
+        // Assert
+        assertWithinBound(granted, CAPACITY, RATE);
+    }
+
+    @Test
+    void leakyBucket_shouldNeverQueueMoreThanCapacityPlusRateTimesElapsed() throws InterruptedException {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        LeakyBucket bucket = new LeakyBucket(CAPACITY, RATE, clock);
+
+        // Act
+        long granted = hammer(clock, bucket::tryAdd, () -> bucket.reconfigure(CAPACITY, RATE));
+
+        // Assert
+        assertWithinBound(granted, CAPACITY, RATE);
+    }
+
+    @Test
+    void gcraLimiter_shouldNeverGrantMoreThanBurstPlusRateTimesElapsed() throws InterruptedException {
+        // Arrange
+        ManualClock clock = new ManualClock();
+        GcraLimiter limiter = new GcraLimiter(CAPACITY, RATE, clock);
+
+        // Act
+        long granted = hammer(clock, () -> limiter.tryAcquire(1, null), () -> limiter.reconfigure(CAPACITY, RATE));
+
+        // Assert
+        assertWithinBound(granted, CAPACITY, RATE);
+    }
+
+    @Test
+    void packedBucketTable_shouldNeverGrantMoreThanCapacityPlusRateTimesElapsed() throws InterruptedException {
+        // Arrange: the rebuilds of the stripe race with the decisions on the key
+        ManualClock clock = new ManualClock();
+        PackedBucketTable table = new PackedBucketTable(BucketAlgorithm.TOKEN_BUCKET, CAPACITY, RATE, 64, 1, clock);
+
+        // Act
+        long granted = hammer(clock, () -> table.tryAcquire("key") == KeyedLimiter.Outcome.GRANTED,
+                () -> table.reconfigure(CAPACITY, RATE));
+
+        // Assert
+        assertWithinBound(granted, CAPACITY, RATE);
+    }
+
+    @Test
+    void hierarchicalLimiter_shouldNeverGrantMoreThanTheGlobalLevelAllows() throws InterruptedException {
+        // Arrange: every thread is its own user, under the same global level
+        ManualClock clock = new ManualClock();
+        HierarchicalLimiter limiter = new HierarchicalLimiter(CAPACITY, RATE, Long.MAX_VALUE / 4, RATE * 10,
+                CAPACITY * 10, RATE * 10, 64, clock);
+        ThreadLocal<String> users = ThreadLocal.withInitial(() -> Thread.currentThread().getName());
+
+        // Act
+        long granted = hammer(clock,
+                () -> limiter.tryAcquire("tenant", users.get(), 1, null) == KeyedLimiter.Outcome.GRANTED, null);
+
+        // Assert
+        assertWithinBound(granted, CAPACITY, RATE);
+    }
+
+    @Test
+    void fixedWindowCounter_shouldNeverGrantMoreThanTheLimitOfEachWindow() throws InterruptedException {
+        // Arrange: a 100 ms window, so the run covers 20 of them
+        ManualClock clock = new ManualClock();
+        FixedWindowCounter counter = new FixedWindowCounter(CAPACITY, 100, 4, clock);
+
+        // Act
+        long granted = hammer(clock, () -> counter.tryAcquire(1, null), null);
+
+        // Assert: the first window and each one the clock entered
+        long windows = 1 + STEPS * STEP_NANOS / TimeUnit.MILLISECONDS.toNanos(100);
+        assertTrue(granted <= CAPACITY * windows, granted + " permits granted in " + windows + " windows");
+        assertTrue(granted >= CAPACITY, "Not even the first window was granted: " + granted);
+    }
+
+    /**
+     * Runs the deciding threads, and an optional disturbing one, while the clock moves forward step by step.
+     * @return The number of permits granted.
+     */
+    private static long hammer(ManualClock clock, BooleanSupplier decide, Runnable disturb) throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder granted = new LongAdder();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            threads.add(new Thread(() -> {
+                while (!stop.get()) {
+                    if (decide.getAsBoolean()) {
+                        granted.increment();
+                    }
+                }
+            }, "decider-" + i));
+        }
+        if (disturb != null) {
+            threads.add(new Thread(() -> {
+                while (!stop.get()) {
+                    disturb.run();
+                    Thread.yield();
+                }
+            }, "disturber"));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (int step = 0; step < STEPS; step++) {
+            clock.advance(STEP_NANOS);
+            Thread.yield();
+        }
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return granted.sum();
+    }
+
+    /**
+     * Checks that the permits granted are within the capacity plus the rate times the time the clock moved,
+     * and that the capacity at least was granted, so that the limiter was actually exercised.
+     */
+    private static void assertWithinBound(long granted, long capacity, long rate) {
+        long elapsed = STEPS * STEP_NANOS;
+        long bound = capacity + rate * elapsed / TimeUnit.SECONDS.toNanos(1);
+        assertTrue(granted <= bound, granted + " permits granted, more than " + bound);
+        assertTrue(granted >= capacity, "Not even the capacity was granted: " + granted);
+    }
+}